@@ -43,4 +43,10 @@ public interface AuditService {
    */
   void logEvent(PciAuditEvent event);
 
+  /**
+   * Closes the audit service, pending events will be flushed.
+   */
+  default void close() {
+  }
+
 }
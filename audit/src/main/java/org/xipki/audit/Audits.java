@@ -114,4 +114,10 @@ public class Audits {
     }
   } // method init
 
+  public static void close() {
+    if (auditService != null) {
+      auditService.close();
+    }
+  } // method close
+
 }
@@ -20,13 +20,23 @@ package org.xipki.audit.services;
 import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLContext;
 
@@ -42,13 +52,13 @@ import org.xipki.audit.PciAuditEvent;
 import org.xipki.util.FileOrBinary;
 import org.xipki.util.ObjectCreationException;
 import org.xipki.util.http.SslContextConf;
+import org.xipki.util.metrics.MetricsRegistry;
 
 import com.cloudbees.syslog.Facility;
 import com.cloudbees.syslog.MessageFormat;
 import com.cloudbees.syslog.Severity;
 import com.cloudbees.syslog.SyslogMessage;
 import com.cloudbees.syslog.sender.AbstractSyslogMessageSender;
-import com.cloudbees.syslog.sender.TcpSyslogMessageSender;
 import com.cloudbees.syslog.sender.UdpSyslogMessageSender;
 
 /**
@@ -60,6 +70,117 @@ import com.cloudbees.syslog.sender.UdpSyslogMessageSender;
 
 public class SyslogAuditService implements AuditService {
 
+  /**
+   * What to do with a message if the queue of the asynchronous mode is full.
+   */
+  public enum OverflowPolicy {
+
+    /**
+     * Wait until the queue has space.
+     */
+    block,
+
+    /**
+     * Drop the message.
+     */
+    drop,
+
+    /**
+     * Write the message to the spill file.
+     */
+    spill
+
+  } // class OverflowPolicy
+
+  private class AsyncSender implements Runnable {
+
+    private final BlockingQueue<SyslogMessage> queue;
+
+    private final int batchSize;
+
+    private volatile boolean closed;
+
+    AsyncSender(int queueSize, int batchSize) {
+      this.queue = new ArrayBlockingQueue<>(queueSize);
+      this.batchSize = batchSize;
+    }
+
+    void enqueue(SyslogMessage message) {
+      if (closed) {
+        // the sender thread is gone, send it directly.
+        sendMessage(message);
+        return;
+      }
+
+      if (queue.offer(message)) {
+        return;
+      }
+
+      switch (overflowPolicy) {
+        case block:
+          try {
+            queue.put(message);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+            LOG.warn("interrupted while waiting for space in the syslog queue, drop the message");
+          }
+          break;
+        case spill:
+          spillMessage(message);
+          break;
+        default:
+          long n = dropped.incrementAndGet();
+          if (n % 1000 == 1) {
+            LOG.warn("syslog queue is full, dropped {} messages so far", n);
+          }
+          break;
+      }
+    } // method enqueue
+
+    @Override
+    public void run() {
+      List<SyslogMessage> batch = new ArrayList<>(batchSize);
+      while (true) {
+        SyslogMessage first;
+        try {
+          first = queue.poll(100, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+          break;
+        }
+
+        if (first == null) {
+          if (closed) {
+            break;
+          }
+          continue;
+        }
+
+        // all messages are sent over the same connection by this thread only.
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+        sendMessages(batch);
+        batch.clear();
+      }
+    } // method run
+
+  } // class AsyncSender
+
+  /**
+   * The default size of the queue in the asynchronous mode.
+   */
+  public static final int DFLT_QUEUE_SIZE = 10000;
+
+  /**
+   * The default number of messages sent in one batch in the asynchronous mode.
+   */
+  public static final int DFLT_BATCH_SIZE = 100;
+
+  /**
+   * The default overflow policy is block.
+   */
+  public static final String DFLT_OVERFLOW_POLICY = "block";
+
   /**
    * The default port is 514.
    */
@@ -87,6 +208,16 @@ public class SyslogAuditService implements AuditService {
 
   private static final Logger LOG = LoggerFactory.getLogger(SyslogAuditService.class);
 
+  private static final String METRIC_QUEUE_DEPTH = "xipki_audit_syslog_queue_depth";
+
+  private static final String METRIC_SENT = "xipki_audit_syslog_sent_total";
+
+  private static final String METRIC_FAILED = "xipki_audit_syslog_failed_total";
+
+  private static final String METRIC_DROPPED = "xipki_audit_syslog_dropped_total";
+
+  private static final String METRIC_SPILLED = "xipki_audit_syslog_spilled_total";
+
   /**
    * The syslog client instance.
    */
@@ -109,8 +240,28 @@ public class SyslogAuditService implements AuditService {
    */
   private String prefix;
 
+  private MessageFormat msgFormat;
+
   private boolean initialized;
 
+  private AsyncSender asyncSender;
+
+  private ExecutorService asyncExecutor;
+
+  private OverflowPolicy overflowPolicy = OverflowPolicy.block;
+
+  private Path spillFile;
+
+  private Writer spillWriter;
+
+  private final AtomicLong sent = new AtomicLong(0);
+
+  private final AtomicLong failed = new AtomicLong(0);
+
+  private final AtomicLong dropped = new AtomicLong(0);
+
+  private final AtomicLong spilled = new AtomicLong(0);
+
   public SyslogAuditService() {
   }
 
@@ -138,7 +289,6 @@ public class SyslogAuditService implements AuditService {
     String protocol = getString(props, "protocol", DFLT_SYSLOG_PROTOCOL);
     // messageFormat
     this.messageFormat = getString(props, "messageFormat", DFLT_MESSAGE_FORMAT);
-    MessageFormat msgFormat;
     if ("rfc3164".equalsIgnoreCase(messageFormat) || "rfc_3164".equalsIgnoreCase(messageFormat)) {
       msgFormat = MessageFormat.RFC_3164;
     } else if ("rfc5424".equalsIgnoreCase(messageFormat)
@@ -151,7 +301,7 @@ public class SyslogAuditService implements AuditService {
     }
 
     if ("tcp".equalsIgnoreCase(protocol)) {
-      TcpSyslogMessageSender lcSyslog = new TcpSyslogMessageSender();
+      TcpBatchSyslogMessageSender lcSyslog = new TcpBatchSyslogMessageSender();
       syslog = lcSyslog;
       lcSyslog.setSyslogServerHostname(host);
       lcSyslog.setSyslogServerPort(port);
@@ -224,6 +374,50 @@ public class SyslogAuditService implements AuditService {
     }
     syslog.setDefaultFacility(sysFacility);
 
+    // asynchronous mode
+    if (getBoolean(props, "async", false)) {
+      int queueSize = getInt(props, "queueSize", DFLT_QUEUE_SIZE);
+      if (queueSize < 1) {
+        queueSize = DFLT_QUEUE_SIZE;
+      }
+      int batchSize = getInt(props, "batchSize", DFLT_BATCH_SIZE);
+      if (batchSize < 1) {
+        batchSize = DFLT_BATCH_SIZE;
+      }
+
+      String policy = getString(props, "overflowPolicy", DFLT_OVERFLOW_POLICY);
+      try {
+        this.overflowPolicy = OverflowPolicy.valueOf(policy.toLowerCase(Locale.ENGLISH));
+      } catch (IllegalArgumentException ex) {
+        LOG.warn("invalid overflowPolicy '{}', use the default one '{}'", policy,
+            DFLT_OVERFLOW_POLICY);
+        this.overflowPolicy = OverflowPolicy.block;
+      }
+
+      if (overflowPolicy == OverflowPolicy.spill) {
+        String str = props.getProperty("spillFile");
+        if (str == null || str.isEmpty()) {
+          throw new AuditServiceRuntimeException(
+              "spillFile must be set if overflowPolicy is spill");
+        }
+        this.spillFile = Paths.get(str);
+      }
+
+      asyncSender = new AsyncSender(queueSize, batchSize);
+      asyncExecutor = Executors.newSingleThreadExecutor();
+      asyncExecutor.execute(asyncSender);
+      LOG.info("use asynchronous mode: queueSize={}, batchSize={}, overflowPolicy={}",
+          queueSize, batchSize, overflowPolicy);
+    }
+
+    MetricsRegistry registry = MetricsRegistry.getDefault();
+    registry.gauge(METRIC_QUEUE_DEPTH, "Syslog messages waiting in the queue",
+        this::getQueueDepth);
+    registry.counter(METRIC_SENT, "Syslog messages sent", sent::get);
+    registry.counter(METRIC_FAILED, "Syslog messages which could not be sent", failed::get);
+    registry.counter(METRIC_DROPPED, "Syslog messages dropped", dropped::get);
+    registry.counter(METRIC_SPILLED, "Syslog messages written to the spill file", spilled::get);
+
     // after we're finished set initialized to true
     this.initialized = true;
     LOG.info("initialized: {}", SyslogAuditService.class);
@@ -283,12 +477,7 @@ public class SyslogAuditService implements AuditService {
     sm.setMsgId(event.getName());
     sm.setMsg(sb);
 
-    try {
-      syslog.sendMessage(sm);
-    } catch (Throwable th) {
-      LOG.error("could not send syslog message: {}", th.getMessage());
-      LOG.debug("could not send syslog message", th);
-    }
+    send(sm);
   } // method logEvent(AuditEvent)
 
   @Override
@@ -315,13 +504,140 @@ public class SyslogAuditService implements AuditService {
     sm.setSeverity(getSeverity(event.getLevel()));
     sm.setMsg(msg);
 
+    send(sm);
+  } // method logEvent(PCIAuditEvent)
+
+  @Override
+  public void close() {
+    if (asyncSender != null) {
+      asyncSender.closed = true;
+      asyncExecutor.shutdown();
+      try {
+        if (!asyncExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+          asyncExecutor.shutdownNow();
+        }
+      } catch (InterruptedException ex) {
+        asyncExecutor.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+
+      // flush the remaining messages
+      List<SyslogMessage> batch = new ArrayList<>(asyncSender.batchSize);
+      while (asyncSender.queue.drainTo(batch, asyncSender.batchSize) > 0) {
+        sendMessages(batch);
+        batch.clear();
+      }
+    }
+
+    MetricsRegistry registry = MetricsRegistry.getDefault();
+    for (String name : new String[]{METRIC_QUEUE_DEPTH, METRIC_SENT, METRIC_FAILED,
+        METRIC_DROPPED, METRIC_SPILLED}) {
+      registry.remove(name);
+    }
+
+    if (syslog != null) {
+      try {
+        syslog.close();
+      } catch (IOException ex) {
+        LOG.warn("could not close syslog sender: {}", ex.getMessage());
+      }
+    }
+
+    synchronized (this) {
+      if (spillWriter != null) {
+        try {
+          spillWriter.close();
+        } catch (IOException ex) {
+          LOG.warn("could not close spill file {}: {}", spillFile, ex.getMessage());
+        }
+        spillWriter = null;
+      }
+    }
+
+    LOG.info("closed syslog audit: sent={}, failed={}, dropped={}, spilled={}",
+        sent.get(), failed.get(), dropped.get(), spilled.get());
+  } // method close
+
+  /**
+   * Returns the number of messages waiting in the queue of the asynchronous mode.
+   * @return number of queued messages, 0 in the synchronous mode.
+   */
+  public int getQueueDepth() {
+    return asyncSender == null ? 0 : asyncSender.queue.size();
+  }
+
+  public long getSentCount() {
+    return sent.get();
+  }
+
+  public long getFailedCount() {
+    return failed.get();
+  }
+
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  public long getSpilledCount() {
+    return spilled.get();
+  }
+
+  private void send(SyslogMessage message) {
+    if (asyncSender == null) {
+      sendMessage(message);
+    } else {
+      asyncSender.enqueue(message);
+    }
+  } // method send
+
+  /**
+   * Sends the messages. Over TCP, they are written with one writer and flushed once.
+   */
+  private void sendMessages(List<SyslogMessage> messages) {
+    if (!(syslog instanceof TcpBatchSyslogMessageSender)) {
+      for (SyslogMessage message : messages) {
+        sendMessage(message);
+      }
+      return;
+    }
+
     try {
-      syslog.sendMessage(sm);
+      ((TcpBatchSyslogMessageSender) syslog).sendMessages(messages);
+      sent.addAndGet(messages.size());
     } catch (Throwable th) {
+      failed.addAndGet(messages.size());
+      LOG.error("could not send {} syslog messages: {}", messages.size(), th.getMessage());
+      LOG.debug("could not send syslog messages", th);
+    }
+  } // method sendMessages
+
+  private void sendMessage(SyslogMessage message) {
+    try {
+      syslog.sendMessage(message);
+      sent.incrementAndGet();
+    } catch (Throwable th) {
+      failed.incrementAndGet();
       LOG.error("could not send syslog message: {}", th.getMessage());
       LOG.debug("could not send syslog message", th);
     }
-  } // method logEvent(PCIAuditEvent)
+  } // method sendMessage
+
+  private synchronized void spillMessage(SyslogMessage message) {
+    try {
+      if (spillWriter == null) {
+        spillWriter = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      }
+      spillWriter.write(message.toSyslogMessage(msgFormat));
+      spillWriter.write('\n');
+      spillWriter.flush();
+      spilled.incrementAndGet();
+    } catch (IOException ex) {
+      dropped.incrementAndGet();
+      LOG.error("could not write syslog message to spill file {}: {}", spillFile,
+          ex.getMessage());
+    }
+  } // method spillMessage
 
   private static boolean notEmpty(String text) {
     return text != null && !text.isEmpty();
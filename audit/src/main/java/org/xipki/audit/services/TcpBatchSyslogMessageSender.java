@@ -0,0 +1,192 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+import com.cloudbees.syslog.SyslogMessage;
+import com.cloudbees.syslog.sender.AbstractSyslogMessageSender;
+
+/**
+ * Syslog sender over TCP (optional TLS) which writes several messages with one writer and
+ * flushes the connection only once per batch. Compatible with TcpSyslogMessageSender, each
+ * message is terminated by CRLF.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class TcpBatchSyslogMessageSender extends AbstractSyslogMessageSender
+    implements Closeable {
+
+  private static final String POSTFIX = "\r\n";
+
+  private String syslogServerHostname;
+
+  private int syslogServerPort = 514;
+
+  private int socketConnectTimeoutInMillis = 500;
+
+  private boolean ssl;
+
+  private SSLContext sslContext;
+
+  private int maxRetryCount = 2;
+
+  private Socket socket;
+
+  private Writer writer;
+
+  @Override
+  public void sendMessage(SyslogMessage message) throws IOException {
+    sendMessages(Collections.singletonList(message));
+  }
+
+  /**
+   * Writes the messages and flushes the connection once. If the connection is broken, it will
+   * be re-established and the whole batch will be written again, up to maxRetryCount times.
+   * Hence a message may be received twice by the syslog server.
+   *
+   * @param messages
+   *          Messages to be sent.
+   * @throws IOException
+   *           if the messages could not be sent.
+   */
+  public synchronized void sendMessages(List<SyslogMessage> messages) throws IOException {
+    if (messages.isEmpty()) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    try {
+      IOException lastException = null;
+      for (int i = 0; i <= maxRetryCount; i++) {
+        try {
+          ensureConnection();
+          for (SyslogMessage message : messages) {
+            message.toSyslogMessage(messageFormat, writer);
+            writer.write(POSTFIX);
+          }
+          writer.flush();
+          sendCounter.addAndGet(messages.size());
+          return;
+        } catch (IOException ex) {
+          lastException = ex;
+          closeConnection();
+        }
+      }
+
+      sendErrorCounter.addAndGet(messages.size());
+      throw lastException;
+    } finally {
+      sendDurationInNanosCounter.addAndGet(System.nanoTime() - start);
+    }
+  } // method sendMessages
+
+  private void ensureConnection() throws IOException {
+    if (socket != null && socket.isConnected() && !socket.isClosed()
+        && !socket.isOutputShutdown()) {
+      return;
+    }
+
+    closeConnection();
+
+    SocketFactory factory;
+    if (ssl) {
+      factory = (sslContext == null) ? SSLSocketFactory.getDefault()
+          : sslContext.getSocketFactory();
+    } else {
+      factory = SocketFactory.getDefault();
+    }
+
+    Socket newSocket = factory.createSocket();
+    try {
+      newSocket.setKeepAlive(true);
+      newSocket.connect(new InetSocketAddress(syslogServerHostname, syslogServerPort),
+          socketConnectTimeoutInMillis);
+      writer = new BufferedWriter(new OutputStreamWriter(newSocket.getOutputStream(), UTF_8));
+      socket = newSocket;
+    } catch (IOException ex) {
+      newSocket.close();
+      throw ex;
+    }
+  } // method ensureConnection
+
+  private void closeConnection() {
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException ex) {
+        logger.fine("could not close socket: " + ex.getMessage());
+      }
+    }
+    socket = null;
+    writer = null;
+  } // method closeConnection
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (writer != null) {
+      try {
+        writer.flush();
+      } catch (IOException ex) {
+        // the connection will be closed anyway
+      }
+    }
+    closeConnection();
+  }
+
+  @Override
+  public void setSyslogServerHostname(String syslogServerHostname) {
+    this.syslogServerHostname = syslogServerHostname;
+  }
+
+  @Override
+  public void setSyslogServerPort(int syslogServerPort) {
+    this.syslogServerPort = syslogServerPort;
+  }
+
+  public void setSocketConnectTimeoutInMillis(int socketConnectTimeoutInMillis) {
+    this.socketConnectTimeoutInMillis = socketConnectTimeoutInMillis;
+  }
+
+  public void setSsl(boolean ssl) {
+    this.ssl = ssl;
+  }
+
+  public synchronized void setSSLContext(SSLContext sslContext) {
+    this.sslContext = sslContext;
+  }
+
+  public void setMaxRetryCount(int maxRetryCount) {
+    this.maxRetryCount = maxRetryCount;
+  }
+
+}
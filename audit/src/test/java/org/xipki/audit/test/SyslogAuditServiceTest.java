@@ -0,0 +1,239 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditLevel;
+import org.xipki.audit.AuditStatus;
+import org.xipki.audit.services.SyslogAuditService;
+import org.xipki.audit.services.TcpBatchSyslogMessageSender;
+import org.xipki.util.metrics.MetricsRegistry;
+
+import com.cloudbees.syslog.Facility;
+import com.cloudbees.syslog.MessageFormat;
+import com.cloudbees.syslog.Severity;
+import com.cloudbees.syslog.SyslogMessage;
+
+/**
+ * Test for the asynchronous mode of {@link SyslogAuditService} and the
+ * {@link TcpBatchSyslogMessageSender}, against a local stub syslog listener.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class SyslogAuditServiceTest {
+
+  private static class StubSyslogListener implements Runnable {
+
+    private final ServerSocket serverSocket;
+
+    private final CountDownLatch startReading;
+
+    private final AtomicInteger receivedMessages = new AtomicInteger();
+
+    private final Thread thread;
+
+    StubSyslogListener(boolean startReading) throws IOException {
+      this.serverSocket = new ServerSocket(0);
+      this.startReading = new CountDownLatch(startReading ? 0 : 1);
+      this.thread = new Thread(this);
+      this.thread.start();
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    void startReading() {
+      startReading.countDown();
+    }
+
+    int waitForEnd() throws Exception {
+      thread.join(30000);
+      serverSocket.close();
+      return receivedMessages.get();
+    }
+
+    @Override
+    public void run() {
+      try (Socket socket = serverSocket.accept()) {
+        startReading.await();
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (!line.isEmpty()) {
+            receivedMessages.incrementAndGet();
+          }
+        }
+      } catch (Exception ex) {
+        // do nothing
+      }
+    }
+
+  } // class StubSyslogListener
+
+  @Test
+  public void testAsyncMode() throws Exception {
+    StubSyslogListener listener = new StubSyslogListener(true);
+
+    Properties props = new Properties();
+    props.setProperty("protocol", "tcp");
+    props.setProperty("host", "127.0.0.1");
+    props.setProperty("port", Integer.toString(listener.getPort()));
+    props.setProperty("async", "true");
+    props.setProperty("queueSize", "100");
+    props.setProperty("batchSize", "10");
+
+    SyslogAuditService service = new SyslogAuditService();
+    service.init(writeConf(props));
+
+    final int n = 500;
+    for (int i = 0; i < n; i++) {
+      service.logEvent(createEvent("msg-" + i));
+    }
+
+    String metrics = metricsText();
+    Assert.assertTrue("queue depth gauge", metrics.contains("xipki_audit_syslog_queue_depth "));
+    Assert.assertTrue("dropped counter", metrics.contains("xipki_audit_syslog_dropped_total "));
+    Assert.assertTrue("spilled counter", metrics.contains("xipki_audit_syslog_spilled_total "));
+    service.close();
+    Assert.assertFalse("metrics removed", metricsText().contains("xipki_audit_syslog"));
+
+    Assert.assertEquals("received messages", n, listener.waitForEnd());
+    Assert.assertEquals("sent messages", n, service.getSentCount());
+    Assert.assertEquals("dropped messages", 0, service.getDroppedCount());
+    Assert.assertEquals("queue depth", 0, service.getQueueDepth());
+  }
+
+  @Test
+  public void testSpillIfQueueFull() throws Exception {
+    // the listener does not read, so that the sender will be blocked once the socket
+    // buffers are full.
+    StubSyslogListener listener = new StubSyslogListener(false);
+    File spillFile = File.createTempFile("xipki-syslog-spill-", ".log");
+    spillFile.deleteOnExit();
+
+    Properties props = new Properties();
+    props.setProperty("protocol", "tcp");
+    props.setProperty("host", "127.0.0.1");
+    props.setProperty("port", Integer.toString(listener.getPort()));
+    props.setProperty("maxMessageLength", "100000");
+    props.setProperty("async", "true");
+    props.setProperty("queueSize", "2");
+    props.setProperty("batchSize", "2");
+    props.setProperty("overflowPolicy", "spill");
+    props.setProperty("spillFile", spillFile.getPath());
+
+    SyslogAuditService service = new SyslogAuditService();
+    service.init(writeConf(props));
+
+    char[] chars = new char[64000];
+    Arrays.fill(chars, 'a');
+    String largeValue = new String(chars);
+
+    final int n = 300;
+    for (int i = 0; i < n; i++) {
+      service.logEvent(createEvent(largeValue));
+    }
+
+    listener.startReading();
+    service.close();
+
+    int received = listener.waitForEnd();
+    long spilled = service.getSpilledCount();
+    Assert.assertTrue("no message is spilled", spilled > 0);
+    Assert.assertEquals("received + spilled messages", n, received + spilled);
+    Assert.assertEquals("lines in spill file", spilled,
+        Files.readAllLines(spillFile.toPath(), StandardCharsets.UTF_8).size());
+  }
+
+  @Test
+  public void testBatchSender() throws Exception {
+    StubSyslogListener listener = new StubSyslogListener(true);
+
+    TcpBatchSyslogMessageSender sender = new TcpBatchSyslogMessageSender();
+    sender.setSyslogServerHostname("127.0.0.1");
+    sender.setSyslogServerPort(listener.getPort());
+    sender.setMessageFormat(MessageFormat.RFC_5424);
+    sender.setDefaultFacility(Facility.USER);
+
+    List<SyslogMessage> batch = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      SyslogMessage message = new SyslogMessage();
+      message.setFacility(Facility.USER);
+      message.setSeverity(Severity.INFORMATIONAL);
+      message.withMsg("msg-" + i);
+      batch.add(message);
+    }
+
+    sender.sendMessages(batch);
+    sender.sendMessages(batch.subList(0, 10));
+    sender.close();
+
+    Assert.assertEquals("received messages", 60, listener.waitForEnd());
+    Assert.assertEquals("sent messages", 60, sender.getSendCount());
+    Assert.assertEquals("send errors", 0, sender.getSendErrorCount());
+  }
+
+  private static String metricsText() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    MetricsRegistry.getDefault().writeTextFormat(sb);
+    return sb.toString();
+  }
+
+  private static AuditEvent createEvent(String value) {
+    AuditEvent event = new AuditEvent(new Date());
+    event.setApplicationName("test");
+    event.setName("perf");
+    event.setLevel(AuditLevel.INFO);
+    event.setStatus(AuditStatus.SUCCESSFUL);
+    event.addEventData("value", value);
+    return event;
+  }
+
+  private static String writeConf(Properties props) throws IOException {
+    File file = File.createTempFile("xipki-syslog-", ".properties");
+    file.deleteOnExit();
+    try (OutputStream os = Files.newOutputStream(file.toPath())) {
+      props.store(os, null);
+    }
+    return file.getPath();
+  }
+
+}
@@ -0,0 +1,228 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.util.Date;
+import java.util.Enumeration;
+
+import org.bouncycastle.asn1.sec.SECObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.xipki.security.ConcurrentBagEntrySigner;
+import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.CrlReason;
+import org.xipki.security.Securities;
+import org.xipki.security.Securities.SecurityConf;
+import org.xipki.security.SignerConf;
+import org.xipki.security.pkcs11.P11CryptServiceFactory;
+import org.xipki.security.pkcs11.P11IdentityId;
+import org.xipki.security.pkcs11.P11Module;
+import org.xipki.security.pkcs11.P11Slot;
+import org.xipki.security.pkcs11.P11Slot.P11NewKeyControl;
+import org.xipki.security.pkcs12.KeystoreGenerationParameters;
+import org.xipki.security.pkcs12.P12KeyGenerationResult;
+import org.xipki.security.pkcs12.P12KeyGenerator;
+import org.xipki.util.Base64;
+import org.xipki.util.ConfPairs;
+import org.xipki.util.FileOrValue;
+import org.xipki.util.Hex;
+import org.xipki.util.IoUtil;
+
+/**
+ * Utility to create the keys, certificates and signers used by the benchmarks.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+final class BenchmarkUtil {
+
+  static final String PASSWORD = "1234";
+
+  private static final String EMULATOR_CONF = "{'modules':[{'name':'default','type':'emulator',"
+      + "'readonly':false,'user':'CKU_USER','nativeLibraries':[{'path':'%s'}],"
+      + "'mechanismFilters':[{'mechanismSet':'all'}],"
+      + "'passwordSets':[{'passwords':['" + PASSWORD + "']}]}],"
+      + "'mechanismSets':[{'name':'all','mechanisms':['ALL']}]}";
+
+  static {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+  }
+
+  private BenchmarkUtil() {
+  }
+
+  /**
+   * Creates the {@link Securities} with PKCS#12 support, and with PKCS#11 support using the
+   * emulator in the given directory if {@code emulatorDir} is not {@code null}.
+   */
+  static Securities newSecurities(File emulatorDir) throws Exception {
+    SecurityConf conf = new SecurityConf();
+    if (emulatorDir != null) {
+      String pkcs11Conf = String.format(EMULATOR_CONF,
+          emulatorDir.getAbsolutePath().replace('\\', '/')).replace('\'', '"');
+      conf.setPkcs11Conf(FileOrValue.ofValue(pkcs11Conf));
+    }
+
+    Securities securities = new Securities();
+    securities.init(conf);
+    return securities;
+  } // method newSecurities
+
+  static byte[] generateKeystore(String keyType, String subject) throws Exception {
+    KeystoreGenerationParameters params =
+        new KeystoreGenerationParameters(PASSWORD.toCharArray());
+    params.setRandom(new SecureRandom());
+
+    P12KeyGenerator generator = new P12KeyGenerator();
+    P12KeyGenerationResult result;
+    if ("RSA".equalsIgnoreCase(keyType)) {
+      result = generator.generateRSAKeypair(2048, RSAKeyGenParameterSpec.F4, params, subject);
+    } else if ("EC".equalsIgnoreCase(keyType)) {
+      result = generator.generateECKeypair(SECObjectIdentifiers.secp256r1, params, subject);
+    } else {
+      throw new IllegalArgumentException("unsupported keyType " + keyType);
+    }
+    return result.keystore();
+  } // method generateKeystore
+
+  static X509Certificate getCertificate(byte[] keystore) throws Exception {
+    KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+    ks.load(new ByteArrayInputStream(keystore), PASSWORD.toCharArray());
+    Enumeration<String> aliases = ks.aliases();
+    while (aliases.hasMoreElements()) {
+      String alias = aliases.nextElement();
+      if (ks.isKeyEntry(alias)) {
+        return (X509Certificate) ks.getCertificate(alias);
+      }
+    }
+    throw new IllegalStateException("found no key entry in the keystore");
+  } // method getCertificate
+
+  static ConcurrentContentSigner createP12Signer(Securities securities, byte[] keystore,
+      String signatureAlgorithm, int parallelism) throws Exception {
+    ConfPairs conf = new ConfPairs("password", PASSWORD);
+    conf.putPair("algo", signatureAlgorithm);
+    conf.putPair("parallelism", Integer.toString(parallelism));
+    conf.putPair("keystore", "base64:" + Base64.encodeToString(keystore));
+    return securities.getSecurityFactory().createSigner("PKCS12",
+        new SignerConf(conf.getEncoded()), (X509Certificate) null);
+  } // method createP12Signer
+
+  static ConcurrentContentSigner createP11Signer(Securities securities, String keyType,
+      String signatureAlgorithm, int parallelism) throws Exception {
+    P11Slot slot = getP11Slot(securities);
+    P11NewKeyControl control = new P11NewKeyControl(null, "bench-" + System.nanoTime());
+
+    P11IdentityId identityId;
+    if ("RSA".equalsIgnoreCase(keyType)) {
+      identityId = slot.generateRSAKeypair(2048, RSAKeyGenParameterSpec.F4, control);
+    } else if ("EC".equalsIgnoreCase(keyType)) {
+      identityId = slot.generateECKeypair(SECObjectIdentifiers.secp256r1, control);
+    } else {
+      throw new IllegalArgumentException("unsupported keyType " + keyType);
+    }
+
+    ConfPairs conf = new ConfPairs("algo", signatureAlgorithm);
+    conf.putPair("parallelism", Integer.toString(parallelism));
+    conf.putPair("module", P11CryptServiceFactory.DEFAULT_P11MODULE_NAME);
+    conf.putPair("slot-id", Long.toString(slot.getSlotId().getId()));
+    conf.putPair("key-id", Hex.encode(identityId.getKeyId().getId()));
+    return securities.getSecurityFactory().createSigner("PKCS11",
+        new SignerConf(conf.getEncoded()), (X509Certificate) null);
+  } // method createP11Signer
+
+  private static P11Slot getP11Slot(Securities securities) throws Exception {
+    P11Module module = securities.getP11CryptServiceFactory()
+        .getP11CryptService(P11CryptServiceFactory.DEFAULT_P11MODULE_NAME).getModule();
+    return module.getSlot(module.getSlotIdForIndex(0));
+  } // method getP11Slot
+
+  /**
+   * Generates a CRL with the given number of revoked certificates and saves it in a temporary
+   * file.
+   */
+  static File generateCrl(Securities securities, byte[] caKeystore, int numRevokedCerts)
+      throws Exception {
+    X509Certificate caCert = getCertificate(caKeystore);
+    Date now = new Date();
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(
+        X500Name.getInstance(caCert.getSubjectX500Principal().getEncoded()), now);
+    builder.setNextUpdate(new Date(now.getTime() + 24L * 60 * 60 * 1000));
+
+    SecureRandom random = new SecureRandom();
+    int[] reasons = {CrlReason.KEY_COMPROMISE.getCode(), CrlReason.SUPERSEDED.getCode(),
+      CrlReason.CESSATION_OF_OPERATION.getCode()};
+    for (int i = 0; i < numRevokedCerts; i++) {
+      builder.addCRLEntry(new BigInteger(159, random).add(BigInteger.ONE),
+          new Date(now.getTime() - random.nextInt(1000000) * 1000L), reasons[i % reasons.length]);
+    }
+
+    ConcurrentContentSigner signer = createP12Signer(securities, caKeystore,
+        "SHA256withRSA", 1);
+    byte[] encoded;
+    ConcurrentBagEntrySigner contentSigner = signer.borrowSigner();
+    try {
+      encoded = builder.build(contentSigner.value()).getEncoded();
+    } finally {
+      signer.requiteSigner(contentSigner);
+      signer.close();
+    }
+
+    File file = File.createTempFile("xipki-bench-", ".crl");
+    file.deleteOnExit();
+    IoUtil.save(file, encoded);
+    return file;
+  } // method generateCrl
+
+  static File createTempDir(String prefix) throws IOException {
+    return Files.createTempDirectory(prefix).toFile();
+  }
+
+  static void deleteDir(File dir) {
+    if (dir == null) {
+      return;
+    }
+
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.isDirectory()) {
+          deleteDir(child);
+        } else {
+          child.delete();
+        }
+      }
+    }
+    dir.delete();
+  } // method deleteDir
+
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.benchmark;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Base64;
+import org.xipki.util.Base64Url;
+
+/**
+ * Benchmark of the Base64, Base64Url and hash computations.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+  @Param({"100", "1500"})
+  private int size;
+
+  private byte[] data;
+
+  private String base64Data;
+
+  private String base64UrlData;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    data = new byte[size];
+    new SecureRandom().nextBytes(data);
+    base64Data = Base64.encodeToString(data);
+    base64UrlData = Base64Url.encodeToString(data);
+  }
+
+  @Benchmark
+  public String base64Encode() {
+    return Base64.encodeToString(data);
+  }
+
+  @Benchmark
+  public byte[] base64Decode() {
+    return Base64.decode(base64Data);
+  }
+
+  @Benchmark
+  public byte[] base64DecodeFast() {
+    return Base64.decodeFast(base64Data);
+  }
+
+  @Benchmark
+  public String base64UrlEncode() {
+    return Base64Url.encodeToString(data);
+  }
+
+  @Benchmark
+  public byte[] base64UrlDecodeFast() {
+    return Base64Url.decodeFast(base64UrlData);
+  }
+
+  @Benchmark
+  public byte[] sha1() {
+    return HashAlgo.SHA1.hash(data);
+  }
+
+  @Benchmark
+  public byte[] sha256() {
+    return HashAlgo.SHA256.hash(data);
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xipki.security.Securities;
+import org.xipki.security.asn1.CrlStreamParser;
+import org.xipki.security.asn1.CrlStreamParser.RevokedCert;
+import org.xipki.security.asn1.CrlStreamParser.RevokedCertsIterator;
+
+/**
+ * Benchmark of the iteration over the revoked certificates of a CRL via
+ * {@link CrlStreamParser}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrlStreamParserBenchmark {
+
+  @Param({"1000", "100000"})
+  private int numRevokedCerts;
+
+  private File crlFile;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    byte[] keystore = BenchmarkUtil.generateKeystore("RSA", "CN=CRL Benchmark");
+    Securities securities = BenchmarkUtil.newSecurities(null);
+    try {
+      crlFile = BenchmarkUtil.generateCrl(securities, keystore, numRevokedCerts);
+    } finally {
+      securities.close();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (crlFile != null) {
+      crlFile.delete();
+    }
+  }
+
+  @Benchmark
+  public int iterateRevokedCerts(Blackhole blackhole) throws Exception {
+    CrlStreamParser parser = new CrlStreamParser(crlFile);
+    int count = 0;
+    try (RevokedCertsIterator iterator = parser.revokedCertificates()) {
+      while (iterator.hasNext()) {
+        RevokedCert revokedCert = iterator.next();
+        blackhole.consume(revokedCert.getSerialNumber());
+        count++;
+      }
+    }
+    return count;
+  } // method iterateRevokedCerts
+
+}
@@ -0,0 +1,145 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.benchmark;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xipki.ocsp.server.OCSPRespBuilder;
+import org.xipki.ocsp.server.type.CertID;
+import org.xipki.ocsp.server.type.OcspRequest;
+import org.xipki.ocsp.server.type.ResponderID;
+import org.xipki.ocsp.server.type.TaggedCertSequence;
+import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.Securities;
+
+/**
+ * Benchmark of the parsing of OCSP requests and the building of OCSP responses.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OcspBenchmark {
+
+  private static final byte[] CERTSTATUS_GOOD = new byte[]{(byte) 0x80, 0x00};
+
+  @Param({"1", "10"})
+  private int numCertIds;
+
+  @Param({"SHA256withRSA", "SHA256withECDSA"})
+  private String signatureAlgorithm;
+
+  private Securities securities;
+
+  private ConcurrentContentSigner signer;
+
+  private byte[] encodedRequest;
+
+  private List<CertID> certIds;
+
+  private ResponderID responderId;
+
+  private TaggedCertSequence responderCert;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    String keyType = signatureAlgorithm.endsWith("withRSA") ? "RSA" : "EC";
+    byte[] keystore = BenchmarkUtil.generateKeystore(keyType, "CN=OCSP Responder Benchmark");
+    X509Certificate cert = BenchmarkUtil.getCertificate(keystore);
+
+    securities = BenchmarkUtil.newSecurities(null);
+    signer = BenchmarkUtil.createP12Signer(securities, keystore, signatureAlgorithm,
+        Runtime.getRuntime().availableProcessors());
+
+    DigestCalculator digestCalculator =
+        new BcDigestCalculatorProvider().get(CertificateID.HASH_SHA1);
+    X509CertificateHolder issuer = new X509CertificateHolder(cert.getEncoded());
+    SecureRandom random = new SecureRandom();
+
+    OCSPReqBuilder builder = new OCSPReqBuilder();
+    for (int i = 0; i < numCertIds; i++) {
+      BigInteger serial = new BigInteger(159, random).add(BigInteger.ONE);
+      builder.addRequest(new CertificateID(digestCalculator, issuer, serial));
+    }
+    encodedRequest = builder.build().getEncoded();
+
+    certIds = OcspRequest.getInstance(encodedRequest).getRequestList();
+    responderId = new ResponderID(X500Name.getInstance(
+        cert.getSubjectX500Principal().getEncoded()));
+    responderCert = new TaggedCertSequence(cert.getEncoded());
+  } // method setup
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    if (signer != null) {
+      signer.close();
+    }
+
+    if (securities != null) {
+      securities.close();
+    }
+  }
+
+  @Benchmark
+  public OcspRequest parseRequest() throws Exception {
+    return OcspRequest.getInstance(encodedRequest);
+  }
+
+  @Benchmark
+  public byte[] buildResponse() throws Exception {
+    Date now = new Date();
+    Date nextUpdate = new Date(now.getTime() + 3600L * 1000);
+
+    OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
+    for (CertID certId : certIds) {
+      builder.addResponse(certId, CERTSTATUS_GOOD, now, nextUpdate, null);
+    }
+    return builder.buildOCSPResponse(signer, responderCert, now);
+  } // method buildResponse
+
+}
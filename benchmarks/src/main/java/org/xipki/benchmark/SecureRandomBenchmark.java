@@ -0,0 +1,102 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.benchmark;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xipki.ca.server.RandomSerialNumberGenerator;
+import org.xipki.security.StripedSecureRandom;
+
+/**
+ * Benchmark of the generation of random serial numbers by {@link RandomSerialNumberGenerator},
+ * which uses {@link StripedSecureRandom}, compared to the previous implementation with one
+ * shared {@link SecureRandom} and the NAF weight computed with {@link BigInteger}. Run with
+ * several threads, since the generators are shared by all threads.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecureRandomBenchmark {
+
+  // default length of the serial numbers in the CA
+  private static final int SERIAL_LEN = 20;
+
+  private final SecureRandom sharedRandom = new SecureRandom();
+
+  private final RandomSerialNumberGenerator generator = RandomSerialNumberGenerator.getInstance();
+
+  @Benchmark
+  public BigInteger sharedSecureRandomSerial() {
+    return legacySerialNumber(SERIAL_LEN);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public BigInteger sharedSecureRandomSerial8Threads() {
+    return legacySerialNumber(SERIAL_LEN);
+  }
+
+  @Benchmark
+  public BigInteger stripedSecureRandomSerial() {
+    return generator.nextSerialNumber(SERIAL_LEN);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public BigInteger stripedSecureRandomSerial8Threads() {
+    return generator.nextSerialNumber(SERIAL_LEN);
+  }
+
+  // the implementation of RandomSerialNumberGenerator before 5.3.8
+  private BigInteger legacySerialNumber(int byteLen) {
+    final byte[] rndBytes = new byte[byteLen];
+    final int minWeight = byteLen * 2;
+
+    while (true) {
+      sharedRandom.nextBytes(rndBytes);
+      rndBytes[0] &= 0x7F;
+
+      BigInteger bi = new BigInteger(rndBytes);
+      BigInteger threeBi = bi.shiftLeft(1).add(bi);
+      BigInteger diff = threeBi.xor(bi);
+      if (diff.bitCount() >= minWeight) {
+        return bi;
+      }
+    }
+  } // method legacySerialNumber
+
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.benchmark;
+
+import java.io.File;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.Securities;
+
+/**
+ * Benchmark of borrow-and-sign of {@link ConcurrentContentSigner} with keys in PKCS#12 keystore
+ * and in the emulated PKCS#11 token.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignerBenchmark {
+
+  @Param({"pkcs12", "pkcs11-emulator"})
+  private String token;
+
+  @Param({"SHA256withRSA", "SHA256withECDSA"})
+  private String signatureAlgorithm;
+
+  private File emulatorDir;
+
+  private Securities securities;
+
+  private ConcurrentContentSigner signer;
+
+  private byte[] data;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    String keyType = signatureAlgorithm.endsWith("withRSA") ? "RSA" : "EC";
+    int parallelism = Runtime.getRuntime().availableProcessors();
+
+    if ("pkcs12".equals(token)) {
+      securities = BenchmarkUtil.newSecurities(null);
+      byte[] keystore = BenchmarkUtil.generateKeystore(keyType, "CN=Signer Benchmark");
+      signer = BenchmarkUtil.createP12Signer(securities, keystore, signatureAlgorithm,
+          parallelism);
+    } else if ("pkcs11-emulator".equals(token)) {
+      // the emulator creates the token in a non-existing directory
+      emulatorDir = new File(BenchmarkUtil.createTempDir("xipki-bench-"), "pkcs11");
+      securities = BenchmarkUtil.newSecurities(emulatorDir);
+      signer = BenchmarkUtil.createP11Signer(securities, keyType, signatureAlgorithm,
+          parallelism);
+    } else {
+      throw new IllegalArgumentException("unknown token " + token);
+    }
+
+    // typical size of a TBSCertificate
+    data = new byte[1000];
+    new SecureRandom().nextBytes(data);
+  } // method setup
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    if (signer != null) {
+      signer.close();
+    }
+
+    if (securities != null) {
+      securities.close();
+    }
+
+    if (emulatorDir != null) {
+      BenchmarkUtil.deleteDir(emulatorDir.getParentFile());
+    }
+  } // method tearDown
+
+  @Benchmark
+  public byte[] sign() throws Exception {
+    return signer.sign(data);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public byte[] sign4Threads() throws Exception {
+    return signer.sign(data);
+  }
+
+}
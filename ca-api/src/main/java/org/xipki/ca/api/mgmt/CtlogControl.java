@@ -48,12 +48,28 @@ public class CtlogControl {
    */
   public static final String KEY_SSLCONTEXT_NAME = "sslcontext.name";
 
+  /**
+   * Number of SCTs required to issue a certificate, default to the number of servers.
+   */
+  public static final String KEY_MIN_SCTS = "min.scts";
+
+  /**
+   * Connect and read timeout in milliseconds for each server, default to 10000.
+   */
+  public static final String KEY_TIMEOUT_MS = "timeout.ms";
+
+  private static final int DFLT_TIMEOUT_MS = 10000;
+
   private boolean enabled;
 
   private String sslContextName;
 
   private List<String> servers;
 
+  private int minScts;
+
+  private int timeoutMs;
+
   private String conf;
 
   public CtlogControl(String conf) throws InvalidConfException {
@@ -70,6 +86,17 @@ public class CtlogControl {
       throw new InvalidConfException(KEY_SERVERS + " is not specified");
     }
 
+    minScts = getInt(pairs, KEY_MIN_SCTS, servers.size());
+    if (minScts < 1 || minScts > servers.size()) {
+      throw new InvalidConfException(
+          KEY_MIN_SCTS + " is not in the range [1, " + servers.size() + "]: " + minScts);
+    }
+
+    timeoutMs = getInt(pairs, KEY_TIMEOUT_MS, DFLT_TIMEOUT_MS);
+    if (timeoutMs < 1) {
+      throw new InvalidConfException(KEY_TIMEOUT_MS + " is not positive: " + timeoutMs);
+    }
+
     this.conf = pairs.getEncoded();
   } // constructor
 
@@ -83,6 +110,8 @@ public class CtlogControl {
 
     pairs.putPair(KEY_SERVERS, StringUtil.collectionAsString(servers, ";"));
     this.servers = servers;
+    this.minScts = servers.size();
+    this.timeoutMs = DFLT_TIMEOUT_MS;
 
     this.sslContextName = sslContextName;
     if (sslContextName != null) {
@@ -113,7 +142,24 @@ public class CtlogControl {
   }
 
   public void setServers(List<String> servers) {
+    Args.notEmpty(servers, "servers");
+    if (minScts > servers.size()) {
+      throw new IllegalArgumentException(KEY_MIN_SCTS + " " + minScts
+          + " is greater than the number of servers " + servers.size());
+    }
+
     this.servers = servers;
+    ConfPairs pairs = new ConfPairs(conf);
+    pairs.putPair(KEY_SERVERS, StringUtil.collectionAsString(servers, ";"));
+    this.conf = pairs.getEncoded();
+  } // method setServers
+
+  public int getMinScts() {
+    return minScts;
+  }
+
+  public int getTimeoutMs() {
+    return timeoutMs;
   }
 
   public void setEnabled(boolean enabled) {
@@ -134,7 +180,9 @@ public class CtlogControl {
     return StringUtil.concatObjects(
         "  enabled: ", enabled,
         "\n  SSL context name: ", sslContextName,
-        "\n  Servers: ", servers);
+        "\n  Servers: ", servers,
+        "\n  min. SCTs: ", minScts,
+        "\n  timeout: ", timeoutMs, " ms");
   }
 
   @Override
@@ -155,4 +203,18 @@ public class CtlogControl {
     return ret;
   } // method getBoolean
 
+  private static int getInt(ConfPairs pairs, String key, int defaultValue)
+      throws InvalidConfException {
+    String str = pairs.value(key);
+    if (StringUtil.isBlank(str)) {
+      return defaultValue;
+    }
+
+    try {
+      return Integer.parseInt(str.trim());
+    } catch (NumberFormatException ex) {
+      throw new InvalidConfException(key + " is not an integer: " + str);
+    }
+  } // method getInt
+
 }
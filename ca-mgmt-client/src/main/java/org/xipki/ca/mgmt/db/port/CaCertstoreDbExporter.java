@@ -28,11 +28,17 @@ import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -67,19 +73,38 @@ class CaCertstoreDbExporter extends DbPorter {
 
   private static final Logger LOG = LoggerFactory.getLogger(CaCertstoreDbExporter.class);
 
+  private static final String SQL_CORE_CERT =
+      "ID,SN,CA_ID,PID,RID,RTYPE,TID,UID,EE,LUPDATE,REV,RR,RT,RIT,FP_RS,"
+      + "REQ_SUBJECT,CRL_SCOPE,CERT FROM CERT WHERE ID>=?";
+
+  private static final String DIRNAME_CERT_PARTITIONS = "certs-partitions";
+
+  private static final String FILENAME_PARTITIONS = "partitions";
+
+  private static final int PARTITIONS_PER_THREAD = 4;
+
   private final int numCertsInBundle;
 
   private final int numCertsPerSelect;
 
   private final boolean resume;
 
+  private final int numThreads;
+
   CaCertstoreDbExporter(DataSourceWrapper datasource, String baseDir, int numCertsInBundle,
       int numCertsPerSelect, boolean resume, AtomicBoolean stopMe)
           throws DataAccessException {
+    this(datasource, baseDir, numCertsInBundle, numCertsPerSelect, 1, resume, stopMe);
+  }
+
+  CaCertstoreDbExporter(DataSourceWrapper datasource, String baseDir, int numCertsInBundle,
+      int numCertsPerSelect, int numThreads, boolean resume, AtomicBoolean stopMe)
+          throws DataAccessException {
     super(datasource, baseDir, stopMe);
 
     this.numCertsInBundle = Args.positive(numCertsInBundle, "numCertsInBundle");
     this.numCertsPerSelect = Args.positive(numCertsPerSelect, "numCertsPerSelect");
+    this.numThreads = Args.positive(numThreads, "numThreads");
     this.resume = resume;
   } // constructor
 
@@ -168,7 +193,13 @@ class CaCertstoreDbExporter extends DbPorter {
     try {
       entriesFileOs = Files.newOutputStream(Paths.get(baseDir, type.getDirName() + ".mf"),
           StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-      exportEntries(type, certstore, processLogFile, entriesFileOs, idProcessedInLastProcess);
+      // a partitioned export is resumed in partitions
+      if (type == CaDbEntryType.CERT
+          && (numThreads > 1 || new File(baseDir, DIRNAME_CERT_PARTITIONS).exists())) {
+        exportCertsInPartitions(certstore, processLogFile, entriesFileOs);
+      } else {
+        exportEntries(type, certstore, processLogFile, entriesFileOs, idProcessedInLastProcess);
+      }
       return null;
     } catch (Exception ex) {
       // delete the temporary files
@@ -197,8 +228,7 @@ class CaCertstoreDbExporter extends DbPorter {
     switch (type) {
       case CERT:
         numProcessedBefore = certstore.getCountCerts();
-        coreSql = "ID,SN,CA_ID,PID,RID,RTYPE,TID,UID,EE,LUPDATE,REV,RR,RT,RIT,FP_RS,"
-            + "REQ_SUBJECT,CRL_SCOPE,CERT FROM CERT WHERE ID>=?";
+        coreSql = SQL_CORE_CERT;
         break;
       case CRL:
         numProcessedBefore = certstore.getCountCrls();
@@ -285,61 +315,7 @@ class CaCertstoreDbExporter extends DbPorter {
           }
 
           if (CaDbEntryType.CERT == type) {
-            byte[] certBytes = Base64.decodeFast(rs.getString("CERT"));
-
-            String sha1 = HashAlgo.SHA1.hexHash(certBytes);
-            String certFileName = sha1 + ".der";
-            ZipEntry certZipEntry = new ZipEntry(certFileName);
-            currentEntriesZip.putNextEntry(certZipEntry);
-            try {
-              currentEntriesZip.write(certBytes);
-            } finally {
-              currentEntriesZip.closeEntry();
-            }
-
-            CaCertstore.Cert cert = new CaCertstore.Cert();
-            cert.setId(id);
-            cert.setCaId(rs.getInt("CA_ID"));
-            cert.setEe(rs.getBoolean("EE"));
-            cert.setFile(certFileName);
-
-            long fpReqSubject = rs.getLong("FP_RS");
-            if (fpReqSubject != 0) {
-              cert.setFpRs(fpReqSubject);
-              cert.setRs(rs.getString("REQ_SUBJECT"));
-            }
-
-            cert.setPid(rs.getInt("PID"));
-            cert.setReqType(rs.getInt("RTYPE"));
-            cert.setRid(rs.getInt("RID"));
-            cert.setSn(rs.getString("SN"));
-
-            String str = rs.getString("TID");
-            if (StringUtil.isNotBlank(str)) {
-              cert.setTid(str);
-            }
-
-            int userId = rs.getInt("UID");
-            if (userId != 0) {
-              cert.setUid(userId);
-            }
-            cert.setUpdate(rs.getLong("LUPDATE"));
-
-            int revoked = rs.getInt("REV");
-            cert.setRev(revoked);
-
-            if (revoked == 1) {
-              cert.setRr(rs.getInt("RR"));
-              cert.setRt(rs.getLong("RT"));
-              long revInvTime = rs.getLong("RIT");
-              if (revInvTime != 0) {
-                cert.setRit(revInvTime);
-              }
-            }
-
-            cert.setCrlScope(rs.getInt("CRL_SCOPE"));
-
-            cert.validate();
+            CaCertstore.Cert cert = exportCert(rs, id, currentEntriesZip);
             ((CaCertstore.Certs) entriesInCurrentFile).add(cert);
           } else if (CaDbEntryType.CRL == type) {
             byte[] crlBytes = Base64.decodeFast(rs.getString("CRL"));
@@ -481,6 +457,329 @@ class CaCertstoreDbExporter extends DbPorter {
     System.out.println(" exported " + sum + " entries from " + tablesText);
   } // method exportEntries
 
+  private static CaCertstore.Cert exportCert(ResultSet rs, long id, ZipOutputStream zip)
+      throws SQLException, IOException, InvalidConfException {
+    byte[] certBytes = Base64.decodeFast(rs.getString("CERT"));
+
+    String sha1 = HashAlgo.SHA1.hexHash(certBytes);
+    String certFileName = sha1 + ".der";
+    ZipEntry certZipEntry = new ZipEntry(certFileName);
+    zip.putNextEntry(certZipEntry);
+    try {
+      zip.write(certBytes);
+    } finally {
+      zip.closeEntry();
+    }
+
+    CaCertstore.Cert cert = new CaCertstore.Cert();
+    cert.setId(id);
+    cert.setCaId(rs.getInt("CA_ID"));
+    cert.setEe(rs.getBoolean("EE"));
+    cert.setFile(certFileName);
+
+    long fpReqSubject = rs.getLong("FP_RS");
+    if (fpReqSubject != 0) {
+      cert.setFpRs(fpReqSubject);
+      cert.setRs(rs.getString("REQ_SUBJECT"));
+    }
+
+    cert.setPid(rs.getInt("PID"));
+    cert.setReqType(rs.getInt("RTYPE"));
+    cert.setRid(rs.getInt("RID"));
+    cert.setSn(rs.getString("SN"));
+
+    String str = rs.getString("TID");
+    if (StringUtil.isNotBlank(str)) {
+      cert.setTid(str);
+    }
+
+    int userId = rs.getInt("UID");
+    if (userId != 0) {
+      cert.setUid(userId);
+    }
+    cert.setUpdate(rs.getLong("LUPDATE"));
+
+    int revoked = rs.getInt("REV");
+    cert.setRev(revoked);
+
+    if (revoked == 1) {
+      cert.setRr(rs.getInt("RR"));
+      cert.setRt(rs.getLong("RT"));
+      long revInvTime = rs.getLong("RIT");
+      if (revInvTime != 0) {
+        cert.setRit(revInvTime);
+      }
+    }
+
+    cert.setCrlScope(rs.getInt("CRL_SCOPE"));
+
+    cert.validate();
+    return cert;
+  } // method exportCert
+
+  /**
+   * Exports the table CERT with {@link #numThreads} threads. The ID range is split into
+   * partitions, each partition is exported by one thread with its own database connection and
+   * ZIP bundles. A finished partition is marked in the folder {@code certs-partitions}, so that
+   * only the unfinished partitions are exported again with the option '--resume'.
+   */
+  private void exportCertsInPartitions(CaCertstore certstore, File processLogFile,
+      OutputStream filenameListOs) throws Exception {
+    File partitionsDir = new File(baseDir, DIRNAME_CERT_PARTITIONS);
+    File partitionsFile = new File(partitionsDir, FILENAME_PARTITIONS);
+
+    // the partitions must not change if the export is resumed.
+    List<long[]> partitions;
+    if (partitionsFile.exists()) {
+      partitions = new ArrayList<>();
+      for (String line : Files.readAllLines(partitionsFile.toPath())) {
+        if (StringUtil.isNotBlank(line)) {
+          int idx = line.indexOf('-');
+          partitions.add(new long[]{Long.parseLong(line.substring(0, idx).trim()),
+              Long.parseLong(line.substring(idx + 1).trim())});
+        }
+      }
+    } else {
+      final long minId = min("CERT", "ID");
+      final long maxId = max("CERT", "ID");
+      partitions = new ArrayList<>();
+      if (maxId > 0) {
+        long span = Math.max(1,
+            (maxId - minId + 1 + numThreads * PARTITIONS_PER_THREAD - 1)
+              / (numThreads * PARTITIONS_PER_THREAD));
+        for (long from = minId; from <= maxId; from += span) {
+          partitions.add(new long[]{from, Math.min(maxId, from + span - 1)});
+        }
+      }
+
+      partitionsDir.mkdirs();
+      StringBuilder sb = new StringBuilder();
+      for (long[] partition : partitions) {
+        sb.append(partition[0]).append("-").append(partition[1]).append("\n");
+      }
+      echoToFile(sb.toString(), partitionsFile);
+    }
+
+    echoToFile("CERT:0", processLogFile);
+
+    final long maxId = partitions.isEmpty() ? 0 : partitions.get(partitions.size() - 1)[1];
+    int numExportedBefore = 0;
+    for (int i = 0; i < partitions.size(); i++) {
+      File doneFile = new File(partitionsDir, i + ".done");
+      if (doneFile.exists()) {
+        numExportedBefore += Integer.parseInt(new String(IoUtil.read(doneFile)).trim());
+      }
+    }
+
+    long total = count("CERT") - numExportedBefore;
+    if (total < 1) {
+      total = 1; // to avoid exception
+    }
+
+    System.out.println("exporting table CERT in " + partitions.size() + " partitions with "
+        + numThreads + " threads");
+    ProcessLog processLog = new ProcessLog(total);
+    processLog.printHeader();
+
+    AtomicBoolean failed = new AtomicBoolean(false);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Future<?>> futures = new ArrayList<>(partitions.size());
+    try {
+      for (int i = 0; i < partitions.size(); i++) {
+        final int index = i;
+        final long[] partition = partitions.get(i);
+        futures.add(executor.submit(() -> {
+          try {
+            exportCertPartition(partitionsDir, index, partition[0], partition[1], maxId,
+                processLog, failed);
+          } catch (Exception ex) {
+            failed.set(true);
+            throw ex;
+          }
+          return null;
+        }));
+      }
+
+      Exception exception = null;
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException ex) {
+          if (exception == null) {
+            Throwable cause = ex.getCause();
+            exception = (cause instanceof Exception) ? (Exception) cause : ex;
+          }
+        }
+      }
+
+      if (exception != null) {
+        throw exception;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // all partitions are exported, write their bundles into the manifest in the ID order.
+    int numExported = 0;
+    for (int i = 0; i < partitions.size(); i++) {
+      File mfFile = new File(partitionsDir, i + ".mf");
+      if (mfFile.exists()) {
+        for (String line : Files.readAllLines(mfFile.toPath())) {
+          if (StringUtil.isNotBlank(line)) {
+            writeLine(filenameListOs, line);
+          }
+        }
+      }
+
+      numExported += Integer.parseInt(
+          new String(IoUtil.read(new File(partitionsDir, i + ".done"))).trim());
+    }
+    certstore.setCountCerts(numExported);
+
+    processLog.printTrailer();
+    File[] children = partitionsDir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        child.delete();
+      }
+    }
+    partitionsDir.delete();
+    processLogFile.delete();
+    System.out.println(" exported " + processLog.numProcessed() + " entries from table CERT");
+  } // method exportCertsInPartitions
+
+  private void exportCertPartition(File partitionsDir, int index, long fromId, long toId,
+      long maxId, ProcessLog processLog, AtomicBoolean failed) throws Exception {
+    File doneFile = new File(partitionsDir, index + ".done");
+    if (doneFile.exists()) {
+      return;
+    }
+
+    final CaDbEntryType type = CaDbEntryType.CERT;
+    File entriesDir = new File(baseDir, type.getDirName());
+    File mfFile = new File(partitionsDir, index + ".mf");
+
+    // delete the bundles of the unfinished export of this partition
+    if (mfFile.exists()) {
+      for (String line : Files.readAllLines(mfFile.toPath())) {
+        if (StringUtil.isNotBlank(line)) {
+          new File(entriesDir, line.trim()).delete();
+        }
+      }
+      mfFile.delete();
+    }
+
+    // throughput of this partition
+    ProcessLog partitionLog = new ProcessLog(0);
+
+    String sql = datasource.buildSelectFirstSql(numCertsPerSelect, "ID ASC",
+        SQL_CORE_CERT + " AND ID<=?");
+    Connection conn = datasource.getConnection();
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+
+    OutputStream mfOs = null;
+    ZipOutputStream zip = null;
+    File zipFile = null;
+    try {
+      ps = conn.prepareStatement(sql);
+      mfOs = Files.newOutputStream(mfFile.toPath(),
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+      CaCertstore.Certs certsInBundle = new CaCertstore.Certs();
+      long minIdInBundle = -1;
+      long maxIdInBundle = -1;
+      int sum = 0;
+      long lastMaxId = fromId - 1;
+
+      while (true) {
+        if (stopMe.get() || failed.get()) {
+          throw new InterruptedException("interrupted");
+        }
+
+        ps.setLong(1, lastMaxId + 1);
+        ps.setLong(2, toId);
+        rs = ps.executeQuery();
+        if (!rs.next()) {
+          break;
+        }
+
+        do {
+          long id = rs.getLong("ID");
+          lastMaxId = Math.max(lastMaxId, id);
+          if (minIdInBundle == -1) {
+            minIdInBundle = id;
+            zipFile = new File(baseDir, "tmp-" + type.getDirName() + "-" + index + "-"
+                + System.currentTimeMillis() + ".zip");
+            zip = getZipOutputStream(zipFile);
+          }
+          maxIdInBundle = id;
+
+          certsInBundle.add(exportCert(rs, id, zip));
+
+          if (certsInBundle.getCerts().size() == numCertsInBundle) {
+            String bundleName = buildFilename(type.getDirName() + "_", ".zip",
+                minIdInBundle, maxIdInBundle, maxId);
+            finalizeZip(zip, "overview.json", certsInBundle);
+            zip = null;
+            zipFile.renameTo(new File(entriesDir, bundleName));
+            writeLine(mfOs, bundleName);
+            mfOs.flush();
+
+            int num = certsInBundle.getCerts().size();
+            sum += num;
+            partitionLog.addNumProcessed(num);
+            processLog.addNumProcessed(num);
+            processLog.printStatus();
+
+            certsInBundle = new CaCertstore.Certs();
+            minIdInBundle = -1;
+          }
+        } while (rs.next());
+
+        rs.close();
+        rs = null;
+      }
+
+      if (zip != null) {
+        String bundleName = buildFilename(type.getDirName() + "_", ".zip",
+            minIdInBundle, maxIdInBundle, maxId);
+        finalizeZip(zip, "overview.json", certsInBundle);
+        zip = null;
+        zipFile.renameTo(new File(entriesDir, bundleName));
+        writeLine(mfOs, bundleName);
+
+        int num = certsInBundle.getCerts().size();
+        sum += num;
+        partitionLog.addNumProcessed(num);
+        processLog.addNumProcessed(num);
+        processLog.printStatus();
+      }
+
+      mfOs.close();
+      mfOs = null;
+      echoToFile(Integer.toString(sum), doneFile);
+
+      partitionLog.finish();
+      String msg = StringUtil.concat("exported partition ", Integer.toString(index),
+          " (ID ", Long.toString(fromId), "-", Long.toString(toId), "): ", Integer.toString(sum),
+          " entries in ", StringUtil.formatTime(partitionLog.totalElapsedTime() / 1000, false),
+          ", ", Integer.toString(partitionLog.totalAverageSpeed()), " entries/s");
+      LOG.info(msg);
+      System.out.println("\n " + msg);
+    } catch (SQLException ex) {
+      throw translate(sql, ex);
+    } finally {
+      if (zip != null) {
+        IoUtil.closeQuietly(zip);
+        zipFile.delete();
+      }
+      IoUtil.closeQuietly(mfOs);
+      datasource.releaseResources(ps, rs, false);
+      datasource.returnConnection(conn);
+    }
+  } // method exportCertPartition
+
   private void exportPublishQueue(CaCertstore certstore)
       throws DataAccessException, InvalidConfException {
     System.out.println("exporting table PUBLISHQUEUE");
@@ -22,14 +22,23 @@ import java.io.InputStream;
 import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -52,6 +61,7 @@ import org.xipki.util.Args;
 import org.xipki.util.Base64;
 import org.xipki.util.IoUtil;
 import org.xipki.util.ProcessLog;
+import org.xipki.util.StringUtil;
 
 import com.alibaba.fastjson.JSON;
 
@@ -80,13 +90,23 @@ class CaCertstoreDbImporter extends DbPorter {
 
   private static final String SQL_ADD_REQCERT = "INSERT INTO REQCERT (ID,RID,CID) VALUES (?,?,?)";
 
+  private static final String FILENAME_IMPORTED_CERT_BUNDLES = "import-certs.done";
+
   private final int numCertsPerCommit;
 
+  private final int numThreads;
+
   CaCertstoreDbImporter(DataSourceWrapper datasource, String srcDir, int numCertsPerCommit,
       boolean resume, AtomicBoolean stopMe) throws Exception {
+    this(datasource, srcDir, numCertsPerCommit, 1, resume, stopMe);
+  }
+
+  CaCertstoreDbImporter(DataSourceWrapper datasource, String srcDir, int numCertsPerCommit,
+      int numThreads, boolean resume, AtomicBoolean stopMe) throws Exception {
     super(datasource, srcDir, stopMe);
 
     this.numCertsPerCommit = Args.positive(numCertsPerCommit, "numCertsPerCommit");
+    this.numThreads = Args.positive(numThreads, "numThreads");
 
     File processLogFile = new File(baseDir, DbPorter.IMPORT_PROCESS_LOG_FILENAME);
     if (resume) {
@@ -251,6 +271,20 @@ class CaCertstoreDbImporter extends DbPorter {
       File processLogFile, Integer numProcessedInLastProcess, Long idProcessedInLastProcess) {
     String tablesText = "table " + type.getTableName();
 
+    // a partitioned import is resumed in partitions
+    if (type == CaDbEntryType.CERT && (numThreads > 1
+        || new File(baseDir, FILENAME_IMPORTED_CERT_BUNDLES).exists())) {
+      try {
+        importCertsInPartitions(certstore, processLogFile);
+        return null;
+      } catch (Exception ex) {
+        System.err.println("\nimporting " + tablesText + " has been cancelled due to error,\n"
+            + "please continue with the option '--resume'");
+        LOG.error("Exception", ex);
+        return ex;
+      }
+    }
+
     try {
       int numProcessedBefore = 0;
       long minId = 1;
@@ -426,70 +460,8 @@ class CaCertstoreDbImporter extends DbPorter {
         // rawcert
         byte[] encodedCert = IoUtil.read(zipFile.getInputStream(certZipEnty));
 
-        TBSCertificate tbsCert;
-        try {
-          Certificate cc = Certificate.getInstance(encodedCert);
-          tbsCert = cc.getTBSCertificate();
-        } catch (RuntimeException ex) {
-          LOG.error("could not parse certificate in file {}", filename);
-          LOG.debug("could not parse certificate in file " + filename, ex);
-          throw new CertificateException(ex.getMessage(), ex);
-        }
-
-        byte[] encodedKey = tbsCert.getSubjectPublicKeyInfo().getPublicKeyData().getBytes();
-
-        String b64Sha1FpCert = HashAlgo.SHA1.base64Hash(encodedCert);
-
-        // cert
-        String subjectText = X509Util.cutX500Name(tbsCert.getSubject(), maxX500nameLen);
-
         try {
-          int idx = 1;
-
-          stmt.setLong(idx++, id);
-          stmt.setLong(idx++, cert.getUpdate());
-          stmt.setString(idx++, tbsCert.getSerialNumber().getPositiveValue().toString(16));
-
-          stmt.setString(idx++, subjectText);
-          long fpSubject = X509Util.fpCanonicalizedName(tbsCert.getSubject());
-          stmt.setLong(idx++, fpSubject);
-
-          if (cert.getFpRs() != null) {
-            stmt.setLong(idx++, cert.getFpRs());
-          } else {
-            stmt.setNull(idx++, Types.BIGINT);
-          }
-
-          stmt.setLong(idx++, tbsCert.getStartDate().getDate().getTime() / 1000);
-          stmt.setLong(idx++, tbsCert.getEndDate().getDate().getTime() / 1000);
-          setInt(stmt, idx++, cert.getRev());
-          setInt(stmt, idx++, cert.getRr());
-          setLong(stmt, idx++, cert.getRt());
-          setLong(stmt, idx++, cert.getRit());
-          setInt(stmt, idx++, cert.getPid());
-          setInt(stmt, idx++, cert.getCaId());
-
-          setInt(stmt, idx++, cert.getRid());
-          setInt(stmt, idx++, cert.getUid());
-          stmt.setLong(idx++, FpIdCalculator.hash(encodedKey));
-          Extension extension = tbsCert.getExtensions().getExtension(Extension.basicConstraints);
-          boolean ee = true;
-          if (extension != null) {
-            ASN1Encodable asn1 = extension.getParsedValue();
-            ee = !BasicConstraints.getInstance(asn1).isCA();
-          }
-
-          stmt.setInt(idx++, ee ? 1 : 0);
-          stmt.setInt(idx++, cert.getReqType());
-          String tidS = null;
-          if (cert.getTid() != null) {
-            tidS = cert.getTid();
-          }
-          stmt.setString(idx++, tidS);
-          stmt.setString(idx++, b64Sha1FpCert);
-          stmt.setString(idx++, cert.getRs());
-          stmt.setInt(idx++, cert.getCrlScope());
-          stmt.setString(idx++, Base64.encodeToString(encodedCert));
+          setCertParams(stmt, cert, encodedCert);
           stmt.addBatch();
         } catch (SQLException ex) {
           throw translate(sql, ex);
@@ -530,6 +502,253 @@ class CaCertstoreDbImporter extends DbPorter {
     }
   } // method importCerts
 
+  private void setCertParams(PreparedStatement stmt, CaCertstore.Cert cert, byte[] encodedCert)
+      throws SQLException, CertificateException {
+    String filename = cert.getFile();
+    TBSCertificate tbsCert;
+    try {
+      Certificate cc = Certificate.getInstance(encodedCert);
+      tbsCert = cc.getTBSCertificate();
+    } catch (RuntimeException ex) {
+      LOG.error("could not parse certificate in file {}", filename);
+      LOG.debug("could not parse certificate in file " + filename, ex);
+      throw new CertificateException(ex.getMessage(), ex);
+    }
+
+    byte[] encodedKey = tbsCert.getSubjectPublicKeyInfo().getPublicKeyData().getBytes();
+
+    String b64Sha1FpCert = HashAlgo.SHA1.base64Hash(encodedCert);
+
+    // cert
+    String subjectText = X509Util.cutX500Name(tbsCert.getSubject(), maxX500nameLen);
+
+    int idx = 1;
+
+    stmt.setLong(idx++, cert.getId());
+    stmt.setLong(idx++, cert.getUpdate());
+    stmt.setString(idx++, tbsCert.getSerialNumber().getPositiveValue().toString(16));
+
+    stmt.setString(idx++, subjectText);
+    long fpSubject = X509Util.fpCanonicalizedName(tbsCert.getSubject());
+    stmt.setLong(idx++, fpSubject);
+
+    if (cert.getFpRs() != null) {
+      stmt.setLong(idx++, cert.getFpRs());
+    } else {
+      stmt.setNull(idx++, Types.BIGINT);
+    }
+
+    stmt.setLong(idx++, tbsCert.getStartDate().getDate().getTime() / 1000);
+    stmt.setLong(idx++, tbsCert.getEndDate().getDate().getTime() / 1000);
+    setInt(stmt, idx++, cert.getRev());
+    setInt(stmt, idx++, cert.getRr());
+    setLong(stmt, idx++, cert.getRt());
+    setLong(stmt, idx++, cert.getRit());
+    setInt(stmt, idx++, cert.getPid());
+    setInt(stmt, idx++, cert.getCaId());
+
+    setInt(stmt, idx++, cert.getRid());
+    setInt(stmt, idx++, cert.getUid());
+    stmt.setLong(idx++, FpIdCalculator.hash(encodedKey));
+    Extension extension = tbsCert.getExtensions().getExtension(Extension.basicConstraints);
+    boolean ee = true;
+    if (extension != null) {
+      ASN1Encodable asn1 = extension.getParsedValue();
+      ee = !BasicConstraints.getInstance(asn1).isCA();
+    }
+
+    stmt.setInt(idx++, ee ? 1 : 0);
+    stmt.setInt(idx++, cert.getReqType());
+    String tidS = null;
+    if (cert.getTid() != null) {
+      tidS = cert.getTid();
+    }
+    stmt.setString(idx++, tidS);
+    stmt.setString(idx++, b64Sha1FpCert);
+    stmt.setString(idx++, cert.getRs());
+    stmt.setInt(idx++, cert.getCrlScope());
+    stmt.setString(idx++, Base64.encodeToString(encodedCert));
+  } // method setCertParams
+
+  /**
+   * Imports the table CERT with {@link #numThreads} threads. Each ZIP bundle is a partition
+   * imported by one thread with its own database connection. The imported bundles are listed
+   * in the file {@code import-certs.done}, so that only the remaining bundles are imported
+   * with the option '--resume'.
+   */
+  private void importCertsInPartitions(CaCertstore certstore, File processLogFile)
+      throws Exception {
+    final CaDbEntryType type = CaDbEntryType.CERT;
+    File doneFile = new File(baseDir, FILENAME_IMPORTED_CERT_BUNDLES);
+
+    Set<String> importedBundles = new HashSet<>();
+    int numImportedBefore = 0;
+    if (doneFile.exists()) {
+      for (String line : Files.readAllLines(doneFile.toPath())) {
+        int idx = line.lastIndexOf(':');
+        if (idx != -1) {
+          importedBundles.add(line.substring(0, idx));
+          numImportedBefore += Integer.parseInt(line.substring(idx + 1).trim());
+        }
+      }
+    } else {
+      deleteFromTableWithLargerId(type.getTableName(), "ID", 0, LOG);
+      echoToFile("", doneFile);
+    }
+
+    echoToFile(type + ":0:0", processLogFile);
+
+    List<String> bundles = new ArrayList<>();
+    try (DbPortFileNameIterator iterator = new DbPortFileNameIterator(
+        baseDir + File.separator + type.getDirName() + ".mf")) {
+      while (iterator.hasNext()) {
+        String bundle = iterator.next();
+        if (!importedBundles.contains(bundle)) {
+          bundles.add(bundle);
+        }
+      }
+    }
+
+    long total = certstore.getCountCerts() - numImportedBefore;
+    if (total < 1) {
+      total = 1; // to avoid exception
+    }
+
+    System.out.println("importing " + bundles.size() + " bundles to table CERT with "
+        + numThreads + " threads");
+    ProcessLog processLog = new ProcessLog(total);
+    processLog.printHeader();
+
+    AtomicBoolean failed = new AtomicBoolean(false);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Future<?>> futures = new ArrayList<>(bundles.size());
+    try {
+      for (String bundle : bundles) {
+        futures.add(executor.submit(() -> {
+          try {
+            importCertBundle(bundle, doneFile, processLog, failed);
+          } catch (Exception ex) {
+            failed.set(true);
+            throw ex;
+          }
+          return null;
+        }));
+      }
+
+      Exception exception = null;
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException ex) {
+          if (exception == null) {
+            Throwable cause = ex.getCause();
+            exception = (cause instanceof Exception) ? (Exception) cause : ex;
+          }
+        }
+      }
+
+      if (exception != null) {
+        throw exception;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    processLog.printTrailer();
+    echoToFile(type + ":" + (numImportedBefore + processLog.numProcessed()) + ":-1",
+        processLogFile);
+    doneFile.delete();
+    System.out.println(" imported " + processLog.numProcessed() + " entries");
+  } // method importCertsInPartitions
+
+  private void importCertBundle(String bundle, File doneFile, ProcessLog processLog,
+      AtomicBoolean failed) throws Exception {
+    final CaDbEntryType type = CaDbEntryType.CERT;
+    final int numEntriesPerCommit = Math.max(1,
+        Math.round(type.getSqlBatchFactor() * numCertsPerCommit));
+
+    // the bundle name is <dir>_<minId>-<maxId>.zip
+    int fromIdx = bundle.lastIndexOf('_');
+    int toIdx = bundle.lastIndexOf('-');
+    long minId = Long.parseLong(bundle.substring(fromIdx + 1, toIdx));
+    long maxId = Long.parseLong(bundle.substring(toIdx + 1, bundle.indexOf(".zip")));
+
+    // throughput of this partition
+    ProcessLog partitionLog = new ProcessLog(0);
+
+    File bundleFile = new File(baseDir + File.separator + type.getDirName(), bundle);
+    Connection conn = datasource.getConnection();
+    PreparedStatement stmt = null;
+    try (ZipFile zipFile = new ZipFile(bundleFile)) {
+      CaCertstore.Certs certs = JSON.parseObject(
+          zipFile.getInputStream(zipFile.getEntry("overview.json")), CaCertstore.Certs.class);
+      certs.validate();
+
+      conn.setAutoCommit(false);
+
+      // delete the entries of the unfinished import of this bundle
+      stmt = conn.prepareStatement("DELETE FROM CERT WHERE ID>=? AND ID<=?");
+      stmt.setLong(1, minId);
+      stmt.setLong(2, maxId);
+      stmt.executeUpdate();
+      conn.commit();
+      datasource.releaseResources(stmt, null, false);
+      stmt = null;
+
+      stmt = conn.prepareStatement(SQL_ADD_CERT);
+
+      int numEntriesInBatch = 0;
+      List<CaCertstore.Cert> list = certs.getCerts();
+      final int n = list.size();
+      for (int i = 0; i < n; i++) {
+        if (stopMe.get() || failed.get()) {
+          throw new InterruptedException("interrupted");
+        }
+
+        CaCertstore.Cert cert = list.get(i);
+        byte[] encodedCert = IoUtil.read(zipFile.getInputStream(zipFile.getEntry(cert.getFile())));
+        setCertParams(stmt, cert, encodedCert);
+        stmt.addBatch();
+        numEntriesInBatch++;
+
+        if (numEntriesInBatch == numEntriesPerCommit || i == n - 1) {
+          stmt.executeBatch();
+          conn.commit();
+
+          partitionLog.addNumProcessed(numEntriesInBatch);
+          processLog.addNumProcessed(numEntriesInBatch);
+          processLog.printStatus();
+          numEntriesInBatch = 0;
+        }
+      }
+
+      synchronized (doneFile) {
+        Files.write(doneFile.toPath(), StringUtil.toUtf8Bytes(bundle + ":" + n + "\n"),
+            StandardOpenOption.APPEND);
+      }
+
+      partitionLog.finish();
+      LOG.info("imported bundle {}: {} entries in {} ms, {} entries/s", bundle, n,
+          partitionLog.totalElapsedTime(), partitionLog.totalAverageSpeed());
+    } catch (SQLException ex) {
+      try {
+        conn.rollback();
+      } catch (SQLException ex2) {
+        LOG.warn("could not rollback: {}", ex2.getMessage());
+      }
+      System.err.println("could not import entries from file " + bundle);
+      throw translate(SQL_ADD_CERT, ex);
+    } finally {
+      datasource.releaseResources(stmt, null, false);
+      try {
+        conn.setAutoCommit(true);
+      } catch (SQLException ex) {
+        LOG.warn("could not recover AutoCommit: {}", ex.getMessage());
+      }
+      datasource.returnConnection(conn);
+    }
+  } // method importCertBundle
+
   private long importCrls(String entriesZipFile, long minId,
       File processLogFile, ProcessLog processLog, int numProcessedInLastProcess,
       PreparedStatement stmt, String sql) throws Exception {
@@ -87,13 +87,23 @@ public abstract class DbPortWorker implements Runnable {
 
     private final int batchEntriesPerCommit;
 
+    private final int numThreads;
+
     public ImportCaDb(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
         String dbConfFile, boolean resume, String srcFolder, int batchEntriesPerCommit)
         throws PasswordResolverException, IOException {
+      this(datasourceFactory, passwordResolver, dbConfFile, resume, srcFolder,
+          batchEntriesPerCommit, 1);
+    }
+
+    public ImportCaDb(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
+        String dbConfFile, boolean resume, String srcFolder, int batchEntriesPerCommit,
+        int numThreads) throws PasswordResolverException, IOException {
       super(datasourceFactory, passwordResolver, dbConfFile);
       this.resume = resume;
       this.srcFolder = IoUtil.expandFilepath(srcFolder);
       this.batchEntriesPerCommit = batchEntriesPerCommit;
+      this.numThreads = numThreads;
     }
 
     @Override
@@ -121,7 +131,7 @@ public abstract class DbPortWorker implements Runnable {
 
         // CertStore
         CaCertstoreDbImporter certStoreImporter = new CaCertstoreDbImporter(datasource,
-            srcFolder, batchEntriesPerCommit, resume, stopMe);
+            srcFolder, batchEntriesPerCommit, numThreads, resume, stopMe);
         certStoreImporter.importToDb();
         certStoreImporter.close();
       } finally {
@@ -147,14 +157,24 @@ public abstract class DbPortWorker implements Runnable {
 
     private final int numCertsPerSelect;
 
+    private final int numThreads;
+
     public ExportCaDb(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
         String dbConfFile, String destFolder, boolean resume, int numCertsInBundle,
         int numCertsPerSelect) throws PasswordResolverException, IOException {
+      this(datasourceFactory, passwordResolver, dbConfFile, destFolder, resume, numCertsInBundle,
+          numCertsPerSelect, 1);
+    }
+
+    public ExportCaDb(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
+        String dbConfFile, String destFolder, boolean resume, int numCertsInBundle,
+        int numCertsPerSelect, int numThreads) throws PasswordResolverException, IOException {
       super(datasourceFactory, passwordResolver, dbConfFile);
       this.destFolder = IoUtil.expandFilepath(destFolder);
       this.resume = resume;
       this.numCertsInBundle = numCertsInBundle;
       this.numCertsPerSelect = numCertsPerSelect;
+      this.numThreads = numThreads;
       checkDestFolder();
     }
 
@@ -198,7 +218,7 @@ public abstract class DbPortWorker implements Runnable {
 
         // CertStore
         CaCertstoreDbExporter certStoreExporter = new CaCertstoreDbExporter(datasource, destFolder,
-            numCertsInBundle, numCertsPerSelect, resume, stopMe);
+            numCertsInBundle, numCertsPerSelect, numThreads, resume, stopMe);
         certStoreExporter.export();
         certStoreExporter.close();
       } finally {
@@ -0,0 +1,172 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import static org.xipki.ca.api.OperationException.ErrorCode.SYSTEM_FAILURE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.server.X509Ca.OperationExceptionWithIndex;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Generates the results (e.g. certificates) of all entries of one request, either all of
+ * them or none: if one entry fails, the results of all other entries are reverted.
+ *
+ * <p>The entries are processed sequentially, or in parallel by the given executor. In the
+ * parallel mode all entries are awaited before the results are evaluated, so that every
+ * generated result can be reverted.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class AllOrNothingGenerator {
+
+  /**
+   * Generator of the result of one entry.
+   *
+   * @param <T> type of the result.
+   */
+  interface Generator<T> {
+
+    /**
+     * Generates the result of the entry.
+     *
+     * @param index
+     *          Index of the entry.
+     * @return the result.
+     * @throws OperationExceptionWithIndex
+     *           if the result could not be generated.
+     */
+    T generate(int index) throws OperationExceptionWithIndex;
+
+    /**
+     * Reverts the generated result, e.g. removes the certificate from the database.
+     *
+     * @param result
+     *          The result to be reverted.
+     */
+    void revert(T result);
+
+  } // interface Generator
+
+  private static final Logger LOG = LoggerFactory.getLogger(AllOrNothingGenerator.class);
+
+  private AllOrNothingGenerator() {
+  }
+
+  /**
+   * Generates the results of all entries.
+   *
+   * @param <T> type of the result.
+   * @param num
+   *          Number of the entries.
+   * @param executor
+   *          Executor to process the entries in parallel, {@code null} to process them
+   *          sequentially.
+   * @param generator
+   *          Generator of the results.
+   * @return the results in the order of the entries.
+   * @throws OperationExceptionWithIndex
+   *           the failure of the entry with the lowest index, after all generated results
+   *           have been reverted.
+   */
+  static <T> List<T> generate(int num, ExecutorService executor, Generator<T> generator)
+      throws OperationExceptionWithIndex {
+    Args.positive(num, "num");
+    Args.notNull(generator, "generator");
+
+    List<T> results = new ArrayList<>(num);
+    for (int i = 0; i < num; i++) {
+      results.add(null);
+    }
+    OperationExceptionWithIndex exception = null;
+
+    if (executor == null) {
+      for (int i = 0; i < num; i++) {
+        try {
+          results.set(i, generator.generate(i));
+        } catch (OperationExceptionWithIndex ex) {
+          exception = ex;
+          break;
+        }
+      }
+    } else {
+      List<Future<T>> futures = new ArrayList<>(num);
+      for (int i = 0; i < num; i++) {
+        final int index = i;
+        futures.add(executor.submit(() -> generator.generate(index)));
+      }
+
+      for (int i = 0; i < num; i++) {
+        try {
+          results.set(i, getUninterruptibly(futures.get(i)));
+        } catch (ExecutionException ex) {
+          if (exception == null) {
+            Throwable cause = ex.getCause();
+            exception = (cause instanceof OperationExceptionWithIndex)
+                ? (OperationExceptionWithIndex) cause
+                : new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, cause));
+          }
+        }
+      }
+    }
+
+    if (exception != null) {
+      LOG.error("could not generate certificate for request[{}], reverted all generated"
+          + " certificates", exception.getIndex());
+      for (T result : results) {
+        if (result != null) {
+          generator.revert(result);
+        }
+      }
+
+      LogUtil.warn(LOG, exception);
+      throw exception;
+    }
+
+    return results;
+  } // method generate
+
+  private static <T> T getUninterruptibly(Future<T> future) throws ExecutionException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return future.get();
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  } // method getUninterruptibly
+
+}
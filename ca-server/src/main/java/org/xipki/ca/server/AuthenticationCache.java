@@ -0,0 +1,198 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.xipki.ca.api.NameId;
+import org.xipki.util.Args;
+import org.xipki.util.Base64;
+import org.xipki.util.LruCache;
+import org.xipki.util.StringUtil;
+
+/**
+ * Cache of the successful authentications of users with password, to avoid the expensive
+ * password hash (PBKDF2) for each request of the same user. The entries are keyed by the
+ * HMAC-SHA256, with a transient random key, of the user and password, so that the cache
+ * does not contain the passwords. Failed authentications are not cached.
+ *
+ * <p>An entry expires after the configured time, and is removed when the user is changed or
+ * removed via the CA manager.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class AuthenticationCache {
+
+  private static class Entry {
+
+    private final NameId ident;
+
+    private final long expireTime;
+
+    Entry(NameId ident, long expireTime) {
+      this.ident = ident;
+      this.expireTime = expireTime;
+    }
+
+  } // class Entry
+
+  private static final String MAC_ALGO = "HmacSHA256";
+
+  private final LruCache<String, Entry> cache;
+
+  private final long ttlNanos;
+
+  private final SecretKeySpec macKey;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  // incremented by each invalidation
+  private final AtomicLong generation = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param maxSize
+   *          Maximal number of cached authentications.
+   * @param ttl
+   *          Time in seconds a successful authentication is cached.
+   */
+  AuthenticationCache(int maxSize, int ttl) {
+    this.cache = new LruCache<>(Args.positive(maxSize, "maxSize"));
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(Args.positive(ttl, "ttl"));
+
+    byte[] keyBytes = new byte[32];
+    new SecureRandom().nextBytes(keyBytes);
+    this.macKey = new SecretKeySpec(keyBytes, MAC_ALGO);
+  } // constructor
+
+  /**
+   * Returns the cached identifier of the user authenticated with the given password.
+   *
+   * @param user
+   *          User name.
+   * @param password
+   *          Password.
+   * @return the identifier of the user, or {@code null} if not cached.
+   */
+  NameId get(String user, byte[] password) {
+    String key = key(user, password);
+    Entry entry = cache.get(key);
+    if (entry != null) {
+      if (System.nanoTime() - entry.expireTime < 0) {
+        hits.incrementAndGet();
+        return entry.ident;
+      }
+      cache.remove(key);
+    }
+
+    misses.incrementAndGet();
+    return null;
+  } // method get
+
+  /**
+   * Returns the current generation, to be read before the user is retrieved from the
+   * database.
+   * @return the current generation.
+   */
+  long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * Caches the successful authentication, unless an invalidation happened since the user was
+   * retrieved from the database.
+   *
+   * @param user
+   *          User name.
+   * @param password
+   *          Password.
+   * @param ident
+   *          Identifier of the authenticated user.
+   * @param generation
+   *          The generation read before the user was retrieved from the database.
+   */
+  void put(String user, byte[] password, NameId ident, long generation) {
+    String key = key(user, password);
+    Entry entry = new Entry(ident, System.nanoTime() + ttlNanos);
+    cache.put(key, entry);
+    if (this.generation.get() != generation) {
+      // the user may have been changed meanwhile
+      cache.remove(key);
+    }
+  } // method put
+
+  /**
+   * Removes all cached authentications of the given user.
+   *
+   * @param user
+   *          User name.
+   */
+  void invalidate(String user) {
+    generation.incrementAndGet();
+    for (Map.Entry<String, Entry> m : cache.snapshot().entrySet()) {
+      if (m.getValue().ident.getName().equalsIgnoreCase(user)) {
+        cache.remove(m.getKey());
+      }
+    }
+  } // method invalidate
+
+  void invalidateAll() {
+    generation.incrementAndGet();
+    cache.evictAll();
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+
+  int size() {
+    return cache.size();
+  }
+
+  private String key(String user, byte[] password) {
+    Mac mac;
+    try {
+      mac = Mac.getInstance(MAC_ALGO);
+      mac.init(macKey);
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalStateException("could not initialize " + MAC_ALGO, ex);
+    }
+
+    mac.update(StringUtil.toUtf8Bytes(user));
+    // separates the user and password
+    mac.update((byte) 0);
+    return Base64.encodeToString(mac.doFinal(password));
+  } // method key
+
+}
@@ -0,0 +1,202 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+import org.xipki.util.concurrent.BatchCollector;
+import org.xipki.util.metrics.MetricsRegistry;
+
+/**
+ * Group commit of rows written concurrently by many threads. The rows arriving within the
+ * configured wait time are written by one writer thread in one batch (one transaction). Each
+ * caller is blocked until its row is durable. If a batch fails, its rows are written
+ * individually, so that one bad row does not fail the other rows.
+ *
+ * @param <T> type of the row.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class BatchWriter<T> implements Closeable {
+
+  interface RowStore<T> {
+
+    /**
+     * Writes all rows in one transaction.
+     *
+     * @param rows rows to be written.
+     * @throws Exception if the transaction could not be committed.
+     */
+    void writeBatch(List<T> rows) throws Exception;
+
+    /**
+     * Writes a single row.
+     *
+     * @param row row to be written.
+     * @return the result returned to the caller of {@link BatchWriter#write(Object)}.
+     */
+    int write(T row);
+
+  } // interface RowStore
+
+  private static class Entry<T> {
+
+    private final T row;
+
+    // failure, if the row could not be written due to unexpected error
+    private int result = 1;
+
+    Entry(T row) {
+      this.row = row;
+    }
+
+  } // class Entry
+
+  private static final Logger LOG = LoggerFactory.getLogger(BatchWriter.class);
+
+  private static final String METRIC_BATCHES = "xipki_ca_batch_writer_batches_total";
+
+  private static final String METRIC_ROWS = "xipki_ca_batch_writer_rows_total";
+
+  private final String name;
+
+  private final RowStore<T> store;
+
+  private final LongAdder batchCount = new LongAdder();
+
+  private final LongAdder rowCount = new LongAdder();
+
+  private final AtomicInteger largestBatchSize = new AtomicInteger();
+
+  private final BatchCollector<Entry<T>> collector;
+
+  BatchWriter(String name, RowStore<T> store, int maxBatchSize, int maxWaitMs) {
+    this.name = Args.notBlank(name, "name");
+    this.store = Args.notNull(store, "store");
+    this.collector = new BatchCollector<>(name, this::writeBatch, maxBatchSize, maxWaitMs, 1);
+
+    MetricsRegistry registry = MetricsRegistry.getDefault();
+    registry.counter(METRIC_BATCHES, "Batches written by the group commit",
+        batchCount::sum, "writer", name);
+    registry.counter(METRIC_ROWS, "Rows written by the group commit",
+        rowCount::sum, "writer", name);
+  } // constructor
+
+  /**
+   * Writes the row and waits until it is written.
+   *
+   * @param row row to be written.
+   * @return the result of the writing, see {@link RowStore#write(Object)}. 0 if the row is
+   *     written within a batch.
+   */
+  int write(T row) {
+    Entry<T> entry = new Entry<>(row);
+    if (!collector.submit(entry)) {
+      // the writer is closed, write it directly.
+      return store.write(row);
+    }
+    return entry.result;
+  } // method write
+
+  /**
+   * Returns the number of written batches, including the batches of one row.
+   * @return the number of written batches.
+   */
+  long getBatchCount() {
+    return batchCount.sum();
+  }
+
+  /**
+   * Returns the number of rows written in batches.
+   * @return the number of written rows.
+   */
+  long getRowCount() {
+    return rowCount.sum();
+  }
+
+  int getLargestBatchSize() {
+    return largestBatchSize.get();
+  }
+
+  private void writeBatch(List<Entry<T>> batch) {
+    int size = batch.size();
+    try {
+      if (size == 1) {
+        Entry<T> entry = batch.get(0);
+        entry.result = store.write(entry.row);
+      } else {
+        List<T> rows = new ArrayList<>(size);
+        for (Entry<T> entry : batch) {
+          rows.add(entry.row);
+        }
+
+        boolean successful = false;
+        try {
+          store.writeBatch(rows);
+          successful = true;
+        } catch (Throwable th) {
+          LogUtil.warn(LOG, th, "could not write batch of " + size + " " + name
+              + ", write them individually");
+        }
+
+        for (Entry<T> entry : batch) {
+          entry.result = successful ? 0 : store.write(entry.row);
+        }
+      }
+    } catch (Throwable th) {
+      // should not happen, RowStore.write() handles its errors.
+      LogUtil.error(LOG, th, "could not write " + name);
+    } finally {
+      batchCount.increment();
+      rowCount.add(size);
+      largestBatchSize.accumulateAndGet(size, Math::max);
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("wrote batch of {} {}", size, name);
+    }
+  } // method writeBatch
+
+  @Override
+  public void close() {
+    // the writer thread writes the queued rows before it terminates.
+    collector.close();
+
+    MetricsRegistry registry = MetricsRegistry.getDefault();
+    registry.remove(METRIC_BATCHES, "writer", name);
+    registry.remove(METRIC_ROWS, "writer", name);
+
+    long batches = batchCount.sum();
+    if (batches > 0) {
+      long rows = rowCount.sum();
+      LOG.info("batches of {}: batches={}, rows={}, mean size={}, largest size={}", name,
+          batches, rows, rows / batches, largestBatchSize.get());
+    }
+  } // method close
+
+}
@@ -49,6 +49,7 @@ import org.xipki.ca.api.mgmt.ScepControl;
 import org.xipki.ca.api.mgmt.ValidityMode;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.DfltConcurrentContentSigner;
 import org.xipki.security.SecurityFactory;
 import org.xipki.security.SignerConf;
 import org.xipki.security.X509Cert;
@@ -57,6 +58,7 @@ import org.xipki.util.Args;
 import org.xipki.util.CollectionUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.Validity;
+import org.xipki.util.metrics.MetricsRegistry;
 
 /**
  * CA information.
@@ -399,6 +401,10 @@ public class CaInfo {
       try {
         signer = securityFactory.createSigner(caEntry.getSignerType(), signerConf,
             caEntry.getCert());
+        if (signer instanceof DfltConcurrentContentSigner) {
+          ((DfltConcurrentContentSigner) signer).registerMetrics(MetricsRegistry.getDefault(),
+              "ca", caEntry.getIdent().getName(), "algo", algo);
+        }
         if (dfltSigner == null) {
           dfltSigner = signer;
         }
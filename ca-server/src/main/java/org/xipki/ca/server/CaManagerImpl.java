@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.net.SocketException;
+import java.security.GeneralSecurityException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateEncodingException;
@@ -121,6 +122,7 @@ import org.xipki.util.LogUtil;
 import org.xipki.util.ObjectCreationException;
 import org.xipki.util.StringUtil;
 import org.xipki.util.http.SslContextConf;
+import org.xipki.util.metrics.MetricsRegistry;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.serializer.SerializerFeature;
@@ -310,6 +312,8 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private CertStore certstore;
 
+  private KeypairPool keypairPool;
+
   private SecurityFactory securityFactory;
 
   private CaManagerQueryExecutor queryExecutor;
@@ -364,6 +368,14 @@ public class CaManagerImpl implements CaManager, Closeable {
     return masterMode;
   }
 
+  public boolean isParallelCertGeneration() {
+    return caServerConf != null && caServerConf.isParallelCertGeneration();
+  }
+
+  KeypairPool getKeypairPool() {
+    return keypairPool;
+  }
+
   @Override
   public Set<String> getSupportedSignerTypes() {
     return securityFactory.getSupportedSignerTypes();
@@ -430,11 +442,33 @@ public class CaManagerImpl implements CaManager, Closeable {
     UniqueIdGenerator idGen = new UniqueIdGenerator(epoch, shardId);
 
     try {
-      this.certstore = new CertStore(datasource, idGen);
+      if (this.certstore != null) {
+        this.certstore.close();
+      }
+      this.certstore = new CertStore(datasource, idGen, caServerConf.getMaxCertBatchSize(),
+          caServerConf.getMaxCertBatchWaitMs());
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex.getMessage(), ex);
     }
 
+    if (caServerConf.getUserAuthCacheTtl() > 0) {
+      this.certstore.setAuthenticationCache(caServerConf.getUserAuthCacheSize(),
+          caServerConf.getUserAuthCacheTtl());
+    }
+
+    if (this.keypairPool != null) {
+      this.keypairPool.close();
+    }
+
+    try {
+      this.keypairPool = new KeypairPool(caServerConf.getKeypairPoolSize(),
+          caServerConf.getKeypairPoolThreads());
+    } catch (GeneralSecurityException ex) {
+      throw new CaMgmtException("could not initialize keypair pool: " + ex.getMessage(), ex);
+    }
+
+    registerMetrics();
+
     initCaAliases();
     initCertprofiles();
     initPublishers();
@@ -443,6 +477,31 @@ public class CaManagerImpl implements CaManager, Closeable {
     initCas();
   } // method init
 
+  private void registerMetrics() {
+    MetricsRegistry registry = MetricsRegistry.getDefault();
+
+    KeypairPool pool = keypairPool;
+    registry.counter("xipki_ca_keypair_pool_generated_total",
+        "Keypairs generated in background", pool::getRefilledCount);
+    registry.counter("xipki_ca_keypair_pool_taken_total",
+        "Keypairs taken from the pool", pool::getPooledCount);
+    registry.counter("xipki_ca_keypair_pool_inline_total",
+        "Keypairs generated by the request since the pool was empty", pool::getInlineCount);
+    registry.latency("xipki_ca_keypair_pool_generation_seconds",
+        "Latency of the keypair generation in background", pool.getGenerationLatency());
+
+    AuthenticationCache authCache = certstore.getAuthenticationCache();
+    if (authCache == null) {
+      registry.remove("xipki_ca_user_auth_cache_hits_total");
+      registry.remove("xipki_ca_user_auth_cache_misses_total");
+    } else {
+      registry.counter("xipki_ca_user_auth_cache_hits_total",
+          "Hits of the user authentication cache", authCache::getHits);
+      registry.counter("xipki_ca_user_auth_cache_misses_total",
+          "Misses of the user authentication cache", authCache::getMisses);
+    }
+  } // method registerMetrics
+
   private DataSourceWrapper loadDatasource(String datasourceName, FileOrValue datasourceConf)
       throws CaMgmtException {
     try {
@@ -728,7 +787,8 @@ public class CaManagerImpl implements CaManager, Closeable {
           }
         }
       }
-      ctlogClient = new CtLogClient(ctlogControl.getServers(), ctxConf);
+      ctlogClient = new CtLogClient(ctlogControl.getServers(), ctxConf,
+          ctlogControl.getMinScts(), ctlogControl.getTimeoutMs());
     }
 
     X509Ca ca;
@@ -787,6 +847,14 @@ public class CaManagerImpl implements CaManager, Closeable {
       }
     }
 
+    if (certstore != null) {
+      certstore.close();
+    }
+
+    if (keypairPool != null) {
+      keypairPool.close();
+    }
+
     if (caLockedByMe) {
       try {
         unlockCa();
@@ -2359,6 +2427,7 @@ public class CaManagerImpl implements CaManager, Closeable {
   public void changeUser(MgmtEntry.ChangeUser changeUserEntry) throws CaMgmtException {
     assertMasterModeAndSetuped();
     queryExecutor.changeUser(changeUserEntry);
+    certstore.invalidateUserAuthentication(changeUserEntry.getIdent().getName());
   }
 
   @Override
@@ -2368,6 +2437,7 @@ public class CaManagerImpl implements CaManager, Closeable {
     if (!queryExecutor.deleteRowWithName(username, "TUSER")) {
       throw new CaMgmtException("unknown user " + username);
     }
+    certstore.invalidateUserAuthentication(username);
   } // method removeUser
 
   @Override
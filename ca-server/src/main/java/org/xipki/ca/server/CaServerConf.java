@@ -34,6 +34,7 @@ import org.xipki.util.FileOrBinary;
 import org.xipki.util.InvalidConfException;
 import org.xipki.util.ValidatableConf;
 import org.xipki.util.http.SslContextConf;
+import org.xipki.util.metrics.MetricsConf;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.annotation.JSONField;
@@ -118,6 +119,8 @@ public class CaServerConf extends ValidatableConf {
 
   private RemoteMgmt remoteMgmt;
 
+  private MetricsConf metrics;
+
   /**
    * master or slave, the default is master.
    */
@@ -129,6 +132,48 @@ public class CaServerConf extends ValidatableConf {
    */
   private int shardId = 0;
 
+  /**
+   * Whether the certificates of a request with several templates are generated in parallel,
+   * the default is false.
+   */
+  private boolean parallelCertGeneration = false;
+
+  /**
+   * Maximal number of certificates added to the database in one transaction. Values
+   * greater than 1 activate the group commit of concurrently issued certificates,
+   * the default is 1.
+   */
+  private int maxCertBatchSize = 1;
+
+  /**
+   * Maximal time in milliseconds to wait for further certificates of a batch, the default
+   * is 5.
+   */
+  private int maxCertBatchWaitMs = 5;
+
+  /**
+   * Maximal number of keypairs generated in background for each keypair specification of the
+   * enrollments with CA-generated keypair. 0 to generate the keypairs on demand, the default
+   * is 0.
+   */
+  private int keypairPoolSize = 0;
+
+  /**
+   * Number of threads to generate the keypairs in background, the default is 1.
+   */
+  private int keypairPoolThreads = 1;
+
+  /**
+   * Time in seconds a successful authentication of a user with password (REST and SCEP) is
+   * cached. 0 to disable the cache, the default is 0.
+   */
+  private int userAuthCacheTtl = 0;
+
+  /**
+   * Maximal number of cached user authentications, the default is 1000.
+   */
+  private int userAuthCacheSize = 1000;
+
   private List<DataSourceConf> datasources;
 
   private List<SslContext> sslContexts;
@@ -168,6 +213,62 @@ public class CaServerConf extends ValidatableConf {
     this.shardId = shardId;
   }
 
+  public boolean isParallelCertGeneration() {
+    return parallelCertGeneration;
+  }
+
+  public void setParallelCertGeneration(boolean parallelCertGeneration) {
+    this.parallelCertGeneration = parallelCertGeneration;
+  }
+
+  public int getMaxCertBatchSize() {
+    return maxCertBatchSize;
+  }
+
+  public void setMaxCertBatchSize(int maxCertBatchSize) {
+    this.maxCertBatchSize = maxCertBatchSize;
+  }
+
+  public int getMaxCertBatchWaitMs() {
+    return maxCertBatchWaitMs;
+  }
+
+  public void setMaxCertBatchWaitMs(int maxCertBatchWaitMs) {
+    this.maxCertBatchWaitMs = maxCertBatchWaitMs;
+  }
+
+  public int getKeypairPoolSize() {
+    return keypairPoolSize;
+  }
+
+  public void setKeypairPoolSize(int keypairPoolSize) {
+    this.keypairPoolSize = keypairPoolSize;
+  }
+
+  public int getKeypairPoolThreads() {
+    return keypairPoolThreads;
+  }
+
+  public void setKeypairPoolThreads(int keypairPoolThreads) {
+    this.keypairPoolThreads = keypairPoolThreads;
+  }
+
+  public int getUserAuthCacheTtl() {
+    return userAuthCacheTtl;
+  }
+
+  public void setUserAuthCacheTtl(int userAuthCacheTtl) {
+    this.userAuthCacheTtl = userAuthCacheTtl;
+  }
+
+  public int getUserAuthCacheSize() {
+    return userAuthCacheSize;
+  }
+
+  public void setUserAuthCacheSize(int userAuthCacheSize) {
+    this.userAuthCacheSize = userAuthCacheSize;
+  }
+
   public List<DataSourceConf> getDatasources() {
     return datasources;
   }
@@ -222,6 +323,14 @@ public class CaServerConf extends ValidatableConf {
     this.remoteMgmt = remoteMgmt;
   }
 
+  public MetricsConf getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(MetricsConf metrics) {
+    this.metrics = metrics;
+  }
+
   public List<String> getCertprofileFactories() {
     return certprofileFactories;
   }
@@ -257,8 +366,33 @@ public class CaServerConf extends ValidatableConf {
       throw new InvalidConfException("shardId is not in [0, 127]");
     }
 
+    if (maxCertBatchSize < 1) {
+      throw new InvalidConfException("maxCertBatchSize is less than 1");
+    }
+
+    if (maxCertBatchWaitMs < 0) {
+      throw new InvalidConfException("maxCertBatchWaitMs is negative");
+    }
+
+    if (keypairPoolSize < 0) {
+      throw new InvalidConfException("keypairPoolSize is negative");
+    }
+
+    if (keypairPoolThreads < 1) {
+      throw new InvalidConfException("keypairPoolThreads is less than 1");
+    }
+
+    if (userAuthCacheTtl < 0) {
+      throw new InvalidConfException("userAuthCacheTtl is negative");
+    }
+
+    if (userAuthCacheSize < 1) {
+      throw new InvalidConfException("userAuthCacheSize is less than 1");
+    }
+
     notEmpty(datasources, "datasources");
     validate(remoteMgmt);
+    validate(metrics);
     validate(security);
   } // method validate
 
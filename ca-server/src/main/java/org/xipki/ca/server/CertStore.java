@@ -30,6 +30,7 @@ import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -58,7 +59,6 @@ import org.xipki.ca.api.CertWithDbId;
 import org.xipki.ca.api.CertificateInfo;
 import org.xipki.ca.api.NameId;
 import org.xipki.ca.api.OperationException;
-import org.xipki.ca.api.RequestType;
 import org.xipki.ca.api.mgmt.CertListInfo;
 import org.xipki.ca.api.mgmt.CertListOrderBy;
 import org.xipki.ca.api.mgmt.CertWithRevocationInfo;
@@ -174,6 +174,97 @@ public class CertStore {
 
   } // class SerialWithId
 
+  /**
+   * Values of a certificate to be added to the table CERT, and the publishers in whose
+   * publish queue the certificate is added.
+   */
+  private static class CertRow {
+
+    private final CertificateInfo certInfo;
+
+    private final List<NameId> queuedPublishers;
+
+    private final long certId;
+
+    private final String subjectText;
+
+    private final long fpSubject;
+
+    private final Long fpReqSubject;
+
+    private final String reqSubjectText;
+
+    private final long fpPk;
+
+    private final String b64FpCert;
+
+    private final String b64Cert;
+
+    private final String tid;
+
+    private CertRow(CertificateInfo certInfo, List<NameId> queuedPublishers, long certId,
+        int maxX500nameLen) {
+      this.certInfo = certInfo;
+      this.queuedPublishers = queuedPublishers;
+      this.certId = certId;
+
+      CertWithDbId certificate = certInfo.getCert();
+      this.fpPk = FpIdCalculator.hash(certInfo.getSubjectPublicKey());
+      this.subjectText = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
+      this.fpSubject = X509Util.fpCanonicalizedName(certificate.getSubjectAsX500Name());
+
+      X500Name reqSubject = certInfo.getRequestedSubject();
+      Long fpReqSubject = null;
+      String reqSubjectText = null;
+      if (reqSubject != null) {
+        fpReqSubject = X509Util.fpCanonicalizedName(reqSubject);
+        if (fpSubject == fpReqSubject) {
+          fpReqSubject = null;
+        } else {
+          reqSubjectText = X509Util.cutX500Name(CaUtil.sortX509Name(reqSubject), maxX500nameLen);
+        }
+      }
+      this.fpReqSubject = fpReqSubject;
+      this.reqSubjectText = reqSubjectText;
+
+      byte[] encodedCert = certificate.getEncodedCert();
+      this.b64FpCert = HashAlgo.SHA1.base64Hash(encodedCert);
+      this.b64Cert = Base64.encodeToString(encodedCert);
+      byte[] transactionId = certInfo.getTransactionId();
+      this.tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
+    } // constructor
+
+    private void setParameters(PreparedStatement ps) throws SQLException {
+      X509Certificate cert = certInfo.getCert().getCert();
+      int idx = 1;
+      ps.setLong(idx++, certId);
+      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
+      ps.setString(idx++, cert.getSerialNumber().toString(16));
+      ps.setString(idx++, subjectText);
+      ps.setLong(idx++, fpSubject);
+      setLong(ps, idx++, fpReqSubject);
+      ps.setLong(idx++, cert.getNotBefore().getTime() / 1000); // notBeforeSeconds
+      ps.setLong(idx++, cert.getNotAfter().getTime() / 1000); // notAfterSeconds
+      setBoolean(ps, idx++, false);
+      ps.setInt(idx++, certInfo.getProfile().getId());
+      ps.setInt(idx++, certInfo.getIssuer().getId());
+      setInt(ps, idx++, certInfo.getRequestor().getId());
+      setInt(ps, idx++, certInfo.getUser());
+      ps.setLong(idx++, fpPk);
+      boolean isEeCert = cert.getBasicConstraints() == -1;
+      ps.setInt(idx++, isEeCert ? 1 : 0);
+      ps.setInt(idx++, certInfo.getReqType().getCode());
+      ps.setString(idx++, tid);
+
+      ps.setString(idx++, b64FpCert);
+      ps.setString(idx++, reqSubjectText);
+      // in this version we set CRL_SCOPE to fixed value 0
+      ps.setInt(idx++, 0);
+      ps.setString(idx++, b64Cert);
+    } // method setParameters
+
+  } // class CertRow
+
   private static final Logger LOG = LoggerFactory.getLogger(CertStore.class);
 
   private static final String SQL_ADD_CERT =
@@ -265,10 +356,6 @@ public class CertStore {
 
   private final LruCache<Integer, String> cacheSqlDeltaCrlCacheIds = new LruCache<>(5);
 
-  private final LruCache<Integer, String> cacheSqlRevokedCerts = new LruCache<>(5);
-
-  private final LruCache<Integer, String> cacheSqlRevokedCertsWithEe = new LruCache<>(5);
-
   private final LruCache<Integer, String> cacheSqlSerials = new LruCache<>(5);
 
   private final LruCache<Integer, String> cacheSqlSerialsRevoked = new LruCache<>(5);
@@ -282,8 +369,32 @@ public class CertStore {
 
   private final UniqueIdGenerator idGenerator;
 
+  private final BatchWriter<CertRow> certWriter;
+
+  private AuthenticationCache authCache;
+
   public CertStore(DataSourceWrapper datasource, UniqueIdGenerator idGenerator)
       throws DataAccessException {
+    this(datasource, idGenerator, 1, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param datasource
+   *          Datasource of the CA database.
+   * @param idGenerator
+   *          Generator of the database ids.
+   * @param maxCertBatchSize
+   *          Maximal number of certificates added in one transaction. Values greater than 1
+   *          activate the group commit of concurrently issued certificates.
+   * @param maxCertBatchWaitMs
+   *          Maximal time in milliseconds to wait for further certificates of a batch.
+   * @throws DataAccessException
+   *           if the database schema information could not be read.
+   */
+  public CertStore(DataSourceWrapper datasource, UniqueIdGenerator idGenerator,
+      int maxCertBatchSize, int maxCertBatchWaitMs) throws DataAccessException {
     this.datasource = Args.notNull(datasource, "datasource");
     this.idGenerator = Args.notNull(idGenerator, "idGenerator");
 
@@ -317,100 +428,186 @@ public class CertStore {
         "THISUPDATE,CRL FROM CRL WHERE CA_ID=?");
     this.sqlCrlWithNo = datasource.buildSelectFirstSql(1, "THISUPDATE DESC",
         "THISUPDATE,CRL FROM CRL WHERE CA_ID=? AND CRL_NO=?");
+
+    Args.positive(maxCertBatchSize, "maxCertBatchSize");
+    if (maxCertBatchSize == 1) {
+      this.certWriter = null;
+    } else {
+      BatchWriter.RowStore<CertRow> rowStore = new BatchWriter.RowStore<CertRow>() {
+        @Override
+        public void writeBatch(List<CertRow> rows) throws Exception {
+          addCertRows(rows);
+        }
+
+        @Override
+        public int write(CertRow row) {
+          return addCertRow(row);
+        }
+      };
+
+      this.certWriter = new BatchWriter<>("certificates", rowStore, maxCertBatchSize,
+          maxCertBatchWaitMs);
+      LOG.info("add certificates in batches of up to {} certificates, max. wait {} ms",
+          maxCertBatchSize, maxCertBatchWaitMs);
+    }
   } // constructor
 
+  public void close() {
+    if (certWriter != null) {
+      certWriter.close();
+    }
+  }
+
   private String buildSelectFirstSql(String coreSql) {
     return datasource.buildSelectFirstSql(1, coreSql);
   }
 
   public boolean addCert(CertificateInfo certInfo) {
+    return addCert(certInfo, null) == 0;
+  }
+
+  /**
+   * Adds the certificate, and adds it to the publish queue of the given publishers.
+   *
+   * @param certInfo certificate to be added.
+   * @param queuedPublishers publishers in whose publish queue the certificate is added. May be
+   *     {@code null}.
+   * @return 0 for added successfully, 1 if the certificate could not be added, 2 if the
+   *     certificate could be added but not to the publish queue of all publishers.
+   */
+  public int addCert(CertificateInfo certInfo, List<NameId> queuedPublishers) {
     Args.notNull(certInfo, "certInfo");
+
+    CertRow row;
     try {
-      addCert(certInfo.getIssuer(), certInfo.getCert(), certInfo.getSubjectPublicKey(),
-          certInfo.getProfile(), certInfo.getRequestor(), certInfo.getUser(), certInfo.getReqType(),
-          certInfo.getTransactionId(), certInfo.getRequestedSubject());
-    } catch (Exception ex) {
-      LOG.error("could not save certificate {}: {}. Message: {}",
-          new Object[]{certInfo.getCert().getSubject(),
-              Base64.encodeToString(certInfo.getCert().getEncodedCert(), true), ex.getMessage()});
-      LOG.debug("error", ex);
-      return false;
+      Args.notNull(certInfo.getIssuer(), "certInfo.issuer");
+      Args.notNull(certInfo.getProfile(), "certInfo.profile");
+      Args.notNull(certInfo.getRequestor(), "certInfo.requestor");
+      row = new CertRow(certInfo, queuedPublishers, idGenerator.nextId(), maxX500nameLen);
+    } catch (RuntimeException ex) {
+      logAddCertError(certInfo, ex);
+      return 1;
     }
 
-    return true;
+    return (certWriter == null) ? addCertRow(row) : certWriter.write(row);
   } // method addCert
 
-  private void addCert(NameId ca, CertWithDbId certificate, byte[] encodedSubjectPublicKey,
-      NameId certprofile, NameId requestor, Integer userId, RequestType reqType,
-      byte[] transactionId, X500Name reqSubject) throws DataAccessException, OperationException {
-    Args.notNull(ca, "ca");
-    Args.notNull(certificate, "certificate");
-    Args.notNull(certprofile, "certprofile");
-    Args.notNull(requestor, "requestor");
-
-    long certId = idGenerator.nextId();
+  private int addCertRow(CertRow row) {
+    final String sql = SQL_ADD_CERT;
+    try {
+      PreparedStatement ps = borrowPreparedStatement(sql);
+      try {
+        row.setParameters(ps);
+        ps.executeUpdate();
+      } catch (SQLException ex) {
+        throw datasource.translate(null, ex);
+      } finally {
+        datasource.releaseResources(ps, null);
+      }
+    } catch (Exception ex) {
+      logAddCertError(row.certInfo, ex);
+      return 1;
+    }
 
-    long fpPk = FpIdCalculator.hash(encodedSubjectPublicKey);
-    String subjectText = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
-    long fpSubject = X509Util.fpCanonicalizedName(certificate.getSubjectAsX500Name());
+    row.certInfo.getCert().setCertId(row.certId);
 
-    String reqSubjectText = null;
-    Long fpReqSubject = null;
-    if (reqSubject != null) {
-      fpReqSubject = X509Util.fpCanonicalizedName(reqSubject);
-      if (fpSubject == fpReqSubject) {
-        fpReqSubject = null;
-      } else {
-        reqSubjectText = X509Util.cutX500Name(CaUtil.sortX509Name(reqSubject), maxX500nameLen);
+    if (row.queuedPublishers != null) {
+      for (NameId publisher : row.queuedPublishers) {
+        try {
+          addToPublishQueue(publisher, row.certId, row.certInfo.getIssuer());
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "could not add entry to PublishQueue");
+          return 2;
+        }
       }
     }
 
-    byte[] encodedCert = certificate.getEncodedCert();
-    String b64FpCert = base64Fp(encodedCert);
-    String b64Cert = Base64.encodeToString(encodedCert);
-    String tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
-
-    final String sql = SQL_ADD_CERT;
-    PreparedStatement ps = borrowPreparedStatement(sql);
+    return 0;
+  } // method addCertRow
 
+  /**
+   * Adds the certificates and the entries of the publish queue in one transaction.
+   */
+  private void addCertRows(List<CertRow> rows) throws DataAccessException {
+    Connection conn = datasource.getConnection();
+    PreparedStatement psCert = null;
+    PreparedStatement psQueue = null;
+    boolean autoCommitChanged = false;
+    boolean committed = false;
+    String sql = SQL_ADD_CERT;
     try {
-      // cert
-      X509Certificate cert = certificate.getCert();
-      int idx = 1;
-      ps.setLong(idx++, certId);
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      ps.setString(idx++, cert.getSerialNumber().toString(16));
-      ps.setString(idx++, subjectText);
-      ps.setLong(idx++, fpSubject);
-      setLong(ps, idx++, fpReqSubject);
-      ps.setLong(idx++, cert.getNotBefore().getTime() / 1000); // notBeforeSeconds
-      ps.setLong(idx++, cert.getNotAfter().getTime() / 1000); // notAfterSeconds
-      setBoolean(ps, idx++, false);
-      ps.setInt(idx++, certprofile.getId());
-      ps.setInt(idx++, ca.getId());
-      setInt(ps, idx++, requestor.getId());
-      setInt(ps, idx++, userId);
-      ps.setLong(idx++, fpPk);
-      boolean isEeCert = cert.getBasicConstraints() == -1;
-      ps.setInt(idx++, isEeCert ? 1 : 0);
-      ps.setInt(idx++, reqType.getCode());
-      ps.setString(idx++, tid);
+      if (conn.getAutoCommit()) {
+        conn.setAutoCommit(false);
+        autoCommitChanged = true;
+      }
 
-      ps.setString(idx++, b64FpCert);
-      ps.setString(idx++, reqSubjectText);
-      // in this version we set CRL_SCOPE to fixed value 0
-      ps.setInt(idx++, 0);
-      ps.setString(idx++, b64Cert);
+      psCert = datasource.prepareStatement(conn, sql);
+      for (CertRow row : rows) {
+        row.setParameters(psCert);
+        psCert.addBatch();
+      }
+      psCert.executeBatch();
 
-      ps.executeUpdate();
+      sql = SQL_INSERT_PUBLISHQUEUE;
+      for (CertRow row : rows) {
+        if (row.queuedPublishers == null) {
+          continue;
+        }
 
-      certificate.setCertId(certId);
+        for (NameId publisher : row.queuedPublishers) {
+          if (psQueue == null) {
+            psQueue = datasource.prepareStatement(conn, sql);
+          }
+          psQueue.setInt(1, publisher.getId());
+          psQueue.setInt(2, row.certInfo.getIssuer().getId());
+          psQueue.setLong(3, row.certId);
+          psQueue.addBatch();
+        }
+      }
+
+      if (psQueue != null) {
+        psQueue.executeBatch();
+      }
+
+      conn.commit();
+      committed = true;
     } catch (SQLException ex) {
-      throw datasource.translate(null, ex);
+      throw datasource.translate(sql, ex);
     } finally {
-      datasource.releaseResources(ps, null);
+      // roll back on any failure, also on RuntimeException and Error, since restoring the
+      // autoCommit below would otherwise commit the partial transaction
+      if (!committed) {
+        try {
+          conn.rollback();
+        } catch (SQLException ex) {
+          LOG.warn("could not rollback the transaction: {}", ex.getMessage());
+        }
+      }
+
+      datasource.releaseResources(psQueue, null, false);
+      datasource.releaseResources(psCert, null, false);
+
+      if (autoCommitChanged) {
+        try {
+          conn.setAutoCommit(true);
+        } catch (SQLException ex) {
+          LOG.warn("could not restore the autoCommit of connection: {}", ex.getMessage());
+        }
+      }
+      datasource.returnConnection(conn);
     }
-  } // method addCert
+
+    for (CertRow row : rows) {
+      row.certInfo.getCert().setCertId(row.certId);
+    }
+  } // method addCertRows
+
+  private static void logAddCertError(CertificateInfo certInfo, Exception ex) {
+    LOG.error("could not save certificate {}: {}. Message: {}",
+        new Object[]{certInfo.getCert().getSubject(),
+            Base64.encodeToString(certInfo.getCert().getEncodedCert(), true), ex.getMessage()});
+    LOG.debug("error", ex);
+  } // method logAddCertError
 
   public void addToPublishQueue(NameId publisher, long certId, NameId ca)
       throws OperationException {
@@ -1531,6 +1728,15 @@ public class CertStore {
   } // method listCerts
 
   public NameId authenticateUser(String user, byte[] password) throws OperationException {
+    long authCacheGeneration = 0;
+    if (authCache != null) {
+      NameId ident = authCache.get(user, password);
+      if (ident != null) {
+        return ident;
+      }
+      authCacheGeneration = authCache.getGeneration();
+    }
+
     final String sql = sqlActiveUserInfoForName;
 
     int id;
@@ -1560,9 +1766,47 @@ public class CertStore {
     }
 
     boolean valid = PasswordHash.validatePassword(password, expPasswordText);
-    return valid ? new NameId(id, user) : null;
+    if (!valid) {
+      return null;
+    }
+
+    NameId ident = new NameId(id, user);
+    if (authCache != null) {
+      authCache.put(user, password, ident, authCacheGeneration);
+    }
+    return ident;
   } // method authenticateUser
 
+  /**
+   * Activates the cache of successful user authentications.
+   *
+   * @param maxSize
+   *          Maximal number of cached authentications.
+   * @param ttl
+   *          Time in seconds a successful authentication is cached.
+   */
+  void setAuthenticationCache(int maxSize, int ttl) {
+    this.authCache = new AuthenticationCache(maxSize, ttl);
+    LOG.info("cache up to {} user authentications for {} seconds", maxSize, ttl);
+  }
+
+  /**
+   * Removes the cached authentications of the user, called after the user has been changed
+   * or removed.
+   *
+   * @param user
+   *          User name.
+   */
+  void invalidateUserAuthentication(String user) {
+    if (authCache != null) {
+      authCache.invalidate(user);
+    }
+  }
+
+  AuthenticationCache getAuthenticationCache() {
+    return authCache;
+  }
+
   public String getUsername(int id) throws OperationException {
     final String sql = sqlActiveUserNameForId;
 
@@ -1638,8 +1882,30 @@ public class CertStore {
     }
   } // method knowsCertForSerial
 
-  public List<CertRevInfoWithSerial> getRevokedCerts(NameId ca, Date notExpiredAt, long startId,
-      int numEntries, boolean onlyCaCerts, boolean onlyUserCerts) throws OperationException {
+  /**
+   * Returns the revoked certificates ordered by the column SN (hex-encoded serial number),
+   * the next page starts after the serial number of the last entry (keyset pagination).
+   *
+   * @param ca
+   *          CA. Must not be {@code null}.
+   * @param notExpiredAt
+   *          Only certificates not expired at this time will be returned.
+   * @param afterSerial
+   *          Serial number of the last entry of the previous page, {@code null} for the
+   *          first page.
+   * @param numEntries
+   *          Maximal number of entries.
+   * @param onlyCaCerts
+   *          Whether only CA certificates are returned.
+   * @param onlyUserCerts
+   *          Whether only end entity certificates are returned.
+   * @return the revoked certificates.
+   * @throws OperationException
+   *          If error occurs while reading the database.
+   */
+  public List<CertRevInfoWithSerial> getRevokedCerts(NameId ca, Date notExpiredAt,
+      BigInteger afterSerial, int numEntries, boolean onlyCaCerts, boolean onlyUserCerts)
+      throws OperationException {
     Args.notNull(ca, "ca");
     Args.notNull(notExpiredAt, "notExpiredAt");
     Args.positive(numEntries, "numEntries");
@@ -1648,15 +1914,17 @@ public class CertStore {
     }
     boolean withEe = onlyCaCerts || onlyUserCerts;
 
-    String sql = getSqlRevokedCerts(numEntries, withEe);
+    String sql = getSqlRevokedCerts(numEntries, afterSerial != null, withEe);
 
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
 
     try {
       int idx = 1;
-      ps.setLong(idx++, startId - 1);
       ps.setInt(idx++, ca.getId());
+      if (afterSerial != null) {
+        ps.setString(idx++, afterSerial.toString(16));
+      }
       ps.setLong(idx++, notExpiredAt.getTime() / 1000 + 1);
       if (withEe) {
         setBoolean(ps, idx++, onlyUserCerts);
@@ -1817,10 +2085,6 @@ public class CertStore {
     }
   } // method isCertForSubjectIssued
 
-  private String base64Fp(byte[] data) {
-    return HashAlgo.SHA1.base64Hash(data);
-  } // method base64Fp
-
   private PreparedStatement borrowPreparedStatement(String sqlQuery) throws OperationException {
     try {
       return datasource.prepareStatement(sqlQuery);
@@ -1980,19 +2244,11 @@ public class CertStore {
     return sql;
   } // method getSqlDeltaCrlCacheIds
 
-  private String getSqlRevokedCerts(int numEntries, boolean withEe) {
-    LruCache<Integer, String> cache = withEe ? cacheSqlRevokedCertsWithEe : cacheSqlRevokedCerts;
-    String sql = cache.get(numEntries);
-    if (sql == null) {
-      String coreSql =
-          "ID,SN,RR,RT,RIT FROM CERT WHERE ID>? AND CA_ID=? AND REV=1 AND NAFTER>?";
-      if (withEe) {
-        coreSql += " AND EE=?";
-      }
-      sql = datasource.buildSelectFirstSql(numEntries, "ID ASC", coreSql);
-      cache.put(numEntries, sql);
-    }
-    return sql;
+  private String getSqlRevokedCerts(int numEntries, boolean withSerial, boolean withEe) {
+    // the condition on CA_ID and SN is covered by the unique constraint CONST_CA_SN
+    String sql = StringUtil.concat("ID,SN,RR,RT,RIT FROM CERT WHERE CA_ID=?",
+        (withSerial ? " AND SN>?" : ""), " AND REV=1 AND NAFTER>?", (withEe ? " AND EE=?" : ""));
+    return datasource.buildSelectFirstSql(numEntries, "SN ASC", sql);
   } // method getSqlRevokedCerts
 
   private String getSqlSerials(int numEntries, boolean onlyRevoked) {
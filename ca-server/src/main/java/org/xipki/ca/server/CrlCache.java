@@ -0,0 +1,256 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import static org.xipki.ca.api.OperationException.ErrorCode.SYSTEM_FAILURE;
+
+import java.math.BigInteger;
+import java.util.Date;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x509.CertificateList;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.OperationException;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+
+/**
+ * Cache of the DER-encoded current CRL and of the recently requested CRLs (by CRL number)
+ * of a CA, so that the download of CRLs requires neither the database access nor the
+ * parsing of the CRL.
+ *
+ * <p>The current CRL is replaced and the cached numbered CRLs are discarded once a new CRL is
+ * generated. Since the CRLs are generated only by the CA in master mode, a CA in slave mode
+ * verifies the cached current CRL against the highest CRL number in the database.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class CrlCache {
+
+  /**
+   * Source of the CRLs of one CA.
+   */
+  interface CrlSource {
+
+    /**
+     * Returns the DER-encoded CRL.
+     *
+     * @param crlNumber CRL number. {@code null} to get the CRL with the latest thisUpdate.
+     * @return the CRL, or {@code null} if no such CRL is available.
+     * @throws OperationException if error occurs.
+     */
+    byte[] getEncodedCrl(BigInteger crlNumber) throws OperationException;
+
+    long getMaxCrlNumber() throws OperationException;
+
+  } // interface CrlSource
+
+  static class CachedCrl {
+
+    private final byte[] encoded;
+
+    private final BigInteger crlNumber;
+
+    private final Date thisUpdate;
+
+    private final String etag;
+
+    private volatile CertificateList crl;
+
+    private CachedCrl(byte[] encoded) {
+      // the parsed CRL is kept only if required by the CMP and SCEP responders
+      CertificateList crl = CertificateList.getInstance(encoded);
+      this.encoded = encoded;
+      this.thisUpdate = crl.getThisUpdate().getDate();
+
+      Extensions extns = crl.getTBSCertList().getExtensions();
+      this.crlNumber = (extns == null || extns.getExtension(Extension.cRLNumber) == null)
+          ? null
+          : ASN1Integer.getInstance(extns.getExtensionParsedValue(Extension.cRLNumber))
+              .getPositiveValue();
+      this.etag = "\"" + HashAlgo.SHA1.hexHash(encoded) + "\"";
+    }
+
+    private CachedCrl(byte[] encoded, BigInteger crlNumber, Date thisUpdate) {
+      // the CRL will be parsed only if required by the CMP and SCEP responders
+      this.encoded = encoded;
+      this.crlNumber = crlNumber;
+      this.thisUpdate = thisUpdate;
+      this.etag = "\"" + HashAlgo.SHA1.hexHash(encoded) + "\"";
+    }
+
+    /**
+     * Returns the DER-encoded CRL. The returned array must not be modified.
+     * @return the DER-encoded CRL.
+     */
+    byte[] getEncoded() {
+      return encoded;
+    }
+
+    BigInteger getCrlNumber() {
+      return crlNumber;
+    }
+
+    Date getThisUpdate() {
+      return thisUpdate;
+    }
+
+    /**
+     * Returns the entity tag of the CRL to be used in the HTTP header ETag.
+     * @return the quoted entity tag.
+     */
+    String getEtag() {
+      return etag;
+    }
+
+    CertificateList getCrl() {
+      CertificateList ret = crl;
+      if (ret == null) {
+        ret = CertificateList.getInstance(encoded);
+        crl = ret;
+      }
+      return ret;
+    }
+
+  } // class CachedCrl
+
+  private static final int MAX_NUMBERED_CRLS = 5;
+
+  private final CrlSource source;
+
+  private final boolean masterMode;
+
+  private final LruCache<BigInteger, CachedCrl> numberedCrls = new LruCache<>(MAX_NUMBERED_CRLS);
+
+  private volatile CachedCrl currentCrl;
+
+  CrlCache(CertStore certstore, NameId caIdent, boolean masterMode) {
+    this(newCrlSource(certstore, caIdent), masterMode);
+  }
+
+  CrlCache(CrlSource source, boolean masterMode) {
+    this.source = Args.notNull(source, "source");
+    this.masterMode = masterMode;
+  }
+
+  private static CrlSource newCrlSource(CertStore certstore, NameId caIdent) {
+    Args.notNull(certstore, "certstore");
+    Args.notNull(caIdent, "caIdent");
+    return new CrlSource() {
+
+      @Override
+      public byte[] getEncodedCrl(BigInteger crlNumber) throws OperationException {
+        return certstore.getEncodedCrl(caIdent, crlNumber);
+      }
+
+      @Override
+      public long getMaxCrlNumber() throws OperationException {
+        return certstore.getMaxCrlNumber(caIdent);
+      }
+
+    };
+  } // method newCrlSource
+
+  /**
+   * Returns the CRL with given CRL number.
+   *
+   * @param crlNumber CRL number. {@code null} to get the current CRL.
+   * @return the CRL, or {@code null} if no such CRL is available.
+   * @throws OperationException if error occurs.
+   */
+  CachedCrl getCrl(BigInteger crlNumber) throws OperationException {
+    if (crlNumber == null) {
+      return getCurrentCrl();
+    }
+
+    CachedCrl crl = numberedCrls.get(crlNumber);
+    if (crl != null) {
+      return crl;
+    }
+
+    CachedCrl current = currentCrl;
+    if (current != null && crlNumber.equals(current.crlNumber)) {
+      return current;
+    }
+
+    crl = load(crlNumber);
+    if (crl != null) {
+      numberedCrls.put(crlNumber, crl);
+    }
+    return crl;
+  } // method getCrl
+
+  private CachedCrl getCurrentCrl() throws OperationException {
+    CachedCrl current = currentCrl;
+    if (current != null) {
+      if (masterMode || current.crlNumber == null) {
+        return current;
+      }
+
+      // the CRL may have been generated by the CA in master mode.
+      if (current.crlNumber.longValue() >= source.getMaxCrlNumber()) {
+        return current;
+      }
+    }
+
+    CachedCrl crl = load(null);
+    if (crl != null) {
+      setCurrentCrl(crl);
+    }
+    return crl;
+  } // method getCurrentCrl
+
+  /**
+   * Sets the newly generated CRL as the current CRL, and discards the cached numbered CRLs.
+   * @param encodedCrl DER-encoded CRL.
+   * @param crlNumber CRL number of the CRL.
+   * @param thisUpdate thisUpdate of the CRL.
+   */
+  void crlGenerated(byte[] encodedCrl, BigInteger crlNumber, Date thisUpdate) {
+    numberedCrls.evictAll();
+    setCurrentCrl(new CachedCrl(encodedCrl, crlNumber, thisUpdate));
+  }
+
+  private synchronized void setCurrentCrl(CachedCrl crl) {
+    // do not replace a newer CRL set by a concurrent generation
+    CachedCrl current = currentCrl;
+    if (current == null || crl.crlNumber == null || current.crlNumber == null
+        || crl.crlNumber.compareTo(current.crlNumber) >= 0) {
+      currentCrl = crl;
+    }
+  }
+
+  private CachedCrl load(BigInteger crlNumber) throws OperationException {
+    byte[] encodedCrl = source.getEncodedCrl(crlNumber);
+    if (encodedCrl == null) {
+      return null;
+    }
+
+    try {
+      return new CachedCrl(encodedCrl);
+    } catch (RuntimeException ex) {
+      throw new OperationException(SYSTEM_FAILURE, ex);
+    }
+  }
+
+}
@@ -0,0 +1,596 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.BERTags;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.asn1.x509.V2TBSCertListGenerator;
+import org.bouncycastle.operator.ContentSigner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.security.CrlReason;
+import org.xipki.util.Args;
+
+/**
+ * Builds X.509 CRL with bounded memory consumption. The revoked certificates are
+ * written to temporary files, merged by the serial number, and streamed into the
+ * signer and into the CRL file. The produced CRL is byte-identical to the one
+ * produced by BouncyCastle's {@code X509v2CRLBuilder} with the same entries and
+ * extensions.
+ *
+ * <p>Entries added in ascending order of the hex-encoded serial number, which is the
+ * order of the column SN, are appended directly to one sorted run per length of the
+ * hex string. Only the entries out of this order are buffered and sorted in memory.
+ *
+ * <p>Definition of revokedCertificates.
+ *
+ * <pre>
+ *       revokedCertificates     SEQUENCE OF SEQUENCE  {
+ *            userCertificate         CertificateSerialNumber,
+ *            revocationDate          Time,
+ *            crlEntryExtensions      Extensions OPTIONAL
+ *                                     -- if present, version MUST be v2
+ *                                 }  OPTIONAL,
+ * </pre>
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class CrlStreamBuilder implements Closeable {
+
+  private static class RevokedEntry implements Comparable<RevokedEntry> {
+
+    private final BigInteger serial;
+
+    private final long revocationTime;
+
+    private final int reason;
+
+    // 0 if not present
+    private final long invalidityTime;
+
+    RevokedEntry(BigInteger serial, long revocationTime, int reason, long invalidityTime) {
+      this.serial = serial;
+      this.revocationTime = revocationTime;
+      this.reason = reason;
+      this.invalidityTime = invalidityTime;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      byte[] serialBytes = serial.toByteArray();
+      out.writeShort(serialBytes.length);
+      out.write(serialBytes);
+      out.writeLong(revocationTime);
+      out.writeInt(reason);
+      out.writeLong(invalidityTime);
+    }
+
+    static RevokedEntry read(DataInputStream in) throws IOException {
+      int serialLen;
+      try {
+        serialLen = in.readUnsignedShort();
+      } catch (EOFException ex) {
+        return null;
+      }
+
+      byte[] serialBytes = new byte[serialLen];
+      in.readFully(serialBytes);
+      return new RevokedEntry(new BigInteger(serialBytes), in.readLong(), in.readInt(),
+          in.readLong());
+    }
+
+    @Override
+    public int compareTo(RevokedEntry other) {
+      return serial.compareTo(other.serial);
+    }
+
+  } // class RevokedEntry
+
+  private static class RunReader implements Comparable<RunReader>, Closeable {
+
+    private final DataInputStream in;
+
+    private RevokedEntry current;
+
+    RunReader(File file) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      this.current = RevokedEntry.read(in);
+    }
+
+    RevokedEntry next() throws IOException {
+      RevokedEntry ret = current;
+      current = RevokedEntry.read(in);
+      return ret;
+    }
+
+    @Override
+    public int compareTo(RunReader other) {
+      return current.compareTo(other.current);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  } // class RunReader
+
+  private static class SortedRun implements Closeable {
+
+    private final File file;
+
+    private final DataOutputStream out;
+
+    private BigInteger lastSerial;
+
+    SortedRun(File file) throws IOException {
+      this.file = file;
+      this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+
+  } // class SortedRun
+
+  private static final Logger LOG = LoggerFactory.getLogger(CrlStreamBuilder.class);
+
+  private static final int DFLT_RUN_SIZE = 50000;
+
+  private final X500Name issuer;
+
+  private final Date thisUpdate;
+
+  private final Date nextUpdate;
+
+  private final Extension certificateIssuerExtension;
+
+  private final int runSize;
+
+  private final ExtensionsGenerator extGenerator = new ExtensionsGenerator();
+
+  private final List<File> runFiles = new LinkedList<>();
+
+  // sorted runs by the length of the hex-encoded serial number
+  private final Map<Integer, SortedRun> sortedRuns = new HashMap<>();
+
+  private List<RevokedEntry> buffer;
+
+  private File entriesFile;
+
+  private File crlFile;
+
+  private long numEntries;
+
+  /**
+   * Constructor.
+   *
+   * @param issuer
+   *          Issuer of the CRL. Must not be {@code null}.
+   * @param thisUpdate
+   *          thisUpdate of the CRL. Must not be {@code null}.
+   * @param nextUpdate
+   *          nextUpdate of the CRL. Could be {@code null}.
+   * @param certificateIssuer
+   *          The certificate issuer for the indirect CRL. {@code null} for direct CRL.
+   */
+  CrlStreamBuilder(X500Name issuer, Date thisUpdate, Date nextUpdate,
+      X500Name certificateIssuer) {
+    this(issuer, thisUpdate, nextUpdate, certificateIssuer, DFLT_RUN_SIZE);
+  }
+
+  CrlStreamBuilder(X500Name issuer, Date thisUpdate, Date nextUpdate,
+      X500Name certificateIssuer, int runSize) {
+    this.issuer = Args.notNull(issuer, "issuer");
+    this.thisUpdate = Args.notNull(thisUpdate, "thisUpdate");
+    this.nextUpdate = nextUpdate;
+    this.runSize = Args.positive(runSize, "runSize");
+    this.buffer = new ArrayList<>(Math.min(runSize, 1000));
+
+    if (certificateIssuer == null) {
+      this.certificateIssuerExtension = null;
+    } else {
+      try {
+        GeneralNames generalNames = new GeneralNames(new GeneralName(certificateIssuer));
+        this.certificateIssuerExtension =
+            new Extension(Extension.certificateIssuer, true, generalNames.getEncoded());
+      } catch (IOException ex) {
+        throw new IllegalArgumentException("error encoding certificateIssuer: "
+            + ex.getMessage(), ex);
+      }
+    }
+  } // constructor
+
+  /**
+   * Adds a CRL entry. The entries may be added in any order, the ascending order of the
+   * hex-encoded serial numbers requires the least memory.
+   *
+   * @param serial
+   *          Serial number of the revoked certificate. Must not be {@code null}.
+   * @param revocationTime
+   *          Revocation time. Must not be {@code null}.
+   * @param reason
+   *          CRL reason code.
+   * @param invalidityTime
+   *          Invalidity time. Could be {@code null}.
+   * @throws IOException
+   *          If error occurs while writing the entries to the temporary file.
+   */
+  void addCrlEntry(BigInteger serial, Date revocationTime, int reason, Date invalidityTime)
+      throws IOException {
+    if (entriesFile != null) {
+      throw new IllegalStateException("CRL has been built");
+    }
+
+    RevokedEntry entry = new RevokedEntry(Args.notNull(serial, "serial"),
+        Args.notNull(revocationTime, "revocationTime").getTime(), reason,
+        invalidityTime == null ? 0 : invalidityTime.getTime());
+    numEntries++;
+
+    // serial numbers with hex strings of the same length are ordered as the hex strings
+    int hexLen = Math.max(1, (serial.bitLength() + 3) / 4);
+    SortedRun run = sortedRuns.get(hexLen);
+    if (run == null) {
+      run = new SortedRun(File.createTempFile("xipki-crl-run-", ".tmp"));
+      sortedRuns.put(hexLen, run);
+    }
+
+    if (run.lastSerial == null || serial.compareTo(run.lastSerial) > 0) {
+      entry.write(run.out);
+      run.lastSerial = serial;
+      return;
+    }
+
+    buffer.add(entry);
+    if (buffer.size() >= runSize) {
+      flushRun();
+    }
+  } // method addCrlEntry
+
+  void addExtension(ASN1ObjectIdentifier oid, boolean critical, ASN1Encodable value)
+      throws IOException {
+    extGenerator.addExtension(oid, critical, value);
+  }
+
+  long getNumEntries() {
+    return numEntries;
+  }
+
+  /**
+   * Builds and signs the CRL.
+   *
+   * @param signer
+   *          Signer to sign the CRL. Must not be {@code null}.
+   * @return the temporary file containing the DER encoded CRL. It will be deleted by
+   *          {@link #close()}.
+   * @throws IOException
+   *          If error occurs while building the CRL.
+   */
+  File build(ContentSigner signer) throws IOException {
+    Args.notNull(signer, "signer");
+    if (crlFile != null) {
+      throw new IllegalStateException("CRL has been built");
+    }
+
+    if (entriesFile == null) {
+      writeEntriesFile();
+    }
+
+    V2TBSCertListGenerator tbsGen = new V2TBSCertListGenerator();
+    tbsGen.setSignature(signer.getAlgorithmIdentifier());
+    tbsGen.setIssuer(issuer);
+    tbsGen.setThisUpdate(new Time(thisUpdate));
+    if (nextUpdate != null) {
+      tbsGen.setNextUpdate(new Time(nextUpdate));
+    }
+
+    if (!extGenerator.isEmpty()) {
+      tbsGen.setExtensions(extGenerator.generate());
+    }
+
+    // TBSCertList without revokedCertificates. The revokedCertificates will be
+    // inserted before the crlExtensions
+    ASN1Sequence tbsWithoutEntries =
+        ASN1Sequence.getInstance(tbsGen.generateTBSCertList().toASN1Primitive());
+
+    byte[] head;
+    byte[] tail;
+    {
+      ByteArrayOutputStream headOut = new ByteArrayOutputStream();
+      ByteArrayOutputStream tailOut = new ByteArrayOutputStream();
+      final int size = tbsWithoutEntries.size();
+      for (int i = 0; i < size; i++) {
+        ASN1Encodable elem = tbsWithoutEntries.getObjectAt(i);
+        OutputStream out = (elem instanceof ASN1TaggedObject) ? tailOut : headOut;
+        out.write(elem.toASN1Primitive().getEncoded(ASN1Encoding.DER));
+      }
+      head = headOut.toByteArray();
+      tail = tailOut.toByteArray();
+    }
+
+    long entriesLen = entriesFile.length();
+    byte[] revokedHeader = (entriesLen == 0) ? new byte[0]
+        : encodeHeader(BERTags.CONSTRUCTED | BERTags.SEQUENCE, entriesLen);
+
+    long tbsBodyLen = head.length + revokedHeader.length + entriesLen + tail.length;
+    byte[] tbsHeader = encodeHeader(BERTags.CONSTRUCTED | BERTags.SEQUENCE, tbsBodyLen);
+
+    // sign the TBSCertList
+    OutputStream signerOut = signer.getOutputStream();
+    writeTbs(signerOut, tbsHeader, head, revokedHeader, tail);
+    signerOut.close();
+    byte[] signature = signer.getSignature();
+
+    byte[] encodedSigAlg = signer.getAlgorithmIdentifier().getEncoded(ASN1Encoding.DER);
+    byte[] encodedSignature = new DERBitString(signature).getEncoded(ASN1Encoding.DER);
+
+    long tbsLen = tbsHeader.length + tbsBodyLen;
+    long crlBodyLen = tbsLen + encodedSigAlg.length + encodedSignature.length;
+    byte[] crlHeader = encodeHeader(BERTags.CONSTRUCTED | BERTags.SEQUENCE, crlBodyLen);
+
+    File file = File.createTempFile("xipki-crl-", ".crl");
+    this.crlFile = file;
+    try (OutputStream crlOut = new BufferedOutputStream(new FileOutputStream(file))) {
+      crlOut.write(crlHeader);
+      writeTbs(crlOut, tbsHeader, head, revokedHeader, tail);
+      crlOut.write(encodedSigAlg);
+      crlOut.write(encodedSignature);
+    }
+
+    // the entries are not needed anymore
+    deleteFile(entriesFile);
+    return file;
+  } // method build
+
+  @Override
+  public void close() {
+    closeSortedRuns();
+
+    for (File file : runFiles) {
+      deleteFile(file);
+    }
+    runFiles.clear();
+
+    if (entriesFile != null) {
+      deleteFile(entriesFile);
+    }
+
+    if (crlFile != null) {
+      deleteFile(crlFile);
+    }
+  } // method close
+
+  private void closeSortedRuns() {
+    for (SortedRun run : sortedRuns.values()) {
+      try {
+        run.close();
+      } catch (IOException ex) {
+        LOG.warn("could not close file: {}", ex.getMessage());
+      }
+      runFiles.add(run.file);
+    }
+    sortedRuns.clear();
+  } // method closeSortedRuns
+
+  private void writeTbs(OutputStream out, byte[] tbsHeader, byte[] head, byte[] revokedHeader,
+      byte[] tail) throws IOException {
+    out.write(tbsHeader);
+    out.write(head);
+    out.write(revokedHeader);
+
+    byte[] buf = new byte[8192];
+    try (InputStream in = new FileInputStream(entriesFile)) {
+      int read;
+      while ((read = in.read(buf)) != -1) {
+        out.write(buf, 0, read);
+      }
+    }
+
+    out.write(tail);
+  } // method writeTbs
+
+  private void flushRun() throws IOException {
+    if (buffer.isEmpty()) {
+      return;
+    }
+
+    Collections.sort(buffer);
+    File file = File.createTempFile("xipki-crl-run-", ".tmp");
+    runFiles.add(file);
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file)))) {
+      for (RevokedEntry entry : buffer) {
+        entry.write(out);
+      }
+    }
+
+    buffer.clear();
+  } // method flushRun
+
+  /**
+   * Merges the sorted runs and writes the DER-encoded entries into the entries file.
+   */
+  private void writeEntriesFile() throws IOException {
+    closeSortedRuns();
+
+    File file = File.createTempFile("xipki-crl-entries-", ".tmp");
+    this.entriesFile = file;
+
+    List<RevokedEntry> lastRun = buffer;
+    Collections.sort(lastRun);
+    buffer = Collections.emptyList();
+
+    PriorityQueue<RunReader> readers = new PriorityQueue<>(Math.max(1, runFiles.size()));
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      for (File runFile : runFiles) {
+        RunReader reader = new RunReader(runFile);
+        if (reader.current == null) {
+          reader.close();
+        } else {
+          readers.add(reader);
+        }
+      }
+
+      boolean first = true;
+      int lastRunIdx = 0;
+      final int lastRunSize = lastRun.size();
+      while (true) {
+        RevokedEntry next = null;
+        RunReader reader = readers.peek();
+        if (lastRunIdx < lastRunSize) {
+          next = lastRun.get(lastRunIdx);
+          if (reader != null && reader.current.compareTo(next) < 0) {
+            next = null;
+          } else {
+            lastRunIdx++;
+          }
+        }
+
+        if (next == null) {
+          if (reader == null) {
+            break;
+          }
+
+          readers.poll();
+          next = reader.next();
+          if (reader.current == null) {
+            reader.close();
+          } else {
+            readers.add(reader);
+          }
+        }
+
+        out.write(encodeEntry(next, first));
+        first = false;
+      }
+    } finally {
+      for (RunReader reader : readers) {
+        try {
+          reader.close();
+        } catch (IOException ex) {
+          LOG.warn("could not close file: {}", ex.getMessage());
+        }
+      }
+    }
+
+    lastRun.clear();
+    // the runs are not needed anymore
+    for (File runFile : runFiles) {
+      deleteFile(runFile);
+    }
+    runFiles.clear();
+  } // method writeEntriesFile
+
+  /**
+   * Encodes the CRL entry in the same way as BouncyCastle's {@code X509v2CRLBuilder}.
+   */
+  private byte[] encodeEntry(RevokedEntry entry, boolean first) throws IOException {
+    ASN1EncodableVector extns = new ASN1EncodableVector();
+    if (entry.reason != CrlReason.UNSPECIFIED.getCode()) {
+      extns.add(new Extension(Extension.reasonCode, false,
+          CRLReason.lookup(entry.reason).getEncoded()));
+    }
+
+    if (entry.invalidityTime != 0) {
+      extns.add(new Extension(Extension.invalidityDate, false,
+          new ASN1GeneralizedTime(new Date(entry.invalidityTime)).getEncoded()));
+    }
+
+    // the certificateIssuer extension is only required in the first entry
+    if (first && certificateIssuerExtension != null) {
+      extns.add(certificateIssuerExtension);
+    }
+
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    vec.add(new ASN1Integer(entry.serial));
+    vec.add(new Time(new Date(entry.revocationTime)));
+    if (extns.size() > 0) {
+      vec.add(new DERSequence(extns));
+    }
+
+    return new DERSequence(vec).getEncoded(ASN1Encoding.DER);
+  } // method encodeEntry
+
+  private static byte[] encodeHeader(int tag, long bodyLen) {
+    if (bodyLen < 128) {
+      return new byte[]{(byte) tag, (byte) bodyLen};
+    }
+
+    int numLenBytes = 0;
+    for (long v = bodyLen; v != 0; v >>>= 8) {
+      numLenBytes++;
+    }
+
+    byte[] header = new byte[2 + numLenBytes];
+    header[0] = (byte) tag;
+    header[1] = (byte) (0x80 | numLenBytes);
+    for (int i = 0; i < numLenBytes; i++) {
+      header[2 + i] = (byte) (bodyLen >>> (8 * (numLenBytes - 1 - i)));
+    }
+    return header;
+  } // method encodeHeader
+
+  private static void deleteFile(File file) {
+    if (file.exists() && !file.delete()) {
+      LOG.warn("could not delete temporary file {}", file.getPath());
+    }
+  }
+
+}
@@ -17,12 +17,31 @@
 
 package org.xipki.ca.server;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,9 +53,9 @@ import org.xipki.security.CtLog.SignedCertificateTimestamp;
 import org.xipki.security.CtLog.SignedCertificateTimestampList;
 import org.xipki.security.X509Cert;
 import org.xipki.util.Args;
-import org.xipki.util.Curl;
-import org.xipki.util.Curl.CurlResult;
-import org.xipki.util.DefaultCurl;
+import org.xipki.util.IoUtil;
+import org.xipki.util.LatencyHistogram;
+import org.xipki.util.ObjectCreationException;
 import org.xipki.util.StringUtil;
 import org.xipki.util.http.SslContextConf;
 
@@ -45,9 +64,13 @@ import com.alibaba.fastjson.JSON;
 /**
  * Certificate transparency (CT) log client.
  *
+ * <p>The precertificate chain is submitted to all CT log servers concurrently, and the
+ * issuance continues as soon as the required number of SCTs has arrived. The HTTP
+ * connections are kept alive and reused.
+ *
  * @author Lijun Liao
  */
-public class CtLogClient {
+public class CtLogClient implements Closeable {
 
   private static Logger LOG = LoggerFactory.getLogger(CtLogClient.class);
 
@@ -122,24 +145,104 @@ public class CtLogClient {
 
   } // class AddPreChainResponse
 
-  private final Curl curl;
+  /**
+   * CT log server with its statistics.
+   */
+  public static class CtLogServer {
+
+    private final String url;
+
+    private final String addPreChainUrl;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final AtomicLong successCount = new AtomicLong();
+
+    private final AtomicLong failureCount = new AtomicLong();
+
+    private CtLogServer(String url) {
+      this.url = url;
+      this.addPreChainUrl = url.endsWith("/")
+          ? url + "ct/v1/add-pre-chain" : url + "/ct/v1/add-pre-chain";
+    }
+
+    public String getUrl() {
+      return url;
+    }
+
+    /**
+     * Returns the latency of the successful add-pre-chain requests.
+     * @return the latency histogram.
+     */
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    public long getSuccessCount() {
+      return successCount.get();
+    }
+
+    public long getFailureCount() {
+      return failureCount.get();
+    }
+
+  } // class CtLogServer
+
+  private final List<CtLogServer> servers;
+
+  private final int minScts;
+
+  private final int timeoutMs;
+
+  private final SslContextConf sslContextConf;
 
-  private final List<String> addPreChainUrls;
+  private final ExecutorService executor;
 
-  public CtLogClient(List<String> serverUrls, SslContextConf sslContextConf) {
+  private SSLSocketFactory sslSocketFactory;
+
+  private HostnameVerifier hostnameVerifier;
+
+  private volatile boolean sslInitialized;
+
+  /**
+   * Constructor.
+   *
+   * @param serverUrls URLs of the CT log servers.
+   * @param sslContextConf SSL context configuration, may be {@code null}.
+   * @param minScts number of SCTs required by the policy. The SCTs are requested from all
+   *        servers concurrently, and the issuance continues once minScts SCTs have arrived.
+   * @param timeoutMs connect and read timeout in milliseconds for each server.
+   */
+  public CtLogClient(List<String> serverUrls, SslContextConf sslContextConf, int minScts,
+      int timeoutMs) {
     Args.notEmpty(serverUrls, "serverUrls");
+    this.minScts = Args.range(minScts, "minScts", 1, serverUrls.size());
+    this.timeoutMs = Args.positive(timeoutMs, "timeoutMs");
+    this.sslContextConf = sslContextConf;
 
-    DefaultCurl dfltCurl  = new DefaultCurl();
-    dfltCurl.setSslContextConf(sslContextConf);
-    this.curl = dfltCurl;
-    this.addPreChainUrls = new ArrayList<>(serverUrls.size());
+    List<CtLogServer> list = new ArrayList<>(serverUrls.size());
     for (String m : serverUrls) {
-      String addPreChainUrl = m.endsWith("/")
-          ? m + "ct/v1/add-pre-chain" : m + "/ct/v1/add-pre-chain";
-      this.addPreChainUrls.add(addPreChainUrl);
+      list.add(new CtLogServer(m));
+    }
+    this.servers = Collections.unmodifiableList(list);
+
+    // with only one server, the request is sent in the calling thread
+    if (serverUrls.size() == 1) {
+      this.executor = null;
+    } else {
+      final AtomicInteger threadIndex = new AtomicInteger();
+      this.executor = Executors.newFixedThreadPool(serverUrls.size(), r -> {
+        Thread thread = new Thread(r, "ctlog-client-" + threadIndex.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
     }
   } // constructor
 
+  public List<CtLogServer> getServers() {
+    return servers;
+  }
+
   public SignedCertificateTimestampList getCtLogScts(
       byte[] precert, X509Cert caCert, List<X509Cert> certchain) throws OperationException {
     AddPreChainRequest request = new AddPreChainRequest();
@@ -159,24 +262,89 @@ public class CtLogClient {
       LOG.debug("CTLog Request: {}", StringUtil.toUtf8String(content));
     }
 
-    List<SignedCertificateTimestamp> scts = new ArrayList<>(addPreChainUrls.size());
-    Map<String, String> headers = new HashMap<>();
-    headers.put("content-type", "application/json");
-    for (String url : addPreChainUrls) {
-      CurlResult res;
-      try {
-        res = curl.curlPost(url, false, headers, null, content);
-      } catch (Exception ex) {
-        throw new OperationException(ErrorCode.SYSTEM_FAILURE,
-            "error while calling " + url + ": " + ex.getMessage());
-      }
+    initSslIfNotDone();
+
+    List<SignedCertificateTimestamp> scts;
+    if (executor == null) {
+      scts = new ArrayList<>(1);
+      scts.add(addPreChain(servers.get(0), content, null));
+    } else {
+      scts = addPreChainConcurrently(content);
+    }
 
-      byte[] respContent = res.getContent();
-      if (respContent == null) {
-        throw new OperationException(ErrorCode.SYSTEM_FAILURE,
-            "server does not return any content while responding " + url);
+    return new SignedCertificateTimestampList(new SerializedSCT(scts));
+  } // method getCtLogScts
+
+  private List<SignedCertificateTimestamp> addPreChainConcurrently(final byte[] content)
+      throws OperationException {
+    CompletionService<SignedCertificateTimestamp> completionService =
+        new ExecutorCompletionService<>(executor);
+    List<Future<SignedCertificateTimestamp>> futures = new ArrayList<>(servers.size());
+    // connections of the requests still in progress
+    final Set<HttpURLConnection> openConns = ConcurrentHashMap.newKeySet();
+    for (final CtLogServer server : servers) {
+      futures.add(completionService.submit(() -> addPreChain(server, content, openConns)));
+    }
+
+    List<SignedCertificateTimestamp> scts = new ArrayList<>(servers.size());
+    List<String> errors = new LinkedList<>();
+    // Each request is bounded by the connect and read timeouts. The deadline covers in addition
+    // the time a request waits for a free thread, the pool has one thread per server.
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(3L * timeoutMs);
+
+    try {
+      int pending = servers.size();
+      while (scts.size() < minScts) {
+        if (scts.size() + pending < minScts) {
+          throw new OperationException(ErrorCode.SYSTEM_FAILURE,
+              "could not get enough SCTs from the CT log servers: " + errors);
+        }
+
+        Future<SignedCertificateTimestamp> future;
+        try {
+          future = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new OperationException(ErrorCode.SYSTEM_FAILURE,
+              "interrupted while waiting for the SCTs");
+        }
+
+        if (future == null) {
+          throw new OperationException(ErrorCode.SYSTEM_FAILURE,
+              "timeout while waiting for the SCTs, got " + scts.size() + " of " + minScts);
+        }
+
+        pending--;
+        try {
+          scts.add(future.get());
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          errors.add(cause == null ? ex.getMessage() : cause.getMessage());
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new OperationException(ErrorCode.SYSTEM_FAILURE,
+              "interrupted while waiting for the SCTs");
+        }
+      }
+    } finally {
+      // The SCTs of the remaining servers are not required anymore. Interrupting the threads
+      // does not abort the blocking I/O of HttpURLConnection, the connections are closed instead.
+      for (Future<SignedCertificateTimestamp> future : futures) {
+        future.cancel(false);
+      }
+      for (HttpURLConnection conn : openConns) {
+        conn.disconnect();
       }
+    }
+
+    return scts;
+  } // method addPreChainConcurrently
 
+  private SignedCertificateTimestamp addPreChain(CtLogServer server, byte[] content,
+      Set<HttpURLConnection> openConns) throws OperationException {
+    long start = System.nanoTime();
+    try {
+      byte[] respContent = post(server.addPreChainUrl, content, openConns);
       if (LOG.isDebugEnabled()) {
         LOG.debug("CTLog Response: {}", StringUtil.toUtf8String(respContent));
       }
@@ -186,10 +354,108 @@ public class CtLogClient {
       DigitallySigned ds = DigitallySigned.getInstance(resp.getSignature(), new AtomicInteger(0));
       SignedCertificateTimestamp sct = new SignedCertificateTimestamp(resp.getSct_version(),
           resp.getId(), resp.getTimestamp(), resp.getExtensions(), ds);
-      scts.add(sct);
+
+      server.latency.recordNanos(System.nanoTime() - start);
+      server.successCount.incrementAndGet();
+      return sct;
+    } catch (OperationException ex) {
+      server.failureCount.incrementAndGet();
+      throw ex;
+    } catch (Exception ex) {
+      server.failureCount.incrementAndGet();
+      throw new OperationException(ErrorCode.SYSTEM_FAILURE,
+          "error while calling " + server.addPreChainUrl + ": " + ex.getMessage());
     }
+  } // method addPreChain
 
-    return new SignedCertificateTimestampList(new SerializedSCT(scts));
-  } // method getCtLogScts
+  private byte[] post(String url, byte[] content, Set<HttpURLConnection> openConns)
+      throws IOException, OperationException {
+    HttpURLConnection httpConn = IoUtil.openHttpConn(new URL(url));
+    if (openConns == null) {
+      return post0(url, httpConn, content);
+    }
+
+    openConns.add(httpConn);
+    try {
+      return post0(url, httpConn, content);
+    } finally {
+      openConns.remove(httpConn);
+    }
+  } // method post
+
+  private byte[] post0(String url, HttpURLConnection httpConn, byte[] content)
+      throws IOException, OperationException {
+    if (httpConn instanceof HttpsURLConnection) {
+      if (sslSocketFactory != null) {
+        ((HttpsURLConnection) httpConn).setSSLSocketFactory(sslSocketFactory);
+      }
+      if (hostnameVerifier != null) {
+        ((HttpsURLConnection) httpConn).setHostnameVerifier(hostnameVerifier);
+      }
+    }
+
+    httpConn.setConnectTimeout(timeoutMs);
+    httpConn.setReadTimeout(timeoutMs);
+    httpConn.setRequestMethod("POST");
+    httpConn.setUseCaches(false);
+    httpConn.setDoOutput(true);
+    httpConn.setRequestProperty("Content-Type", "application/json");
+    httpConn.setFixedLengthStreamingMode(content.length);
+
+    try (OutputStream os = httpConn.getOutputStream()) {
+      os.write(content);
+    }
+
+    // The connection is not disconnected, and the response is read completely, so that
+    // the underlying connection is kept alive and reused for the next request.
+    int respCode = httpConn.getResponseCode();
+    if (respCode != HttpURLConnection.HTTP_OK) {
+      InputStream es = httpConn.getErrorStream();
+      if (es != null) {
+        IoUtil.read(es);
+      }
+      throw new OperationException(ErrorCode.SYSTEM_FAILURE, "server " + url
+          + " responded with HTTP status " + respCode + " " + httpConn.getResponseMessage());
+    }
+
+    byte[] respContent = IoUtil.read(httpConn.getInputStream());
+    if (respContent == null || respContent.length == 0) {
+      throw new OperationException(ErrorCode.SYSTEM_FAILURE,
+          "server does not return any content while responding " + url);
+    }
+    return respContent;
+  } // method post0
+
+  private void initSslIfNotDone() throws OperationException {
+    if (sslInitialized) {
+      return;
+    }
+
+    synchronized (this) {
+      if (sslInitialized) {
+        return;
+      }
+
+      if (sslContextConf != null && sslContextConf.isUseSslConf()) {
+        try {
+          sslSocketFactory = sslContextConf.getSslSocketFactory();
+          hostnameVerifier = sslContextConf.buildHostnameVerifier();
+        } catch (ObjectCreationException ex) {
+          throw new OperationException(ErrorCode.SYSTEM_FAILURE,
+              "could not initialize SSL context: " + ex.getMessage());
+        }
+      }
+
+      // the volatile write publishes sslSocketFactory and hostnameVerifier
+      sslInitialized = true;
+    }
+  } // method initSslIfNotDone
+
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
 
 }
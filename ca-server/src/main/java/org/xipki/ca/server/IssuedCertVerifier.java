@@ -0,0 +1,208 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.OutputStream;
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.x509.Certificate;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.security.util.SignerUtil;
+import org.xipki.util.Args;
+import org.xipki.util.ConfPairs;
+import org.xipki.util.InvalidConfException;
+import org.xipki.util.StringUtil;
+
+/**
+ * Verifies the signature of the freshly issued certificates against the public key of
+ * the CA, according to the verification policy of the CA.
+ *
+ * <p>The policy is configured in the extraControl of the CA:
+ * <ul>
+ *   <li>{@code cert.verify}: {@code always} (default), {@code sample} or {@code non-hsm}.</li>
+ *   <li>{@code cert.verify.sample}: with the policy {@code sample}, one of every N issued
+ *       certificates is verified. Defaults to 100.</li>
+ * </ul>
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class IssuedCertVerifier {
+
+  enum Mode {
+
+    /**
+     * Verify all certificates.
+     */
+    always,
+
+    /**
+     * Verify one of every N certificates.
+     */
+    sample,
+
+    /**
+     * Verify all certificates if the CA key is not in HSM (PKCS#11 token), and none otherwise.
+     */
+    non_hsm
+
+  } // class Mode
+
+  static final String KEY_MODE = "cert.verify";
+
+  static final String KEY_SAMPLE = "cert.verify.sample";
+
+  private static final int DFLT_SAMPLE = 100;
+
+  private static final Logger LOG = LoggerFactory.getLogger(IssuedCertVerifier.class);
+
+  private final Mode mode;
+
+  private final int sample;
+
+  private final boolean active;
+
+  private final PublicKey caPublicKey;
+
+  private final ContentVerifierProvider verifierProvider;
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final AtomicLong verifiedCount = new AtomicLong();
+
+  private final AtomicLong failureCount = new AtomicLong();
+
+  IssuedCertVerifier(ConfPairs extraControl, String signerType, PublicKey caPublicKey)
+      throws InvalidConfException {
+    this.caPublicKey = Args.notNull(caPublicKey, "caPublicKey");
+
+    String str = (extraControl == null) ? null : extraControl.value(KEY_MODE);
+    if (StringUtil.isBlank(str)) {
+      mode = Mode.always;
+    } else {
+      try {
+        mode = Mode.valueOf(str.trim().toLowerCase().replace('-', '_'));
+      } catch (IllegalArgumentException ex) {
+        throw new InvalidConfException("invalid " + KEY_MODE + ": " + str);
+      }
+    }
+
+    str = (extraControl == null) ? null : extraControl.value(KEY_SAMPLE);
+    if (StringUtil.isBlank(str)) {
+      sample = DFLT_SAMPLE;
+    } else {
+      try {
+        sample = Integer.parseInt(str.trim());
+      } catch (NumberFormatException ex) {
+        throw new InvalidConfException("invalid " + KEY_SAMPLE + ": " + str);
+      }
+
+      if (sample < 1) {
+        throw new InvalidConfException(KEY_SAMPLE + " is less than 1: " + str);
+      }
+    }
+
+    this.active = (mode != Mode.non_hsm) || !"pkcs11".equalsIgnoreCase(signerType);
+
+    ContentVerifierProvider provider = null;
+    try {
+      provider = SignerUtil.getContentVerifierProvider(caPublicKey, null);
+    } catch (InvalidKeyException ex) {
+      // should not happen, the verification falls back to the JCA certificate
+      LOG.warn("could not build ContentVerifierProvider for the CA public key: {}",
+          ex.getMessage());
+    }
+    this.verifierProvider = provider;
+  } // constructor
+
+  Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Verifies the signature of the certificate if required by the policy.
+   *
+   * @param cert
+   *          Issued certificate.
+   * @param jceCert
+   *          The same certificate as JCA object, used only if the CA public key is not
+   *          supported by the BouncyCastle verifiers. May be {@code null}.
+   * @return whether the signature is valid or not verified.
+   */
+  boolean verify(Certificate cert, X509Certificate jceCert) {
+    if (!active) {
+      return true;
+    }
+
+    if (mode == Mode.sample && (count.getAndIncrement() % sample != 0)) {
+      return true;
+    }
+
+    verifiedCount.incrementAndGet();
+    boolean valid;
+    try {
+      if (verifierProvider != null) {
+        // verify the TBSCertificate directly, without the JCA certificate
+        ContentVerifier verifier = verifierProvider.get(cert.getSignatureAlgorithm());
+        try (OutputStream os = verifier.getOutputStream()) {
+          os.write(cert.getTBSCertificate().getEncoded(ASN1Encoding.DER));
+        }
+        valid = verifier.verify(cert.getSignature().getOctets());
+      } else if (jceCert != null) {
+        jceCert.verify(caPublicKey);
+        valid = true;
+      } else {
+        valid = false;
+      }
+    } catch (Exception ex) {
+      LOG.debug("{} while verifying signature: {}", ex.getClass().getName(), ex.getMessage());
+      valid = false;
+    }
+
+    if (!valid) {
+      long n = failureCount.incrementAndGet();
+      LOG.error("could not verify the signature of generated certificate, {} failures so far", n);
+    }
+    return valid;
+  } // method verify
+
+  /**
+   * Returns the number of verified certificates.
+   * @return the number of verified certificates.
+   */
+  long getVerifiedCount() {
+    return verifiedCount.get();
+  }
+
+  /**
+   * Returns the number of certificates whose signature could not be verified.
+   * @return the number of verification failures.
+   */
+  long getFailureCount() {
+    return failureCount.get();
+  }
+
+}
@@ -0,0 +1,477 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.interfaces.DSAPrivateKey;
+import java.security.interfaces.DSAPublicKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.pkcs.RSAPrivateKey;
+import org.bouncycastle.asn1.pkcs.RSAPublicKey;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.util.encoders.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.profile.KeypairGenControl;
+import org.xipki.security.StripedSecureRandom;
+import org.xipki.security.util.KeyUtil;
+import org.xipki.util.Args;
+import org.xipki.util.LatencyHistogram;
+import org.xipki.util.LogUtil;
+import org.xipki.util.metrics.MetricsRegistry;
+
+/**
+ * Pool of keypairs generated in background for the enrollments with CA-generated keypair.
+ * One pool is maintained for each keypair specification (algorithm, key size, curve, etc.)
+ * requested so far. The private keys are held encrypted with a transient AES key, and
+ * decrypted only when taken from the pool. If the pool is empty, the keypair is generated
+ * by the caller.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class KeypairPool implements Closeable {
+
+  static class GeneratedKeypair {
+
+    private final SubjectPublicKeyInfo publicKeyInfo;
+
+    private final PrivateKeyInfo privateKeyInfo;
+
+    GeneratedKeypair(SubjectPublicKeyInfo publicKeyInfo, PrivateKeyInfo privateKeyInfo) {
+      this.publicKeyInfo = publicKeyInfo;
+      this.privateKeyInfo = privateKeyInfo;
+    }
+
+    SubjectPublicKeyInfo getPublicKeyInfo() {
+      return publicKeyInfo;
+    }
+
+    PrivateKeyInfo getPrivateKeyInfo() {
+      return privateKeyInfo;
+    }
+
+  } // class GeneratedKeypair
+
+  private static class EncryptedKeypair {
+
+    private final byte[] encodedPublicKeyInfo;
+
+    private final byte[] iv;
+
+    private final byte[] encryptedPrivateKeyInfo;
+
+    EncryptedKeypair(byte[] encodedPublicKeyInfo, byte[] iv, byte[] encryptedPrivateKeyInfo) {
+      this.encodedPublicKeyInfo = encodedPublicKeyInfo;
+      this.iv = iv;
+      this.encryptedPrivateKeyInfo = encryptedPrivateKeyInfo;
+    }
+
+  } // class EncryptedKeypair
+
+  private class SpecPool {
+
+    private final String name;
+
+    private final KeypairGenControl control;
+
+    private final BlockingQueue<EncryptedKeypair> keypairs;
+
+    private final AtomicBoolean refilling = new AtomicBoolean(false);
+
+    SpecPool(String name, KeypairGenControl control) {
+      this.name = name;
+      this.control = control;
+      this.keypairs = new LinkedBlockingQueue<>(poolSize);
+
+      String spec = getDepthKey(name);
+      MetricsRegistry.getDefault().gauge(DEPTH_METRIC, "Ready keypairs in the pool",
+          () -> getDepths().getOrDefault(spec, 0), "spec", spec);
+    }
+
+    void triggerRefill() {
+      if (closed || keypairs.remainingCapacity() == 0 || !refilling.compareAndSet(false, true)) {
+        return;
+      }
+
+      try {
+        executor.execute(this::refill);
+      } catch (RejectedExecutionException ex) {
+        refilling.set(false);
+      }
+    }
+
+    private void refill() {
+      try {
+        while (!closed && keypairs.remainingCapacity() > 0) {
+          long start = System.nanoTime();
+          GeneratedKeypair keypair = generateKeypair(control, random);
+          EncryptedKeypair encrypted = encrypt(keypair);
+          generationLatency.recordNanos(System.nanoTime() - start);
+
+          if (!keypairs.offer(encrypted)) {
+            break;
+          }
+          refilledCount.incrementAndGet();
+        }
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not generate keypair " + name);
+      } finally {
+        refilling.set(false);
+      }
+    } // method refill
+
+  } // class SpecPool
+
+  private static final Logger LOG = LoggerFactory.getLogger(KeypairPool.class);
+
+  private static final String CIPHER_ALGO = "AES/GCM/NoPadding";
+
+  private static final String DEPTH_METRIC = "xipki_ca_keypair_pool_depth";
+
+  private final int poolSize;
+
+  private final SecureRandom random = StripedSecureRandom.getInstance();
+
+  private final ConcurrentHashMap<String, SpecPool> pools = new ConcurrentHashMap<>();
+
+  private final ExecutorService executor;
+
+  private final SecretKey wrappingKey;
+
+  private final AtomicLong refilledCount = new AtomicLong();
+
+  private final AtomicLong pooledCount = new AtomicLong();
+
+  private final AtomicLong inlineCount = new AtomicLong();
+
+  private final LatencyHistogram generationLatency = new LatencyHistogram();
+
+  private volatile boolean closed;
+
+  /**
+   * Constructor.
+   *
+   * @param poolSize
+   *          Maximal number of keypairs per keypair specification. 0 to generate all keypairs
+   *          on demand.
+   * @param threads
+   *          Number of threads to generate the keypairs in background.
+   * @throws GeneralSecurityException if the AES key to encrypt the private keys could not
+   *           be generated.
+   */
+  KeypairPool(int poolSize, int threads) throws GeneralSecurityException {
+    this.poolSize = Args.notNegative(poolSize, "poolSize");
+    if (poolSize == 0) {
+      this.executor = null;
+      this.wrappingKey = null;
+      return;
+    }
+
+    Args.positive(threads, "threads");
+    KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+    keyGen.init(256, random);
+    this.wrappingKey = keyGen.generateKey();
+
+    final AtomicInteger threadIndex = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "keypair-pool-" + threadIndex.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+  } // constructor
+
+  /**
+   * Takes a keypair from the pool. If the pool is empty, the keypair will be generated.
+   *
+   * @param control
+   *          Control of the keypair generation. Must not be {@code null}.
+   * @return the generated keypair.
+   * @throws GeneralSecurityException if the keypair could not be generated.
+   * @throws IOException if the keys could not be encoded.
+   */
+  GeneratedKeypair take(KeypairGenControl control)
+      throws GeneralSecurityException, IOException {
+    Args.notNull(control, "control");
+
+    if (poolSize > 0 && !closed) {
+      String name = getSpecName(control);
+      SpecPool pool = pools.computeIfAbsent(name, k -> new SpecPool(k, control));
+      EncryptedKeypair encrypted = pool.keypairs.poll();
+      pool.triggerRefill();
+
+      if (encrypted != null) {
+        pooledCount.incrementAndGet();
+        return decrypt(encrypted);
+      }
+    }
+
+    inlineCount.incrementAndGet();
+    return generateKeypair(control, random);
+  } // method take
+
+  /**
+   * Returns the number of keypairs generated in background.
+   * @return the number of keypairs generated in background.
+   */
+  long getRefilledCount() {
+    return refilledCount.get();
+  }
+
+  /**
+   * Returns the number of keypairs taken from the pool.
+   * @return the number of keypairs taken from the pool.
+   */
+  long getPooledCount() {
+    return pooledCount.get();
+  }
+
+  /**
+   * Returns the number of keypairs generated by the caller since the pool was empty.
+   * @return the number of keypairs generated by the caller.
+   */
+  long getInlineCount() {
+    return inlineCount.get();
+  }
+
+  /**
+   * Returns the latency of the keypair generation in background.
+   * @return the latency of the keypair generation in background.
+   */
+  LatencyHistogram getGenerationLatency() {
+    return generationLatency;
+  }
+
+  /**
+   * Returns the number of ready keypairs of each keypair specification. Exported as the gauge
+   * xipki_ca_keypair_pool_depth with the label spec.
+   * @return map of the keypair specification to the number of ready keypairs.
+   */
+  Map<String, Integer> getDepths() {
+    Map<String, Integer> depths = new TreeMap<>();
+    for (SpecPool pool : pools.values()) {
+      depths.merge(getDepthKey(pool.name), pool.keypairs.size(), Integer::sum);
+    }
+    return depths;
+  }
+
+  private static String getDepthKey(String specName) {
+    return specName.substring(0, specName.indexOf('/'));
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if (executor == null) {
+      return;
+    }
+
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+
+    MetricsRegistry registry = MetricsRegistry.getDefault();
+    for (String spec : getDepths().keySet()) {
+      registry.remove(DEPTH_METRIC, "spec", spec);
+    }
+    pools.clear();
+  } // method close
+
+  private EncryptedKeypair encrypt(GeneratedKeypair keypair)
+      throws GeneralSecurityException, IOException {
+    byte[] iv = new byte[12];
+    random.nextBytes(iv);
+    Cipher cipher = Cipher.getInstance(CIPHER_ALGO);
+    cipher.init(Cipher.ENCRYPT_MODE, wrappingKey, new GCMParameterSpec(128, iv));
+
+    byte[] encodedPrivateKeyInfo = keypair.privateKeyInfo.getEncoded();
+    try {
+      return new EncryptedKeypair(keypair.publicKeyInfo.getEncoded(), iv,
+          cipher.doFinal(encodedPrivateKeyInfo));
+    } finally {
+      Arrays.fill(encodedPrivateKeyInfo, (byte) 0);
+    }
+  } // method encrypt
+
+  private GeneratedKeypair decrypt(EncryptedKeypair encrypted) throws GeneralSecurityException {
+    Cipher cipher = Cipher.getInstance(CIPHER_ALGO);
+    cipher.init(Cipher.DECRYPT_MODE, wrappingKey, new GCMParameterSpec(128, encrypted.iv));
+
+    byte[] encodedPrivateKeyInfo = cipher.doFinal(encrypted.encryptedPrivateKeyInfo);
+    try {
+      return new GeneratedKeypair(
+          SubjectPublicKeyInfo.getInstance(encrypted.encodedPublicKeyInfo),
+          PrivateKeyInfo.getInstance(encodedPrivateKeyInfo));
+    } finally {
+      Arrays.fill(encodedPrivateKeyInfo, (byte) 0);
+    }
+  } // method decrypt
+
+  private static String getSpecName(KeypairGenControl control) throws IOException {
+    String prefix;
+    byte[] encodedKeyAlgorithm;
+    if (control instanceof KeypairGenControl.RSAKeypairGenControl) {
+      KeypairGenControl.RSAKeypairGenControl tkg = (KeypairGenControl.RSAKeypairGenControl) control;
+      prefix = "RSA-" + tkg.getKeysize() + "/" + tkg.getPublicExponent().toString(16);
+      encodedKeyAlgorithm = tkg.getKeyAlgorithm().getEncoded();
+    } else if (control instanceof KeypairGenControl.ECKeypairGenControl) {
+      KeypairGenControl.ECKeypairGenControl tkg = (KeypairGenControl.ECKeypairGenControl) control;
+      prefix = "EC-" + tkg.getCurveOid().getId();
+      encodedKeyAlgorithm = tkg.getKeyAlgorithm().getEncoded();
+    } else if (control instanceof KeypairGenControl.DSAKeypairGenControl) {
+      KeypairGenControl.DSAKeypairGenControl tkg = (KeypairGenControl.DSAKeypairGenControl) control;
+      prefix = "DSA-" + tkg.getParameterSpec().getP().bitLength();
+      encodedKeyAlgorithm = tkg.getKeyAlgorithm().getEncoded();
+    } else if (control instanceof KeypairGenControl.EDDSAKeypairGenControl) {
+      KeypairGenControl.EDDSAKeypairGenControl tkg =
+          (KeypairGenControl.EDDSAKeypairGenControl) control;
+      prefix = "EdDSA-" + tkg.getKeyAlgorithm().getAlgorithm().getId();
+      encodedKeyAlgorithm = tkg.getKeyAlgorithm().getEncoded();
+    } else {
+      throw new IllegalArgumentException("unknown KeyPairGenControl " + control);
+    }
+
+    return prefix + "/" + Hex.toHexString(encodedKeyAlgorithm);
+  } // method getSpecName
+
+  static GeneratedKeypair generateKeypair(KeypairGenControl control, SecureRandom random)
+      throws GeneralSecurityException, IOException {
+    if (control instanceof KeypairGenControl.RSAKeypairGenControl) {
+      KeypairGenControl.RSAKeypairGenControl tkg = (KeypairGenControl.RSAKeypairGenControl) control;
+      KeyPair kp = KeyUtil.generateRSAKeypair(tkg.getKeysize(), tkg.getPublicExponent(), random);
+      java.security.interfaces.RSAPublicKey rsaPubKey =
+          (java.security.interfaces.RSAPublicKey) kp.getPublic();
+
+      SubjectPublicKeyInfo publicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(),
+          new RSAPublicKey(rsaPubKey.getModulus(), rsaPubKey.getPublicExponent()));
+
+      /*
+       * RSA private keys are BER-encoded according to PKCS #1’s RSAPrivateKey ASN.1 type.
+       *
+       * RSAPrivateKey ::= SEQUENCE {
+       *   version           Version,
+       *   modulus           INTEGER,  -- n
+       *   publicExponent    INTEGER,  -- e
+       *   privateExponent   INTEGER,  -- d
+       *   prime1            INTEGER,  -- p
+       *   prime2            INTEGER,  -- q
+       *   exponent1         INTEGER,  -- d mod (p-1)
+       *   exponent2         INTEGER,  -- d mod (q-1)
+       *   coefficient       INTEGER,  -- (inverse of q) mod p
+       *   otherPrimeInfos   OtherPrimeInfos OPTIONAL.
+       * }
+       */
+      RSAPrivateCrtKey priv = (RSAPrivateCrtKey) kp.getPrivate();
+      PrivateKeyInfo privateKeyInfo = new PrivateKeyInfo(tkg.getKeyAlgorithm(),
+         new RSAPrivateKey(priv.getModulus(),
+             priv.getPublicExponent(), priv.getPrivateExponent(),
+             priv.getPrimeP(), priv.getPrimeQ(),
+             priv.getPrimeExponentP(), priv.getPrimeExponentQ(),
+             priv.getCrtCoefficient()));
+      return new GeneratedKeypair(publicKeyInfo, privateKeyInfo);
+    } else if (control instanceof KeypairGenControl.ECKeypairGenControl) {
+      KeypairGenControl.ECKeypairGenControl tkg = (KeypairGenControl.ECKeypairGenControl) control;
+      KeyPair kp = KeyUtil.generateECKeypair(tkg.getCurveOid(), random);
+      ECPublicKey pub = (ECPublicKey) kp.getPublic();
+      int orderBitLength = pub.getParams().getOrder().bitLength();
+
+      byte[] keyData = KeyUtil.getUncompressedEncodedECPoint(pub.getW(), orderBitLength);
+      SubjectPublicKeyInfo publicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(),
+          keyData);
+
+      /*
+       * ECPrivateKey ::= SEQUENCE {
+       *   Version INTEGER { ecPrivkeyVer1(1) }
+       *                   (ecPrivkeyVer1),
+       *   privateKey      OCTET STRING,
+       *   parameters [0]  Parameters OPTIONAL,
+       *   publicKey  [1]  BIT STRING OPTIONAL
+       * }
+       *
+       * Since the EC domain parameters are placed in the PKCS #8’s privateKeyAlgorithm field,
+       * the optional parameters field in an ECPrivateKey must be omitted. A Cryptoki
+       * application must be able to unwrap an ECPrivateKey that contains the optional publicKey
+       * field; however, what is done with this publicKey field is outside the scope of
+       * Cryptoki.
+       */
+      ECPrivateKey priv = (ECPrivateKey) kp.getPrivate();
+      PrivateKeyInfo privateKeyInfo = new PrivateKeyInfo(tkg.getKeyAlgorithm(),
+          new org.bouncycastle.asn1.sec.ECPrivateKey(orderBitLength, priv.getS()));
+      return new GeneratedKeypair(publicKeyInfo, privateKeyInfo);
+    } else if (control instanceof KeypairGenControl.DSAKeypairGenControl) {
+      KeypairGenControl.DSAKeypairGenControl tkg = (KeypairGenControl.DSAKeypairGenControl) control;
+      KeyPair kp = KeyUtil.generateDSAKeypair(tkg.getParameterSpec(), random);
+
+      SubjectPublicKeyInfo publicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(),
+          new ASN1Integer(((DSAPublicKey) kp.getPublic()).getY()));
+
+      // DSA private keys are represented as BER-encoded ASN.1 type INTEGER.
+      DSAPrivateKey priv = (DSAPrivateKey) kp.getPrivate();
+      PrivateKeyInfo privateKeyInfo = new PrivateKeyInfo(publicKeyInfo.getAlgorithm(),
+          new ASN1Integer(priv.getX()));
+      return new GeneratedKeypair(publicKeyInfo, privateKeyInfo);
+    } else if (control instanceof KeypairGenControl.EDDSAKeypairGenControl) {
+      KeypairGenControl.EDDSAKeypairGenControl tkg =
+          (KeypairGenControl.EDDSAKeypairGenControl) control;
+      KeyPair kp = KeyUtil.generateEdECKeypair(tkg.getKeyAlgorithm().getAlgorithm(), random);
+      SubjectPublicKeyInfo publicKeyInfo = KeyUtil.createSubjectPublicKeyInfo(kp.getPublic());
+      // make sure that the algorithm match
+      if (!publicKeyInfo.getAlgorithm().equals(tkg.getKeyAlgorithm())) {
+        throw new InvalidKeyException("invalid SubjectPublicKeyInfo.algorithm");
+      }
+      return new GeneratedKeypair(publicKeyInfo,
+          PrivateKeyInfo.getInstance(kp.getPrivate().getEncoded()));
+    } else {
+      throw new IllegalArgumentException("unknown KeyPairGenControl " + control);
+    }
+  } // method generateKeypair
+
+}
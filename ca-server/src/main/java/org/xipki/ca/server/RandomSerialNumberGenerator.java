@@ -20,6 +20,8 @@ package org.xipki.ca.server;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 
+import org.xipki.security.StripedSecureRandom;
+
 /**
  * Random serial number generator.
  *
@@ -27,14 +29,14 @@ import java.security.SecureRandom;
  * @since 2.0.0
  */
 
-class RandomSerialNumberGenerator {
+public class RandomSerialNumberGenerator {
 
   private static RandomSerialNumberGenerator instance;
 
   private final SecureRandom random;
 
   private RandomSerialNumberGenerator() {
-    this.random = new SecureRandom();
+    this.random = StripedSecureRandom.getInstance();
   }
 
   /**
@@ -52,18 +54,38 @@ class RandomSerialNumberGenerator {
       rndBytes[0] &= 0x7F;
 
       // check NAF weight
-      BigInteger bi = new BigInteger(rndBytes);
-
-      BigInteger threeBi = bi.shiftLeft(1).add(bi);
-      BigInteger diff = threeBi.xor(bi);
-      int nafWeight = diff.bitCount();
-      if (nafWeight >= minWeight) {
-        return bi;
+      if (nafWeight(rndBytes) >= minWeight) {
+        return new BigInteger(rndBytes);
       }
     }
 
   } // method nextSerialNumber
 
+  /**
+   * Computes the NAF weight of the non-negative big-endian integer {@code n}, namely
+   * the bit count of {@code 3n XOR n}, without {@link BigInteger}.
+   *
+   * @param bytes big-endian encoded non-negative integer.
+   * @return the NAF weight.
+   */
+  static int nafWeight(byte[] bytes) {
+    int weight = 0;
+    // carry of the addition 2n + n
+    int carry = 0;
+    // most significant bit of the less significant byte, shifted into this byte by 2n
+    int shiftIn = 0;
+    for (int i = bytes.length - 1; i >= 0; i--) {
+      int b = bytes[i] & 0xFF;
+      int sum = (((b << 1) | shiftIn) & 0xFF) + b + carry;
+      carry = sum >>> 8;
+      shiftIn = b >>> 7;
+      weight += Integer.bitCount((sum & 0xFF) ^ b);
+    }
+
+    // bits of 3n above the most significant byte of n
+    return weight + Integer.bitCount(shiftIn + carry);
+  } // method nafWeight
+
   public static synchronized RandomSerialNumberGenerator getInstance() {
     if (instance == null) {
       instance = new RandomSerialNumberGenerator();
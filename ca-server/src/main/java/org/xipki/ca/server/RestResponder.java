@@ -26,9 +26,14 @@ import java.io.EOFException;
 import java.math.BigInteger;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 
@@ -53,6 +58,7 @@ import org.xipki.ca.api.RestAPIConstants;
 import org.xipki.ca.api.mgmt.CaStatus;
 import org.xipki.ca.api.mgmt.PermissionConstants;
 import org.xipki.ca.api.mgmt.RequestorInfo;
+import org.xipki.ca.server.CrlCache.CachedCrl;
 import org.xipki.ca.server.cmp.CmpResponder;
 import org.xipki.security.CrlReason;
 import org.xipki.security.X509Cert;
@@ -168,6 +174,8 @@ public class RestResponder {
 
   private static final int OK = 200;
 
+  private static final int NOT_MODIFIED = 304;
+
   private static final int BAD_REQUEST = 400;
 
   private static final int UNAUTHORIZED = 401;
@@ -182,6 +190,18 @@ public class RestResponder {
 
   private static final int SERVICE_UNAVAILABLE = 503;
 
+  private static final String HEADER_ETAG = "ETag";
+
+  private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+  private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+  private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+  private static final DateTimeFormatter HTTP_DATE_FORMATTER =
+      DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+        .withZone(ZoneOffset.UTC);
+
   private static final Logger LOG = LoggerFactory.getLogger(RestResponder.class);
 
   private final CaManagerImpl responderManager;
@@ -527,15 +547,24 @@ public class RestResponder {
           }
         }
 
-        X509CRL crl = ca.getCrl(crlNumber);
+        CachedCrl crl = ca.getCachedCrl(crlNumber);
         if (crl == null) {
           String message = "could not get CRL";
           LOG.warn(message);
           throw new HttpRespAuditException(INTERNAL_SERVER_ERROR, message, INFO, FAILED);
         }
 
-        respCt = RestAPIConstants.CT_pkix_crl;
-        respBytes = crl.getEncoded();
+        Map<String, String> headers = new HashMap<>();
+        headers.put(HEADER_ETAG, crl.getEtag());
+        headers.put(HEADER_LAST_MODIFIED,
+            HTTP_DATE_FORMATTER.format(crl.getThisUpdate().toInstant()));
+        if (isNotModified(httpRetriever, crl)) {
+          // conditional GET, the client has already the CRL
+          return new RestResponse(NOT_MODIFIED, null, headers, null);
+        }
+
+        headers.put(RestAPIConstants.HEADER_PKISTATUS, RestAPIConstants.PKISTATUS_accepted);
+        return new RestResponse(OK, RestAPIConstants.CT_pkix_crl, headers, crl.getEncoded());
       } else if (RestAPIConstants.CMD_new_crl.equalsIgnoreCase(command)) {
         try {
           requestor.assertPermitted(PermissionConstants.GEN_CRL);
@@ -682,4 +711,36 @@ public class RestResponder {
     return new BigInteger(tmpStr);
   } // method toBigInt
 
+  private static boolean isNotModified(HttpRequestMetadataRetriever httpRetriever,
+      CachedCrl crl) {
+    // RFC 7232 3.3: If-Modified-Since is ignored if If-None-Match is present
+    String ifNoneMatch = httpRetriever.getHeader(HEADER_IF_NONE_MATCH);
+    if (ifNoneMatch != null) {
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+
+        if ("*".equals(tag) || crl.getEtag().equals(tag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    String ifModifiedSince = httpRetriever.getHeader(HEADER_IF_MODIFIED_SINCE);
+    if (ifModifiedSince != null) {
+      try {
+        long since = ZonedDateTime.parse(ifModifiedSince.trim(),
+            DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+        return crl.getThisUpdate().getTime() / 1000 <= since;
+      } catch (DateTimeParseException ex) {
+        LOG.debug("ignore invalid {} '{}'", HEADER_IF_MODIFIED_SINCE, ifModifiedSince);
+      }
+    }
+
+    return false;
+  } // method isNotModified
+
 }
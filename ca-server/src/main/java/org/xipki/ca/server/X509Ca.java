@@ -28,46 +28,38 @@ import static org.xipki.ca.api.OperationException.ErrorCode.SYSTEM_UNAVAILABLE;
 import static org.xipki.ca.api.OperationException.ErrorCode.UNKNOWN_CERT;
 import static org.xipki.ca.api.OperationException.ErrorCode.UNKNOWN_CERT_PROFILE;
 
+import java.io.BufferedInputStream;
 import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
-import java.security.KeyPair;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.PublicKey;
-import java.security.SecureRandom;
-import java.security.SignatureException;
+import java.security.GeneralSecurityException;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
-import java.security.interfaces.DSAPrivateKey;
-import java.security.interfaces.DSAPublicKey;
-import java.security.interfaces.ECPrivateKey;
-import java.security.interfaces.ECPublicKey;
-import java.security.interfaces.RSAPrivateCrtKey;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.bouncycastle.asn1.ASN1EncodableVector;
-import org.bouncycastle.asn1.ASN1GeneralizedTime;
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1Sequence;
@@ -81,28 +73,21 @@ import org.bouncycastle.asn1.DERUTF8String;
 import org.bouncycastle.asn1.pkcs.CertificationRequest;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
-import org.bouncycastle.asn1.pkcs.RSAPrivateKey;
-import org.bouncycastle.asn1.pkcs.RSAPublicKey;
 import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
 import org.bouncycastle.asn1.x509.CRLDistPoint;
-import org.bouncycastle.asn1.x509.CRLReason;
 import org.bouncycastle.asn1.x509.Certificate;
 import org.bouncycastle.asn1.x509.CertificateList;
 import org.bouncycastle.asn1.x509.DistributionPointName;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.Extensions;
-import org.bouncycastle.asn1.x509.GeneralName;
-import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
 import org.bouncycastle.asn1.x509.ReasonFlags;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.asn1.x509.Time;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
 import org.bouncycastle.cert.CertIOException;
-import org.bouncycastle.cert.X509CRLHolder;
-import org.bouncycastle.cert.X509v2CRLBuilder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.crypto.RuntimeCryptoException;
 import org.slf4j.Logger;
@@ -138,6 +123,7 @@ import org.xipki.ca.api.profile.CertprofileException;
 import org.xipki.ca.api.profile.ExtensionValue;
 import org.xipki.ca.api.profile.ExtensionValues;
 import org.xipki.ca.api.profile.KeypairGenControl;
+import org.xipki.ca.server.CrlCache.CachedCrl;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.ConcurrentBagEntrySigner;
 import org.xipki.security.ConcurrentContentSigner;
@@ -151,7 +137,6 @@ import org.xipki.security.ObjectIdentifiers;
 import org.xipki.security.ObjectIdentifiers.Extn;
 import org.xipki.security.X509Cert;
 import org.xipki.security.XiSecurityException;
-import org.xipki.security.util.KeyUtil;
 import org.xipki.security.util.RSABrokenKey;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
@@ -160,9 +145,12 @@ import org.xipki.util.CompareUtil;
 import org.xipki.util.ConfPairs;
 import org.xipki.util.DateUtil;
 import org.xipki.util.HealthCheckResult;
+import org.xipki.util.InvalidConfException;
+import org.xipki.util.LatencyHistogram;
 import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
 import org.xipki.util.Validity;
+import org.xipki.util.metrics.MetricsRegistry;
 
 /**
  * X509CA.
@@ -377,7 +365,7 @@ public class X509Ca implements Closeable {
 
   } // class SuspendedCertsRevoker
 
-  private static class OperationExceptionWithIndex extends OperationException {
+  static class OperationExceptionWithIndex extends OperationException {
 
     private static final long serialVersionUID = 1L;
 
@@ -433,7 +421,15 @@ public class X509Ca implements Closeable {
 
   private final CaManagerImpl caManager;
 
-  private SecureRandom random = new SecureRandom();
+  private final CrlCache crlCache;
+
+  private final IssuedCertVerifier certVerifier;
+
+  private final LatencyHistogram certGenLatency;
+
+  private final LongAdder certGenFailures;
+
+  private final LatencyHistogram crlGenLatency;
 
   private AtomicBoolean crlGenInProcess = new AtomicBoolean(false);
 
@@ -443,6 +439,8 @@ public class X509Ca implements Closeable {
 
   private ScheduledFuture<?> suspendedCertsRevoker;
 
+  private volatile ExecutorService certGenExecutor;
+
   private final ConcurrentSkipListSet<Long> publicKeyCertsInProcess = new ConcurrentSkipListSet<>();
 
   private final ConcurrentSkipListSet<Long> subjectCertsInProcess = new ConcurrentSkipListSet<>();
@@ -458,6 +456,42 @@ public class X509Ca implements Closeable {
     this.caIdent = caInfo.getIdent();
     this.caCert = caInfo.getCert();
     this.certstore = Args.notNull(certstore, "certstore");
+    this.crlCache = new CrlCache(certstore, caIdent, masterMode);
+
+    try {
+      this.certVerifier = new IssuedCertVerifier(caInfo.getCaEntry().getExtraControl(),
+          caInfo.getSignerType(), caCert.getCert().getPublicKey());
+    } catch (InvalidConfException ex) {
+      LogUtil.error(LOG, ex, "invalid certificate verification policy for CA " + caIdent);
+      throw new OperationException(SYSTEM_FAILURE, ex);
+    }
+
+    MetricsRegistry registry = MetricsRegistry.getDefault();
+    String caName = caIdent.getName();
+    this.certGenLatency = registry.latency("xipki_ca_cert_generation_seconds",
+        "Time to generate a certificate", "ca", caName);
+    this.certGenFailures = registry.counter("xipki_ca_cert_generation_failures_total",
+        "Number of certificates which could not be generated", "ca", caName);
+    this.crlGenLatency = registry.latency("xipki_ca_crl_generation_seconds",
+        "Time to generate a CRL", "ca", caName);
+    registry.counter("xipki_ca_cert_verifications_total",
+        "Number of verified issued certificates", certVerifier::getVerifiedCount, "ca", caName);
+    registry.counter("xipki_ca_cert_verification_failures_total",
+        "Number of issued certificates whose signature could not be verified",
+        certVerifier::getFailureCount, "ca", caName);
+    if (ctlogClient != null) {
+      for (CtLogClient.CtLogServer server : ctlogClient.getServers()) {
+        String url = server.getUrl();
+        registry.latency("xipki_ca_ctlog_seconds", "Time to submit a precertificate to a CT log",
+            server.getLatency(), "ca", caName, "ctlog", url);
+        registry.counter("xipki_ca_ctlog_successes_total",
+            "Number of precertificates submitted to a CT log",
+            server::getSuccessCount, "ca", caName, "ctlog", url);
+        registry.counter("xipki_ca_ctlog_failures_total",
+            "Number of precertificates which could not be submitted to a CT log",
+            server::getFailureCount, "ca", caName, "ctlog", url);
+      }
+    }
 
     SubjectPublicKeyInfo caSpki = this.caCert.getCertHolder().getSubjectPublicKeyInfo();
     ASN1ObjectIdentifier caSpkiAlgId = caSpki.getAlgorithm().getAlgorithm();
@@ -544,6 +578,14 @@ public class X509Ca implements Closeable {
     return caInfo;
   }
 
+  /**
+   * Returns the number of issued certificates whose signature could not be verified.
+   * @return the number of verification failures.
+   */
+  public long getCertVerificationFailures() {
+    return certVerifier.getFailureCount();
+  }
+
   public CmpControl getCmpControl() {
     return caInfo.getCmpControl();
   }
@@ -616,32 +658,17 @@ public class X509Ca implements Closeable {
   }
 
   public X509CRL getCrl(BigInteger crlNumber) throws OperationException {
-    LOG.info("     START getCrl: ca={}, crlNumber={}", caIdent.getName(), crlNumber);
-    boolean successful = false;
+    CachedCrl cachedCrl = getCachedCrl(crlNumber);
+    if (cachedCrl == null) {
+      return null;
+    }
 
     try {
-      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
-      if (encodedCrl == null) {
-        return null;
-      }
-
-      try {
-        X509CRL crl = X509Util.parseCrl(encodedCrl);
-        successful = true;
-        if (LOG.isInfoEnabled()) {
-          String timeStr = new Time(crl.getThisUpdate()).getTime();
-          LOG.info("SUCCESSFUL getCrl: ca={}, thisUpdate={}", caIdent.getName(), timeStr);
-        }
-        return crl;
-      } catch (CRLException | CertificateException ex) {
-        throw new OperationException(SYSTEM_FAILURE, ex);
-      } catch (RuntimeException ex) {
-        throw new OperationException(SYSTEM_FAILURE, ex);
-      }
-    } finally {
-      if (!successful) {
-        LOG.info("    FAILED getCrl: ca={}", caIdent.getName());
-      }
+      return X509Util.parseCrl(cachedCrl.getEncoded());
+    } catch (CRLException | CertificateException ex) {
+      throw new OperationException(SYSTEM_FAILURE, ex);
+    } catch (RuntimeException ex) {
+      throw new OperationException(SYSTEM_FAILURE, ex);
     }
   } // method getCrl
 
@@ -650,32 +677,43 @@ public class X509Ca implements Closeable {
   }
 
   public CertificateList getBcCrl(BigInteger crlNumber) throws OperationException {
+    CachedCrl cachedCrl = getCachedCrl(crlNumber);
+    if (cachedCrl == null) {
+      return null;
+    }
+
+    try {
+      return cachedCrl.getCrl();
+    } catch (RuntimeException ex) {
+      throw new OperationException(SYSTEM_FAILURE, ex);
+    }
+  } // method getBcCrl
+
+  /**
+   * Returns the DER-encoded CRL from the cache.
+   *
+   * @param crlNumber CRL number. {@code null} to get the current CRL.
+   * @return the CRL, or {@code null} if no such CRL is available.
+   * @throws OperationException if error occurs.
+   */
+  CachedCrl getCachedCrl(BigInteger crlNumber) throws OperationException {
     LOG.info("     START getCrl: ca={}, crlNumber={}", caIdent.getName(), crlNumber);
     boolean successful = false;
 
     try {
-      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
-      if (encodedCrl == null) {
-        return null;
-      }
-
-      try {
-        CertificateList crl = CertificateList.getInstance(encodedCrl);
-        successful = true;
-        if (LOG.isInfoEnabled()) {
-          LOG.info("SUCCESSFUL getCrl: ca={}, thisUpdate={}", caIdent.getName(),
-              crl.getThisUpdate().getTime());
-        }
-        return crl;
-      } catch (RuntimeException ex) {
-        throw new OperationException(SYSTEM_FAILURE, ex);
+      CachedCrl crl = crlCache.getCrl(crlNumber);
+      successful = true;
+      if (crl != null && LOG.isInfoEnabled()) {
+        LOG.info("SUCCESSFUL getCrl: ca={}, thisUpdate={}", caIdent.getName(),
+            new Time(crl.getThisUpdate()).getTime());
       }
+      return crl;
     } finally {
       if (!successful) {
         LOG.info("    FAILED getCrl: ca={}", caIdent.getName());
       }
     }
-  } // method getCrl
+  } // method getCachedCrl
 
   private void cleanupCrlsWithoutException(String msgId) throws OperationException {
     try {
@@ -753,11 +791,13 @@ public class X509Ca implements Closeable {
       throws OperationException {
     boolean successful = false;
     AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_gen_crl, msgId);
+    long start = System.nanoTime();
     try {
       X509CRL crl = generateCrl0(deltaCrl, thisUpdate, nextUpdate, event, msgId);
       successful = true;
       return crl;
     } finally {
+      crlGenLatency.recordNanos(System.nanoTime() - start);
       finish(event, successful);
     }
   }
@@ -793,11 +833,31 @@ public class X509Ca implements Closeable {
       boolean indirectCrl = (crlSigner != null);
       X500Name crlIssuer = indirectCrl ? crlSigner.getSubjectAsX500Name() : pci.getX500Subject();
 
-      X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(crlIssuer, thisUpdate);
-      if (nextUpdate != null) {
-        crlBuilder.setNextUpdate(nextUpdate);
+      // the revoked certificates are sorted and written to temporary files in the builder
+      CrlStreamBuilder crlBuilder = new CrlStreamBuilder(crlIssuer, thisUpdate, nextUpdate,
+          indirectCrl ? pci.getX500Subject() : null);
+      try {
+        X509CRL crl = buildCrl(crlBuilder, deltaCrl, thisUpdate, crlSigner, indirectCrl,
+            crlIssuer, event, msgId);
+        successful = true;
+        return crl;
+      } finally {
+        crlBuilder.close();
+      }
+    } finally {
+      if (!successful) {
+        LOG.info("    FAILED generateCrl: ca={}", caIdent.getName());
       }
+    }
+  } // method generateCrl0
 
+  private X509CRL buildCrl(CrlStreamBuilder crlBuilder, boolean deltaCrl, Date thisUpdate,
+      SignerEntryWrapper crlSigner, boolean indirectCrl, X500Name crlIssuer, AuditEvent event,
+      String msgId) throws OperationException {
+    CrlControl control = caInfo.getCrlControl();
+    PublicCaInfo pci = caInfo.getPublicCaInfo();
+
+    try {
       final int numEntries = 100;
 
       Date notExpireAt;
@@ -809,98 +869,60 @@ public class X509Ca implements Closeable {
       }
 
       long startId = 1;
-
-      // we have to cache the serial entries to sort them
-      List<CertRevInfoWithSerial> allRevInfos = new LinkedList<>();
+      BigInteger afterSerial = null;
 
       List<CertRevInfoWithSerial> revInfos;
+      CrlControl crlControl = caInfo.getCrlControl();
 
+      // the entries of the full CRL are paged by the serial number, and are written by the
+      // crlBuilder directly to the temporary files. The few entries of the delta CRL are paged
+      // by the ID of the DELTACRL_CACHE, and are sorted in the crlBuilder.
       do {
         if (deltaCrl) {
           revInfos = certstore.getCertsForDeltaCrl(caIdent, startId, numEntries,
               control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
         } else {
-          revInfos = certstore.getRevokedCerts(caIdent, notExpireAt, startId, numEntries,
+          revInfos = certstore.getRevokedCerts(caIdent, notExpireAt, afterSerial, numEntries,
               control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
         }
-        allRevInfos.addAll(revInfos);
 
         long maxId = 1;
         for (CertRevInfoWithSerial revInfo : revInfos) {
           if (revInfo.getId() > maxId) {
             maxId = revInfo.getId();
           }
-        } // end for
-        startId = maxId + 1;
-      } while (revInfos.size() >= numEntries); // end do
-
-      if (revInfos != null) { // free the memory
-        revInfos.clear();
-      }
-
-      // sort the list by SerialNumber ASC
-      Collections.sort(allRevInfos);
-
-      boolean isFirstCrlEntry = true;
-      CrlControl crlControl = caInfo.getCrlControl();
+          afterSerial = revInfo.getSerial();
 
-      for (CertRevInfoWithSerial revInfo : allRevInfos) {
-        CrlReason reason = revInfo.getReason();
-        if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
-          reason = CrlReason.UNSPECIFIED;
-        }
-
-        Date revocationTime = revInfo.getRevocationTime();
-        Date invalidityTime = revInfo.getInvalidityTime();
-
-        switch (crlControl.getInvalidityDateMode()) {
-          case forbidden:
-            invalidityTime = null;
-            break;
-          case optional:
-            break;
-          case required:
-            if (invalidityTime == null) {
-              invalidityTime = revocationTime;
-            }
-            break;
-          default:
-            throw new IllegalStateException(
-                "unknown TripleState " + crlControl.getInvalidityDateMode());
-        }
-
-        BigInteger serial = revInfo.getSerial();
-        LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
-
-        if (!indirectCrl || !isFirstCrlEntry) {
-          if (invalidityTime != null) {
-            crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode(),
-                invalidityTime);
-          } else {
-            crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode());
+          CrlReason reason = revInfo.getReason();
+          if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
+            reason = CrlReason.UNSPECIFIED;
           }
-          continue;
-        }
 
-        List<Extension> extensions = new ArrayList<>(3);
-        if (reason != CrlReason.UNSPECIFIED) {
-          Extension ext = createReasonExtension(reason.getCode());
-          extensions.add(ext);
-        }
-        if (invalidityTime != null) {
-          Extension ext = createInvalidityDateExtension(invalidityTime);
-          extensions.add(ext);
-        }
-
-        Extension ext = createCertificateIssuerExtension(pci.getX500Subject());
-        extensions.add(ext);
-
-        crlBuilder.addCRLEntry(serial, revocationTime,
-            new Extensions(extensions.toArray(new Extension[0])));
-        isFirstCrlEntry = false;
-      }
+          Date revocationTime = revInfo.getRevocationTime();
+          Date invalidityTime = revInfo.getInvalidityTime();
+
+          switch (crlControl.getInvalidityDateMode()) {
+            case forbidden:
+              invalidityTime = null;
+              break;
+            case optional:
+              break;
+            case required:
+              if (invalidityTime == null) {
+                invalidityTime = revocationTime;
+              }
+              break;
+            default:
+              throw new IllegalStateException(
+                  "unknown TripleState " + crlControl.getInvalidityDateMode());
+          }
 
-      allRevInfos.clear(); // free the memory
+          BigInteger serial = revInfo.getSerial();
+          LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
+          crlBuilder.addCrlEntry(serial, revocationTime, reason.getCode(), invalidityTime);
+        } // end for
+        startId = maxId + 1;
+      } while (revInfos.size() >= numEntries); // end do
 
       BigInteger crlNumber = caInfo.nextCrlNumber();
       event.addEventData(CaAuditConstants.NAME_crl_number, crlNumber);
@@ -943,7 +965,7 @@ public class X509Ca implements Closeable {
               crlIssuer);
           crlBuilder.addExtension(Extension.freshestCRL, false, cdp);
         }
-      } catch (CertIOException | CertificateEncodingException ex) {
+      } catch (IOException | CertificateEncodingException ex) {
         LogUtil.error(LOG, ex, "crlBuilder.addExtension");
         throw new OperationException(INVALID_EXTENSION, ex);
       }
@@ -961,37 +983,38 @@ public class X509Ca implements Closeable {
         throw new OperationException(SYSTEM_FAILURE, "NoIdleSignerException: " + ex.getMessage());
       }
 
-      X509CRLHolder crlHolder;
+      File crlFile;
       try {
-        crlHolder = crlBuilder.build(signer0.value());
+        crlFile = crlBuilder.build(signer0.value());
       } finally {
         concurrentSigner.requiteSigner(signer0);
       }
 
-      try {
-        X509CRL crl = X509Util.toX509Crl(crlHolder.toASN1Structure());
-        caInfo.getCaEntry().setNextCrlNumber(crlNumber.longValue() + 1);
-        caManager.commitNextCrlNo(caIdent, caInfo.getCaEntry().getNextCrlNumber());
-        publishCrl(crl);
-
-        successful = true;
-        LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}", caIdent.getName(),
-            crlNumber, crl.getThisUpdate());
+      // the CRL is read into memory only once, since the publishers, the certstore and
+      // the CRL cache require the complete CRL.
+      X509CRL crl;
+      try (InputStream crlStream = new BufferedInputStream(new FileInputStream(crlFile))) {
+        crl = X509Util.parseCrl(crlStream);
+      }
 
-        if (!deltaCrl) {
-          // clean up the CRL
-          cleanupCrlsWithoutException(msgId);
-        }
-        return crl;
-      } catch (CRLException | CertificateException ex) {
-        throw new OperationException(CRL_FAILURE, ex);
+      caInfo.getCaEntry().setNextCrlNumber(crlNumber.longValue() + 1);
+      caManager.commitNextCrlNo(caIdent, caInfo.getCaEntry().getNextCrlNumber());
+      if (publishCrl(crl)) {
+        crlCache.crlGenerated(crl.getEncoded(), crlNumber, crl.getThisUpdate());
       }
-    } finally {
-      if (!successful) {
-        LOG.info("    FAILED generateCrl: ca={}", caIdent.getName());
+
+      LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}, entries={}",
+          caIdent.getName(), crlNumber, crl.getThisUpdate(), crlBuilder.getNumEntries());
+
+      if (!deltaCrl) {
+        // clean up the CRL
+        cleanupCrlsWithoutException(msgId);
       }
+      return crl;
+    } catch (IOException | CRLException | CertificateException ex) {
+      throw new OperationException(CRL_FAILURE, ex);
     }
-  } // method generateCrl
+  } // method buildCrl
 
   /**
    * Add XiPKI extension CrlCertSet.
@@ -1006,7 +1029,7 @@ public class X509Ca implements Closeable {
    * }
    * </pre>
    */
-  private void addXipkiCertset(X509v2CRLBuilder crlBuilder, boolean deltaCrl, CrlControl control,
+  private void addXipkiCertset(CrlStreamBuilder crlBuilder, boolean deltaCrl, CrlControl control,
       Date notExpireAt, boolean onlyCaCerts, boolean onlyUserCerts) throws OperationException {
     if (deltaCrl || !control.isXipkiCertsetIncluded()) {
       return;
@@ -1062,8 +1085,8 @@ public class X509Ca implements Closeable {
     try {
       crlBuilder.addExtension(ObjectIdentifiers.Xipki.id_xipki_ext_crlCertset,
           false, new DERSet(vector));
-    } catch (CertIOException ex) {
-      throw new OperationException(INVALID_EXTENSION, "CertIOException: " + ex.getMessage());
+    } catch (IOException ex) {
+      throw new OperationException(INVALID_EXTENSION, "IOException: " + ex.getMessage());
     }
   }
 
@@ -1097,25 +1120,38 @@ public class X509Ca implements Closeable {
       return 0;
     }
 
-    if (!certstore.addCert(certInfo)) {
+    List<IdentifiedCertPublisher> publishers = publishers();
+    // the certificate is added to the publish queue of asynchronous publishers together
+    // with the certificate itself.
+    List<NameId> asynPublishers = new ArrayList<>(publishers.size());
+    for (IdentifiedCertPublisher publisher : publishers) {
+      if (publisher.isAsyn()) {
+        asynPublishers.add(publisher.getIdent());
+      }
+    }
+
+    int ret = certstore.addCert(certInfo, asynPublishers.isEmpty() ? null : asynPublishers);
+    if (ret == 1) {
       return 1;
     }
 
-    for (IdentifiedCertPublisher publisher : publishers()) {
-      if (!publisher.isAsyn()) {
-        boolean successful;
-        try {
-          successful = publisher.certificateAdded(certInfo);
-        } catch (RuntimeException ex) {
-          successful = false;
-          LogUtil.warn(LOG, ex, "could not publish certificate to the publisher "
-              + publisher.getIdent());
-        }
+    for (IdentifiedCertPublisher publisher : publishers) {
+      if (publisher.isAsyn()) {
+        continue;
+      }
 
-        if (successful) {
-          continue;
-        }
-      } // end if
+      boolean successful;
+      try {
+        successful = publisher.certificateAdded(certInfo);
+      } catch (RuntimeException ex) {
+        successful = false;
+        LogUtil.warn(LOG, ex, "could not publish certificate to the publisher "
+            + publisher.getIdent());
+      }
+
+      if (successful) {
+        continue;
+      }
 
       Long certId = certInfo.getCert().getCertId();
       try {
@@ -1126,7 +1162,7 @@ public class X509Ca implements Closeable {
       }
     } // end for
 
-    return 0;
+    return ret;
   } // method publishCert0
 
   public boolean republishCerts(List<String> publisherNames, int numThreads) {
@@ -1710,63 +1746,87 @@ public class X509Ca implements Closeable {
       }
     }
 
-    List<CertificateInfo> certInfos = new ArrayList<>(n);
-    OperationExceptionWithIndex exception = null;
+    ExecutorService executor = (n > 1) ? getCertGenExecutor() : null;
+    // all generated certificates are removed if one template fails
+    return AllOrNothingGenerator.generate(n, executor,
+        new AllOrNothingGenerator.Generator<CertificateInfo>() {
 
-    for (int i = 0; i < n; i++) {
-      if (exception != null) {
-        break;
-      }
-      GrantedCertTemplate gct = gcts.get(i);
-      final NameId certprofilIdent = gct.certprofile.getIdent();
-      final String subjectText = gct.grantedSubjectText;
-      LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
-          caIdent.getName(), certprofilIdent.getName(), subjectText);
+          @Override
+          public CertificateInfo generate(int index) throws OperationExceptionWithIndex {
+            return generateCert(index, gcts.get(index), requestor, reqType, transactionId,
+                msgId);
+          }
 
-      boolean successful = false;
-      try {
-        CertificateInfo certInfo = generateCert(gct, requestor, reqType, transactionId, msgId);
-        successful = true;
-        certInfos.add(certInfo);
-
-        if (LOG.isInfoEnabled()) {
-          String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
-          CertWithDbId cert = certInfo.getCert();
-          LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
-              prefix, caIdent.getName(), certprofilIdent.getName(), cert.getSubject(),
-              LogUtil.formatCsn(cert.getCert().getSerialNumber()));
-        }
-      } catch (OperationException ex) {
-        exception = new OperationExceptionWithIndex(i, ex);
-      } catch (Throwable th) {
-        exception = new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, th));
-      } finally {
-        if (!successful) {
-          LOG.error("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
-              caIdent.getName(), certprofilIdent.getName(), subjectText);
-        }
+          @Override
+          public void revert(CertificateInfo certInfo) {
+            BigInteger serial = certInfo.getCert().getCert().getSerialNumber();
+            try {
+              removeCert(serial, msgId);
+            } catch (Throwable thr) {
+              LogUtil.error(LOG, thr, "could not delete certificate serial=" + serial);
+            }
+          }
+
+        });
+  } // method generateCerts
+
+  private CertificateInfo generateCert(int index, GrantedCertTemplate gct,
+      RequestorInfo requestor, RequestType reqType, byte[] transactionId, String msgId)
+      throws OperationExceptionWithIndex {
+    final NameId certprofilIdent = gct.certprofile.getIdent();
+    final String subjectText = gct.grantedSubjectText;
+    LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
+        caIdent.getName(), certprofilIdent.getName(), subjectText);
+
+    boolean successful = false;
+    try {
+      CertificateInfo certInfo = generateCert(gct, requestor, reqType, transactionId, msgId);
+      successful = true;
+
+      if (LOG.isInfoEnabled()) {
+        String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
+        CertWithDbId cert = certInfo.getCert();
+        LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
+            prefix, caIdent.getName(), certprofilIdent.getName(), cert.getSubject(),
+            LogUtil.formatCsn(cert.getCert().getSerialNumber()));
+      }
+      return certInfo;
+    } catch (OperationException ex) {
+      throw new OperationExceptionWithIndex(index, ex);
+    } catch (Throwable th) {
+      throw new OperationExceptionWithIndex(index, new OperationException(SYSTEM_FAILURE, th));
+    } finally {
+      if (!successful) {
+        LOG.error("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
+            caIdent.getName(), certprofilIdent.getName(), subjectText);
       }
     }
+  } // method generateCert
 
-    if (exception != null) {
-      LOG.error("could not generate certificate for request[{}], reverted all generated"
-          + " certificates", exception.getIndex());
-      // delete generated certificates
-      for (CertificateInfo m : certInfos) {
-        BigInteger serial = m.getCert().getCert().getSerialNumber();
-        try {
-          removeCert(serial, msgId);
-        } catch (Throwable thr) {
-          LogUtil.error(LOG, thr, "could not delete certificate serial=" + serial);
+  /**
+   * Returns the executor to generate the certificates of one request in parallel.
+   * @return the executor, or {@code null} if the parallel generation is not activated.
+   */
+  private ExecutorService getCertGenExecutor() {
+    if (!caManager.isParallelCertGeneration()) {
+      return null;
+    }
+
+    ExecutorService executor = certGenExecutor;
+    if (executor == null) {
+      synchronized (this) {
+        executor = certGenExecutor;
+        if (executor == null) {
+          // sized to the maximal size of the signer pool, more threads would only wait for
+          // an idle signer
+          int parallelism = Math.max(1, caInfo.getSigner(null).getMaxParallelism());
+          executor = Executors.newFixedThreadPool(parallelism);
+          certGenExecutor = executor;
         }
       }
-
-      LogUtil.warn(LOG, exception);
-      throw exception;
     }
-
-    return certInfos;
-  }
+    return executor;
+  } // method getCertGenExecutor
 
   public CertificateInfo generateCert(CertTemplateData certTemplate, RequestorInfo requestor,
       RequestType reqType, byte[] transactionId, String msgId) throws OperationException {
@@ -1780,11 +1840,16 @@ public class X509Ca implements Closeable {
     AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_gen_cert, msgId);
 
     boolean successful = false;
+    long start = System.nanoTime();
     try {
       CertificateInfo ret = generateCert0(gct, requestor, reqType, transactionId, event);
       successful = (ret != null);
       return ret;
     } finally {
+      certGenLatency.recordNanos(System.nanoTime() - start);
+      if (!successful) {
+        certGenFailures.increment();
+      }
       finish(event, successful);
     }
   }
@@ -1935,7 +2000,7 @@ public class X509Ca implements Closeable {
           throw new OperationException(SYSTEM_FAILURE, ex);
         }
 
-        if (!verifySignature(cert)) {
+        if (!certVerifier.verify(bcCert, cert)) {
           throw new OperationException(SYSTEM_FAILURE,
               "could not verify the signature of generated certificate");
         }
@@ -2144,99 +2209,19 @@ public class X509Ca implements Closeable {
         }
 
         if (kg instanceof KeypairGenControl.RSAKeypairGenControl) {
-          KeypairGenControl.RSAKeypairGenControl tkg = (KeypairGenControl.RSAKeypairGenControl) kg;
-
-          int keysize = tkg.getKeysize();
-          if (keysize > 4096) {
+          if (((KeypairGenControl.RSAKeypairGenControl) kg).getKeysize() > 4096) {
             throw new OperationException(BAD_CERT_TEMPLATE, "keysize too large");
           }
-
-          BigInteger publicExponent = tkg.getPublicExponent();
-
-          KeyPair kp = KeyUtil.generateRSAKeypair(keysize, publicExponent, random);
-          java.security.interfaces.RSAPublicKey rsaPubKey =
-              (java.security.interfaces.RSAPublicKey) kp.getPublic();
-
-          grantedPublicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(),
-              new RSAPublicKey(rsaPubKey.getModulus(), rsaPubKey.getPublicExponent()));
-
-          /*
-           * RSA private keys are BER-encoded according to PKCS #1’s RSAPrivateKey ASN.1 type.
-           *
-           * RSAPrivateKey ::= SEQUENCE {
-           *   version           Version,
-           *   modulus           INTEGER,  -- n
-           *   publicExponent    INTEGER,  -- e
-           *   privateExponent   INTEGER,  -- d
-           *   prime1            INTEGER,  -- p
-           *   prime2            INTEGER,  -- q
-           *   exponent1         INTEGER,  -- d mod (p-1)
-           *   exponent2         INTEGER,  -- d mod (q-1)
-           *   coefficient       INTEGER,  -- (inverse of q) mod p
-           *   otherPrimeInfos   OtherPrimeInfos OPTIONAL.
-           * }
-           */
-          RSAPrivateCrtKey priv = (RSAPrivateCrtKey) kp.getPrivate();
-          privateKey = new PrivateKeyInfo(tkg.getKeyAlgorithm(),
-             new RSAPrivateKey(priv.getModulus(),
-                 priv.getPublicExponent(), priv.getPrivateExponent(),
-                 priv.getPrimeP(), priv.getPrimeQ(),
-                 priv.getPrimeExponentP(), priv.getPrimeExponentQ(),
-                 priv.getCrtCoefficient()));
-        } else if (kg instanceof KeypairGenControl.ECKeypairGenControl) {
-          KeypairGenControl.ECKeypairGenControl tkg = (KeypairGenControl.ECKeypairGenControl) kg;
-          ASN1ObjectIdentifier curveOid = tkg.getCurveOid();
-          KeyPair kp = KeyUtil.generateECKeypair(curveOid, random);
-          ECPublicKey pub = (ECPublicKey) kp.getPublic();
-          int orderBitLength = pub.getParams().getOrder().bitLength();
-
-          byte[] keyData = KeyUtil.getUncompressedEncodedECPoint(pub.getW(), orderBitLength);
-          grantedPublicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(), keyData);
-
-          /*
-           * ECPrivateKey ::= SEQUENCE {
-           *   Version INTEGER { ecPrivkeyVer1(1) }
-           *                   (ecPrivkeyVer1),
-           *   privateKey      OCTET STRING,
-           *   parameters [0]  Parameters OPTIONAL,
-           *   publicKey  [1]  BIT STRING OPTIONAL
-           * }
-           *
-           * Since the EC domain parameters are placed in the PKCS #8’s privateKeyAlgorithm field,
-           * the optional parameters field in an ECPrivateKey must be omitted. A Cryptoki
-           * application must be able to unwrap an ECPrivateKey that contains the optional publicKey
-           * field; however, what is done with this publicKey field is outside the scope of
-           * Cryptoki.
-           */
-          ECPrivateKey priv = (ECPrivateKey) kp.getPrivate();
-          privateKey = new PrivateKeyInfo(tkg.getKeyAlgorithm(),
-              new org.bouncycastle.asn1.sec.ECPrivateKey(orderBitLength, priv.getS()));
-        } else if (kg instanceof KeypairGenControl.DSAKeypairGenControl) {
-          KeypairGenControl.DSAKeypairGenControl tkg = (KeypairGenControl.DSAKeypairGenControl) kg;
-          KeyPair kp = KeyUtil.generateDSAKeypair(tkg.getParameterSpec(), random);
-
-          grantedPublicKeyInfo = new SubjectPublicKeyInfo(tkg.getKeyAlgorithm(),
-              new ASN1Integer(((DSAPublicKey) kp.getPublic()).getY()));
-
-          // DSA private keys are represented as BER-encoded ASN.1 type INTEGER.
-          DSAPrivateKey priv = (DSAPrivateKey) kp.getPrivate();
-          privateKey = new PrivateKeyInfo(grantedPublicKeyInfo.getAlgorithm(),
-              new ASN1Integer(priv.getX()));
-        } else if (kg instanceof KeypairGenControl.EDDSAKeypairGenControl) {
-          KeypairGenControl.EDDSAKeypairGenControl tkg =
-              (KeypairGenControl.EDDSAKeypairGenControl) kg;
-          KeyPair kp = KeyUtil.generateEdECKeypair(tkg.getKeyAlgorithm().getAlgorithm(), random);
-          grantedPublicKeyInfo = KeyUtil.createSubjectPublicKeyInfo(kp.getPublic());
-          // make sure that the algorithm match
-          if (!grantedPublicKeyInfo.getAlgorithm().equals(tkg.getKeyAlgorithm())) {
-            throw new OperationException(SYSTEM_FAILURE, "invalid SubjectPublicKeyInfo.algorithm");
-          }
-          privateKey = PrivateKeyInfo.getInstance(kp.getPrivate().getEncoded());
-        } else {
+        } else if (!(kg instanceof KeypairGenControl.ECKeypairGenControl
+            || kg instanceof KeypairGenControl.DSAKeypairGenControl
+            || kg instanceof KeypairGenControl.EDDSAKeypairGenControl)) {
           throw new RuntimeCryptoException("unknown KeyPairGenControl " + kg);
         }
-      } catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException
-          | NoSuchProviderException | InvalidKeyException | IOException ex) {
+
+        KeypairPool.GeneratedKeypair kp = caManager.getKeypairPool().take(kg);
+        grantedPublicKeyInfo = kp.getPublicKeyInfo();
+        privateKey = kp.getPrivateKeyInfo();
+      } catch (GeneralSecurityException | IOException ex) {
         throw new OperationException(SYSTEM_FAILURE, ex);
       }
     } else {
@@ -2664,19 +2649,6 @@ public class X509Ca implements Closeable {
     return event;
   }
 
-  private boolean verifySignature(X509Certificate cert) {
-    Args.notNull(cert, "cert");
-    PublicKey caPublicKey = caCert.getCert().getPublicKey();
-    try {
-      cert.verify(caPublicKey);
-      return true;
-    } catch (SignatureException | InvalidKeyException | CertificateException
-        | NoSuchAlgorithmException | NoSuchProviderException ex) {
-      LOG.debug("{} while verifying signature: {}", ex.getClass().getName(), ex.getMessage());
-      return false;
-    }
-  } // method verifySignature
-
   private SignerEntryWrapper getCrlSigner() {
     if (caInfo.getCrlControl() == null) {
       return null;
@@ -2719,33 +2691,17 @@ public class X509Ca implements Closeable {
     if (executor != null) {
       executor.purge();
     }
-  }
 
-  private static Extension createReasonExtension(int reasonCode) {
-    CRLReason crlReason = CRLReason.lookup(reasonCode);
-    try {
-      return new Extension(Extension.reasonCode, false, crlReason.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    if (ctlogClient != null) {
+      ctlogClient.close();
     }
-  }
 
-  private static Extension createInvalidityDateExtension(Date invalidityDate) {
-    try {
-      ASN1GeneralizedTime asnTime = new ASN1GeneralizedTime(invalidityDate);
-      return new Extension(Extension.invalidityDate, false, asnTime.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    if (certGenExecutor != null) {
+      certGenExecutor.shutdown();
+      certGenExecutor = null;
     }
-  }
 
-  private static Extension createCertificateIssuerExtension(X500Name certificateIssuer) {
-    try {
-      GeneralNames generalNames = new GeneralNames(new GeneralName(certificateIssuer));
-      return new Extension(Extension.certificateIssuer, true, generalNames.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
-    }
+    MetricsRegistry.getDefault().removeAll("ca", caIdent.getName());
   }
 
   // remove the RDNs with empty content
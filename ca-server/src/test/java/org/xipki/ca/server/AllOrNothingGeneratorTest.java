@@ -0,0 +1,207 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import static org.xipki.ca.api.OperationException.ErrorCode.BAD_CERT_TEMPLATE;
+import static org.xipki.ca.api.OperationException.ErrorCode.SYSTEM_FAILURE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.server.X509Ca.OperationExceptionWithIndex;
+
+/**
+ * Tests of the {@link AllOrNothingGenerator}, used to generate the certificates of one
+ * request.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class AllOrNothingGeneratorTest {
+
+  private static final int THREADS = 4;
+
+  private static ExecutorService executor;
+
+  /**
+   * Generates "cert-i" for the entry i, fails for the given entries.
+   */
+  private static class TestGenerator implements AllOrNothingGenerator.Generator<String> {
+
+    private final Set<Integer> failedIndexes;
+
+    private final List<Integer> generated = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<String> reverted = Collections.synchronizedList(new ArrayList<>());
+
+    private final Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+
+    // wait until THREADS entries are processed concurrently
+    private CyclicBarrier barrier;
+
+    TestGenerator(Integer... failedIndexes) {
+      this.failedIndexes = new HashSet<>(Arrays.asList(failedIndexes));
+    }
+
+    @Override
+    public String generate(int index) throws OperationExceptionWithIndex {
+      threads.add(Thread.currentThread().getName());
+      if (barrier != null) {
+        try {
+          barrier.await(10, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+          throw new IllegalStateException("entries are not processed in parallel", ex);
+        }
+      }
+
+      generated.add(index);
+      if (failedIndexes.contains(index)) {
+        throw new OperationExceptionWithIndex(index,
+            new OperationException(BAD_CERT_TEMPLATE, "failed " + index));
+      }
+      return "cert-" + index;
+    }
+
+    @Override
+    public void revert(String result) {
+      reverted.add(result);
+    }
+
+  } // class TestGenerator
+
+  @BeforeClass
+  public static void init() {
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testSequential() throws Exception {
+    TestGenerator generator = new TestGenerator();
+    List<String> results = AllOrNothingGenerator.generate(5, null, generator);
+    Assert.assertEquals(Arrays.asList("cert-0", "cert-1", "cert-2", "cert-3", "cert-4"),
+        results);
+    Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), generator.generated);
+    Assert.assertEquals(Collections.singleton(Thread.currentThread().getName()),
+        generator.threads);
+  } // method testSequential
+
+  @Test
+  public void testSequentialFailure() throws Exception {
+    TestGenerator generator = new TestGenerator(2);
+    try {
+      AllOrNothingGenerator.generate(5, null, generator);
+      Assert.fail("OperationExceptionWithIndex expected");
+    } catch (OperationExceptionWithIndex ex) {
+      Assert.assertEquals(2, ex.getIndex());
+      Assert.assertEquals(BAD_CERT_TEMPLATE, ex.getErrorCode());
+    }
+
+    // the entries after the failed one are not processed
+    Assert.assertEquals(Arrays.asList(0, 1, 2), generator.generated);
+    Assert.assertEquals(Arrays.asList("cert-0", "cert-1"), generator.reverted);
+  } // method testSequentialFailure
+
+  @Test
+  public void testParallel() throws Exception {
+    final int num = 3 * THREADS;
+    TestGenerator generator = new TestGenerator();
+    generator.barrier = new CyclicBarrier(THREADS);
+
+    List<String> results = AllOrNothingGenerator.generate(num, executor, generator);
+
+    // in the order of the entries
+    Assert.assertEquals(num, results.size());
+    for (int i = 0; i < num; i++) {
+      Assert.assertEquals("cert-" + i, results.get(i));
+    }
+    Assert.assertEquals(THREADS, generator.threads.size());
+    Assert.assertTrue(generator.reverted.isEmpty());
+  } // method testParallel
+
+  @Test
+  public void testParallelFailure() throws Exception {
+    final int num = 2 * THREADS;
+    TestGenerator generator = new TestGenerator(6, 3);
+    generator.barrier = new CyclicBarrier(THREADS);
+
+    try {
+      AllOrNothingGenerator.generate(num, executor, generator);
+      Assert.fail("OperationExceptionWithIndex expected");
+    } catch (OperationExceptionWithIndex ex) {
+      // the failure with the lowest index is reported
+      Assert.assertEquals(3, ex.getIndex());
+      Assert.assertEquals(BAD_CERT_TEMPLATE, ex.getErrorCode());
+      Assert.assertTrue(ex.getErrorMessage(), ex.getErrorMessage().endsWith("failed 3"));
+    }
+
+    // all entries are processed, and all generated results are reverted
+    Assert.assertEquals(num, generator.generated.size());
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList("cert-0", "cert-1", "cert-2", "cert-4", "cert-5", "cert-7")),
+        new HashSet<>(generator.reverted));
+    Assert.assertEquals(num - 2, generator.reverted.size());
+  } // method testParallelFailure
+
+  @Test
+  public void testParallelUnexpectedException() throws Exception {
+    AllOrNothingGenerator.Generator<String> generator =
+        new AllOrNothingGenerator.Generator<String>() {
+
+          @Override
+          public String generate(int index) {
+            if (index == 1) {
+              throw new IllegalStateException("unexpected");
+            }
+            return "cert-" + index;
+          }
+
+          @Override
+          public void revert(String result) {
+          }
+
+        };
+
+    try {
+      AllOrNothingGenerator.generate(3, executor, generator);
+      Assert.fail("OperationExceptionWithIndex expected");
+    } catch (OperationExceptionWithIndex ex) {
+      Assert.assertEquals(1, ex.getIndex());
+      Assert.assertEquals(SYSTEM_FAILURE, ex.getErrorCode());
+    }
+  } // method testParallelUnexpectedException
+
+}
@@ -0,0 +1,73 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ca.api.NameId;
+import org.xipki.util.StringUtil;
+
+/**
+ * AuthenticationCache test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class AuthenticationCacheTest {
+
+  private static final byte[] PASSWORD = StringUtil.toUtf8Bytes("password");
+
+  @Test
+  public void testHitAndInvalidate() {
+    AuthenticationCache cache = new AuthenticationCache(10, 60);
+    NameId user = new NameId(1, "user1");
+
+    Assert.assertNull("empty cache", cache.get("user1", PASSWORD));
+    cache.put("user1", PASSWORD, user, cache.getGeneration());
+
+    Assert.assertEquals("cached", user, cache.get("user1", PASSWORD));
+    Assert.assertNull("wrong password", cache.get("user1", StringUtil.toUtf8Bytes("wrong")));
+    Assert.assertNull("other user", cache.get("user2", PASSWORD));
+    Assert.assertEquals("hits", 1, cache.getHits());
+    Assert.assertEquals("misses", 3, cache.getMisses());
+
+    cache.invalidate("USER1");
+    Assert.assertNull("invalidated", cache.get("user1", PASSWORD));
+  }
+
+  @Test
+  public void testInvalidateDuringAuthentication() {
+    AuthenticationCache cache = new AuthenticationCache(10, 60);
+    long generation = cache.getGeneration();
+    // the user is changed while its password is being verified
+    cache.invalidate("user1");
+    cache.put("user1", PASSWORD, new NameId(1, "user1"), generation);
+    Assert.assertNull("stale authentication", cache.get("user1", PASSWORD));
+  }
+
+  @Test
+  public void testBounded() {
+    AuthenticationCache cache = new AuthenticationCache(2, 60);
+    for (int i = 0; i < 5; i++) {
+      cache.put("user" + i, PASSWORD, new NameId(i, "user" + i), cache.getGeneration());
+    }
+    Assert.assertEquals("size", 2, cache.size());
+  }
+
+}
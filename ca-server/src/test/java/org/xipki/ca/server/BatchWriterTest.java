@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * BatchWriter test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class BatchWriterTest {
+
+  private static class MemoryStore implements BatchWriter.RowStore<Integer> {
+
+    private final List<Integer> rows = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public void writeBatch(List<Integer> rows) throws Exception {
+      for (Integer row : rows) {
+        if (row < 0) {
+          throw new Exception("invalid row " + row);
+        }
+      }
+
+      this.rows.addAll(rows);
+      batchSizes.add(rows.size());
+    }
+
+    @Override
+    public int write(Integer row) {
+      if (row < 0) {
+        return 1;
+      }
+
+      rows.add(row);
+      batchSizes.add(1);
+      return 0;
+    }
+
+  } // class MemoryStore
+
+  @Test
+  public void testGroupCommit() throws Exception {
+    MemoryStore store = new MemoryStore();
+    List<Integer> results = write(store, 10, 50, -1);
+
+    Assert.assertEquals("number of rows", 200, store.rows.size());
+    for (Integer result : results) {
+      Assert.assertEquals("result", 0, result.intValue());
+    }
+
+    Assert.assertTrue("rows are not written in batches: " + store.batchSizes,
+        store.batchSizes.size() < store.rows.size());
+    for (Integer size : store.batchSizes) {
+      Assert.assertTrue("batch size " + size + " > 10", size <= 10);
+    }
+  }
+
+  @Test
+  public void testFailedRowInBatch() throws Exception {
+    MemoryStore store = new MemoryStore();
+    List<Integer> results = write(store, 50, 50, 17);
+
+    Assert.assertEquals("number of rows", 199, store.rows.size());
+    for (int i = 0; i < results.size(); i++) {
+      Assert.assertEquals("result of row " + i, (i == 17) ? 1 : 0, results.get(i).intValue());
+    }
+  }
+
+  private static List<Integer> write(MemoryStore store, int maxBatchSize, int maxWaitMs,
+      int invalidRow) throws Exception {
+    final int n = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(20);
+    BatchWriter<Integer> writer = new BatchWriter<>("rows", store, maxBatchSize, maxWaitMs);
+    try {
+      List<Future<Integer>> futures = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        final int row = (i == invalidRow) ? -1 : i;
+        futures.add(executor.submit(() -> writer.write(row)));
+      }
+
+      List<Integer> results = new ArrayList<>(n);
+      for (Future<Integer> future : futures) {
+        results.add(future.get());
+      }
+
+      Assert.assertEquals("rows in batches", n, writer.getRowCount());
+      Assert.assertTrue("largest batch size",
+          writer.getLargestBatchSize() <= maxBatchSize);
+      return results;
+    } finally {
+      writer.close();
+      executor.shutdown();
+    }
+  } // method write
+
+}
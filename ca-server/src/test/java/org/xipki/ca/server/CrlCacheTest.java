@@ -0,0 +1,198 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.server.CrlCache.CachedCrl;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Tests of the {@link CrlCache}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class CrlCacheTest {
+
+  private static KeyPair keyPair;
+
+  /**
+   * CRLs of one CA in the database.
+   */
+  private static class TestCrlSource implements CrlCache.CrlSource {
+
+    private final Map<Long, byte[]> crls = new TreeMap<>();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    void addCrl(long crlNumber, byte[] encoded) {
+      crls.put(crlNumber, encoded);
+    }
+
+    @Override
+    public byte[] getEncodedCrl(BigInteger crlNumber) {
+      loads.incrementAndGet();
+      if (crlNumber == null) {
+        return crls.isEmpty() ? null : crls.get(getMaxCrlNumber());
+      }
+      return crls.get(crlNumber.longValue());
+    }
+
+    @Override
+    public long getMaxCrlNumber() {
+      long max = 0;
+      for (Long crlNumber : crls.keySet()) {
+        max = Math.max(max, crlNumber);
+      }
+      return max;
+    }
+
+  } // class TestCrlSource
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    keyPair = kpGen.generateKeyPair();
+  }
+
+  @Test
+  public void testCurrentCrl() throws Exception {
+    TestCrlSource source = new TestCrlSource();
+    CrlCache cache = new CrlCache(source, true);
+    Assert.assertNull(cache.getCrl(null));
+
+    byte[] crl1 = createCrl(1);
+    source.addCrl(1, crl1);
+
+    CachedCrl cached = cache.getCrl(null);
+    Assert.assertArrayEquals(crl1, cached.getEncoded());
+    Assert.assertEquals(BigInteger.ONE, cached.getCrlNumber());
+    Assert.assertEquals("\"" + HashAlgo.SHA1.hexHash(crl1) + "\"", cached.getEtag());
+    Assert.assertEquals(new X500Name("CN=CA"), cached.getCrl().getIssuer());
+    Assert.assertSame(cached.getCrl(), cached.getCrl());
+
+    // served from the cache
+    int loads = source.loads.get();
+    for (int i = 0; i < 10; i++) {
+      Assert.assertSame(cached, cache.getCrl(null));
+    }
+    Assert.assertEquals(loads, source.loads.get());
+
+    // the same CRL requested by its number
+    Assert.assertSame(cached, cache.getCrl(BigInteger.ONE));
+    Assert.assertEquals(loads, source.loads.get());
+  } // method testCurrentCrl
+
+  @Test
+  public void testCrlGenerated() throws Exception {
+    TestCrlSource source = new TestCrlSource();
+    CrlCache cache = new CrlCache(source, true);
+
+    byte[] crl1 = createCrl(1);
+    source.addCrl(1, crl1);
+    Assert.assertArrayEquals(crl1, cache.getCrl(BigInteger.ONE).getEncoded());
+
+    byte[] crl2 = createCrl(2);
+    Date thisUpdate = new Date();
+    source.addCrl(2, crl2);
+    cache.crlGenerated(crl2, BigInteger.valueOf(2), thisUpdate);
+
+    int loads = source.loads.get();
+    CachedCrl current = cache.getCrl(null);
+    Assert.assertArrayEquals(crl2, current.getEncoded());
+    Assert.assertEquals(BigInteger.valueOf(2), current.getCrlNumber());
+    Assert.assertEquals(thisUpdate, current.getThisUpdate());
+    Assert.assertEquals(loads, source.loads.get());
+    // parsed on demand
+    Assert.assertEquals(2, current.getCrl().getRevokedCertificates().length);
+
+    // the numbered CRLs are discarded
+    Assert.assertArrayEquals(crl1, cache.getCrl(BigInteger.ONE).getEncoded());
+    Assert.assertEquals(loads + 1, source.loads.get());
+
+    // an older CRL of a concurrent generation does not replace the newer one
+    cache.crlGenerated(crl1, BigInteger.ONE, new Date());
+    Assert.assertSame(current, cache.getCrl(null));
+  } // method testCrlGenerated
+
+  @Test
+  public void testNumberedCrls() throws Exception {
+    TestCrlSource source = new TestCrlSource();
+    for (int i = 1; i <= 3; i++) {
+      source.addCrl(i, createCrl(i));
+    }
+
+    CrlCache cache = new CrlCache(source, true);
+    Assert.assertNull(cache.getCrl(BigInteger.TEN));
+
+    CachedCrl crl2 = cache.getCrl(BigInteger.valueOf(2));
+    Assert.assertEquals(BigInteger.valueOf(2), crl2.getCrlNumber());
+    int loads = source.loads.get();
+    Assert.assertSame(crl2, cache.getCrl(BigInteger.valueOf(2)));
+    Assert.assertEquals(loads, source.loads.get());
+  } // method testNumberedCrls
+
+  @Test
+  public void testSlaveMode() throws Exception {
+    TestCrlSource source = new TestCrlSource();
+    source.addCrl(1, createCrl(1));
+
+    CrlCache cache = new CrlCache(source, false);
+    CachedCrl crl1 = cache.getCrl(null);
+    Assert.assertSame(crl1, cache.getCrl(null));
+
+    // CRL generated by the CA in master mode
+    byte[] crl2 = createCrl(2);
+    source.addCrl(2, crl2);
+    CachedCrl current = cache.getCrl(null);
+    Assert.assertEquals(BigInteger.valueOf(2), current.getCrlNumber());
+    Assert.assertArrayEquals(crl2, current.getEncoded());
+    Assert.assertSame(current, cache.getCrl(null));
+  } // method testSlaveMode
+
+  private static byte[] createCrl(long crlNumber) throws Exception {
+    X500Name issuer = new X500Name("CN=CA");
+    Date thisUpdate = new Date(System.currentTimeMillis() / 1000 * 1000);
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(issuer, thisUpdate);
+    // CRL n contains n entries
+    for (long i = 1; i <= crlNumber; i++) {
+      builder.addCRLEntry(BigInteger.valueOf(100 + i), thisUpdate, 1);
+    }
+    builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
+    return builder.build(new JcaContentSignerBuilder("SHA256withECDSA")
+        .build(keyPair.getPrivate())).getEncoded();
+  } // method createCrl
+
+}
@@ -0,0 +1,188 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * CrlStreamBuilder test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class CrlStreamBuilderTest {
+
+  private static class Entry implements Comparable<Entry> {
+
+    private final BigInteger serial;
+
+    private final Date revocationTime;
+
+    private final int reason;
+
+    private final Date invalidityTime;
+
+    Entry(BigInteger serial, Date revocationTime, int reason, Date invalidityTime) {
+      this.serial = serial;
+      this.revocationTime = revocationTime;
+      this.reason = reason;
+      this.invalidityTime = invalidityTime;
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      return serial.compareTo(other.serial);
+    }
+
+  } // class Entry
+
+  private static final int[] REASONS = {0, 1, 3, 4, 5, 8};
+
+  @Test
+  public void testEmptyCrl() throws Exception {
+    assertSameAsBc(Collections.<Entry>emptyList(), false);
+  }
+
+  @Test
+  public void testDirectCrl() throws Exception {
+    assertSameAsBc(createEntries(1000), false);
+  }
+
+  @Test
+  public void testIndirectCrl() throws Exception {
+    assertSameAsBc(createEntries(1000), true);
+  }
+
+  @Test
+  public void testEntriesOrderedByHexSerial() throws Exception {
+    // order of the column SN in the database
+    List<Entry> entries = createEntries(1000);
+    Collections.sort(entries, Comparator.comparing(entry -> entry.serial.toString(16)));
+    assertSameAsBc(entries, false);
+  }
+
+  private static List<Entry> createEntries(int num) {
+    Random random = new Random(1234);
+    long now = System.currentTimeMillis() / 1000 * 1000;
+
+    List<Entry> entries = new ArrayList<>(num);
+    for (int i = 0; i < num; i++) {
+      BigInteger serial = new BigInteger(32 + random.nextInt(128), random).add(BigInteger.ONE);
+      Date revocationTime = new Date(now - random.nextInt(1000000) * 1000L);
+      Date invalidityTime = random.nextBoolean()
+          ? new Date(revocationTime.getTime() - 3600000L) : null;
+      entries.add(new Entry(serial, revocationTime,
+          REASONS[random.nextInt(REASONS.length)], invalidityTime));
+    }
+    return entries;
+  }
+
+  private static void assertSameAsBc(List<Entry> entries, boolean indirect) throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+    kpGen.initialize(2048);
+    KeyPair kp = kpGen.generateKeyPair();
+
+    X500Name crlIssuer = new X500Name("CN=CRL Issuer,O=myorg,C=DE");
+    X500Name caSubject = new X500Name("CN=CA,O=myorg,C=DE");
+    Date thisUpdate = new Date(System.currentTimeMillis() / 1000 * 1000);
+    Date nextUpdate = new Date(thisUpdate.getTime() + 86400000L);
+
+    // stream builder, small run size to force merging of multiple runs
+    byte[] streamCrl;
+    File crlFile;
+    try (CrlStreamBuilder builder = new CrlStreamBuilder(crlIssuer, thisUpdate, nextUpdate,
+        indirect ? caSubject : null, 64)) {
+      for (Entry entry : entries) {
+        builder.addCrlEntry(entry.serial, entry.revocationTime, entry.reason,
+            entry.invalidityTime);
+      }
+      builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(10));
+      crlFile = builder.build(createSigner(kp.getPrivate()));
+      streamCrl = Files.readAllBytes(crlFile.toPath());
+    }
+    Assert.assertFalse("temporary CRL file not deleted", crlFile.exists());
+
+    // BouncyCastle builder
+    List<Entry> sortedEntries = new ArrayList<>(entries);
+    Collections.sort(sortedEntries);
+
+    X509v2CRLBuilder bcBuilder = new X509v2CRLBuilder(crlIssuer, thisUpdate);
+    bcBuilder.setNextUpdate(nextUpdate);
+    boolean first = true;
+    for (Entry entry : sortedEntries) {
+      if (indirect && first) {
+        List<Extension> extns = new ArrayList<>(3);
+        if (entry.reason != 0) {
+          extns.add(new Extension(Extension.reasonCode, false,
+              CRLReason.lookup(entry.reason).getEncoded()));
+        }
+        if (entry.invalidityTime != null) {
+          extns.add(new Extension(Extension.invalidityDate, false,
+              new ASN1GeneralizedTime(entry.invalidityTime).getEncoded()));
+        }
+        extns.add(new Extension(Extension.certificateIssuer, true,
+            new GeneralNames(new GeneralName(caSubject)).getEncoded()));
+        bcBuilder.addCRLEntry(entry.serial, entry.revocationTime,
+            new Extensions(extns.toArray(new Extension[0])));
+      } else if (entry.invalidityTime != null) {
+        bcBuilder.addCRLEntry(entry.serial, entry.revocationTime, entry.reason,
+            entry.invalidityTime);
+      } else {
+        bcBuilder.addCRLEntry(entry.serial, entry.revocationTime, entry.reason);
+      }
+      first = false;
+    }
+    bcBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(10));
+    byte[] bcCrl = bcBuilder.build(createSigner(kp.getPrivate())).getEncoded();
+
+    Assert.assertTrue("CRL generated by CrlStreamBuilder differs from BouncyCastle",
+        Arrays.equals(bcCrl, streamCrl));
+  }
+
+  private static ContentSigner createSigner(PrivateKey key) throws Exception {
+    return new JcaContentSignerBuilder("SHA256withRSA").build(key);
+  }
+
+}
@@ -0,0 +1,241 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.OperationException;
+import org.xipki.security.CtLog.SignedCertificateTimestampList;
+import org.xipki.security.X509Cert;
+import org.xipki.util.IoUtil;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * CtLogClient test against local stub CT log servers.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class CtLogClientTest {
+
+  // sha256 (4), ecdsa (3), signature of 2 bytes
+  private static final String RESPONSE = "{\"sct_version\":0,"
+      + "\"id\":\"AAECAwQFBgcICQoLDA0ODxAREhMUFRYXGBkaGxwdHh8=\","
+      + "\"timestamp\":1577836800000,\"extensions\":\"\",\"signature\":\"BAMAAhI0\"}";
+
+  /**
+   * Called by the stub CT log before the response is sent.
+   */
+  private interface BeforeResponse {
+
+    /**
+     * Returns whether to send the configured status code, otherwise 500.
+     */
+    boolean run() throws InterruptedException;
+
+  } // interface BeforeResponse
+
+  private static final List<HttpServer> stubServers = new ArrayList<>();
+
+  // answers only if 3 requests are processed concurrently
+  private static final CountDownLatch concurrentRequests = new CountDownLatch(3);
+
+  // released by the test after the client has returned
+  private static final CountDownLatch heldLogRelease = new CountDownLatch(1);
+
+  private static final AtomicBoolean heldLogResponded = new AtomicBoolean();
+
+  private static final ExecutorService stubExecutor = Executors.newCachedThreadPool();
+
+  private static X509Cert caCert;
+
+  private static String fastLog;
+
+  private static String concurrentLog;
+
+  private static String heldLog;
+
+  private static String failingLog;
+
+  private static String slowLog;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    fastLog = startStubLog(200, () -> true);
+    failingLog = startStubLog(500, () -> true);
+    concurrentLog = startStubLog(200, () -> {
+      concurrentRequests.countDown();
+      return concurrentRequests.await(10, TimeUnit.SECONDS);
+    });
+    heldLog = startStubLog(200, () -> {
+      heldLogRelease.await(10, TimeUnit.SECONDS);
+      heldLogResponded.set(true);
+      return true;
+    });
+    slowLog = startStubLog(200, () -> {
+      Thread.sleep(5000);
+      return true;
+    });
+    caCert = createCert();
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    heldLogRelease.countDown();
+    for (HttpServer server : stubServers) {
+      server.stop(0);
+    }
+    stubExecutor.shutdownNow();
+  }
+
+  @Test
+  public void testConcurrentSubmission() throws Exception {
+    // the stub log answers successfully only if all 3 requests arrive concurrently
+    CtLogClient client = new CtLogClient(
+        Arrays.asList(concurrentLog, concurrentLog + "/", concurrentLog + "/a"), null, 3, 30000);
+    try {
+      SignedCertificateTimestampList scts = client.getCtLogScts(new byte[10], caCert, null);
+      Assert.assertEquals("number of SCTs", 3, scts.getSctList().size());
+      for (CtLogClient.CtLogServer server : client.getServers()) {
+        Assert.assertEquals("success count", 1, server.getSuccessCount());
+        Assert.assertEquals("latency count", 1, server.getLatency().getCount());
+      }
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  public void testContinueWithMinScts() throws Exception {
+    // the held log answers only after the client has returned
+    CtLogClient client = new CtLogClient(
+        Arrays.asList(heldLog, fastLog, failingLog), null, 1, 30000);
+    try {
+      SignedCertificateTimestampList scts = client.getCtLogScts(new byte[10], caCert, null);
+      Assert.assertEquals("number of SCTs", 1, scts.getSctList().size());
+      Assert.assertFalse("did not continue after the first SCT", heldLogResponded.get());
+    } finally {
+      heldLogRelease.countDown();
+      client.close();
+    }
+  }
+
+  @Test
+  public void testNotEnoughScts() throws Exception {
+    CtLogClient client = new CtLogClient(Arrays.asList(fastLog, failingLog), null, 2, 5000);
+    try {
+      client.getCtLogScts(new byte[10], caCert, null);
+      Assert.fail("OperationException expected");
+    } catch (OperationException ex) {
+      // expected
+    } finally {
+      client.close();
+    }
+
+    Assert.assertEquals("failure count", 1, client.getServers().get(1).getFailureCount());
+  }
+
+  @Test
+  public void testReadTimeout() throws Exception {
+    CtLogClient client = new CtLogClient(Arrays.asList(fastLog, slowLog), null, 2, 500);
+    long start = System.currentTimeMillis();
+    try {
+      client.getCtLogScts(new byte[10], caCert, null);
+      Assert.fail("OperationException expected");
+    } catch (OperationException ex) {
+      // expected
+    } finally {
+      client.close();
+    }
+
+    long duration = System.currentTimeMillis() - start;
+    Assert.assertTrue("not aborted after the read timeout: " + duration + " ms", duration < 3000);
+    Assert.assertEquals("failure count", 1, client.getServers().get(1).getFailureCount());
+  }
+
+  private static String startStubLog(final int statusCode, final BeforeResponse beforeResponse)
+      throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    // threads are required to answer the concurrent requests from the same client
+    server.setExecutor(stubExecutor);
+    server.createContext("/", exchange -> {
+      IoUtil.read(exchange.getRequestBody());
+      int status = 500;
+      try {
+        if (beforeResponse.run()) {
+          status = statusCode;
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+
+      byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+    });
+    server.start();
+    stubServers.add(server);
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/ctlog";
+  } // method startStubLog
+
+  private static X509Cert createCert() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    KeyPair kp = kpGen.generateKeyPair();
+
+    X500Name subject = new X500Name("CN=CA");
+    Date notBefore = new Date();
+    Date notAfter = new Date(notBefore.getTime() + 24L * 3600 * 1000);
+    X509CertificateHolder holder = new JcaX509v3CertificateBuilder(subject, BigInteger.ONE,
+        notBefore, notAfter, subject, kp.getPublic())
+        .build(new JcaContentSignerBuilder("SHA256withECDSA").build(kp.getPrivate()));
+    X509Certificate cert = new JcaX509CertificateConverter().getCertificate(holder);
+    return new X509Cert(cert);
+  } // method createCert
+
+}
@@ -0,0 +1,112 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Certificate;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.util.ConfPairs;
+import org.xipki.util.InvalidConfException;
+
+/**
+ * IssuedCertVerifier test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class IssuedCertVerifierTest {
+
+  private static KeyPair caKeyPair;
+
+  private static Certificate cert;
+
+  private static Certificate tamperedCert;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    caKeyPair = kpGen.generateKeyPair();
+
+    X500Name subject = new X500Name("CN=CA");
+    Date notBefore = new Date();
+    Date notAfter = new Date(notBefore.getTime() + 24L * 3600 * 1000);
+    cert = new JcaX509v3CertificateBuilder(subject, BigInteger.ONE, notBefore, notAfter,
+        subject, caKeyPair.getPublic())
+        .build(new JcaContentSignerBuilder("SHA256withECDSA").build(caKeyPair.getPrivate()))
+        .toASN1Structure();
+
+    byte[] signature = cert.getSignature().getOctets().clone();
+    signature[signature.length - 1] ^= 0x01;
+    tamperedCert = Certificate.getInstance(new DERSequence(new ASN1Encodable[]{
+        cert.getTBSCertificate(), cert.getSignatureAlgorithm(), new DERBitString(signature)}));
+  }
+
+  @Test
+  public void testAlways() throws Exception {
+    IssuedCertVerifier verifier = new IssuedCertVerifier(null, "pkcs11", caKeyPair.getPublic());
+    Assert.assertEquals(IssuedCertVerifier.Mode.always, verifier.getMode());
+    Assert.assertTrue("valid signature", verifier.verify(cert, null));
+    Assert.assertFalse("invalid signature", verifier.verify(tamperedCert, null));
+    Assert.assertEquals("verified count", 2, verifier.getVerifiedCount());
+    Assert.assertEquals("failure count", 1, verifier.getFailureCount());
+  }
+
+  @Test
+  public void testSample() throws Exception {
+    ConfPairs conf = new ConfPairs(IssuedCertVerifier.KEY_MODE, "sample");
+    conf.putPair(IssuedCertVerifier.KEY_SAMPLE, "10");
+    IssuedCertVerifier verifier = new IssuedCertVerifier(conf, "pkcs12", caKeyPair.getPublic());
+    for (int i = 0; i < 100; i++) {
+      verifier.verify(cert, null);
+    }
+    Assert.assertEquals("verified count", 10, verifier.getVerifiedCount());
+  }
+
+  @Test
+  public void testNonHsm() throws Exception {
+    ConfPairs conf = new ConfPairs(IssuedCertVerifier.KEY_MODE, "non-hsm");
+    IssuedCertVerifier verifier = new IssuedCertVerifier(conf, "pkcs11", caKeyPair.getPublic());
+    Assert.assertTrue("not verified", verifier.verify(tamperedCert, null));
+    Assert.assertEquals("verified count", 0, verifier.getVerifiedCount());
+
+    verifier = new IssuedCertVerifier(conf, "pkcs12", caKeyPair.getPublic());
+    Assert.assertFalse("invalid signature", verifier.verify(tamperedCert, null));
+    Assert.assertEquals("verified count", 1, verifier.getVerifiedCount());
+  }
+
+  @Test(expected = InvalidConfException.class)
+  public void testInvalidMode() throws Exception {
+    new IssuedCertVerifier(new ConfPairs(IssuedCertVerifier.KEY_MODE, "never"), "pkcs12",
+        caKeyPair.getPublic());
+  }
+
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.IOException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+import org.bouncycastle.asn1.sec.SECObjectIdentifiers;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.profile.KeypairGenControl;
+import org.xipki.util.metrics.MetricsRegistry;
+
+/**
+ * KeypairPool test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class KeypairPoolTest {
+
+  private static final KeypairGenControl EC_CONTROL =
+      new KeypairGenControl.ECKeypairGenControl(SECObjectIdentifiers.secp256r1);
+
+  private static final String DEPTH_GAUGE = "xipki_ca_keypair_pool_depth{spec=\"EC-"
+      + SECObjectIdentifiers.secp256r1.getId() + "\"}";
+
+  @BeforeClass
+  public static void init() {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+  }
+
+  @Test
+  public void testPool() throws Exception {
+    KeypairPool pool = new KeypairPool(4, 1);
+    try {
+      // first request of this specification, the pool is still empty
+      assertKeypair(pool.take(EC_CONTROL));
+      Assert.assertEquals("inline count", 1, pool.getInlineCount());
+
+      long deadline = System.currentTimeMillis() + 30000;
+      while (pool.getDepths().getOrDefault("EC-" + SECObjectIdentifiers.secp256r1.getId(), 0) < 4
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertTrue("refilled count", pool.getRefilledCount() >= 4);
+      Assert.assertTrue("depth gauge", metricsText().contains(DEPTH_GAUGE + " 4"));
+
+      for (int i = 0; i < 4; i++) {
+        assertKeypair(pool.take(EC_CONTROL));
+      }
+      Assert.assertEquals("pooled count", 4, pool.getPooledCount());
+      Assert.assertEquals("inline count", 1, pool.getInlineCount());
+    } finally {
+      pool.close();
+    }
+    Assert.assertFalse("depth gauge removed", metricsText().contains(DEPTH_GAUGE));
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    KeypairPool pool = new KeypairPool(0, 1);
+    try {
+      assertKeypair(pool.take(EC_CONTROL));
+      assertKeypair(pool.take(EC_CONTROL));
+      Assert.assertEquals("inline count", 2, pool.getInlineCount());
+      Assert.assertEquals("pooled count", 0, pool.getPooledCount());
+      Assert.assertTrue("no pool", pool.getDepths().isEmpty());
+    } finally {
+      pool.close();
+    }
+  }
+
+  private static String metricsText() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    MetricsRegistry.getDefault().writeTextFormat(sb);
+    return sb.toString();
+  }
+
+  private static void assertKeypair(KeypairPool.GeneratedKeypair keypair) throws Exception {
+    KeyFactory kf = KeyFactory.getInstance("EC", "BC");
+    PublicKey publicKey = kf.generatePublic(
+        new X509EncodedKeySpec(keypair.getPublicKeyInfo().getEncoded()));
+    PrivateKey privateKey = kf.generatePrivate(
+        new PKCS8EncodedKeySpec(keypair.getPrivateKeyInfo().getEncoded()));
+
+    byte[] data = "keypair-pool".getBytes();
+    Signature signer = Signature.getInstance("SHA256withECDSA", "BC");
+    signer.initSign(privateKey);
+    signer.update(data);
+    byte[] signature = signer.sign();
+
+    Signature verifier = Signature.getInstance("SHA256withECDSA", "BC");
+    verifier.initVerify(publicKey);
+    verifier.update(data);
+    Assert.assertTrue("keypair does not match", verifier.verify(signature));
+  }
+
+}
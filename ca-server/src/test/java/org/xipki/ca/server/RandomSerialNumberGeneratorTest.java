@@ -0,0 +1,72 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * RandomSerialNumberGenerator test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class RandomSerialNumberGeneratorTest {
+
+  @Test
+  public void testNafWeight() {
+    Random random = new Random(5381);
+    for (int len = 1; len <= 20; len++) {
+      byte[] bytes = new byte[len];
+      for (int i = 0; i < 1000; i++) {
+        random.nextBytes(bytes);
+        bytes[0] &= 0x7F;
+        Assert.assertEquals("NAF weight", nafWeight(new BigInteger(bytes)),
+            RandomSerialNumberGenerator.nafWeight(bytes));
+      }
+
+      // all bits of the value set
+      for (int i = 0; i < len; i++) {
+        bytes[i] = (byte) 0xFF;
+      }
+      bytes[0] = 0x7F;
+      Assert.assertEquals("NAF weight", nafWeight(new BigInteger(bytes)),
+          RandomSerialNumberGenerator.nafWeight(bytes));
+    }
+  }
+
+  @Test
+  public void testNextSerialNumber() {
+    RandomSerialNumberGenerator generator = RandomSerialNumberGenerator.getInstance();
+    for (int i = 0; i < 100; i++) {
+      BigInteger serial = generator.nextSerialNumber(20);
+      Assert.assertEquals("signum", 1, serial.signum());
+      Assert.assertTrue("bit length", serial.bitLength() <= 159);
+      Assert.assertTrue("NAF weight", nafWeight(serial) >= 40);
+    }
+  }
+
+  private static int nafWeight(BigInteger bi) {
+    return bi.shiftLeft(1).add(bi).xor(bi).bitCount();
+  }
+
+}
@@ -55,6 +55,7 @@ import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
 import org.xipki.util.XipkiBaseDir;
+import org.xipki.util.metrics.MetricsConf;
 
 /**
  * CA ServletFilter.
@@ -75,6 +76,8 @@ public class CaServletFilter implements Filter {
 
   private HealthCheckServlet healthServlet;
 
+  private MetricsServlet metricsServlet;
+
   private HttpCmpServlet cmpServlet;
 
   private HttpRestServlet restServlet;
@@ -83,6 +86,8 @@ public class CaServletFilter implements Filter {
 
   private boolean remoteMgmtEnabled;
 
+  private boolean metricsEnabled;
+
   private boolean logReqResp;
 
   private HttpMgmtServlet mgmtServlet;
@@ -145,6 +150,14 @@ public class CaServletFilter implements Filter {
     this.healthServlet = new HealthCheckServlet();
     this.healthServlet.setResponderManager(caManager);
 
+    MetricsConf metricsConf = conf.getMetrics();
+    this.metricsEnabled = metricsConf != null && metricsConf.isEnabled();
+    LOG.info("metrics endpoint is {}", metricsEnabled ? "enabled" : "disabled");
+    if (metricsEnabled) {
+      this.metricsServlet = new MetricsServlet();
+      this.metricsServlet.setConf(metricsConf);
+    }
+
     this.restServlet = new HttpRestServlet();
     this.restServlet.setResponderManager(caManager);
     this.restServlet.setLogReqResp(logReqResp);
@@ -197,6 +210,8 @@ public class CaServletFilter implements Filter {
     if (caManager != null) {
       caManager.close();
     }
+
+    Audits.close();
   } // method destroy
 
   @Override
@@ -222,6 +237,12 @@ public class CaServletFilter implements Filter {
     } else if (path.startsWith("/health/")) {
       req.setAttribute(HttpConstants.ATTR_XIPKI_PATH, path.substring(7)); // 7 = "/health".length()
       healthServlet.service(req, res);
+    } else if (path.equals("/metrics")) {
+      if (metricsEnabled) {
+        metricsServlet.service(req, res);
+      } else {
+        res.sendError(HttpServletResponse.SC_NOT_FOUND);
+      }
     } else if (path.startsWith("/mgmt/")) {
       if (remoteMgmtEnabled) {
         req.setAttribute(HttpConstants.ATTR_XIPKI_PATH, path.substring(5)); // 5 = "/mgmt".length()
@@ -78,6 +78,7 @@ public class HttpCmpServlet extends HttpServlet {
   @Override
   protected void doPost(HttpServletRequest req, HttpServletResponse resp)
       throws ServletException, IOException {
+    long start = System.nanoTime();
     X509Certificate clientCert = TlsHelper.getTlsClientCert(req);
     AuditService auditService = Audits.getAuditService();
     AuditEvent event = new AuditEvent(new Date());
@@ -181,6 +182,7 @@ public class HttpCmpServlet extends HttpServlet {
       resp.flushBuffer();
       event.finish();
       auditService.logEvent(event);
+      RequestMetrics.record(RequestType.CMP, event, start);
     }
   } // method doPost
 
@@ -33,6 +33,7 @@ import org.xipki.audit.AuditLevel;
 import org.xipki.audit.AuditService;
 import org.xipki.audit.AuditStatus;
 import org.xipki.audit.Audits;
+import org.xipki.ca.api.RequestType;
 import org.xipki.ca.server.CaManagerImpl;
 import org.xipki.ca.server.HttpRequestMetadataRetriever;
 import org.xipki.ca.server.RestResponder;
@@ -80,6 +81,7 @@ public class HttpRestServlet extends HttpServlet {
 
   private void service0(HttpServletRequest req, HttpServletResponse resp, boolean viaPost)
       throws IOException {
+    long start = System.nanoTime();
     AuditService auditService = Audits.getAuditService();
     AuditEvent event = new AuditEvent(new Date());
     try {
@@ -130,6 +132,7 @@ public class HttpRestServlet extends HttpServlet {
     } finally {
       event.finish();
       auditService.logEvent(event);
+      RequestMetrics.record(RequestType.REST, event, start);
     }
   } // method service0
 
@@ -100,6 +100,7 @@ public class HttpScepServlet extends HttpServlet {
 
   private void service0(HttpServletRequest req, HttpServletResponse resp, boolean viaPost)
       throws ServletException, IOException {
+    long start = System.nanoTime();
     String path = (String) req.getAttribute(HttpConstants.ATTR_XIPKI_PATH);
     String caAlias = null;
     String certprofileName = null;
@@ -283,6 +284,7 @@ public class HttpScepServlet extends HttpServlet {
       sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
     } finally {
       audit(auditService, event, auditLevel, auditStatus, auditMessage);
+      RequestMetrics.record(RequestType.SCEP, event, start);
     }
   } // method service0
 
@@ -0,0 +1,127 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.servlet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditEventData;
+import org.xipki.audit.AuditStatus;
+import org.xipki.ca.api.RequestType;
+import org.xipki.ca.api.RestAPIConstants;
+import org.xipki.ca.server.CaAuditConstants;
+import org.xipki.scep.transaction.Operation;
+import org.xipki.util.metrics.MetricsRegistry;
+
+/**
+ * Records the latency of the CMP, REST and SCEP requests, per protocol, command and status.
+ * The command is taken from the audit event. Since the REST command and the SCEP operation
+ * are specified by the client, only the known ones are used as label, all others are
+ * recorded as {@code other}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class RequestMetrics {
+
+  private static final String NAME = "xipki_ca_request_seconds";
+
+  private static final String HELP = "Latency of the CA requests";
+
+  private static final String EVENT_TYPE = "event_type";
+
+  private static final String OTHER = "other";
+
+  private static final Set<String> REST_COMMANDS = Collections.unmodifiableSet(new HashSet<>(
+      Arrays.asList(RestAPIConstants.CMD_cacert, RestAPIConstants.CMD_cacertchain,
+          RestAPIConstants.CMD_dhpoc_certs, RestAPIConstants.CMD_revoke_cert,
+          RestAPIConstants.CMD_delete_cert, RestAPIConstants.CMD_enroll_cert,
+          RestAPIConstants.CMD_enroll_cert_cagenkeypair, RestAPIConstants.CMD_crl,
+          RestAPIConstants.CMD_new_crl)));
+
+  private RequestMetrics() {
+  }
+
+  /**
+   * Records the latency of the request.
+   *
+   * @param requestType
+   *          Type (protocol) of the request.
+   * @param event
+   *          The audit event of the request.
+   * @param startTime
+   *          Start time of the request, as returned by {@link System#nanoTime()}.
+   */
+  static void record(RequestType requestType, AuditEvent event, long startTime) {
+    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime);
+    AuditStatus status = event.getStatus();
+
+    MetricsRegistry.getDefault().latency(NAME, HELP,
+        "protocol", requestType.name().toLowerCase(),
+        "command", command(requestType, event),
+        "status", (status == null ? AuditStatus.UNDEFINED : status).name().toLowerCase())
+      .record(micros);
+  } // method record
+
+  private static String command(RequestType requestType, AuditEvent event) {
+    String command;
+    if (requestType == RequestType.SCEP) {
+      command = eventData(event, CaAuditConstants.Scep.NAME_operation);
+      if (command != null) {
+        try {
+          return Operation.forValue(command).getCode();
+        } catch (IllegalArgumentException ex) {
+          return OTHER;
+        }
+      }
+    } else {
+      command = eventData(event, EVENT_TYPE);
+      if (command != null) {
+        // multiple event types are separated by ", ", the first one is used
+        int idx = command.indexOf(',');
+        if (idx != -1) {
+          command = command.substring(0, idx);
+        }
+
+        if (requestType == RequestType.REST) {
+          command = command.toLowerCase();
+          if (!REST_COMMANDS.contains(command)) {
+            return OTHER;
+          }
+        }
+      }
+    }
+
+    return command == null ? OTHER : command;
+  } // method command
+
+  private static String eventData(AuditEvent event, String name) {
+    for (AuditEventData data : event.getEventDatas()) {
+      if (data.getName().equals(name)) {
+        return data.getValue();
+      }
+    }
+    return null;
+  }
+
+}
@@ -27,17 +27,22 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException.Reason;
 import org.xipki.util.Args;
+import org.xipki.util.LatencyHistogram;
 import org.xipki.util.LogUtil;
 import org.xipki.util.LruCache;
 import org.xipki.util.StringUtil;
+import org.xipki.util.metrics.MetricsRegistry;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
 /**
  * A wrapper of {@link HikariDataSource}.
@@ -367,6 +372,16 @@ public abstract class DataSourceWrapper implements Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(DataSourceWrapper.class);
 
+  /**
+   * Name of the property specifying the maximal number of prepared statements cached by the
+   * JDBC driver per connection. It is translated to the properties of the driver's own
+   * statement cache, see {@link #applyStatementCacheSize(DatabaseType, Properties, int)}.
+   * Defaults to 0 (the driver's configuration is not changed).
+   */
+  static final String PROP_STATEMENT_CACHE_SIZE = "statementCacheSize";
+
+  private static final String METRICS_LABEL = "datasource";
+
   /**
    * References the real data source implementation this class acts as pure
    * proxy for. Derived classes must set this field at construction time.
@@ -387,6 +402,10 @@ public abstract class DataSourceWrapper implements Closeable {
 
   private final LruCache<String, String> cacheSeqNameSqls;
 
+  private final LatencyHistogram connectionLatency;
+
+  private final LongAdder errors;
+
   private DataSourceWrapper(String name, HikariDataSource service, DatabaseType dbType) {
     this.service = Args.notNull(service, "service");
     this.databaseType = Args.notNull(dbType, "dbType");
@@ -394,7 +413,21 @@ public abstract class DataSourceWrapper implements Closeable {
     this.sqlErrorCodes = SqlErrorCodes.newInstance(dbType);
     this.sqlStateCodes = SqlStateCodes.newInstance(dbType);
     this.cacheSeqNameSqls = new LruCache<>(100);
-  }
+
+    MetricsRegistry registry = MetricsRegistry.getDefault();
+    String[] labels = {METRICS_LABEL, String.valueOf(name)};
+    this.connectionLatency = registry.latency("xipki_datasource_connection_acquire_seconds",
+        "Time to get a connection from the pool", labels);
+    this.errors = registry.counter("xipki_datasource_errors_total",
+        "Number of database errors", labels);
+    registry.gauge("xipki_datasource_connections_active", "Number of connections in use",
+        () -> poolValue(HikariPoolMXBean::getActiveConnections), labels);
+    registry.gauge("xipki_datasource_connections_idle", "Number of idle connections",
+        () -> poolValue(HikariPoolMXBean::getIdleConnections), labels);
+    registry.gauge("xipki_datasource_connections_pending",
+        "Number of threads waiting for a connection",
+        () -> poolValue(HikariPoolMXBean::getThreadsAwaitingConnection), labels);
+  } // constructor
 
   public final String getName() {
     return name;
@@ -408,9 +441,18 @@ public abstract class DataSourceWrapper implements Closeable {
     return service.getMaximumPoolSize();
   }
 
+  private double poolValue(ToIntFunction<HikariPoolMXBean> getter) {
+    // null before the pool is started
+    HikariPoolMXBean pool = service.getHikariPoolMXBean();
+    return (pool == null) ? 0 : getter.applyAsInt(pool);
+  }
+
   public final Connection getConnection() throws DataAccessException {
+    long start = System.nanoTime();
     try {
-      return service.getConnection();
+      Connection conn = service.getConnection();
+      connectionLatency.recordNanos(System.nanoTime() - start);
+      return conn;
     } catch (Exception ex) {
       Throwable cause = ex.getCause();
       if (cause instanceof SQLException) {
@@ -444,6 +486,8 @@ public abstract class DataSourceWrapper implements Closeable {
 
   @Override
   public void close() {
+    MetricsRegistry.getDefault().removeAll(METRICS_LABEL, String.valueOf(name));
+
     try {
       service.close();
     } catch (RuntimeException ex) {
@@ -988,6 +1032,7 @@ public abstract class DataSourceWrapper implements Closeable {
 
   public DataAccessException translate(String sql, SQLException ex) {
     Args.notNull(ex, "ex");
+    errors.increment();
 
     if (sql == null) {
       sql = "";
@@ -1169,6 +1214,13 @@ public abstract class DataSourceWrapper implements Closeable {
         || databaseType == DatabaseType.HSQL || databaseType == DatabaseType.MYSQL
         || databaseType == DatabaseType.MARIADB || databaseType == DatabaseType.ORACLE
         || databaseType == DatabaseType.POSTGRES) {
+      // not a HikariCP property
+      String str = (String) props.remove(PROP_STATEMENT_CACHE_SIZE);
+      int statementCacheSize = StringUtil.isBlank(str) ? 0 : Integer.parseInt(str.trim());
+      if (statementCacheSize > 0) {
+        applyStatementCacheSize(databaseType, props, statementCacheSize);
+      }
+
       HikariConfig conf = new HikariConfig(props);
       HikariDataSource service = new HikariDataSource(conf);
       switch (databaseType) {
@@ -1192,4 +1244,65 @@ public abstract class DataSourceWrapper implements Closeable {
     }
   } // method createDataSource
 
+  /**
+   * Configures the statement cache of the JDBC driver. The statements are cached by the driver
+   * below the pooled connection, so that HikariCP still sees all statements and their
+   * exceptions, and evicts broken connections. Properties set explicitly in the configuration
+   * are not overwritten.
+   *
+   * @param databaseType
+   *          Type of the database.
+   * @param props
+   *          HikariCP properties, the driver properties have the prefix {@code dataSource.}.
+   * @param cacheSize
+   *          Maximal number of cached statements per connection.
+   */
+  static void applyStatementCacheSize(DatabaseType databaseType, Properties props,
+      int cacheSize) {
+    String size = Integer.toString(cacheSize);
+    switch (databaseType) {
+      case MYSQL:
+        setDefault(props, "dataSource.cachePrepStmts", "true");
+        setDefault(props, "dataSource.prepStmtCacheSize", size);
+        setDefault(props, "dataSource.useServerPrepStmts", "true");
+        break;
+      case MARIADB:
+        if (props.containsKey("dataSourceClassName")) {
+          // MariaDbDataSource has no setters for these properties
+          LOG.info("{} is ignored for MariaDB with dataSourceClassName, use jdbcUrl "
+              + "to configure the driver's statement cache", PROP_STATEMENT_CACHE_SIZE);
+        } else {
+          setDefault(props, "dataSource.cachePrepStmts", "true");
+          setDefault(props, "dataSource.prepStmtCacheSize", size);
+          setDefault(props, "dataSource.useServerPrepStmts", "true");
+        }
+        break;
+      case POSTGRES:
+        setDefault(props, "dataSource.preparedStatementCacheQueries", size);
+        String threshold = props.getProperty("dataSource.prepareThreshold");
+        if (threshold != null && "0".equals(threshold.trim())) {
+          LOG.warn("dataSource.prepareThreshold=0 disables the server-side prepared "
+              + "statements, {} has no effect", PROP_STATEMENT_CACHE_SIZE);
+        }
+        break;
+      case ORACLE:
+        setDefault(props, "dataSource.implicitCachingEnabled", "true");
+        setDefault(props, "dataSource.maxStatements", size);
+        break;
+      case DB2:
+        setDefault(props, "dataSource.maxStatements", size);
+        break;
+      default:
+        // H2 and HSQLDB cache the parsed statements of a session themselves.
+        LOG.info("{} is ignored for {}, the database caches the statements itself",
+            PROP_STATEMENT_CACHE_SIZE, databaseType);
+    }
+  } // method applyStatementCacheSize
+
+  private static void setDefault(Properties props, String key, String value) {
+    if (!props.containsKey(key)) {
+      props.setProperty(key, value);
+    }
+  }
+
 }
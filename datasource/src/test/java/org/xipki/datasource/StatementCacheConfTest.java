@@ -0,0 +1,98 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource;
+
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the translation of statementCacheSize to the properties of the JDBC drivers.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class StatementCacheConfTest {
+
+  @Test
+  public void testMySql() {
+    Properties props = apply(DatabaseType.MYSQL, new Properties());
+    Assert.assertEquals("true", props.getProperty("dataSource.cachePrepStmts"));
+    Assert.assertEquals("50", props.getProperty("dataSource.prepStmtCacheSize"));
+    Assert.assertEquals("true", props.getProperty("dataSource.useServerPrepStmts"));
+  }
+
+  @Test
+  public void testMariaDb() {
+    Properties props = new Properties();
+    props.setProperty("jdbcUrl", "jdbc:mariadb://localhost/ocsp");
+    apply(DatabaseType.MARIADB, props);
+    Assert.assertEquals("50", props.getProperty("dataSource.prepStmtCacheSize"));
+
+    // MariaDbDataSource does not support the cache properties
+    props = new Properties();
+    props.setProperty("dataSourceClassName", "org.mariadb.jdbc.MariaDbDataSource");
+    apply(DatabaseType.MARIADB, props);
+    Assert.assertEquals(1, props.size());
+  }
+
+  @Test
+  public void testPostgreSql() {
+    Properties props = apply(DatabaseType.POSTGRES, new Properties());
+    Assert.assertEquals("50", props.getProperty("dataSource.preparedStatementCacheQueries"));
+    Assert.assertNull(props.getProperty("dataSource.prepareThreshold"));
+  }
+
+  @Test
+  public void testOracle() {
+    Properties props = apply(DatabaseType.ORACLE, new Properties());
+    Assert.assertEquals("true", props.getProperty("dataSource.implicitCachingEnabled"));
+    Assert.assertEquals("50", props.getProperty("dataSource.maxStatements"));
+  }
+
+  @Test
+  public void testDb2() {
+    Properties props = apply(DatabaseType.DB2, new Properties());
+    Assert.assertEquals("50", props.getProperty("dataSource.maxStatements"));
+  }
+
+  @Test
+  public void testEmbeddedDatabasesUnchanged() {
+    Assert.assertTrue(apply(DatabaseType.H2, new Properties()).isEmpty());
+    Assert.assertTrue(apply(DatabaseType.HSQL, new Properties()).isEmpty());
+  }
+
+  @Test
+  public void testExplicitPropertiesNotOverwritten() {
+    Properties props = new Properties();
+    props.setProperty("dataSource.prepStmtCacheSize", "250");
+    props.setProperty("dataSource.useServerPrepStmts", "false");
+    apply(DatabaseType.MYSQL, props);
+    Assert.assertEquals("250", props.getProperty("dataSource.prepStmtCacheSize"));
+    Assert.assertEquals("false", props.getProperty("dataSource.useServerPrepStmts"));
+    Assert.assertEquals("true", props.getProperty("dataSource.cachePrepStmts"));
+  }
+
+  private static Properties apply(DatabaseType type, Properties props) {
+    DataSourceWrapper.applyStatementCacheSize(type, props, 50);
+    return props;
+  }
+
+}
@@ -20,8 +20,12 @@ package org.xipki.ocsp.api;
 import java.io.Closeable;
 import java.math.BigInteger;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
 
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.ocsp.api.CertStatusInfo.UnknownCertBehaviour;
@@ -39,6 +43,17 @@ public abstract class OcspStore implements Closeable {
 
   protected static final long DAY = 24L * 60 * 60 * 1000;
 
+  /**
+   * Maximal number of serial numbers in one SQL {@code IN} clause.
+   */
+  protected static final int MAX_SERIALS_PER_QUERY = 100;
+
+  /**
+   * Sizes of the SQL {@code IN} clause. The number of values is rounded up to one of them, so
+   * that only few distinct SQL statements are prepared and cached.
+   */
+  private static final int[] IN_CLAUSE_SIZES = {1, 10, 50, MAX_SERIALS_PER_QUERY};
+
   protected String name;
 
   protected UnknownCertBehaviour unknownCertBehaviour = UnknownCertBehaviour.unknown;
@@ -77,6 +92,42 @@ public abstract class OcspStore implements Closeable {
    */
   public abstract X509Certificate getIssuerCert(RequestIssuer reqIssuer);
 
+  /**
+   * Returns the issuers known by this store. Used to pre-sign the OCSP responses.
+   * The default implementation returns {@code null}.
+   *
+   * @return the issuers identified by the SHA-1 hashes, or {@code null} if the store
+   *         does not support the enumeration of issuers.
+   * @since 5.3.8
+   */
+  public List<RequestIssuer> getIssuers() {
+    return null;
+  }
+
+  /**
+   * Returns the serial numbers of the certificates issued by the given issuer, in the order
+   * of the ID in the store. Used to pre-sign the OCSP responses. The certificates whose
+   * responses need not be pre-signed, e.g. revoked or expired certificates, may be omitted.
+   * The default implementation returns {@code null}.
+   *
+   * @param reqIssuer
+   *          Requested issuer
+   * @param fromId
+   *          Minimal ID (inclusive).
+   * @param numEntries
+   *          Maximal number of entries.
+   * @return the serial numbers with their IDs as key, empty if there are no more
+   *         certificates, or {@code null} if the store does not support the enumeration of
+   *         certificates or does not know the issuer.
+   * @throws OcspStoreException
+   *           If OCSP store failed to retrieve the serial numbers.
+   * @since 5.3.8
+   */
+  public SortedMap<Long, BigInteger> getSerialNumbers(RequestIssuer reqIssuer, long fromId,
+      int numEntries) throws OcspStoreException {
+    return null;
+  }
+
   /**
    * Ignores expired CRLs. Only applied to CRL-based datasource.
    *
@@ -110,7 +161,45 @@ public abstract class OcspStore implements Closeable {
       boolean inheritCaRevocation) throws OcspStoreException {
     CertStatusInfo info = getCertStatus0(time, reqIssuer, serialNumber,
         includeCertHash, includeRit, inheritCaRevocation);
+    applyMinNextUpdatePeriod(time, info);
+    return info;
+  } // method getCertStatus
+
+  /**
+   * Return the certificate status of several certificates issued by the same issuer.
+   *
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate status of each serial number, or {@code null} if the issuer is
+   *          not known by this store.
+   * @throws OcspStoreException
+   *           If OCSP store failed to retrieve the status.
+   * @since 5.3.8
+   */
+  public final Map<BigInteger, CertStatusInfo> getCertStatuses(Date time,
+      RequestIssuer reqIssuer, List<BigInteger> serialNumbers, boolean includeCertHash,
+      boolean includeRit, boolean inheritCaRevocation) throws OcspStoreException {
+    Map<BigInteger, CertStatusInfo> infos = getCertStatuses0(time, reqIssuer, serialNumbers,
+        includeCertHash, includeRit, inheritCaRevocation);
+    if (infos != null) {
+      for (CertStatusInfo info : infos.values()) {
+        applyMinNextUpdatePeriod(time, info);
+      }
+    }
+    return infos;
+  } // method getCertStatuses
 
+  private void applyMinNextUpdatePeriod(Date time, CertStatusInfo info) {
     if (info != null && minNextUpdatePeriod != null && !isIgnoreExpiredCrls()) {
       if (unknownCertBehaviour == UnknownCertBehaviour.good
           || unknownCertBehaviour == UnknownCertBehaviour.unknown) {
@@ -126,9 +215,7 @@ public abstract class OcspStore implements Closeable {
         }
       }
     }
-
-    return info;
-  } // method getCertStatus
+  } // method applyMinNextUpdatePeriod
 
   /**
    * Return the certificate status.
@@ -153,6 +240,103 @@ public abstract class OcspStore implements Closeable {
       BigInteger serialNumber, boolean includeCertHash, boolean includeRit,
       boolean inheritCaRevocation) throws OcspStoreException;
 
+  /**
+   * Return the certificate status of several certificates issued by the same issuer.
+   * The default implementation calls
+   * {@link #getCertStatus0(Date, RequestIssuer, BigInteger, boolean, boolean, boolean)} for
+   * each serial number, database based stores should overwrite it to retrieve all statuses
+   * with one query.
+   *
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate status of each serial number, or {@code null} if the issuer is
+   *          not known by this store.
+   * @throws OcspStoreException
+   *           If OCSP store failed to retrieve the status.
+   * @since 5.3.8
+   */
+  protected Map<BigInteger, CertStatusInfo> getCertStatuses0(Date time,
+      RequestIssuer reqIssuer, List<BigInteger> serialNumbers, boolean includeCertHash,
+      boolean includeRit, boolean inheritCaRevocation) throws OcspStoreException {
+    Map<BigInteger, CertStatusInfo> infos = new HashMap<>(serialNumbers.size() * 4 / 3 + 1);
+    for (BigInteger serialNumber : serialNumbers) {
+      if (infos.containsKey(serialNumber)) {
+        continue;
+      }
+
+      CertStatusInfo info = getCertStatus0(time, reqIssuer, serialNumber,
+          includeCertHash, includeRit, inheritCaRevocation);
+      if (info == null) {
+        return null;
+      }
+      infos.put(serialNumber, info);
+    }
+    return infos;
+  } // method getCertStatuses0
+
+  /**
+   * Builds the placeholders of a SQL {@code IN} clause, e.g. {@code (?,?,?)} for 3 values.
+   *
+   * @param count
+   *          Number of values.
+   * @return the placeholders
+   * @since 5.3.8
+   */
+  protected static String buildInClause(int count) {
+    StringBuilder sb = new StringBuilder(2 * count + 1);
+    sb.append('(');
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append('?');
+    }
+    return sb.append(')').toString();
+  } // method buildInClause
+
+  /**
+   * Pads the values of a SQL {@code IN} clause with the last value, up to the next of the
+   * fixed sizes 1, 10, 50 and {@link #MAX_SERIALS_PER_QUERY}.
+   *
+   * @param values
+   *          Values of the {@code IN} clause. Must not be empty and not contain more than
+   *          {@link #MAX_SERIALS_PER_QUERY} values.
+   * @return the padded values.
+   * @since 5.3.8
+   */
+  protected static List<String> padInClauseValues(List<String> values) {
+    int count = Args.range(values.size(), "values.size", 1, MAX_SERIALS_PER_QUERY);
+    int size = MAX_SERIALS_PER_QUERY;
+    for (int m : IN_CLAUSE_SIZES) {
+      if (m >= count) {
+        size = m;
+        break;
+      }
+    }
+
+    if (size == count) {
+      return values;
+    }
+
+    List<String> padded = new ArrayList<>(size);
+    padded.addAll(values);
+    String last = values.get(count - 1);
+    while (padded.size() < size) {
+      padded.add(last);
+    }
+    return padded;
+  } // method padInClauseValues
+
   /**
    * Initialize the OCSP store.
    *
@@ -260,6 +260,17 @@ public class OcspServerConf extends ValidatableConf {
 
     private CertCollection certs;
 
+    /**
+     * Maximal number of the request signers whose certification path has been validated, to
+     * be cached. 0 to disable the cache. The default is 1000.
+     */
+    private int validatedSignerCacheSize = 1000;
+
+    /**
+     * Time in seconds a validated request signer is cached. The default is 3600 (1 hour).
+     */
+    private int validatedSignerCacheTtl = 3600;
+
     public CertpathValidationModel getValidationModel() {
       return validationModel;
     }
@@ -284,12 +295,36 @@ public class OcspServerConf extends ValidatableConf {
       this.certs = certs;
     }
 
+    public int getValidatedSignerCacheSize() {
+      return validatedSignerCacheSize;
+    }
+
+    public void setValidatedSignerCacheSize(int validatedSignerCacheSize) {
+      this.validatedSignerCacheSize = validatedSignerCacheSize;
+    }
+
+    public int getValidatedSignerCacheTtl() {
+      return validatedSignerCacheTtl;
+    }
+
+    public void setValidatedSignerCacheTtl(int validatedSignerCacheTtl) {
+      this.validatedSignerCacheTtl = validatedSignerCacheTtl;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notNull(validationModel, "validationModel");
       notNull(trustAnchors, "trustAnchors");
       validate(trustAnchors);
       validate(certs);
+
+      if (validatedSignerCacheSize < 0) {
+        throw new InvalidConfException("validatedSignerCacheSize must not be negative");
+      }
+
+      if (validatedSignerCacheSize > 0 && validatedSignerCacheTtl < 1) {
+        throw new InvalidConfException("validatedSignerCacheTtl must be positive");
+      }
     }
 
   } // class CertpathValidation
@@ -323,6 +358,11 @@ public class OcspServerConf extends ValidatableConf {
 
     private String name;
 
+    /**
+     * Pre-signing of the OCSP responses of all certificates. Requires the responseCache.
+     */
+    private Presign presign;
+
     public List<String> getServletPaths() {
       if (servletPaths == null) {
         servletPaths = new LinkedList<>();
@@ -393,6 +433,14 @@ public class OcspServerConf extends ValidatableConf {
       this.name = name;
     }
 
+    public Presign getPresign() {
+      return presign;
+    }
+
+    public void setPresign(Presign presign) {
+      this.presign = presign;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notEmpty(servletPaths, "servletPaths");
@@ -401,16 +449,105 @@ public class OcspServerConf extends ValidatableConf {
       notEmpty(response, "response");
       notEmpty(stores, "stores");
       notEmpty(name, "name");
+      validate(presign);
     }
 
   } // class Responder
 
+  public static class Presign extends ValidatableConf {
+
+    /**
+     * Cached responses expiring within this window are signed again. Must be less than the
+     * validity of the responseCache. Default to 1h.
+     */
+    private String refreshWindow;
+
+    /**
+     * Interval between two runs over all certificates. Default to 10m.
+     */
+    private String interval;
+
+    /**
+     * Maximal number of responses to be signed per second. Default to 100.
+     */
+    private Integer maxRate;
+
+    public String getRefreshWindow() {
+      return refreshWindow;
+    }
+
+    public void setRefreshWindow(String refreshWindow) {
+      this.refreshWindow = refreshWindow;
+    }
+
+    public Validity refreshWindow() {
+      return refreshWindow == null ? new Validity(1, Unit.HOUR)
+          : Validity.getInstance(refreshWindow);
+    }
+
+    public String getInterval() {
+      return interval;
+    }
+
+    public void setInterval(String interval) {
+      this.interval = interval;
+    }
+
+    public Validity interval() {
+      return interval == null ? new Validity(10, Unit.MINUTE) : Validity.getInstance(interval);
+    }
+
+    public Integer getMaxRate() {
+      return maxRate;
+    }
+
+    public void setMaxRate(Integer maxRate) {
+      this.maxRate = maxRate;
+    }
+
+    public int maxRate() {
+      return maxRate == null ? 100 : maxRate;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (maxRate != null && maxRate < 1) {
+        throw new InvalidConfException("maxRate must not be less than 1: " + maxRate);
+      }
+    }
+
+  } // class Presign
+
   public static class ResponseCache extends ValidatableConf {
 
     private DataSourceConf datasource;
 
     private String validity;
 
+    /**
+     * Maximal size in bytes of the in-memory tier in front of the database.
+     * Zero or negative value disables the in-memory tier. Default to 32 MB.
+     */
+    private Integer memoryCacheSize;
+
+    /**
+     * Maximal number of responses waiting to be written asynchronously into the database.
+     * Zero or negative value disables the write-behind, the responses are then written
+     * synchronously. Default to 0.
+     */
+    private Integer writeQueueSize;
+
+    /**
+     * Maximal number of responses to be written in one JDBC batch. Default to 100.
+     */
+    private Integer writeBatchSize;
+
+    /**
+     * Whether to block the caller if the write queue is full. Otherwise the response will not
+     * be written into the database. Default to false.
+     */
+    private boolean blockIfWriteQueueFull;
+
     public DataSourceConf getDatasource() {
       return datasource;
     }
@@ -431,6 +568,50 @@ public class OcspServerConf extends ValidatableConf {
       return validity == null ? new Validity(1, Unit.DAY) : Validity.getInstance(validity);
     }
 
+    public Integer getMemoryCacheSize() {
+      return memoryCacheSize;
+    }
+
+    public void setMemoryCacheSize(Integer memoryCacheSize) {
+      this.memoryCacheSize = memoryCacheSize;
+    }
+
+    public int memoryCacheSize() {
+      return memoryCacheSize == null ? 32 * 1024 * 1024 : memoryCacheSize;
+    }
+
+    public Integer getWriteQueueSize() {
+      return writeQueueSize;
+    }
+
+    public void setWriteQueueSize(Integer writeQueueSize) {
+      this.writeQueueSize = writeQueueSize;
+    }
+
+    public int writeQueueSize() {
+      return writeQueueSize == null ? 0 : writeQueueSize;
+    }
+
+    public Integer getWriteBatchSize() {
+      return writeBatchSize;
+    }
+
+    public void setWriteBatchSize(Integer writeBatchSize) {
+      this.writeBatchSize = writeBatchSize;
+    }
+
+    public int writeBatchSize() {
+      return writeBatchSize == null ? 100 : writeBatchSize;
+    }
+
+    public boolean isBlockIfWriteQueueFull() {
+      return blockIfWriteQueueFull;
+    }
+
+    public void setBlockIfWriteQueueFull(boolean blockIfWriteQueueFull) {
+      this.blockIfWriteQueueFull = blockIfWriteQueueFull;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notNull(datasource, "datasource");
@@ -42,6 +42,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bouncycastle.asn1.ASN1InputStream;
@@ -95,6 +96,7 @@ import org.xipki.security.AlgorithmCode;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CertpathValidationModel;
 import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.DfltConcurrentContentSigner;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.NoIdleSignerException;
 import org.xipki.security.SecurityFactory;
@@ -109,10 +111,12 @@ import org.xipki.util.HealthCheckResult;
 import org.xipki.util.Hex;
 import org.xipki.util.InvalidConfException;
 import org.xipki.util.IoUtil;
+import org.xipki.util.LatencyHistogram;
 import org.xipki.util.LogUtil;
 import org.xipki.util.ObjectCreationException;
 import org.xipki.util.StringUtil;
 import org.xipki.util.Validity;
+import org.xipki.util.metrics.MetricsRegistry;
 
 import com.alibaba.fastjson.JSON;
 
@@ -157,6 +161,48 @@ public class OcspServerImpl implements OcspServer {
     }
   } // class OcspRespControl
 
+  /**
+   * Certificate status of all CertIDs in one OCSP request. For each pair of store and issuer
+   * the status of all requested serial numbers is retrieved with one call of
+   * {@link OcspStore#getCertStatuses(Date, RequestIssuer, List, boolean, boolean, boolean)}.
+   */
+  private static class CertStatusBatch {
+
+    private final Map<RequestIssuer, List<BigInteger>> serialsByIssuer = new HashMap<>();
+
+    private final Map<OcspStore, Map<RequestIssuer, Map<BigInteger, CertStatusInfo>>> statuses =
+        new HashMap<>();
+
+    CertStatusBatch(List<CertID> requestList) {
+      for (CertID certId : requestList) {
+        List<BigInteger> serials =
+            serialsByIssuer.computeIfAbsent(certId.getIssuer(), k -> new ArrayList<>());
+        serials.add(certId.getSerialNumber());
+      }
+    }
+
+    CertStatusInfo getCertStatus(OcspStore store, LatencyHistogram storeLatency, Date time,
+        RequestIssuer reqIssuer, BigInteger serialNumber, boolean includeCertHash,
+        boolean includeRit, boolean inheritCaRevocation) throws OcspStoreException {
+      Map<RequestIssuer, Map<BigInteger, CertStatusInfo>> storeStatuses =
+          statuses.computeIfAbsent(store, k -> new HashMap<>());
+
+      Map<BigInteger, CertStatusInfo> issuerStatuses;
+      if (storeStatuses.containsKey(reqIssuer)) {
+        issuerStatuses = storeStatuses.get(reqIssuer);
+      } else {
+        long start = System.nanoTime();
+        issuerStatuses = store.getCertStatuses(time, reqIssuer, serialsByIssuer.get(reqIssuer),
+            includeCertHash, includeRit, inheritCaRevocation);
+        storeLatency.recordNanos(System.nanoTime() - start);
+        storeStatuses.put(reqIssuer, issuerStatuses);
+      }
+
+      return (issuerStatuses == null) ? null : issuerStatuses.get(serialNumber);
+    }
+
+  } // class CertStatusBatch
+
   public static final long DFLT_CACHE_MAX_AGE = 60; // 1 minute
 
   private static final String STORE_TYPE_XIPKI_DB = "xipki-db";
@@ -196,6 +242,8 @@ public class OcspServerImpl implements OcspServer {
 
   private ResponseCacher responseCacher;
 
+  private final List<ResponsePresigner> presigners = new LinkedList<>();
+
   private Map<String, ResponderImpl> responders = new HashMap<>();
 
   private Map<String, ResponseSigner> signers = new HashMap<>();
@@ -206,6 +254,8 @@ public class OcspServerImpl implements OcspServer {
 
   private Map<String, OcspStore> stores = new HashMap<>();
 
+  private final Map<String, LatencyHistogram> storeLatencies = new ConcurrentHashMap<>();
+
   private List<String> servletPaths = new ArrayList<>();
 
   private Map<String, ResponderImpl> path2responderMap = new HashMap<>();
@@ -316,6 +366,7 @@ public class OcspServerImpl implements OcspServer {
     initialized.set(false);
 
     // reset
+    removeMetrics();
     responseCacher = null;
     responders.clear();
     signers.clear();
@@ -470,6 +521,9 @@ public class OcspServerImpl implements OcspServer {
         closeStream(dsStream);
       }
       responseCacher = new ResponseCacher(datasource, master, cacheType.validity());
+      responseCacher.setMemoryCacheSize(cacheType.memoryCacheSize());
+      responseCacher.setWriteBehind(cacheType.writeQueueSize(), cacheType.writeBatchSize(),
+          cacheType.isBlockIfWriteQueueFull());
       responseCacher.init();
     }
 
@@ -546,6 +600,9 @@ public class OcspServerImpl implements OcspServer {
     for (OcspServerConf.Store m : conf.getStores()) {
       OcspStore store = newStore(m, datasources);
       stores.put(m.getName(), store);
+      storeLatencies.put(m.getName(), MetricsRegistry.getDefault().latency(
+          "xipki_ocsp_store_seconds", "Time to retrieve the certificate status from a store",
+          "store", m.getName()));
     }
 
     // responders
@@ -572,7 +629,7 @@ public class OcspServerImpl implements OcspServer {
         }
       }
 
-      ResponderImpl responder = new ResponderImpl(option,
+      ResponderImpl responder = new ResponderImpl(name, option,
           requestOptions.get(option.getRequestOptionName()),
           responseOption, signer, statusStores);
       responders.put(name, responder);
@@ -598,11 +655,66 @@ public class OcspServerImpl implements OcspServer {
       list2.add(m.str);
     }
     this.servletPaths = list2;
+
+    // pre-signing of the responses
+    for (String name : responderOptions.keySet()) {
+      OcspServerConf.Presign presignConf = responderOptions.get(name).getPresign();
+      if (presignConf == null) {
+        continue;
+      }
+
+      ResponderImpl responder = responders.get(name);
+      if (responseCacher == null || !master) {
+        LOG.warn("pre-signing of responder {} is ignored, it requires the responseCache "
+            + "in master mode", name);
+      } else if (!responder.getRequestOption().allows(HashAlgo.SHA1)) {
+        LOG.warn("pre-signing of responder {} is ignored, since SHA1 is not allowed in CertID",
+            name);
+      } else {
+        // otherwise each run would sign all responses again
+        long refreshWindow = presignConf.refreshWindow().approxMinutes() * 60;
+        if (refreshWindow >= responseCacher.getValidity()) {
+          throw new InvalidConfException("presign.refreshWindow of responder " + name
+              + " must be less than the validity of the responseCache");
+        }
+
+        ResponsePresigner.Signer signer = new ResponsePresigner.Signer() {
+          @Override
+          public boolean isCachedResponseValid(RequestIssuer issuer, BigInteger serialNumber,
+              long minExpiry) throws DataAccessException {
+            return OcspServerImpl.this.isCachedResponseValid(responder, issuer, serialNumber,
+                minExpiry);
+          }
+
+          @Override
+          public boolean presign(RequestIssuer issuer, BigInteger serialNumber) {
+            return OcspServerImpl.this.presign(responder, issuer, serialNumber);
+          }
+        };
+
+        ResponsePresigner presigner = new ResponsePresigner(name, responder.getStores(),
+            signer, presignConf);
+        presigner.start();
+        presigners.add(presigner);
+
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        registry.counter("xipki_ocsp_presigned_total", "Number of pre-signed responses",
+            presigner::getSignedCount, "responder", name);
+        registry.counter("xipki_ocsp_presign_failures_total",
+            "Number of responses which could not be pre-signed",
+            presigner::getFailedCount, "responder", name);
+      }
+    }
   } // method init0
 
   @Override
   public void close() {
     LOG.info("stopped OCSP Responder");
+    for (ResponsePresigner presigner : presigners) {
+      presigner.close();
+    }
+    presigners.clear();
+
     if (responseCacher != null) {
       responseCacher.close();
     }
@@ -614,11 +726,46 @@ public class OcspServerImpl implements OcspServer {
         LogUtil.warn(LOG, ex, "shutdown store " + store.getName());
       }
     }
+
+    removeMetrics();
   } // method close
 
+  private void removeMetrics() {
+    MetricsRegistry registry = MetricsRegistry.getDefault();
+    for (String name : signers.keySet()) {
+      registry.removeAll("signer", name);
+    }
+    for (String name : responders.keySet()) {
+      registry.removeAll("responder", name);
+    }
+    for (String name : requestOptions.keySet()) {
+      registry.removeAll("request", name);
+    }
+    for (String name : stores.keySet()) {
+      registry.removeAll("store", name);
+    }
+    storeLatencies.clear();
+  } // method removeMetrics
+
   @Override
   public OcspRespWithCacheInfo answer(Responder responder2, byte[] request, boolean viaGet) {
     ResponderImpl responder = (ResponderImpl) responder2;
+    long start = System.nanoTime();
+    OcspRespWithCacheInfo resp = answer0(responder, request, viaGet);
+
+    OcspResponseStatus status = OcspResponseStatus.successful;
+    for (OcspResponseStatus m : unsuccesfulOCSPRespMap.keySet()) {
+      if (unsuccesfulOCSPRespMap.get(m) == resp) {
+        status = m;
+        break;
+      }
+    }
+    responder.recordResponse(status, System.nanoTime() - start);
+    return resp;
+  } // method answer
+
+  private OcspRespWithCacheInfo answer0(ResponderImpl responder, byte[] request,
+      boolean viaGet) {
     RequestOption reqOpt = responder.getRequestOption();
 
     int version;
@@ -636,17 +783,42 @@ public class OcspServerImpl implements OcspServer {
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
     }
 
+    Object reqOrRrrorResp;
+    try {
+      reqOrRrrorResp = checkSignature(request, reqOpt);
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th);
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
+    }
+
+    if (reqOrRrrorResp instanceof OcspRespWithCacheInfo) {
+      return (OcspRespWithCacheInfo) reqOrRrrorResp;
+    }
+
+    return answer(responder, (OcspRequest) reqOrRrrorResp, viaGet, false);
+  } // method answer0
+
+  /**
+   * Answers the parsed request.
+   *
+   * @param responder
+   *          Responder.
+   * @param req
+   *          The parsed request whose signature has been verified.
+   * @param viaGet
+   *          Whether the request is sent via HTTP GET.
+   * @param presign
+   *          Whether the response is pre-signed. If true, the cached response is ignored and
+   *          will be replaced by the new response.
+   * @return the response.
+   */
+  private OcspRespWithCacheInfo answer(ResponderImpl responder, OcspRequest req,
+      boolean viaGet, boolean presign) {
+    RequestOption reqOpt = responder.getRequestOption();
     ResponseSigner signer = responder.getSigner();
     OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
 
     try {
-      Object reqOrRrrorResp = checkSignature(request, reqOpt);
-      if (reqOrRrrorResp instanceof OcspRespWithCacheInfo) {
-        return (OcspRespWithCacheInfo) reqOrRrrorResp;
-      }
-
-      OcspRequest req = (OcspRequest) reqOrRrrorResp;
-
       List<CertID> requestList = req.getRequestList();
       int requestsSize = requestList.size();
       if (requestsSize > reqOpt.getMaxRequestListCount()) {
@@ -790,7 +962,7 @@ public class OcspServerImpl implements OcspServer {
         cacheDbSerialNumber = certId.getSerialNumber();
 
         if (cacheDbIssuerId != null) {
-          OcspRespWithCacheInfo cachedResp = responseCacher.getOcspResponse(
+          OcspRespWithCacheInfo cachedResp = presign ? null : responseCacher.getOcspResponse(
               cacheDbIssuerId.intValue(), cacheDbSerialNumber, cacheDbSigAlgCode);
           if (cachedResp != null) {
             return cachedResp;
@@ -818,11 +990,15 @@ public class OcspServerImpl implements OcspServer {
       ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
       OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
 
+      // retrieve the status of all CertIDs with one query per issuer
+      CertStatusBatch certStatusBatch = (requestsSize > 1)
+          ? new CertStatusBatch(requestList) : null;
+
       boolean unknownAsRevoked = false;
       AtomicBoolean unknownAsRevoked0 = new AtomicBoolean(false);
       for (int i = 0; i < requestsSize; i++) {
         OcspRespWithCacheInfo failureOcspResp = processCertReq(
-            unknownAsRevoked0, requestList.get(i),
+            unknownAsRevoked0, requestList.get(i), certStatusBatch,
             builder, responder, reqOpt, repOpt, repControl);
 
         if (failureOcspResp != null) {
@@ -885,10 +1061,65 @@ public class OcspServerImpl implements OcspServer {
       LogUtil.error(LOG, th);
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
     }
-  } // method ask
+  } // method answer
+
+  /**
+   * Whether the cached response of the certificate is valid at least until the given time.
+   *
+   * @param responder
+   *          Responder.
+   * @param issuer
+   *          Issuer of the certificate.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @param minExpiry
+   *          Minimal expiration time, in seconds since January 1, 1970 UTC.
+   * @return whether the cached response is valid until minExpiry.
+   * @throws DataAccessException if database error occurs.
+   */
+  boolean isCachedResponseValid(ResponderImpl responder, RequestIssuer issuer,
+      BigInteger serialNumber, long minExpiry) throws DataAccessException {
+    Integer issuerId = responseCacher.getIssuerId(issuer);
+    if (issuerId == null) {
+      return false;
+    }
+
+    AlgorithmCode sigAlgCode = responder.getSigner().getFirstSigner().getAlgorithmCode();
+    OcspRespWithCacheInfo resp = responseCacher.getOcspResponse(issuerId, serialNumber,
+        sigAlgCode);
+    if (resp == null || resp.getCacheInfo() == null) {
+      return false;
+    }
+
+    ResponseCacheInfo cacheInfo = resp.getCacheInfo();
+    // the cached responses are removed after the validity of the cache
+    long expiry = cacheInfo.getThisUpdate() + responseCacher.getValidity();
+    if (cacheInfo.getNextUpdate() != null) {
+      expiry = Math.min(expiry, cacheInfo.getNextUpdate());
+    }
+    return expiry >= minExpiry;
+  } // method isCachedResponseValid
+
+  /**
+   * Signs the nonce-less response of the certificate and stores it in the response cache.
+   *
+   * @param responder
+   *          Responder.
+   * @param issuer
+   *          Issuer of the certificate.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @return whether the response has been signed successfully.
+   */
+  boolean presign(ResponderImpl responder, RequestIssuer issuer, BigInteger serialNumber) {
+    OcspRequest req = new OcspRequest(0,
+        Collections.singletonList(new CertID(issuer, serialNumber)), new LinkedList<>());
+    OcspRespWithCacheInfo resp = answer(responder, req, false, true);
+    return !unsuccesfulOCSPRespMap.containsValue(resp);
+  } // method presign
 
   private OcspRespWithCacheInfo processCertReq(AtomicBoolean unknownAsRevoked,
-      CertID certId, OCSPRespBuilder builder,
+      CertID certId, CertStatusBatch certStatusBatch, OCSPRespBuilder builder,
       ResponderImpl responder, RequestOption reqOpt, OcspServerConf.ResponseOption repOpt,
       OcspRespControl repControl) throws IOException {
     HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
@@ -909,10 +1140,19 @@ public class OcspServerImpl implements OcspServer {
         continue;
       }
 
+      LatencyHistogram storeLatency = storeLatencies.get(store.getName());
       try {
-        certStatusInfo = store.getCertStatus(now, certId.getIssuer(), serial,
-            repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
-            responder.getResponderOption().isInheritCaRevocation());
+        if (certStatusBatch == null) {
+          long start = System.nanoTime();
+          certStatusInfo = store.getCertStatus(now, reqIssuer, serial,
+              repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
+              responder.getResponderOption().isInheritCaRevocation());
+          storeLatency.recordNanos(System.nanoTime() - start);
+        } else {
+          certStatusInfo = certStatusBatch.getCertStatus(store, storeLatency, now, reqIssuer,
+              serial, repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
+              responder.getResponderOption().isInheritCaRevocation());
+        }
         if (certStatusInfo != null) {
           CertStatus status = certStatusInfo.getCertStatus();
           if (status == CertStatus.UNKNOWN || status == CertStatus.IGNORE) {
@@ -1094,6 +1334,11 @@ public class OcspServerImpl implements OcspServer {
     signerHealth.setHealthy(signerHealthy);
     result.addChildCheck(signerHealth);
 
+    if (responseCacher != null) {
+      // the response cacher is optional, its health does not affect the responder's health.
+      result.addChildCheck(responseCacher.healthCheck());
+    }
+
     result.setHealthy(healthy);
     return result;
   } // method healthCheck
@@ -1137,6 +1382,10 @@ public class OcspServerImpl implements OcspServer {
         ConcurrentContentSigner requestorSigner = securityFactory.createSigner(
             responderSignerType, new SignerConf("algo=" + sigAlgo + "," + responderKeyConf),
             explicitCertificateChain);
+        if (requestorSigner instanceof DfltConcurrentContentSigner) {
+          ((DfltConcurrentContentSigner) requestorSigner).registerMetrics(
+              MetricsRegistry.getDefault(), "signer", signerType.getName(), "algo", sigAlgo);
+        }
         singleSigners.add(requestorSigner);
       } catch (ObjectCreationException ex) {
         throw new InvalidConfException(ex.getMessage(), ex);
@@ -1264,14 +1513,29 @@ public class OcspServerImpl implements OcspServer {
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
     }
 
-    ContentVerifierProvider cvp;
-    try {
-      cvp = securityFactory.getContentVerifierProvider(certs[0]);
-    } catch (InvalidKeyException ex) {
-      String message = ex.getMessage();
-      LOG.warn("securityFactory.getContentVerifierProvider, InvalidKeyException: {}",
-          message);
-      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+    // the signer whose certpath has been validated needs only the signature verification
+    ValidatedSignerCache signerCache = requestOption.getValidatedSignerCache();
+    byte[] encodedSignerCert = null;
+    ContentVerifierProvider cvp = null;
+    if (signerCache != null) {
+      try {
+        encodedSignerCert = certs[0].getEncoded();
+      } catch (IOException ex) {
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+      }
+      cvp = signerCache.get(encodedSignerCert);
+    }
+
+    boolean validatedSigner = cvp != null;
+    if (cvp == null) {
+      try {
+        cvp = securityFactory.getContentVerifierProvider(certs[0]);
+      } catch (InvalidKeyException ex) {
+        String message = ex.getMessage();
+        LOG.warn("securityFactory.getContentVerifierProvider, InvalidKeyException: {}",
+            message);
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+      }
     }
 
     boolean sigValid = ocspReq.isSignatureValid(cvp);
@@ -1280,27 +1544,40 @@ public class OcspServerImpl implements OcspServer {
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
     }
 
-    // validate the certPath
-    Date referenceTime = new Date();
-    if (canBuildCertpath(certs, requestOption, referenceTime)) {
-      try {
-        return OcspRequest.getInstance(req);
-      } catch (EncodingException ex) {
-        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+    if (!validatedSigner) {
+      // validate the certPath
+      Date referenceTime = new Date();
+      X509Certificate[] certpath = buildCertpath(certs, requestOption, referenceTime);
+      if (certpath == null) {
+        LOG.warn("could not build certpath for the request's signer certificate");
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+      }
+
+      if (signerCache != null) {
+        signerCache.put(encodedSignerCert, cvp, certpath,
+            requestOption.getCertpathValidationModel());
       }
     }
 
-    LOG.warn("could not build certpath for the request's signer certificate");
-    return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+    try {
+      return OcspRequest.getInstance(req);
+    } catch (EncodingException ex) {
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+    }
   } // method checkSignature
 
-  private static boolean canBuildCertpath(X509CertificateHolder[] certsInReq,
+  /**
+   * Builds and validates the certpath of the request's signer certificate.
+   *
+   * @return the validated certpath, or {@code null} if it could not be built or is invalid.
+   */
+  private static X509Certificate[] buildCertpath(X509CertificateHolder[] certsInReq,
       RequestOption requestOption, Date referenceTime) {
     X509Certificate target;
     try {
       target = X509Util.toX509Cert(certsInReq[0].toASN1Structure());
     } catch (CertificateException ex) {
-      return false;
+      return null;
     }
     Set<Certificate> certstore = new HashSet<>();
 
@@ -1332,7 +1609,7 @@ public class OcspServerImpl implements OcspServer {
       certpath = X509Util.buildCertPath(target, certstore);
     } catch (CertPathBuilderException ex) {
       LogUtil.warn(LOG, ex);
-      return false;
+      return null;
     }
 
     CertpathValidationModel model = requestOption.getCertpathValidationModel();
@@ -1341,7 +1618,7 @@ public class OcspServerImpl implements OcspServer {
     if (model == null || model == CertpathValidationModel.PKIX) {
       for (X509Certificate m : certpath) {
         if (m.getNotBefore().after(now) || m.getNotAfter().before(now)) {
-          return false;
+          return null;
         }
       }
     } else if (model == CertpathValidationModel.CHAIN) {
@@ -1354,13 +1631,13 @@ public class OcspServerImpl implements OcspServer {
       X509Certificate targetCert = certpath[i];
       for (CertWithEncoded m : trustAnchors) {
         if (m.equalsCert(targetCert)) {
-          return true;
+          return certpath;
         }
       }
     }
 
-    return false;
-  } // method canBuildCertpath
+    return null;
+  } // method buildCertpath
 
   private static boolean getBoolean(Boolean bo, boolean defaultValue) {
     return (bo == null) ? defaultValue : bo.booleanValue();
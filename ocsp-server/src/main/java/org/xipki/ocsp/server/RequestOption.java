@@ -41,6 +41,7 @@ import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
 import org.xipki.util.InvalidConfException;
 import org.xipki.util.IoUtil;
+import org.xipki.util.metrics.MetricsRegistry;
 
 /**
  * OCSP request option.
@@ -91,6 +92,8 @@ public class RequestOption {
 
   private final CertpathValidationModel certpathValidationModel;
 
+  private final ValidatedSignerCache validatedSignerCache;
+
   RequestOption(OcspServerConf.RequestOption conf) throws InvalidConfException {
     Args.notNull(conf, "conf");
 
@@ -150,10 +153,24 @@ public class RequestOption {
       trustAnchors = null;
       certs = null;
       certpathValidationModel = CertpathValidationModel.PKIX;
+      validatedSignerCache = null;
       return;
     }
 
     certpathValidationModel = certpathConf.getValidationModel();
+    validatedSignerCache = (validateSignature && certpathConf.getValidatedSignerCacheSize() > 0)
+        ? new ValidatedSignerCache(certpathConf.getValidatedSignerCacheSize(),
+            certpathConf.getValidatedSignerCacheTtl())
+        : null;
+    if (validatedSignerCache != null) {
+      MetricsRegistry registry = MetricsRegistry.getDefault();
+      registry.counter("xipki_ocsp_validated_signer_cache_hits_total",
+          "Number of signed requests from a cached validated signer",
+          validatedSignerCache::getHits, "request", conf.getName());
+      registry.counter("xipki_ocsp_validated_signer_cache_misses_total",
+          "Number of signed requests from a signer not in the cache",
+          validatedSignerCache::getMisses, "request", conf.getName());
+    }
 
     try {
       Set<X509Certificate> tmpCerts = getCerts(certpathConf.getTrustAnchors());
@@ -230,6 +247,10 @@ public class RequestOption {
     return certs;
   }
 
+  ValidatedSignerCache getValidatedSignerCache() {
+    return validatedSignerCache;
+  }
+
   private static Set<X509Certificate> getCerts(OcspServerConf.CertCollection conf)
       throws KeyStoreException, NoSuchAlgorithmException, CertificateException, IOException {
     Args.notNull(conf, "conf");
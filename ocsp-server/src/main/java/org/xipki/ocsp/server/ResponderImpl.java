@@ -17,12 +17,17 @@
 
 package org.xipki.ocsp.server;
 
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.xipki.ocsp.api.OcspStore;
 import org.xipki.ocsp.api.Responder;
 import org.xipki.ocsp.server.OcspServerConf.ResponseOption;
 import org.xipki.util.Args;
+import org.xipki.util.LatencyHistogram;
+import org.xipki.util.metrics.MetricsRegistry;
 
 /**
  * Implementation of {@link Responder}.
@@ -43,14 +48,28 @@ public class ResponderImpl implements Responder {
 
   private final List<OcspStore> stores;
 
-  ResponderImpl(ResponderOption responderOption, RequestOption requestOption,
+  private final LatencyHistogram requestLatency;
+
+  private final Map<OcspResponseStatus, LongAdder> responseCounters =
+      new EnumMap<>(OcspResponseStatus.class);
+
+  ResponderImpl(String name, ResponderOption responderOption, RequestOption requestOption,
       ResponseOption responseOption, ResponseSigner signer, List<OcspStore> stores) {
+    Args.notBlank(name, "name");
     this.responderOption = Args.notNull(responderOption, "responderOption");
     this.requestOption = Args.notNull(requestOption, "requestOption");
     this.responseOption = Args.notNull(responseOption, "responseOption");
     this.signer = Args.notNull(signer, "signer");
     this.stores = Args.notEmpty(stores, "stores");
-  }
+
+    MetricsRegistry registry = MetricsRegistry.getDefault();
+    this.requestLatency = registry.latency("xipki_ocsp_request_seconds",
+        "Time to answer an OCSP request", "responder", name);
+    for (OcspResponseStatus status : OcspResponseStatus.values()) {
+      responseCounters.put(status, registry.counter("xipki_ocsp_responses_total",
+          "Number of OCSP responses", "responder", name, "status", status.name()));
+    }
+  } // constructor
 
   public ResponderOption getResponderOption() {
     return responderOption;
@@ -87,4 +106,9 @@ public class ResponderImpl implements Responder {
     return responseOption.getCacheMaxAge();
   }
 
+  void recordResponse(OcspResponseStatus status, long latencyNanos) {
+    requestLatency.recordNanos(latencyNanos);
+    responseCounters.get(status).increment();
+  }
+
 }
@@ -0,0 +1,223 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.io.Closeable;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Pre-signs the nonce-less OCSP responses of all certificates of a responder, so that the
+ * requests can be answered from the response cache without signing. The certificates of
+ * each issuer are walked in the order of their IDs in the store, the responses whose cached
+ * version expires within the refresh window are signed again, with at most maxRate
+ * signatures per second. The new responses are written into the cache by the write-behind
+ * queue of the {@link org.xipki.ocsp.server.store.ResponseCacher} in batches.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class ResponsePresigner implements Closeable {
+
+  /**
+   * Checks the cached responses and signs the new ones.
+   */
+  interface Signer {
+
+    /**
+     * Whether the cached response of the certificate is valid at least until minExpiry.
+     *
+     * @param issuer issuer of the certificate.
+     * @param serialNumber serial number of the certificate.
+     * @param minExpiry minimal expiry in seconds since January 1, 1970 UTC.
+     * @return whether the cached response is valid.
+     * @throws Exception if the cache could not be read.
+     */
+    boolean isCachedResponseValid(RequestIssuer issuer, BigInteger serialNumber,
+        long minExpiry) throws Exception;
+
+    /**
+     * Signs the nonce-less response of the certificate and stores it in the response cache.
+     *
+     * @param issuer issuer of the certificate.
+     * @param serialNumber serial number of the certificate.
+     * @return whether the response has been signed successfully.
+     */
+    boolean presign(RequestIssuer issuer, BigInteger serialNumber);
+
+  } // interface Signer
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponsePresigner.class);
+
+  private static final int PAGE_SIZE = 1000;
+
+  private final String name;
+
+  private final List<OcspStore> stores;
+
+  private final Signer signer;
+
+  // in seconds
+  private final long refreshWindow;
+
+  // in milliseconds
+  private final long interval;
+
+  private final long nanosPerResponse;
+
+  private final AtomicLong signed = new AtomicLong();
+
+  private final AtomicLong failed = new AtomicLong();
+
+  private ScheduledExecutorService executor;
+
+  private volatile boolean closed;
+
+  ResponsePresigner(String name, List<OcspStore> stores, Signer signer,
+      OcspServerConf.Presign conf) {
+    this.name = Args.notBlank(name, "name");
+    this.stores = Args.notNull(stores, "stores");
+    this.signer = Args.notNull(signer, "signer");
+    Args.notNull(conf, "conf");
+    this.refreshWindow = conf.refreshWindow().approxMinutes() * 60;
+    this.interval = Math.max(1, conf.interval().approxMinutes()) * 60 * 1000;
+    this.nanosPerResponse = TimeUnit.SECONDS.toNanos(1) / conf.maxRate();
+  } // constructor
+
+  void start() {
+    executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "ocsp-presign-" + name);
+      thread.setDaemon(true);
+      return thread;
+    });
+    // the first run starts after the stores have been initialized.
+    executor.scheduleWithFixedDelay(this::run, 60 * 1000, interval, TimeUnit.MILLISECONDS);
+    LOG.info("started pre-signing of responder {}, refresh window {} s, interval {} ms",
+        name, refreshWindow, interval);
+  }
+
+  long getSignedCount() {
+    return signed.get();
+  }
+
+  long getFailedCount() {
+    return failed.get();
+  }
+
+  /**
+   * Walks all certificates once. Called by the scheduled executor.
+   */
+  void run() {
+    try {
+      long start = System.currentTimeMillis();
+      long signed0 = signed.get();
+      long failed0 = failed.get();
+      long checked = 0;
+
+      for (OcspStore store : stores) {
+        List<RequestIssuer> issuers = store.getIssuers();
+        if (issuers == null) {
+          LOG.debug("store {} does not support the pre-signing", store.getName());
+          continue;
+        }
+
+        for (RequestIssuer issuer : issuers) {
+          checked += presignIssuer(store, issuer);
+        }
+      }
+
+      LOG.info("pre-signing of responder {}: checked {} certificates, signed {} responses, "
+          + "{} failed, in {} ms", name, checked, signed.get() - signed0,
+          failed.get() - failed0, System.currentTimeMillis() - start);
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "error while pre-signing OCSP responses of responder " + name);
+    }
+  } // method run
+
+  private long presignIssuer(OcspStore store, RequestIssuer issuer) throws Exception {
+    long checked = 0;
+    long nextSignTime = System.nanoTime();
+    long fromId = 0;
+
+    while (!closed) {
+      SortedMap<Long, BigInteger> serials = store.getSerialNumbers(issuer, fromId, PAGE_SIZE);
+      if (serials == null || serials.isEmpty()) {
+        break;
+      }
+
+      for (Entry<Long, BigInteger> entry : serials.entrySet()) {
+        if (closed) {
+          break;
+        }
+
+        checked++;
+        long minExpiry = System.currentTimeMillis() / 1000 + refreshWindow;
+        if (signer.isCachedResponseValid(issuer, entry.getValue(), minExpiry)) {
+          continue;
+        }
+
+        // rate limit
+        long waitNanos = nextSignTime - System.nanoTime();
+        if (waitNanos > 0) {
+          LockSupport.parkNanos(waitNanos);
+        }
+        nextSignTime = Math.max(nextSignTime, System.nanoTime()) + nanosPerResponse;
+
+        if (signer.presign(issuer, entry.getValue())) {
+          signed.incrementAndGet();
+        } else {
+          failed.incrementAndGet();
+        }
+      }
+
+      fromId = serials.lastKey() + 1;
+    }
+
+    return checked;
+  } // method presignIssuer
+
+  @Override
+  public void close() {
+    closed = true;
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      executor = null;
+    }
+  } // method close
+
+}
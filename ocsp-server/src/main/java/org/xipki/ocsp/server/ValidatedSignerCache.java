@@ -0,0 +1,143 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.xipki.security.CertpathValidationModel;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+
+/**
+ * Cache of the request signer certificates whose certification path has been validated,
+ * keyed by the SHA-256 fingerprint of the certificate. Each entry holds the prepared
+ * {@link ContentVerifierProvider}, so that the signature of further requests from the same
+ * signer is verified without building the certification path again.
+ *
+ * <p>An entry expires after the configured time, or, if the validity of the certificates is
+ * checked (certpath validation model other than CHAIN), at the earliest notAfter of the
+ * validated certification path, whichever comes first.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class ValidatedSignerCache {
+
+  private static class Entry {
+
+    private final ContentVerifierProvider verifierProvider;
+
+    private final long expireTime;
+
+    Entry(ContentVerifierProvider verifierProvider, long expireTime) {
+      this.verifierProvider = verifierProvider;
+      this.expireTime = expireTime;
+    }
+
+  } // class Entry
+
+  private final LruCache<String, Entry> cache;
+
+  private final long ttlMillis;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param maxSize
+   *          Maximal number of cached signers.
+   * @param ttl
+   *          Time in seconds a validated signer is cached.
+   */
+  ValidatedSignerCache(int maxSize, int ttl) {
+    this.cache = new LruCache<>(Args.positive(maxSize, "maxSize"));
+    this.ttlMillis = TimeUnit.SECONDS.toMillis(Args.positive(ttl, "ttl"));
+  }
+
+  /**
+   * Returns the verifier provider of the validated signer certificate.
+   *
+   * @param encodedCert
+   *          The DER-encoded signer certificate.
+   * @return the verifier provider, or {@code null} if not cached.
+   */
+  ContentVerifierProvider get(byte[] encodedCert) {
+    String key = key(encodedCert);
+    Entry entry = cache.get(key);
+    if (entry != null) {
+      if (System.currentTimeMillis() < entry.expireTime) {
+        hits.incrementAndGet();
+        return entry.verifierProvider;
+      }
+      cache.remove(key);
+    }
+
+    misses.incrementAndGet();
+    return null;
+  } // method get
+
+  /**
+   * Caches the validated signer certificate.
+   *
+   * @param encodedCert
+   *          The DER-encoded signer certificate.
+   * @param verifierProvider
+   *          The verifier provider of the signer certificate.
+   * @param certpath
+   *          The validated certification path.
+   * @param model
+   *          The model used to validate the certification path.
+   */
+  void put(byte[] encodedCert, ContentVerifierProvider verifierProvider,
+      X509Certificate[] certpath, CertpathValidationModel model) {
+    long expireTime = System.currentTimeMillis() + ttlMillis;
+    if (model != CertpathValidationModel.CHAIN) {
+      // the certpath is no more valid after the earliest notAfter
+      for (X509Certificate m : certpath) {
+        expireTime = Math.min(expireTime, m.getNotAfter().getTime());
+      }
+    }
+
+    cache.put(key(encodedCert), new Entry(verifierProvider, expireTime));
+  } // method put
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+
+  int size() {
+    return cache.size();
+  }
+
+  private static String key(byte[] encodedCert) {
+    return HashAlgo.SHA256.base64Hash(encodedCert);
+  }
+
+}
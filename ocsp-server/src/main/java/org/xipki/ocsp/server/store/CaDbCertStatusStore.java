@@ -24,6 +24,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -33,6 +34,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -248,19 +251,7 @@ public class CaDbCertStatusStore extends OcspStore {
         sql = includeRit ? sqlCs : sqlCsNoRit;
       }
 
-      Date thisUpdate = new Date();
-
       ResultSet rs = null;
-      CertStatusInfo certStatusInfo = null;
-
-      boolean unknown = true;
-      boolean ignore = false;
-      String b64CertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-      long invalTime = 0;
-
       PreparedStatement ps = datasource.prepareStatement(sql);
 
       try {
@@ -268,122 +259,224 @@ public class CaDbCertStatusStore extends OcspStore {
         ps.setString(2, serialNumber.toString(16));
         rs = ps.executeQuery();
 
-        if (rs.next()) {
-          unknown = false;
-
-          long timeInSec = time.getTime() / 1000;
-          if (!ignore && ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("SHA1");
-            }
-
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
-              }
-            }
-          }
-        } // end if (rs.next())
+        return buildCertStatusInfo(time, issuer, rs.next() ? rs : null,
+            includeCertHash, includeRit, inheritCaRevocation);
       } catch (SQLException ex) {
         throw datasource.translate(sql, ex);
       } finally {
         releaseDbResources(ps, rs);
       }
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      Date nextUpdate = null;
+  } // method getCertStatus0
 
-      if (unknown) {
-        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-      } else if (ignore) {
-        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+  @Override
+  protected Map<BigInteger, CertStatusInfo> getCertStatuses0(Date time,
+      RequestIssuer reqIssuer, List<BigInteger> serialNumbers, boolean includeCertHash,
+      boolean includeRit, boolean inheritCaRevocation) throws OcspStoreException {
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
+
+    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return null;
+    }
+
+    Map<BigInteger, CertStatusInfo> infos = new HashMap<>(serialNumbers.size() * 4 / 3 + 1);
+
+    // hex serial number as in the database, to serial number
+    Map<String, BigInteger> hexSerials = new HashMap<>(serialNumbers.size() * 4 / 3 + 1);
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() != 1) { // non-positive serial number
+        infos.put(serialNumber, CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
       } else {
-        byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
-        if (revoked) {
-          Date invTime = (invalTime == 0 || invalTime == revTime)
-              ? null : new Date(invalTime * 1000);
-          CertRevocationInfo revInfo = new CertRevocationInfo(reason,
-              new Date(revTime * 1000), invTime);
-          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-              certHashAlgo, certHash, thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-              certHash, thisUpdate, nextUpdate, null);
-        }
+        hexSerials.put(serialNumber.toString(16), serialNumber);
       }
+    }
+
+    String coreSql = "SELECT SN," + getCertStatusColumns(includeCertHash, includeRit)
+        + " FROM CERT WHERE CA_ID=? AND SN IN ";
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
+    List<String> pendingSerials = new ArrayList<>(hexSerials.keySet());
+    try {
+      for (int offset = 0; offset < pendingSerials.size(); offset += MAX_SERIALS_PER_QUERY) {
+        List<String> chunk = padInClauseValues(pendingSerials.subList(offset,
+            Math.min(pendingSerials.size(), offset + MAX_SERIALS_PER_QUERY)));
+        String sql = coreSql + buildInClause(chunk.size());
+
+        ResultSet rs = null;
+        PreparedStatement ps = datasource.prepareStatement(sql);
+        try {
+          int idx = 1;
+          ps.setInt(idx++, issuer.getId());
+          for (String hexSerial : chunk) {
+            ps.setString(idx++, hexSerial);
           }
+          rs = ps.executeQuery();
 
-          certStatusInfo.setArchiveCutOff(date);
+          while (rs.next()) {
+            BigInteger serialNumber = hexSerials.get(rs.getString("SN"));
+            if (serialNumber != null) {
+              infos.put(serialNumber, buildCertStatusInfo(time, issuer, rs,
+                  includeCertHash, includeRit, inheritCaRevocation));
+            }
+          }
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          releaseDbResources(ps, rs);
         }
       }
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+      // certificates not contained in the database
+      for (BigInteger serialNumber : hexSerials.values()) {
+        if (!infos.containsKey(serialNumber)) {
+          infos.put(serialNumber, buildCertStatusInfo(time, issuer, null,
+              includeCertHash, includeRit, inheritCaRevocation));
+        }
       }
+    } catch (DataAccessException | SQLException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD) {
-        replaced = true;
-      } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
-        if (unknownCertBehaviour == UnknownCertBehaviour.good) {
-          replaced = true;
+    return infos;
+  } // method getCertStatuses0
+
+  /**
+   * Builds the certificate status from the current row of the query result.
+   *
+   * @param rs result set positioned at the row of the certificate, or {@code null} if the
+   *        certificate is not contained in the database.
+   */
+  private CertStatusInfo buildCertStatusInfo(Date time, IssuerEntry issuer, ResultSet rs,
+      boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation)
+          throws SQLException {
+    Date thisUpdate = new Date();
+
+    boolean unknown = true;
+    boolean ignore = false;
+    String b64CertHash = null;
+    boolean revoked = false;
+    int reason = 0;
+    long revTime = 0;
+    long invalTime = 0;
+
+    if (rs != null) {
+      unknown = false;
+
+      long timeInSec = time.getTime() / 1000;
+      if (!ignore && ignoreNotYetValidCert) {
+        long notBeforeInSec = rs.getLong("NBEFORE");
+        if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
+          ignore = true;
         }
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
+      }
+
+      if (!ignore && ignoreExpiredCert) {
+        long notAfterInSec = rs.getLong("NAFTER");
+        if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
+          ignore = true;
         }
       }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+      if (!ignore) {
+        if (includeCertHash) {
+          b64CertHash = rs.getString("SHA1");
+        }
+
+        revoked = rs.getBoolean("REV");
+        if (revoked) {
+          reason = rs.getInt("RR");
+          revTime = rs.getLong("RT");
+          if (includeRit) {
+            invalTime = rs.getLong("RIT");
+          }
+        }
+      }
+    } // end if (rs != null)
+
+    Date nextUpdate = null;
+
+    CertStatusInfo certStatusInfo;
+    if (unknown) {
+      certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+    } else if (ignore) {
+      certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+    } else {
+      byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
+      if (revoked) {
+        Date invTime = (invalTime == 0 || invalTime == revTime)
+            ? null : new Date(invalTime * 1000);
+        CertRevocationInfo revInfo = new CertRevocationInfo(reason,
+            new Date(revTime * 1000), invTime);
+        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+            certHashAlgo, certHash, thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
+            certHash, thisUpdate, nextUpdate, null);
+      }
+    }
+
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
+
+        certStatusInfo.setArchiveCutOff(date);
       }
+    }
+
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
       return certStatusInfo;
-    } catch (DataAccessException ex) {
-      throw new OcspStoreException(ex.getMessage(), ex);
     }
 
-  } // method getCertStatus0
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD) {
+      replaced = true;
+    } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
+      if (unknownCertBehaviour == UnknownCertBehaviour.good) {
+        replaced = true;
+      }
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
+      } else {
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+      }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method buildCertStatusInfo
+
+  private static String getCertStatusColumns(boolean includeCertHash, boolean includeRit) {
+    return "NBEFORE,NAFTER,REV,RR,RT" + (includeRit ? ",RIT" : "")
+        + (includeCertHash ? ",SHA1" : "");
+  }
 
   /**
    * Borrow Prepared Statement.
@@ -446,15 +539,14 @@ public class CaDbCertStatusStore extends OcspStore {
 
     this.datasource = Args.notNull(datasource, "datasource");
 
-    sqlCs = datasource.buildSelectFirstSql(1,
-        "NBEFORE,NAFTER,REV,RR,RT,RIT FROM CERT WHERE CA_ID=? AND SN=?");
-    sqlCsNoRit = datasource.buildSelectFirstSql(1,
-        "NBEFORE,NAFTER,REV,RR,RT FROM CERT WHERE CA_ID=? AND SN=?");
+    final String coreSql = " FROM CERT WHERE CA_ID=? AND SN=?";
+    sqlCs = datasource.buildSelectFirstSql(1, getCertStatusColumns(false, true) + coreSql);
+    sqlCsNoRit = datasource.buildSelectFirstSql(1, getCertStatusColumns(false, false) + coreSql);
 
     sqlCsWithCertHash = datasource.buildSelectFirstSql(1,
-        "NBEFORE,NAFTER,REV,RR,RT,RIT,SHA1 FROM CERT WHERE CA_ID=? AND SN=?");
+        getCertStatusColumns(true, true) + coreSql);
     sqlCsNoRitWithCertHash = datasource.buildSelectFirstSql(1,
-        "NBEFORE,NAFTER,REV,RR,RT,SHA1 FROM CERT WHERE CA_ID=? AND SN=?");
+        getCertStatusColumns(true, false) + coreSql);
 
     this.certHashAlgo = HashAlgo.SHA1;
 
@@ -525,6 +617,49 @@ public class CaDbCertStatusStore extends OcspStore {
     return (issuer == null) ? null : issuer.getCert();
   } // method getIssuerCert
 
+  @Override
+  public List<RequestIssuer> getIssuers() {
+    return (issuerStore == null) ? Collections.emptyList() : issuerStore.getRequestIssuers();
+  }
+
+  /**
+   * Returns the serial numbers of the valid certificates. The revoked and expired certificates
+   * are not returned: the responses of revoked certificates are signed on demand, and expired
+   * certificates are hardly requested.
+   */
+  @Override
+  public SortedMap<Long, BigInteger> getSerialNumbers(RequestIssuer reqIssuer, long fromId,
+      int numEntries) throws OcspStoreException {
+    IssuerEntry issuer = (issuerStore == null) ? null : issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return null;
+    }
+
+    final String sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
+        "ID,SN FROM CERT WHERE CA_ID=? AND ID>=? AND REV=0 AND NAFTER>?");
+    SortedMap<Long, BigInteger> serials = new TreeMap<>();
+    ResultSet rs = null;
+    try {
+      PreparedStatement ps = datasource.prepareStatement(sql);
+      try {
+        ps.setInt(1, issuer.getId());
+        ps.setLong(2, fromId);
+        ps.setLong(3, System.currentTimeMillis() / 1000);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          serials.put(rs.getLong("ID"), new BigInteger(rs.getString("SN"), 16));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
+      }
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+    return serials;
+  } // method getSerialNumbers
+
   protected boolean isInitialized() {
     return initialized;
   }
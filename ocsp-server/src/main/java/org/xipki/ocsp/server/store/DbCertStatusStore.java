@@ -26,6 +26,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -37,6 +38,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -53,6 +56,7 @@ import org.xipki.ocsp.api.OcspStoreException;
 import org.xipki.ocsp.api.RequestIssuer;
 import org.xipki.ocsp.server.IssuerFilter;
 import org.xipki.ocsp.server.OcspServerConf;
+import org.xipki.ocsp.server.store.RevocationIndex.CertRow;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CrlReason;
 import org.xipki.security.HashAlgo;
@@ -91,6 +95,8 @@ public class DbCertStatusStore extends OcspStore {
 
   private final Object lock = new Object();
 
+  private final Object indexLock = new Object();
+
   private final AtomicBoolean storeUpdateInProcess = new AtomicBoolean(false);
 
   private final StoreUpdateService storeUpdateService = new StoreUpdateService();
@@ -113,6 +119,11 @@ public class DbCertStatusStore extends OcspStore {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  private RevocationIndex revocationIndex;
+
+  // interval in seconds to refresh the revocation index
+  private int memoryIndexRefreshInterval;
+
   protected List<Runnable> getScheduledServices() {
     return Arrays.asList(storeUpdateService);
   }
@@ -147,6 +158,7 @@ public class DbCertStatusStore extends OcspStore {
       try {
         updateIssuers();
         updateCrls();
+        updateRevocationIndex(force || !initialized);
       } finally {
         initialized = true;
         storeUpdateInProcess.set(false);
@@ -283,6 +295,30 @@ public class DbCertStatusStore extends OcspStore {
     }
   } // method updateCrls
 
+  private void updateRevocationIndex(boolean full) {
+    if (revocationIndex == null) {
+      return;
+    }
+
+    synchronized (indexLock) {
+      try {
+        long start = System.currentTimeMillis();
+        revocationIndex.refresh(issuerStore.getIds(), full);
+        LOG.info("{} revocation index of store {} with {} entries in {} ms",
+            full ? "Loaded" : "Updated", name, revocationIndex.size(),
+            System.currentTimeMillis() - start);
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "error while executing updateRevocationIndex()");
+      }
+    }
+  } // method updateRevocationIndex
+
+  private boolean canUseRevocationIndex(IssuerEntry issuer, boolean includeCertHash) {
+    // the hash of good certificates is not contained in the index
+    return revocationIndex != null && !includeCertHash
+        && revocationIndex.isLoaded(issuer.getId());
+  }
+
   @Override
   protected CertStatusInfo getCertStatus0(Date time, RequestIssuer reqIssuer,
       BigInteger serialNumber, boolean includeCertHash, boolean includeRit,
@@ -315,6 +351,12 @@ public class DbCertStatusStore extends OcspStore {
         }
       }
 
+      if (canUseRevocationIndex(issuer, includeCertHash)) {
+        CertRow row = revocationIndex.get(issuer.getId(), serialNumber);
+        return buildCertStatusInfo(time, issuer, crlInfo, row == null ? CertRow.NOT_REVOKED : row,
+            null, includeRit, inheritCaRevocation);
+      }
+
       if (includeCertHash) {
         sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
       } else {
@@ -322,17 +364,6 @@ public class DbCertStatusStore extends OcspStore {
       }
 
       ResultSet rs = null;
-      CertStatusInfo certStatusInfo = null;
-
-      boolean unknown = true;
-      boolean ignore = false;
-      String b64CertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-      long invalTime = 0;
-      int crlId = 0;
-
       PreparedStatement ps = datasource.prepareStatement(sql);
 
       try {
@@ -341,149 +372,274 @@ public class DbCertStatusStore extends OcspStore {
         rs = ps.executeQuery();
 
         if (rs.next()) {
-          unknown = false;
-          crlId = rs.getInt("CRL_ID");
-
-          long timeInSec = time.getTime() / 1000;
-          if (!ignore && ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("HASH");
-            }
-
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
-              }
-            }
-          }
-        } // end if (rs.next())
+          return buildCertStatusInfo(time, issuer, crlInfo, CertRow.read(rs, includeRit),
+              includeCertHash ? rs.getString("HASH") : null, includeRit, inheritCaRevocation);
+        } else {
+          return buildCertStatusInfo(time, issuer, crlInfo, null, null,
+              includeRit, inheritCaRevocation);
+        }
       } catch (SQLException ex) {
         throw datasource.translate(sql, ex);
       } finally {
         releaseDbResources(ps, rs);
       }
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      if (crlId == 0) {
-        crlId = issuer.getCrlId();
-      }
+  } // method getCertStatus0
 
-      if (crlInfo == null && crlId != 0) {
-        crlInfo = issuerStore.getCrlInfo(crlId);
-      }
+  @Override
+  protected Map<BigInteger, CertStatusInfo> getCertStatuses0(Date time,
+      RequestIssuer reqIssuer, List<BigInteger> serialNumbers, boolean includeCertHash,
+      boolean includeRit, boolean inheritCaRevocation) throws OcspStoreException {
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
 
-      Date thisUpdate;
-      Date nextUpdate;
-      if (crlInfo == null) {
-        thisUpdate = new Date();
-        nextUpdate = null;
-      } else {
-        thisUpdate = crlInfo.getThisUpdate();
-        nextUpdate = crlInfo.getNextUpdate();
+    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return null;
+    }
 
-        if (isIgnoreExpiredCrls()) {
-          // CRL will expire in 5 minutes
-          if (crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN) {
-            return CertStatusInfo.getCrlExpiredStatusInfo();
+    if (canUseRevocationIndex(issuer, includeCertHash)) {
+      // no database access is required
+      return super.getCertStatuses0(time, reqIssuer, serialNumbers, includeCertHash,
+          includeRit, inheritCaRevocation);
+    }
+
+    Map<BigInteger, CertStatusInfo> infos = new HashMap<>(serialNumbers.size() * 4 / 3 + 1);
+
+    CrlInfo crlInfo = null;
+    if (issuer.getCrlId() != 0) {
+      crlInfo = issuerStore.getCrlInfo(issuer.getCrlId());
+      // check whether CRL is expired
+      if (isIgnoreExpiredCrls()) {
+        // CRL will expire in 5 minutes
+        if (crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN) {
+          for (BigInteger serialNumber : serialNumbers) {
+            infos.put(serialNumber, CertStatusInfo.getCrlExpiredStatusInfo());
           }
+          return infos;
         }
       }
+    }
 
-      if (unknown) {
-        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-      } else if (ignore) {
-        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+    // hex serial number as in the database, to serial number
+    Map<String, BigInteger> hexSerials = new HashMap<>(serialNumbers.size() * 4 / 3 + 1);
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() != 1) { // non-positive serial number
+        infos.put(serialNumber, CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
       } else {
-        byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
-        if (revoked) {
-          Date invTime = (invalTime == 0 || invalTime == revTime)
-              ? null : new Date(invalTime * 1000);
-          CertRevocationInfo revInfo = new CertRevocationInfo(reason,
-              new Date(revTime * 1000), invTime);
-          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-              certHashAlgo, certHash, thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-              certHash, thisUpdate, nextUpdate, null);
+        hexSerials.put(serialNumber.toString(16), serialNumber);
+      }
+    }
+
+    String coreSql = "SELECT SN," + getCertStatusColumns(includeCertHash, includeRit)
+        + " FROM CERT WHERE IID=? AND SN IN ";
+
+    List<String> pendingSerials = new ArrayList<>(hexSerials.keySet());
+    try {
+      for (int offset = 0; offset < pendingSerials.size(); offset += MAX_SERIALS_PER_QUERY) {
+        List<String> chunk = padInClauseValues(pendingSerials.subList(offset,
+            Math.min(pendingSerials.size(), offset + MAX_SERIALS_PER_QUERY)));
+        String sql = coreSql + buildInClause(chunk.size());
+
+        ResultSet rs = null;
+        PreparedStatement ps = datasource.prepareStatement(sql);
+        try {
+          int idx = 1;
+          ps.setInt(idx++, issuer.getId());
+          for (String hexSerial : chunk) {
+            ps.setString(idx++, hexSerial);
+          }
+          rs = ps.executeQuery();
+
+          while (rs.next()) {
+            BigInteger serialNumber = hexSerials.get(rs.getString("SN"));
+            if (serialNumber != null) {
+              infos.put(serialNumber, buildCertStatusInfo(time, issuer, crlInfo,
+                  CertRow.read(rs, includeRit), includeCertHash ? rs.getString("HASH") : null,
+                  includeRit, inheritCaRevocation));
+            }
+          }
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          releaseDbResources(ps, rs);
         }
       }
 
-      if (includeCrlId && crlInfo != null) {
-        certStatusInfo.setCrlId(crlInfo.getCrlId());
+      // certificates not contained in the database
+      for (BigInteger serialNumber : hexSerials.values()) {
+        if (!infos.containsKey(serialNumber)) {
+          infos.put(serialNumber, buildCertStatusInfo(time, issuer, crlInfo, null, null,
+              includeRit, inheritCaRevocation));
+        }
       }
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
-          }
+    return infos;
+  } // method getCertStatuses0
 
-          certStatusInfo.setArchiveCutOff(date);
+  /**
+   * Builds the certificate status from the row of the certificate.
+   *
+   * @param row row of the certificate, or {@code null} if the certificate is not contained
+   *        in the database.
+   * @param b64CertHash base64 encoded hash of the certificate, may be {@code null}.
+   */
+  private CertStatusInfo buildCertStatusInfo(Date time, IssuerEntry issuer, CrlInfo crlInfo,
+      CertRow row, String b64CertHash, boolean includeRit, boolean inheritCaRevocation) {
+    boolean unknown = true;
+    boolean ignore = false;
+    boolean revoked = false;
+    int reason = 0;
+    long revTime = 0;
+    long invalTime = 0;
+    int crlId = 0;
+
+    if (row != null) {
+      unknown = false;
+      crlId = row.crlId;
+
+      long timeInSec = time.getTime() / 1000;
+      if (!ignore && ignoreNotYetValidCert) {
+        long notBeforeInSec = row.notBefore;
+        if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
+          ignore = true;
         }
       }
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+      if (!ignore && ignoreExpiredCert) {
+        long notAfterInSec = row.notAfter;
+        if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
+          ignore = true;
+        }
       }
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD) {
-        replaced = true;
-      } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
-        if (unknownCertBehaviour == UnknownCertBehaviour.good) {
-          replaced = true;
+      if (ignore) {
+        b64CertHash = null;
+      } else {
+        revoked = row.revoked;
+        if (revoked) {
+          reason = row.reason;
+          revTime = row.revTime;
+          if (includeRit) {
+            invalTime = row.invalTime;
+          }
         }
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
+      }
+    } // end if (row != null)
+
+    if (crlId == 0) {
+      crlId = issuer.getCrlId();
+    }
+
+    if (crlInfo == null && crlId != 0) {
+      crlInfo = issuerStore.getCrlInfo(crlId);
+    }
+
+    Date thisUpdate;
+    Date nextUpdate;
+    if (crlInfo == null) {
+      thisUpdate = new Date();
+      nextUpdate = null;
+    } else {
+      thisUpdate = crlInfo.getThisUpdate();
+      nextUpdate = crlInfo.getNextUpdate();
+
+      if (isIgnoreExpiredCrls()) {
+        // CRL will expire in 5 minutes
+        if (crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN) {
+          return CertStatusInfo.getCrlExpiredStatusInfo();
         }
       }
+    }
+
+    CertStatusInfo certStatusInfo;
+    if (unknown) {
+      certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+    } else if (ignore) {
+      certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+    } else {
+      byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
+      if (revoked) {
+        Date invTime = (invalTime == 0 || invalTime == revTime)
+            ? null : new Date(invalTime * 1000);
+        CertRevocationInfo revInfo = new CertRevocationInfo(reason,
+            new Date(revTime * 1000), invTime);
+        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+            certHashAlgo, certHash, thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
+            certHash, thisUpdate, nextUpdate, null);
+      }
+    }
+
+    if (includeCrlId && crlInfo != null) {
+      certStatusInfo.setCrlId(crlInfo.getCrlId());
+    }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
+
+        certStatusInfo.setArchiveCutOff(date);
       }
+    }
+
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
       return certStatusInfo;
-    } catch (DataAccessException ex) {
-      throw new OcspStoreException(ex.getMessage(), ex);
     }
 
-  } // method getCertStatus0
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD) {
+      replaced = true;
+    } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
+      if (unknownCertBehaviour == UnknownCertBehaviour.good) {
+        replaced = true;
+      }
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
+      } else {
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+      }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method buildCertStatusInfo
+
+  private static String getCertStatusColumns(boolean includeCertHash, boolean includeRit) {
+    return "NBEFORE,NAFTER,REV,RR,RT" + (includeRit ? ",RIT" : "")
+        + (includeCertHash ? ",HASH" : "") + ",CRL_ID";
+  }
 
   /**
    * Borrow Prepared Statement.
@@ -530,6 +686,20 @@ public class DbCertStatusStore extends OcspStore {
    * <li>caCerts: optional
    *   <p>
    *   CA certificate files to be included / excluded.</li>
+   * <li>memoryIndex: optional
+   *   <p>
+   *   Whether to answer the status from an in-memory index of the revoked certificates,
+   *   default to false. Only applicable if unknownCertBehaviour is good. The index is
+   *   refreshed periodically, a certificate revoked after the last refresh is reported as
+   *   good until the next refresh.</li>
+   * <li>memoryIndexRefreshInterval: optional
+   *   <p>
+   *   Interval in seconds to refresh the in-memory index, independent of the updateInterval
+   *   of the store, default to 60.</li>
+   * <li>memoryIndexMaxSize: optional
+   *   <p>
+   *   Maximal number of certificates in the in-memory index, default to 1000000. The status
+   *   of the issuers exceeding this limit is retrieved from the database.</li>
    *  </ul>
    * @param datasource DataSource.
    */
@@ -537,24 +707,52 @@ public class DbCertStatusStore extends OcspStore {
   public void init(Map<String, ? extends Object> sourceConf, DataSourceWrapper datasource)
       throws OcspStoreException {
     OcspServerConf.CaCerts caCerts = null;
+    boolean memoryIndex = false;
+    int memoryIndexMaxSize = 1000000;
+    this.memoryIndexRefreshInterval = 60;
     if (sourceConf != null) {
       Object objValue = sourceConf.get("caCerts");
       if (objValue != null) {
         caCerts = JSON.parseObject(JSON.toJSONBytes(objValue), OcspServerConf.CaCerts.class);
       }
+
+      objValue = sourceConf.get("memoryIndex");
+      if (objValue != null) {
+        memoryIndex = Boolean.parseBoolean(objValue.toString());
+      }
+
+      objValue = sourceConf.get("memoryIndexMaxSize");
+      if (objValue != null) {
+        memoryIndexMaxSize = Integer.parseInt(objValue.toString());
+      }
+
+      objValue = sourceConf.get("memoryIndexRefreshInterval");
+      if (objValue != null) {
+        memoryIndexRefreshInterval = Integer.parseInt(objValue.toString());
+      }
     }
 
     this.datasource = Args.notNull(datasource, "datasource");
 
-    sqlCs = datasource.buildSelectFirstSql(1,
-        "NBEFORE,NAFTER,REV,RR,RT,RIT,CRL_ID FROM CERT WHERE IID=? AND SN=?");
-    sqlCsNoRit = datasource.buildSelectFirstSql(1,
-        "NBEFORE,NAFTER,REV,RR,RT,CRL_ID FROM CERT WHERE IID=? AND SN=?");
+    if (memoryIndex) {
+      if (unknownCertBehaviour == UnknownCertBehaviour.good) {
+        Args.positive(memoryIndexRefreshInterval, "memoryIndexRefreshInterval");
+        this.revocationIndex = new RevocationIndex(datasource, memoryIndexMaxSize,
+            ignoreExpiredCert, ignoreNotYetValidCert);
+      } else {
+        LOG.warn("memoryIndex of store {} is ignored, since unknownCertBehaviour is not good",
+            name);
+      }
+    }
+
+    final String coreSql = " FROM CERT WHERE IID=? AND SN=?";
+    sqlCs = datasource.buildSelectFirstSql(1, getCertStatusColumns(false, true) + coreSql);
+    sqlCsNoRit = datasource.buildSelectFirstSql(1, getCertStatusColumns(false, false) + coreSql);
 
     sqlCsWithCertHash = datasource.buildSelectFirstSql(1,
-        "NBEFORE,NAFTER,REV,RR,RT,RIT,HASH,CRL_ID FROM CERT WHERE IID=? AND SN=?");
+        getCertStatusColumns(true, true) + coreSql);
     sqlCsNoRitWithCertHash = datasource.buildSelectFirstSql(1,
-        "NBEFORE,NAFTER,REV,RR,RT,HASH,CRL_ID FROM CERT WHERE IID=? AND SN=?");
+        getCertStatusColumns(true, false) + coreSql);
 
     try {
       this.certHashAlgo = getCertHashAlgo(datasource);
@@ -588,11 +786,15 @@ public class DbCertStatusStore extends OcspStore {
       this.scheduledThreadPoolExecutor.shutdownNow();
     }
 
-    if (updateInterval != null) {
-      List<Runnable> scheduledServices = getScheduledServices();
-      int size = scheduledServices == null ? 0 : scheduledServices.size();
-      if (size > 0) {
-        this.scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(size);
+    List<Runnable> scheduledServices = (updateInterval == null) ? null : getScheduledServices();
+    int size = scheduledServices == null ? 0 : scheduledServices.size();
+    if (revocationIndex != null) {
+      size++;
+    }
+
+    if (size > 0) {
+      this.scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(size);
+      if (scheduledServices != null) {
         Random random = new Random();
         long intervalSeconds = updateInterval.approxMinutes() * 60;
         for (Runnable service : scheduledServices) {
@@ -601,6 +803,13 @@ public class DbCertStatusStore extends OcspStore {
               TimeUnit.SECONDS);
         }
       }
+
+      if (revocationIndex != null) {
+        // refresh the index also if the store is never updated
+        this.scheduledThreadPoolExecutor.scheduleWithFixedDelay(
+            () -> updateRevocationIndex(false), memoryIndexRefreshInterval,
+            memoryIndexRefreshInterval, TimeUnit.SECONDS);
+      }
     }
   } // method init
 
@@ -630,6 +839,49 @@ public class DbCertStatusStore extends OcspStore {
     return (issuer == null) ? null : issuer.getCert();
   }
 
+  @Override
+  public List<RequestIssuer> getIssuers() {
+    return (issuerStore == null) ? Collections.emptyList() : issuerStore.getRequestIssuers();
+  }
+
+  /**
+   * Returns the serial numbers of the valid certificates. The revoked and expired certificates
+   * are not returned: the responses of revoked certificates are signed on demand, and expired
+   * certificates are hardly requested.
+   */
+  @Override
+  public SortedMap<Long, BigInteger> getSerialNumbers(RequestIssuer reqIssuer, long fromId,
+      int numEntries) throws OcspStoreException {
+    IssuerEntry issuer = (issuerStore == null) ? null : issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return null;
+    }
+
+    final String sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
+        "ID,SN FROM CERT WHERE IID=? AND ID>=? AND REV=0 AND NAFTER>?");
+    SortedMap<Long, BigInteger> serials = new TreeMap<>();
+    ResultSet rs = null;
+    try {
+      PreparedStatement ps = datasource.prepareStatement(sql);
+      try {
+        ps.setInt(1, issuer.getId());
+        ps.setLong(2, fromId);
+        ps.setLong(3, System.currentTimeMillis() / 1000);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          serials.put(rs.getLong("ID"), new BigInteger(rs.getString("SN"), 16));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
+      }
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+    return serials;
+  } // method getSerialNumbers
+
   protected boolean isInitialized() {
     return initialized;
   }
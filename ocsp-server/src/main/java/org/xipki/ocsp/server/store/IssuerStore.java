@@ -26,6 +26,8 @@ import java.util.Map;
 import java.util.Set;
 
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.CompareUtil;
 
 /**
  * Issuer store.
@@ -36,9 +38,99 @@ import org.xipki.ocsp.api.RequestIssuer;
 
 class IssuerStore {
 
-  private List<IssuerEntry> issuers = new ArrayList<>();
+  /**
+   * Key of the hash index. The key used for the lookup refers to the data of the
+   * {@link RequestIssuer} without copying it.
+   */
+  private static final class HashKey {
 
-  private Set<Integer> ids = Collections.emptySet();
+    private final HashAlgo hashAlgo;
+
+    private final byte[] data;
+
+    private final int offset;
+
+    private final int length;
+
+    private final int hashCode;
+
+    HashKey(HashAlgo hashAlgo, byte[] data, int offset, int length) {
+      this.hashAlgo = hashAlgo;
+      this.data = data;
+      this.offset = offset;
+      this.length = length;
+
+      int result = 31 + hashAlgo.hashCode();
+      for (int i = offset; i < offset + length; i++) {
+        result = 31 * result + data[i];
+      }
+      this.hashCode = result;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof HashKey)) {
+        return false;
+      }
+
+      HashKey other = (HashKey) obj;
+      return hashAlgo == other.hashAlgo && length == other.length
+          && CompareUtil.areEqual(data, offset, other.data, other.offset, length);
+    }
+
+  } // class HashKey
+
+  /**
+   * Immutable index of the issuers. It will be replaced as a whole if the issuers change.
+   */
+  private static final class Index {
+
+    private final List<IssuerEntry> issuers;
+
+    private final Set<Integer> ids;
+
+    private final Map<Integer, IssuerEntry> idMap;
+
+    private final Map<HashKey, IssuerEntry> hashMap;
+
+    Index(List<IssuerEntry> issuers) {
+      this.issuers = Collections.unmodifiableList(new ArrayList<>(issuers));
+
+      Map<Integer, IssuerEntry> idMap0 = new HashMap<>();
+      Map<HashKey, IssuerEntry> hashMap0 = new HashMap<>();
+      for (IssuerEntry issuer : issuers) {
+        int id = issuer.getId();
+        if (idMap0.containsKey(id)) {
+          throw new IllegalArgumentException(
+              "issuer with the same id " + id + " duplicated");
+        }
+        idMap0.put(id, issuer);
+
+        for (HashAlgo ha : HashAlgo.values()) {
+          byte[] hash = issuer.getEncodedHash(ha);
+          HashKey key = new HashKey(ha, hash, 0, hash.length);
+          // the first matched issuer wins
+          if (!hashMap0.containsKey(key)) {
+            hashMap0.put(key, issuer);
+          }
+        }
+      }
+
+      this.ids = Collections.unmodifiableSet(new HashSet<>(idMap0.keySet()));
+      this.idMap = idMap0;
+      this.hashMap = hashMap0;
+    }
+
+  } // class Index
+
+  private volatile Index index = new Index(Collections.emptyList());
 
   private Map<Integer, CrlInfo> crlInfos = new HashMap<>();
 
@@ -46,28 +138,16 @@ class IssuerStore {
   }
 
   public void setIssuers(List<IssuerEntry> issuers) {
-    Set<Integer> newIds = new HashSet<>();
-    for (IssuerEntry issuer : issuers) {
-      int id = issuer.getId();
-      if (newIds.contains(id)) {
-        throw new IllegalArgumentException(
-            "issuer with the same id " + id + " duplicated");
-      }
-      newIds.add(id);
-    }
-
-    // to accelerate the switch
-    List<IssuerEntry> copy = new ArrayList<IssuerEntry>(issuers);
-    this.ids = Collections.unmodifiableSet(newIds);
-    this.issuers = copy;
+    // build the index completely before the switch
+    this.index = new Index(issuers);
   } // method setIssuers
 
   public int size() {
-    return ids.size();
+    return index.ids.size();
   }
 
   public Set<Integer> getIds() {
-    return ids;
+    return index.ids;
   }
 
   public Integer getIssuerIdForFp(RequestIssuer reqIssuer) {
@@ -76,31 +156,45 @@ class IssuerStore {
   }
 
   public IssuerEntry getIssuerForId(int id) {
-    for (IssuerEntry entry : issuers) {
-      if (entry.getId() == id) {
-        return entry;
-      }
-    }
-
-    return null;
+    return index.idMap.get(id);
   }
 
   public IssuerEntry getIssuerForFp(RequestIssuer reqIssuer) {
-    for (IssuerEntry entry : issuers) {
-      if (entry.matchHash(reqIssuer)) {
-        return entry;
-      }
+    HashAlgo hashAlgo = reqIssuer.hashAlgorithm();
+    if (hashAlgo == null) {
+      return null;
+    }
+
+    // OCTET STRING issuerNameHash and OCTET STRING issuerKeyHash
+    int len = (2 + hashAlgo.getLength()) << 1;
+    byte[] data = reqIssuer.getData();
+    int offset = reqIssuer.getNameHashFrom();
+    if (offset + len > data.length) {
+      return null;
     }
 
-    return null;
+    return index.hashMap.get(new HashKey(hashAlgo, data, offset, len));
   }
 
-  public void addIssuer(IssuerEntry issuer) {
-    this.issuers.add(issuer);
+  /**
+   * Returns the issuers identified by the SHA-1 hashes, see
+   * {@link org.xipki.ocsp.api.OcspStore#getIssuers()}.
+   *
+   * @return the issuers.
+   */
+  public List<RequestIssuer> getRequestIssuers() {
+    Index index0 = index;
+    List<RequestIssuer> issuers = new ArrayList<>(index0.issuers.size());
+    for (IssuerEntry issuer : index0.issuers) {
+      issuers.add(new RequestIssuer(HashAlgo.SHA1, issuer.getEncodedHash(HashAlgo.SHA1)));
+    }
+    return issuers;
+  } // method getRequestIssuers
 
-    Set<Integer> newIds = new HashSet<>(this.ids);
-    newIds.add(issuer.getId());
-    this.ids = Collections.unmodifiableSet(newIds);
+  public synchronized void addIssuer(IssuerEntry issuer) {
+    List<IssuerEntry> newIssuers = new ArrayList<>(index.issuers);
+    newIssuers.add(issuer);
+    this.index = new Index(newIssuers);
   }
 
   public void setCrlInfos(Map<Integer, CrlInfo> crlInfos) {
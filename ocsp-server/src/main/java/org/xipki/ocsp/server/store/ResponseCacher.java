@@ -25,14 +25,21 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bouncycastle.crypto.Digest;
 import org.slf4j.Logger;
@@ -48,10 +55,12 @@ import org.xipki.security.HashAlgo;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
 import org.xipki.util.Base64;
+import org.xipki.util.HealthCheckResult;
 import org.xipki.util.InvalidConfException;
 import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
 import org.xipki.util.Validity;
+import org.xipki.util.concurrent.ClockCache;
 import org.xipki.util.concurrent.ConcurrentBag;
 import org.xipki.util.concurrent.ConcurrentBagEntry;
 
@@ -86,6 +95,183 @@ public class ResponseCacher implements Closeable {
 
   private final ConcurrentBag<ConcurrentBagEntry<Digest>> idDigesters;
 
+  private static class MemoryCachedResponse {
+
+    private final int issuerId;
+
+    private final byte[] ident;
+
+    private final long thisUpdate;
+
+    private final long nextUpdate;
+
+    private final OcspRespWithCacheInfo response;
+
+    MemoryCachedResponse(int issuerId, byte[] ident, long thisUpdate, long nextUpdate,
+        OcspRespWithCacheInfo response) {
+      this.issuerId = issuerId;
+      this.ident = ident;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+      this.response = response;
+    }
+
+  } // class MemoryCachedResponse
+
+  private static class PendingResponse {
+
+    private final long id;
+
+    private final int issuerId;
+
+    private final String ident;
+
+    private final long thisUpdate;
+
+    private final long nextUpdate;
+
+    private final byte[] response;
+
+    PendingResponse(long id, int issuerId, String ident, long thisUpdate, long nextUpdate,
+        byte[] response) {
+      this.id = id;
+      this.issuerId = issuerId;
+      this.ident = ident;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+      this.response = response;
+    }
+
+  } // class PendingResponse
+
+  /**
+   * Write-behind queue of the responses to be stored in the cache database. Responses with
+   * the same ID are coalesced, only the latest one will be written.
+   */
+  private class ResponseWriter implements Runnable {
+
+    private final LinkedHashMap<Long, PendingResponse> queue = new LinkedHashMap<>();
+
+    private final int maxQueueSize;
+
+    private final int batchSize;
+
+    private final boolean blockIfFull;
+
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    private final AtomicLong coalesced = new AtomicLong(0);
+
+    private final AtomicLong written = new AtomicLong(0);
+
+    private final Object writeLock = new Object();
+
+    private boolean closed;
+
+    ResponseWriter(int maxQueueSize, int batchSize, boolean blockIfFull) {
+      this.maxQueueSize = Args.positive(maxQueueSize, "maxQueueSize");
+      this.batchSize = Args.positive(batchSize, "batchSize");
+      this.blockIfFull = blockIfFull;
+    }
+
+    /**
+     * Puts the response into the queue.
+     *
+     * @param resp
+     *          The response to be written.
+     * @return {@code false} if the writer is closed or the caller is interrupted while waiting
+     *          for free space, in both cases the response must be written by the caller,
+     *          {@code true} otherwise.
+     */
+    boolean enqueue(PendingResponse resp) {
+      synchronized (queue) {
+        if (closed) {
+          return false;
+        }
+
+        if (queue.containsKey(resp.id)) {
+          queue.put(resp.id, resp);
+          coalesced.incrementAndGet();
+          return true;
+        }
+
+        while (queue.size() >= maxQueueSize) {
+          if (!blockIfFull) {
+            dropped.incrementAndGet();
+            return true;
+          }
+
+          try {
+            queue.wait();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+          }
+
+          if (closed) {
+            return false;
+          }
+        }
+
+        queue.put(resp.id, resp);
+        return true;
+      }
+    } // method enqueue
+
+    int size() {
+      synchronized (queue) {
+        return queue.size();
+      }
+    }
+
+    void close() {
+      synchronized (queue) {
+        closed = true;
+        queue.notifyAll();
+      }
+      // flush the remaining responses
+      run();
+    }
+
+    @Override
+    public void run() {
+      synchronized (writeLock) {
+        while (true) {
+          List<PendingResponse> batch = new ArrayList<>(batchSize);
+          synchronized (queue) {
+            Iterator<PendingResponse> it = queue.values().iterator();
+            while (it.hasNext() && batch.size() < batchSize) {
+              batch.add(it.next());
+              it.remove();
+            }
+            queue.notifyAll();
+          }
+
+          if (batch.isEmpty()) {
+            return;
+          }
+
+          try {
+            int num = storeOcspResponses(batch);
+            written.addAndGet(num);
+            dropped.addAndGet(batch.size() - num);
+          } catch (Throwable th) {
+            LogUtil.warn(LOG, th, "could not store " + batch.size()
+                + " OCSP responses in batch, try to store them one by one");
+            for (PendingResponse resp : batch) {
+              if (storeOcspResponse0(resp)) {
+                written.incrementAndGet();
+              } else {
+                dropped.incrementAndGet();
+              }
+            }
+          }
+        }
+      }
+    } // method run
+
+  } // class ResponseWriter
+
   private class IssuerUpdater implements Runnable {
 
     @Override
@@ -131,6 +317,8 @@ public class ResponseCacher implements Closeable {
 
   private final String sqlSelectOcsp;
 
+  private final String sqlSelectOcspId;
+
   private final boolean master;
 
   // validity in seconds
@@ -138,6 +326,23 @@ public class ResponseCacher implements Closeable {
 
   private final AtomicBoolean onService;
 
+  private final AtomicLong memoryCacheHits = new AtomicLong(0);
+
+  private final AtomicLong memoryCacheMisses = new AtomicLong(0);
+
+  private final AtomicLong memoryCacheExpirations = new AtomicLong(0);
+
+  /**
+   * In-memory tier in front of the cache database. It is read without a global lock. The
+   * weight of an entry is the length of the encoded OCSP response, so the maximal weight is
+   * the maximal number of bytes.
+   */
+  private ClockCache<Long, MemoryCachedResponse> memoryCache;
+
+  private ResponseWriter responseWriter;
+
+  private ScheduledFuture<?> responseWriterFuture;
+
   private DataSourceWrapper datasource;
 
   private IssuerStore issuerStore = new IssuerStore();
@@ -155,6 +360,7 @@ public class ResponseCacher implements Closeable {
     this.sqlSelectIssuerCert = datasource.buildSelectFirstSql(1, "CERT FROM ISSUER WHERE ID=?");
     this.sqlSelectOcsp = datasource.buildSelectFirstSql(1,
         "IID,IDENT,THIS_UPDATE,NEXT_UPDATE,RESP FROM OCSP WHERE ID=?");
+    this.sqlSelectOcspId = datasource.buildSelectFirstSql(1, "ID FROM OCSP WHERE ID=?");
     this.onService = new AtomicBoolean(false);
 
     this.idDigesters = new ConcurrentBag<>();
@@ -164,6 +370,44 @@ public class ResponseCacher implements Closeable {
     }
   }
 
+  /**
+   * Sets the maximal size in bytes of the in-memory tier. Must be called before
+   * {@link #init()}.
+   *
+   * @param size
+   *          Maximal size in bytes. Zero or negative value disables the in-memory tier.
+   */
+  public void setMemoryCacheSize(int size) {
+    this.memoryCache = (size > 0)
+        ? new ClockCache<>(size, v -> v.response.getResponse().length) : null;
+  }
+
+  /**
+   * Activates the asynchronous write-behind of the responses. Must be called before
+   * {@link #init()}.
+   *
+   * @param queueSize
+   *          Maximal number of responses waiting to be written. Zero or negative value
+   *          deactivates the write-behind, the responses are written synchronously.
+   * @param batchSize
+   *          Maximal number of responses written in one JDBC batch.
+   * @param blockIfFull
+   *          Whether the caller is blocked if the queue is full. Otherwise the response
+   *          will be dropped.
+   */
+  public void setWriteBehind(int queueSize, int batchSize, boolean blockIfFull) {
+    this.responseWriter = (queueSize > 0)
+        ? new ResponseWriter(queueSize, batchSize, blockIfFull) : null;
+  }
+
+  /**
+   * Returns the validity of the cached responses.
+   * @return the validity in seconds.
+   */
+  public int getValidity() {
+    return validity;
+  }
+
   public boolean isOnService() {
     return onService.get() && issuerStore != null;
   }
@@ -171,9 +415,16 @@ public class ResponseCacher implements Closeable {
   public void init() {
     updateCacheStore();
 
-    scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
+    boolean writeBehind = master && responseWriter != null;
+    scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(writeBehind ? 2 : 1);
     scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
 
+    if (writeBehind) {
+      // flush every 100 milliseconds
+      this.responseWriterFuture = scheduledThreadPoolExecutor.scheduleWithFixedDelay(
+          responseWriter, 100, 100, TimeUnit.MILLISECONDS);
+    }
+
     // check every 600 seconds (10 minutes)
     this.responseCleaner = scheduledThreadPoolExecutor.scheduleAtFixedRate(
         new ExpiredResponsesCleaner(), 348, 600, TimeUnit.SECONDS);
@@ -185,6 +436,12 @@ public class ResponseCacher implements Closeable {
 
   @Override
   public void close() {
+    if (responseWriterFuture != null) {
+      responseWriterFuture.cancel(false);
+      responseWriterFuture = null;
+      responseWriter.close();
+    }
+
     if (datasource != null) {
       datasource.close();
       datasource = null;
@@ -200,6 +457,10 @@ public class ResponseCacher implements Closeable {
       issuerUpdater = null;
     }
 
+    if (memoryCache != null) {
+      memoryCache.clear();
+    }
+
     if (scheduledThreadPoolExecutor != null) {
       scheduledThreadPoolExecutor.shutdown();
       while (!scheduledThreadPoolExecutor.isTerminated()) {
@@ -265,9 +526,17 @@ public class ResponseCacher implements Closeable {
 
   public OcspRespWithCacheInfo getOcspResponse(int issuerId, BigInteger serialNumber,
       AlgorithmCode sigAlg) throws DataAccessException {
-    final String sql = sqlSelectOcsp;
     byte[] identBytes = buildIdent(serialNumber, sigAlg);
     long id = deriveId(issuerId, identBytes);
+
+    if (memoryCache != null) {
+      OcspRespWithCacheInfo resp = getFromMemoryCache(id, issuerId, identBytes);
+      if (resp != null) {
+        return resp;
+      }
+    }
+
+    final String sql = sqlSelectOcsp;
     PreparedStatement ps = datasource.prepareStatement(sql);
     ResultSet rs = null;
 
@@ -306,7 +575,12 @@ public class ResponseCacher implements Closeable {
       if (nextUpdate != 0) {
         cacheInfo.setNextUpdate(nextUpdate);
       }
-      return new OcspRespWithCacheInfo(resp, cacheInfo);
+      OcspRespWithCacheInfo ret = new OcspRespWithCacheInfo(resp, cacheInfo);
+      if (memoryCache != null) {
+        memoryCache.put(id,
+            new MemoryCachedResponse(issuerId, identBytes, thisUpdate, nextUpdate, ret));
+      }
+      return ret;
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
@@ -326,24 +600,59 @@ public class ResponseCacher implements Closeable {
     }
 
     byte[] identBytes = buildIdent(serialNumber, sigAlgCode);
-    String ident = Base64.encodeToString(identBytes);
-    try {
-      long id = deriveId(issuerId, identBytes);
+    long id = deriveId(issuerId, identBytes);
+
+    if (memoryCache != null) {
+      ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate);
+      cacheInfo.setNextUpdate(nextUpdate);
+      memoryCache.put(id, new MemoryCachedResponse(issuerId, identBytes, thisUpdate,
+          nextUpdate, new OcspRespWithCacheInfo(response, cacheInfo)));
+    }
+
+    if (!master) {
+      // only the master writes into the cache database
+      return;
+    }
 
+    PendingResponse pendingResp = new PendingResponse(id, issuerId,
+        Base64.encodeToString(identBytes), thisUpdate, nextUpdate, response);
+    if (responseWriter == null || !responseWriter.enqueue(pendingResp)) {
+      // the pool does not hand out connections to an interrupted thread, the interrupted
+      // status is restored after the response is written.
+      boolean interrupted = Thread.interrupted();
+      try {
+        storeOcspResponse0(pendingResp);
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  } // method storeOcspResponse
+
+  /**
+   * Stores the response in the cache database.
+   *
+   * @param resp
+   *          The response to be stored.
+   * @return whether the response has been stored.
+   */
+  private boolean storeOcspResponse0(PendingResponse resp) {
+    try {
       Connection conn = datasource.getConnection();
       try {
         String sql = SQL_ADD_RESP;
         PreparedStatement ps = datasource.prepareStatement(conn, sql);
 
-        String b64Response = Base64.encodeToString(response);
+        String b64Response = Base64.encodeToString(resp.response);
         Boolean dataIntegrityViolationException = null;
         try {
           int idx = 1;
-          ps.setLong(idx++, id);
-          ps.setInt(idx++, issuerId);
-          ps.setString(idx++, ident);
-          ps.setLong(idx++, thisUpdate);
-          ps.setLong(idx++, nextUpdate);
+          ps.setLong(idx++, resp.id);
+          ps.setInt(idx++, resp.issuerId);
+          ps.setString(idx++, resp.ident);
+          ps.setLong(idx++, resp.thisUpdate);
+          ps.setLong(idx++, resp.nextUpdate);
           ps.setString(idx++, b64Response);
           ps.execute();
         } catch (SQLException ex) {
@@ -358,34 +667,190 @@ public class ResponseCacher implements Closeable {
         }
 
         if (dataIntegrityViolationException == null) {
-          LOG.debug("added cached OCSP response iid={}, ident={}", issuerId, ident);
-          return;
+          LOG.debug("added cached OCSP response iid={}, ident={}", resp.issuerId, resp.ident);
+          return true;
         }
 
         sql = SQL_UPDATE_RESP;
         ps = datasource.prepareStatement(conn, sql);
         try {
           int idx = 1;
-          ps.setLong(idx++, thisUpdate);
-          ps.setLong(idx++, nextUpdate);
+          ps.setLong(idx++, resp.thisUpdate);
+          ps.setLong(idx++, resp.nextUpdate);
           ps.setString(idx++, b64Response);
-          ps.setLong(idx++, id);
+          ps.setLong(idx++, resp.id);
           ps.executeUpdate();
         } catch (SQLException ex) {
           throw datasource.translate(sql, ex);
         } finally {
           datasource.releaseResources(ps, null, false);
         }
+        return true;
       } finally {
         datasource.returnConnection(conn);
       }
     } catch (DataAccessException ex) {
-      LOG.info("could not cache OCSP response iid={}, ident={}", issuerId, ident);
+      LOG.info("could not cache OCSP response iid={}, ident={}", resp.issuerId, resp.ident);
       if (LOG.isDebugEnabled()) {
-        LOG.debug("could not cache OCSP response iid=" + issuerId + ", ident=" + ident, ex);
+        LOG.debug("could not cache OCSP response iid=" + resp.issuerId
+            + ", ident=" + resp.ident, ex);
       }
+      return false;
     }
-  } // method storeOcspResponse
+  } // method storeOcspResponse0
+
+  /**
+   * Writes the responses in JDBC batches. The existing entries are updated first, and the
+   * remaining ones are inserted. If the driver does not report the number of updated rows
+   * ({@link Statement#SUCCESS_NO_INFO}, e.g. Oracle), the existence of these entries is
+   * re-checked.
+   *
+   * @return number of stored responses.
+   */
+  private int storeOcspResponses(List<PendingResponse> responses) throws DataAccessException {
+    List<PendingResponse> toAdd = new LinkedList<>();
+    List<PendingResponse> unknown = new LinkedList<>();
+    boolean addFailed = false;
+
+    Connection conn = datasource.getConnection();
+    try {
+      String sql = SQL_UPDATE_RESP;
+      PreparedStatement ps = datasource.prepareStatement(conn, sql);
+      try {
+        for (PendingResponse resp : responses) {
+          int idx = 1;
+          ps.setLong(idx++, resp.thisUpdate);
+          ps.setLong(idx++, resp.nextUpdate);
+          ps.setString(idx++, Base64.encodeToString(resp.response));
+          ps.setLong(idx++, resp.id);
+          ps.addBatch();
+        }
+
+        int[] counts = ps.executeBatch();
+        int idx = 0;
+        for (PendingResponse resp : responses) {
+          int count = counts[idx++];
+          if (count == 0) {
+            toAdd.add(resp);
+          } else if (count == Statement.SUCCESS_NO_INFO) {
+            unknown.add(resp);
+          }
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, null, false);
+      }
+
+      if (!unknown.isEmpty()) {
+        sql = sqlSelectOcspId;
+        ps = datasource.prepareStatement(conn, sql);
+        ResultSet rs = null;
+        try {
+          for (PendingResponse resp : unknown) {
+            ps.setLong(1, resp.id);
+            rs = ps.executeQuery();
+            if (!rs.next()) {
+              toAdd.add(resp);
+            }
+            rs.close();
+            rs = null;
+          }
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          datasource.releaseResources(ps, rs, false);
+        }
+      }
+
+      if (!toAdd.isEmpty()) {
+        sql = SQL_ADD_RESP;
+        ps = datasource.prepareStatement(conn, sql);
+        try {
+          for (PendingResponse resp : toAdd) {
+            int idx = 1;
+            ps.setLong(idx++, resp.id);
+            ps.setInt(idx++, resp.issuerId);
+            ps.setString(idx++, resp.ident);
+            ps.setLong(idx++, resp.thisUpdate);
+            ps.setLong(idx++, resp.nextUpdate);
+            ps.setString(idx++, Base64.encodeToString(resp.response));
+            ps.addBatch();
+          }
+          ps.executeBatch();
+        } catch (SQLException ex) {
+          LogUtil.warn(LOG, datasource.translate(sql, ex),
+              "could not add OCSP responses in batch, try to add them one by one");
+          addFailed = true;
+        } finally {
+          datasource.releaseResources(ps, null, false);
+        }
+      }
+    } finally {
+      datasource.returnConnection(conn);
+    }
+
+    int num = responses.size();
+    if (addFailed) {
+      for (PendingResponse resp : toAdd) {
+        if (!storeOcspResponse0(resp)) {
+          num--;
+        }
+      }
+    }
+
+    LOG.debug("stored {} cached OCSP responses in batch", num);
+    return num;
+  } // method storeOcspResponses
+
+  private OcspRespWithCacheInfo getFromMemoryCache(long id, int issuerId, byte[] identBytes) {
+    MemoryCachedResponse entry = memoryCache.get(id);
+    if (entry == null || entry.issuerId != issuerId || !Arrays.equals(entry.ident, identBytes)) {
+      memoryCacheMisses.incrementAndGet();
+      return null;
+    }
+
+    long nowInSec = System.currentTimeMillis() / 1000;
+    // the same criteria as for the responses in the database: nextUpdate must be at least in
+    // 600 seconds, and thisUpdate must not be older than the validity.
+    if ((entry.nextUpdate != 0 && entry.nextUpdate < nowInSec + 600)
+        || entry.thisUpdate < nowInSec - validity) {
+      memoryCache.remove(id);
+      memoryCacheExpirations.incrementAndGet();
+      memoryCacheMisses.incrementAndGet();
+      return null;
+    }
+
+    memoryCacheHits.incrementAndGet();
+    return entry.response;
+  } // method getFromMemoryCache
+
+  public HealthCheckResult healthCheck() {
+    HealthCheckResult result = new HealthCheckResult();
+    result.setName("ResponseCacher");
+    result.setHealthy(isOnService());
+
+    if (memoryCache != null) {
+      Map<String, Object> statuses = result.getStatuses();
+      statuses.put("memoryCacheSize", memoryCache.weight());
+      statuses.put("memoryCacheMaxSize", memoryCache.maxWeight());
+      statuses.put("memoryCacheEntries", memoryCache.size());
+      statuses.put("memoryCacheHits", memoryCacheHits.get());
+      statuses.put("memoryCacheMisses", memoryCacheMisses.get());
+      statuses.put("memoryCacheEvictions", memoryCache.evictionCount());
+      statuses.put("memoryCacheExpirations", memoryCacheExpirations.get());
+    }
+
+    if (responseWriterFuture != null) {
+      Map<String, Object> statuses = result.getStatuses();
+      statuses.put("writeQueueSize", responseWriter.size());
+      statuses.put("writeQueueWritten", responseWriter.written.get());
+      statuses.put("writeQueueCoalesced", responseWriter.coalesced.get());
+      statuses.put("writeQueueDropped", responseWriter.dropped.get());
+    }
+
+    return result;
+  } // method healthCheck
 
   private int removeExpiredResponses(long maxThisUpdate) throws DataAccessException {
     final String sql = SQL_DELETE_EXPIRED_RESP;
@@ -0,0 +1,405 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.util.Args;
+
+/**
+ * In-memory index of the certificates in the table CERT of the OCSP database, whose status
+ * is not simply good: revoked certificates, and if configured expired and not-yet-valid
+ * certificates. A certificate not contained in the index is good.
+ *
+ * <p>For each issuer the entries are kept in an immutable table, the serial numbers are stored
+ * as sorted array of unsigned words, and the rows in a parallel array. The lookup is a binary
+ * search over the words and returns the row created during the refresh, so that no object is
+ * created for serial numbers up to 64 bits. The tables are replaced atomically, so that the
+ * lookup requires no lock.
+ *
+ * <p>The index is refreshed incrementally with the rows whose LUPDATE has changed since the
+ * last refresh. Since deleted rows cannot be detected via LUPDATE, the number and the sum of
+ * LUPDATE of the revoked certificates in the database are compared with the index after the
+ * changes have been applied, the table of an issuer is reloaded completely if they differ.
+ * Between two refreshes the index may be stale, a certificate revoked meanwhile is reported
+ * as good.
+ *
+ * <p>The total number of entries is limited. An issuer whose table would exceed the limit is
+ * not indexed, its status is then retrieved from the database.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class RevocationIndex {
+
+  /**
+   * Status-relevant columns of one row in the table CERT.
+   */
+  static class CertRow {
+
+    static final CertRow NOT_REVOKED = new CertRow(false, 0, 0, 0, 0, 0, 0, 0);
+
+    final boolean revoked;
+
+    final int reason;
+
+    final long revTime;
+
+    final long invalTime;
+
+    final long notBefore;
+
+    final long notAfter;
+
+    final int crlId;
+
+    // LUPDATE, only read by the index
+    final long lastUpdate;
+
+    CertRow(boolean revoked, int reason, long revTime, long invalTime,
+        long notBefore, long notAfter, int crlId, long lastUpdate) {
+      this.revoked = revoked;
+      this.reason = reason;
+      this.revTime = revTime;
+      this.invalTime = invalTime;
+      this.notBefore = notBefore;
+      this.notAfter = notAfter;
+      this.crlId = crlId;
+      this.lastUpdate = lastUpdate;
+    }
+
+    static CertRow read(ResultSet rs, boolean includeRit) throws SQLException {
+      return read(rs, includeRit, false);
+    }
+
+    private static CertRow read(ResultSet rs, boolean includeRit, boolean includeLastUpdate)
+        throws SQLException {
+      boolean revoked = rs.getBoolean("REV");
+      return new CertRow(revoked,
+          revoked ? rs.getInt("RR") : 0,
+          revoked ? rs.getLong("RT") : 0,
+          (revoked && includeRit) ? rs.getLong("RIT") : 0,
+          rs.getLong("NBEFORE"), rs.getLong("NAFTER"), rs.getInt("CRL_ID"),
+          includeLastUpdate ? rs.getLong("LUPDATE") : 0);
+    }
+
+  } // class CertRow
+
+  private static class IssuerTable {
+
+    // sorted serial numbers, each as the given number of unsigned words, most significant first
+    private final long[] serials;
+
+    private final int words;
+
+    // rows in the order of the serials
+    private final CertRow[] rows;
+
+    // maximal LUPDATE of the loaded rows
+    private final long lastUpdate;
+
+    // time of the refresh, in seconds
+    private final long refreshTime;
+
+    IssuerTable(TreeMap<BigInteger, CertRow> rows, long lastUpdate, long refreshTime) {
+      int size = rows.size();
+      int maxBitLength = rows.isEmpty() ? 1 : rows.lastKey().bitLength();
+      this.words = Math.max(1, (maxBitLength + 63) / 64);
+      this.serials = new long[size * words];
+      this.rows = new CertRow[size];
+      this.lastUpdate = lastUpdate;
+      this.refreshTime = refreshTime;
+
+      int idx = 0;
+      for (Map.Entry<BigInteger, CertRow> entry : rows.entrySet()) {
+        BigInteger serial = entry.getKey();
+        for (int i = 0; i < words; i++) {
+          serials[idx * words + i] = serial.shiftRight(64 * (words - 1 - i)).longValue();
+        }
+        this.rows[idx] = entry.getValue();
+        idx++;
+      }
+    } // constructor
+
+    int size() {
+      return rows.length;
+    }
+
+    CertRow get(BigInteger serial) {
+      int bitLength = serial.bitLength();
+      if (bitLength > 64 * words) {
+        return null;
+      }
+
+      // in the common case of serial numbers up to 64 bits, no object is created
+      byte[] bytes = (words == 1) ? null : serial.toByteArray();
+      long word0 = (words == 1) ? serial.longValue() : word(bytes, words - 1);
+
+      int low = 0;
+      int high = rows.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = Long.compareUnsigned(serials[mid * words], word0);
+        for (int i = 1; cmp == 0 && i < words; i++) {
+          cmp = Long.compareUnsigned(serials[mid * words + i], word(bytes, words - 1 - i));
+        }
+
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          return rows[mid];
+        }
+      }
+      return null;
+    } // method get
+
+    /**
+     * Returns the word of the big-endian two's-complement bytes, word 0 is the least
+     * significant one.
+     */
+    private static long word(byte[] bytes, int index) {
+      long word = 0;
+      int end = bytes.length - 8 * index;
+      for (int i = Math.max(0, end - 8); i < end; i++) {
+        word = (word << 8) | (bytes[i] & 0xFF);
+      }
+      return word;
+    } // method word
+
+    TreeMap<BigInteger, CertRow> toMap() {
+      TreeMap<BigInteger, CertRow> map = new TreeMap<>();
+      byte[] magnitude = new byte[8 * words];
+      for (int i = 0; i < rows.length; i++) {
+        for (int j = 0; j < words; j++) {
+          long word = serials[i * words + j];
+          for (int k = 0; k < 8; k++) {
+            magnitude[8 * j + k] = (byte) (word >>> (56 - 8 * k));
+          }
+        }
+        map.put(new BigInteger(1, magnitude), rows[i]);
+      }
+      return map;
+    } // method toMap
+
+  } // class IssuerTable
+
+  private static final String SQL_COLUMNS = "SELECT SN,LUPDATE,REV,RR,RT,RIT,NBEFORE,NAFTER,CRL_ID"
+      + " FROM CERT WHERE IID=? AND ";
+
+  private static final String SQL_ALL = SQL_COLUMNS + "(REV=1 OR NAFTER<? OR NBEFORE>?)";
+
+  private static final String SQL_CHANGED = SQL_COLUMNS + "LUPDATE>=?";
+
+  private static final String SQL_EXPIRED = SQL_COLUMNS + "REV=0 AND NAFTER>=? AND NAFTER<?";
+
+  private static final String SQL_REVOKED_SUMMARY
+      = "SELECT COUNT(*),SUM(LUPDATE),MAX(LUPDATE) FROM CERT WHERE IID=? AND REV=1";
+
+  private static final Logger LOG = LoggerFactory.getLogger(RevocationIndex.class);
+
+  private final DataSourceWrapper datasource;
+
+  private final int maxSize;
+
+  private final boolean indexExpiredCerts;
+
+  private final boolean indexNotYetValidCerts;
+
+  private volatile Map<Integer, IssuerTable> tables = Collections.emptyMap();
+
+  RevocationIndex(DataSourceWrapper datasource, int maxSize, boolean indexExpiredCerts,
+      boolean indexNotYetValidCerts) {
+    this.datasource = Args.notNull(datasource, "datasource");
+    this.maxSize = Args.positive(maxSize, "maxSize");
+    this.indexExpiredCerts = indexExpiredCerts;
+    this.indexNotYetValidCerts = indexNotYetValidCerts;
+  }
+
+  boolean isLoaded(int issuerId) {
+    return tables.containsKey(issuerId);
+  }
+
+  /**
+   * Returns the indexed row of the certificate.
+   *
+   * @param issuerId issuer id
+   * @param serialNumber serial number
+   * @return the indexed row, or {@code null} if the certificate is not indexed.
+   */
+  CertRow get(int issuerId, BigInteger serialNumber) {
+    IssuerTable table = tables.get(issuerId);
+    return (table == null) ? null : table.get(serialNumber);
+  }
+
+  int size() {
+    int size = 0;
+    for (IssuerTable table : tables.values()) {
+      size += table.size();
+    }
+    return size;
+  }
+
+  /**
+   * Refreshes the index.
+   *
+   * @param issuerIds ids of all issuers to be indexed.
+   * @param full whether to reload the tables completely.
+   * @throws DataAccessException if database error occurs.
+   */
+  void refresh(Collection<Integer> issuerIds, boolean full) throws DataAccessException {
+    long now = System.currentTimeMillis() / 1000;
+    Map<Integer, IssuerTable> oldTables = tables;
+    Map<Integer, IssuerTable> newTables = new HashMap<>();
+    int remaining = maxSize;
+
+    for (Integer issuerId : issuerIds) {
+      IssuerTable table = full ? null : oldTables.get(issuerId);
+
+      TreeMap<BigInteger, CertRow> rows = null;
+      long lastUpdate = 0;
+      if (table != null) {
+        // read before the changes, so that later changes cause at most a complete reload
+        long[] summary = revokedSummary(issuerId);
+
+        rows = table.toMap();
+        lastUpdate = Math.max(table.lastUpdate, load(SQL_CHANGED, rows, remaining, now,
+            table.lastUpdate, issuerId, table.lastUpdate));
+        if (indexExpiredCerts && rows.size() <= remaining) {
+          // certificates expired since the last refresh
+          load(SQL_EXPIRED, rows, remaining, now, table.lastUpdate, issuerId,
+              table.refreshTime, now);
+        }
+
+        if (rows.size() <= remaining && !matches(rows, summary, table.lastUpdate)) {
+          // some rows have been deleted
+          rows = null;
+        }
+      }
+
+      if (rows == null) {
+        rows = new TreeMap<>();
+        lastUpdate = load(SQL_ALL, rows, remaining, now, 0, issuerId,
+            indexExpiredCerts ? now : Long.MIN_VALUE,
+            indexNotYetValidCerts ? now : Long.MAX_VALUE);
+      }
+
+      if (rows.size() > remaining) {
+        LOG.warn("issuer {} is not indexed, the index would exceed the maximal size {}",
+            issuerId, maxSize);
+        continue;
+      }
+
+      remaining -= rows.size();
+      newTables.put(issuerId, new IssuerTable(rows, lastUpdate, now));
+    }
+
+    tables = newTables;
+  } // method refresh
+
+  private long load(String sql, TreeMap<BigInteger, CertRow> rows, int limit, long now,
+      long lastUpdate, int issuerId, long... params) throws DataAccessException {
+    PreparedStatement ps = datasource.prepareStatement(sql);
+    ResultSet rs = null;
+    try {
+      int idx = 1;
+      ps.setInt(idx++, issuerId);
+      for (long param : params) {
+        ps.setLong(idx++, param);
+      }
+
+      rs = ps.executeQuery();
+      // stop reading once the limit is exceeded
+      while (rows.size() <= limit && rs.next()) {
+        BigInteger serial = new BigInteger(rs.getString("SN"), 16);
+        lastUpdate = Math.max(lastUpdate, rs.getLong("LUPDATE"));
+
+        CertRow row = CertRow.read(rs, true, true);
+        if (isIndexed(row, now)) {
+          rows.put(serial, row);
+        } else {
+          rows.remove(serial);
+        }
+      }
+      return lastUpdate;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method load
+
+  private boolean isIndexed(CertRow row, long now) {
+    return row.revoked
+        || (indexExpiredCerts && row.notAfter != 0 && row.notAfter < now)
+        || (indexNotYetValidCerts && row.notBefore != 0 && row.notBefore > now);
+  }
+
+  /**
+   * Checks whether the revoked certificates in the index match the summary read from the
+   * database. Rows updated after the summary was read are not considered. A row loaded by
+   * the previous refresh is always considered, even if it has been deleted after being the
+   * last updated one.
+   */
+  private static boolean matches(TreeMap<BigInteger, CertRow> rows, long[] summary,
+      long previousLastUpdate) {
+    long maxLastUpdate = Math.max(summary[2], previousLastUpdate);
+    long count = 0;
+    long sum = 0;
+    for (CertRow row : rows.values()) {
+      if (row.revoked && row.lastUpdate <= maxLastUpdate) {
+        count++;
+        sum += row.lastUpdate;
+      }
+    }
+    return count == summary[0] && sum == summary[1];
+  } // method matches
+
+  /**
+   * Returns the number, the sum of LUPDATE and the maximal LUPDATE of the revoked
+   * certificates of the issuer.
+   */
+  private long[] revokedSummary(int issuerId) throws DataAccessException {
+    PreparedStatement ps = datasource.prepareStatement(SQL_REVOKED_SUMMARY);
+    ResultSet rs = null;
+    try {
+      ps.setInt(1, issuerId);
+      rs = ps.executeQuery();
+      return rs.next() ? new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)} : new long[3];
+    } catch (SQLException ex) {
+      throw datasource.translate(SQL_REVOKED_SUMMARY, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method revokedSummary
+
+}
@@ -26,6 +26,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -226,13 +227,7 @@ public class EjbcaCertStatusStore extends OcspStore {
       return CertStatusInfo.getUnknownCertStatusInfo(new Date(), null);
     }
 
-    if (!initialized) {
-      throw new OcspStoreException("initialization of CertStore is still in process");
-    }
-
-    if (initializationFailed) {
-      throw new OcspStoreException("initialization of CertStore failed");
-    }
+    checkInitialized();
 
     try {
       EjbcaIssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
@@ -242,19 +237,7 @@ public class EjbcaCertStatusStore extends OcspStore {
 
       String sql = includeCertHash ? sqlCsWithCertHash : sqlCs;
 
-      Date thisUpdate = new Date();
-      Date nextUpdate = null;
-
       ResultSet rs = null;
-      CertStatusInfo certStatusInfo = null;
-
-      boolean unknown = true;
-      boolean ignore = false;
-      String hexCertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-
       PreparedStatement ps = datasource.prepareStatement(sql);
 
       try {
@@ -263,116 +246,225 @@ public class EjbcaCertStatusStore extends OcspStore {
         ps.setString(2, serialNumber.toString());
         rs = ps.executeQuery();
 
-        if (rs.next()) {
-          unknown = false;
+        return buildCertStatusInfo(time, issuer, rs.next() ? rs : null,
+            includeCertHash, inheritCaRevocation);
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
+      }
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-          long timeInMs = time.getTime();
-          if (!ignore && ignoreNotYetValidCert) {
-            long notBefore = rs.getLong("notBefore");
-            if (timeInMs < notBefore) {
-              ignore = true;
-            }
-          }
+  } // method getCertStatus0
 
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("expireDate");
-            if (timeInMs > notAfterInSec) {
-              ignore = true;
-            }
-          }
+  @Override
+  protected Map<BigInteger, CertStatusInfo> getCertStatuses0(Date time,
+      RequestIssuer reqIssuer, List<BigInteger> serialNumbers, boolean includeCertHash,
+      boolean includeRit, boolean inheritCaRevocation) throws OcspStoreException {
+    if (includeRit) {
+      throw new OcspStoreException("EJBCA store does not support includeRit");
+    }
 
-          if (!ignore) {
-            if (includeCertHash) {
-              hexCertHash = rs.getString("fingerprint");
-            }
+    checkInitialized();
+
+    EjbcaIssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return null;
+    }
+
+    Map<BigInteger, CertStatusInfo> infos = new HashMap<>(serialNumbers.size() * 4 / 3 + 1);
 
-            int status = rs.getInt("status");
-            revoked = status == 40;
-            if (revoked) {
-              reason = rs.getInt("revocationReason");
-              revTime = rs.getLong("revocationDate") / 1000;
+    // decimal serial number as in the database, to serial number
+    Map<String, BigInteger> decSerials = new HashMap<>(serialNumbers.size() * 4 / 3 + 1);
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() != 1) { // non-positive serial number
+        infos.put(serialNumber, CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
+      } else {
+        decSerials.put(serialNumber.toString(), serialNumber);
+      }
+    }
+
+    String coreSql = "SELECT serialNumber," + (includeCertHash ? "fingerprint," : "")
+        + "notBefore,expireDate,status,revocationReason,revocationDate"
+        + " FROM CertificateData WHERE cAFingerprint=? AND serialNumber IN ";
+
+    List<String> pendingSerials = new ArrayList<>(decSerials.keySet());
+    try {
+      for (int offset = 0; offset < pendingSerials.size(); offset += MAX_SERIALS_PER_QUERY) {
+        List<String> chunk = padInClauseValues(pendingSerials.subList(offset,
+            Math.min(pendingSerials.size(), offset + MAX_SERIALS_PER_QUERY)));
+        String sql = coreSql + buildInClause(chunk.size());
+
+        ResultSet rs = null;
+        PreparedStatement ps = datasource.prepareStatement(sql);
+        try {
+          int idx = 1;
+          ps.setString(idx++, issuer.getId());
+          for (String decSerial : chunk) {
+            ps.setString(idx++, decSerial);
+          }
+          rs = ps.executeQuery();
+
+          while (rs.next()) {
+            BigInteger serialNumber = decSerials.get(rs.getString("serialNumber"));
+            if (serialNumber != null) {
+              infos.put(serialNumber,
+                  buildCertStatusInfo(time, issuer, rs, includeCertHash, inheritCaRevocation));
             }
           }
-        } // end if (rs.next())
-      } catch (SQLException ex) {
-        throw datasource.translate(sql, ex);
-      } finally {
-        releaseDbResources(ps, rs);
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          releaseDbResources(ps, rs);
+        }
       }
 
-      if (unknown) {
-        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-      } else if (ignore) {
-        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
-      } else {
-        byte[] certHash = (hexCertHash == null) ? null : Hex.decode(hexCertHash);
-        if (revoked) {
-          CertRevocationInfo revInfo = new CertRevocationInfo(reason,
-              new Date(revTime * 1000), null);
-          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-              certHashAlgo, certHash, thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-              certHash, thisUpdate, nextUpdate, null);
+      // certificates not contained in the database
+      for (BigInteger serialNumber : decSerials.values()) {
+        if (!infos.containsKey(serialNumber)) {
+          infos.put(serialNumber,
+              buildCertStatusInfo(time, issuer, null, includeCertHash, inheritCaRevocation));
         }
       }
+    } catch (DataAccessException | SQLException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
-          }
+    return infos;
+  } // method getCertStatuses0
 
-          certStatusInfo.setArchiveCutOff(date);
+  private void checkInitialized() throws OcspStoreException {
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
+
+    if (initializationFailed) {
+      throw new OcspStoreException("initialization of CertStore failed");
+    }
+  }
+
+  /**
+   * Builds the certificate status from the current row of the query result.
+   *
+   * @param rs result set positioned at the row of the certificate, or {@code null} if the
+   *        certificate is not contained in the database.
+   */
+  private CertStatusInfo buildCertStatusInfo(Date time, EjbcaIssuerEntry issuer, ResultSet rs,
+      boolean includeCertHash, boolean inheritCaRevocation) throws SQLException {
+    Date thisUpdate = new Date();
+    Date nextUpdate = null;
+
+    boolean unknown = true;
+    boolean ignore = false;
+    String hexCertHash = null;
+    boolean revoked = false;
+    int reason = 0;
+    long revTime = 0;
+
+    if (rs != null) {
+      unknown = false;
+
+      long timeInMs = time.getTime();
+      if (!ignore && ignoreNotYetValidCert) {
+        long notBefore = rs.getLong("notBefore");
+        if (timeInMs < notBefore) {
+          ignore = true;
         }
       }
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+      if (!ignore && ignoreExpiredCert) {
+        long notAfterInSec = rs.getLong("expireDate");
+        if (timeInMs > notAfterInSec) {
+          ignore = true;
+        }
       }
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD) {
-        replaced = true;
-      } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
-        if (unknownCertBehaviour == UnknownCertBehaviour.good) {
-          replaced = true;
+      if (!ignore) {
+        if (includeCertHash) {
+          hexCertHash = rs.getString("fingerprint");
         }
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
+
+        int status = rs.getInt("status");
+        revoked = status == 40;
+        if (revoked) {
+          reason = rs.getInt("revocationReason");
+          revTime = rs.getLong("revocationDate") / 1000;
         }
       }
+    } // end if (rs != null)
+
+    CertStatusInfo certStatusInfo;
+    if (unknown) {
+      certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+    } else if (ignore) {
+      certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+    } else {
+      byte[] certHash = (hexCertHash == null) ? null : Hex.decode(hexCertHash);
+      if (revoked) {
+        CertRevocationInfo revInfo = new CertRevocationInfo(reason,
+            new Date(revTime * 1000), null);
+        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+            certHashAlgo, certHash, thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
+            certHash, thisUpdate, nextUpdate, null);
+      }
+    }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
+
+        certStatusInfo.setArchiveCutOff(date);
       }
+    }
+
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
       return certStatusInfo;
-    } catch (DataAccessException ex) {
-      throw new OcspStoreException(ex.getMessage(), ex);
     }
 
-  } // method getCertStatus0
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD) {
+      replaced = true;
+    } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
+      if (unknownCertBehaviour == UnknownCertBehaviour.good) {
+        replaced = true;
+      }
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
+      } else {
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+      }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method buildCertStatusInfo
 
   /**
    * Borrow Prepared Statement.
@@ -0,0 +1,271 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.DbCertStatusStore;
+import org.xipki.ocsp.server.store.TestJdbcDriver;
+
+/**
+ * Tests of the {@link ResponsePresigner}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class ResponsePresignerTest {
+
+  private static final AtomicInteger DB_INDEX = new AtomicInteger();
+
+  private static final long DAY = 24 * 3600;
+
+  private static final Pattern LIMIT = Pattern.compile(" LIMIT (\\d+)$");
+
+  private static String issuerCert;
+
+  /**
+   * OCSP database with one issuer.
+   */
+  private static class OcspDb extends TestJdbcDriver.Database {
+
+    // ID to {SN, REV, NAFTER}
+    private final Map<Long, Object[]> certs = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    void addCert(long id, BigInteger serial, boolean revoked, long notAfter) {
+      certs.put(id, new Object[]{serial.toString(16), revoked ? 1 : 0, notAfter});
+    }
+
+    @Override
+    protected List<Map<String, Object>> query(String sql, Object[] params) throws SQLException {
+      List<Map<String, Object>> ret = new ArrayList<>();
+      if (sql.startsWith("SELECT VALUE2 FROM DBSCHEMA")) {
+        ret.add(Collections.singletonMap("VALUE2", "SHA256"));
+      } else if (sql.startsWith("SELECT ID,NBEFORE,REV_INFO,S1C,CERT,CRL_ID FROM ISSUER")) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("ID", 1);
+        row.put("NBEFORE", 0L);
+        row.put("S1C", "fp");
+        row.put("CERT", issuerCert);
+        row.put("CRL_ID", 0);
+        ret.add(row);
+      } else if (sql.startsWith("SELECT ID,INFO FROM CRL_INFO")) {
+        // no CRLs
+      } else if (sql.contains("ID,SN FROM CERT WHERE IID=? AND ID>=? AND REV=0 AND NAFTER>?")) {
+        Matcher matcher = LIMIT.matcher(sql);
+        int limit = matcher.find() ? Integer.parseInt(matcher.group(1)) : Integer.MAX_VALUE;
+        long fromId = (Long) params[1];
+        long now = (Long) params[2];
+        synchronized (certs) {
+          for (Map.Entry<Long, Object[]> entry : certs.entrySet()) {
+            Object[] cert = entry.getValue();
+            if ((Integer) params[0] == 1 && entry.getKey() >= fromId
+                && (Integer) cert[1] == 0 && (Long) cert[2] > now && ret.size() < limit) {
+              Map<String, Object> row = new HashMap<>();
+              row.put("ID", entry.getKey());
+              row.put("SN", cert[0]);
+              ret.add(row);
+            }
+          }
+        }
+      } else {
+        throw new SQLException("unsupported query " + sql);
+      }
+      return ret;
+    } // method query
+
+    @Override
+    protected int update(String sql, Object[] params) throws SQLException {
+      throw new SQLException("unsupported statement " + sql);
+    }
+
+  } // class OcspDb
+
+  /**
+   * Response cache with the expiry of the responses, and the signer.
+   */
+  private static class TestSigner implements ResponsePresigner.Signer {
+
+    private final Map<BigInteger, Long> cachedExpiries = new ConcurrentHashMap<>();
+
+    private final List<BigInteger> signed = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<Long> signTimes = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public boolean isCachedResponseValid(RequestIssuer issuer, BigInteger serialNumber,
+        long minExpiry) {
+      Long expiry = cachedExpiries.get(serialNumber);
+      return expiry != null && expiry >= minExpiry;
+    }
+
+    @Override
+    public boolean presign(RequestIssuer issuer, BigInteger serialNumber) {
+      signed.add(serialNumber);
+      signTimes.add(System.nanoTime());
+      cachedExpiries.put(serialNumber, now() + 7 * DAY);
+      return true;
+    }
+
+  } // class TestSigner
+
+  private final List<OcspStore> stores = new ArrayList<>();
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    KeyPair kp = kpGen.generateKeyPair();
+
+    X500Name subject = new X500Name("CN=CA");
+    Date notBefore = new Date();
+    Date notAfter = new Date(notBefore.getTime() + DAY * 1000);
+    byte[] encoded = new JcaX509v3CertificateBuilder(subject, BigInteger.ONE, notBefore,
+        notAfter, subject, kp.getPublic())
+        .build(new JcaContentSignerBuilder("SHA256withECDSA").build(kp.getPrivate()))
+        .getEncoded();
+    issuerCert = Base64.getEncoder().encodeToString(encoded);
+  } // method init
+
+  @After
+  public void shutdown() throws Exception {
+    for (OcspStore store : stores) {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testRefreshWindow() throws Exception {
+    OcspDb db = new OcspDb();
+    // more than one page of serial numbers
+    int num = 2500;
+    for (int i = 1; i <= num; i++) {
+      db.addCert(i, BigInteger.valueOf(i), false, now() + 365 * DAY);
+    }
+
+    TestSigner signer = new TestSigner();
+    // 1: valid beyond the refresh window, 2: expires within the refresh window, others: none
+    signer.cachedExpiries.put(BigInteger.valueOf(1), now() + 2 * DAY);
+    signer.cachedExpiries.put(BigInteger.valueOf(2), now() + DAY / 2);
+
+    ResponsePresigner presigner = newPresigner(db, signer, "1d", 100000);
+    presigner.run();
+
+    Assert.assertEquals(num - 1, signer.signed.size());
+    Assert.assertFalse(signer.signed.contains(BigInteger.valueOf(1)));
+    Assert.assertTrue(signer.signed.contains(BigInteger.valueOf(2)));
+    Assert.assertTrue(signer.signed.contains(BigInteger.valueOf(num)));
+    Assert.assertEquals(num - 1, presigner.getSignedCount());
+
+    // all responses are valid now
+    presigner.run();
+    Assert.assertEquals(num - 1, signer.signed.size());
+  } // method testRefreshWindow
+
+  @Test
+  public void testRateLimit() throws Exception {
+    OcspDb db = new OcspDb();
+    int num = 11;
+    for (int i = 1; i <= num; i++) {
+      db.addCert(i, BigInteger.valueOf(i), false, now() + 365 * DAY);
+    }
+
+    TestSigner signer = new TestSigner();
+    ResponsePresigner presigner = newPresigner(db, signer, "1d", 20);
+    presigner.run();
+
+    Assert.assertEquals(num, signer.signed.size());
+    // 20 signatures per second: at least 50 ms between two signatures
+    long minGap = Long.MAX_VALUE;
+    for (int i = 1; i < num; i++) {
+      minGap = Math.min(minGap, signer.signTimes.get(i) - signer.signTimes.get(i - 1));
+    }
+    Assert.assertTrue("minimal gap " + minGap + " ns", minGap >= 45_000_000L);
+
+    long duration = signer.signTimes.get(num - 1) - signer.signTimes.get(0);
+    Assert.assertTrue("duration " + duration + " ns", duration >= 450_000_000L);
+  } // method testRateLimit
+
+  @Test
+  public void testSkipRevokedAndExpiredCerts() throws Exception {
+    OcspDb db = new OcspDb();
+    db.addCert(1, BigInteger.valueOf(1), false, now() + 365 * DAY);
+    db.addCert(2, BigInteger.valueOf(2), true, now() + 365 * DAY);
+    db.addCert(3, BigInteger.valueOf(3), false, now() - DAY);
+    db.addCert(4, BigInteger.valueOf(4), false, now() + 365 * DAY);
+
+    TestSigner signer = new TestSigner();
+    ResponsePresigner presigner = newPresigner(db, signer, "1d", 100000);
+    presigner.run();
+
+    Assert.assertEquals(2, signer.signed.size());
+    Assert.assertTrue(signer.signed.contains(BigInteger.valueOf(1)));
+    Assert.assertTrue(signer.signed.contains(BigInteger.valueOf(4)));
+  } // method testSkipRevokedAndExpiredCerts
+
+  private ResponsePresigner newPresigner(OcspDb db, TestSigner signer, String refreshWindow,
+      int maxRate) throws Exception {
+    DbCertStatusStore store = new DbCertStatusStore();
+    store.setName("store-" + DB_INDEX.incrementAndGet());
+    store.init(null, TestJdbcDriver.createDataSource("ocsp-presign-" + DB_INDEX.get(), db));
+    stores.add(store);
+    Assert.assertEquals(1, store.getIssuers().size());
+
+    OcspServerConf.Presign conf = new OcspServerConf.Presign();
+    conf.setRefreshWindow(refreshWindow);
+    conf.setInterval("1d");
+    conf.setMaxRate(maxRate);
+    conf.validate();
+    return new ResponsePresigner("responder", Collections.singletonList(store), signer, conf);
+  } // method newPresigner
+
+  private static long now() {
+    return System.currentTimeMillis() / 1000;
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.security.CertpathValidationModel;
+
+/**
+ * ValidatedSignerCache test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class ValidatedSignerCacheTest {
+
+  private static final long MS_PER_DAY = 24L * 3600 * 1000;
+
+  private static X509Certificate validCert;
+
+  private static X509Certificate expiredCert;
+
+  private static ContentVerifierProvider verifierProvider;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    KeyPair keyPair = kpGen.generateKeyPair();
+
+    long now = System.currentTimeMillis();
+    validCert = buildCert(keyPair, new Date(now - MS_PER_DAY), new Date(now + MS_PER_DAY));
+    expiredCert = buildCert(keyPair, new Date(now - 2 * MS_PER_DAY),
+        new Date(now - MS_PER_DAY));
+    verifierProvider = new JcaContentVerifierProviderBuilder().build(validCert);
+  }
+
+  private static X509Certificate buildCert(KeyPair keyPair, Date notBefore, Date notAfter)
+      throws Exception {
+    X500Name subject = new X500Name("CN=signer");
+    X509CertificateHolder holder = new JcaX509v3CertificateBuilder(subject, BigInteger.ONE,
+        notBefore, notAfter, subject, keyPair.getPublic())
+        .build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate()));
+    return new JcaX509CertificateConverter().getCertificate(holder);
+  }
+
+  @Test
+  public void testHitAfterPut() throws Exception {
+    ValidatedSignerCache cache = new ValidatedSignerCache(10, 60);
+    byte[] encodedCert = validCert.getEncoded();
+    cache.put(encodedCert, verifierProvider, new X509Certificate[]{validCert},
+        CertpathValidationModel.PKIX);
+
+    Assert.assertSame("cached verifier", verifierProvider, cache.get(encodedCert.clone()));
+    Assert.assertEquals("hits", 1, cache.getHits());
+    Assert.assertEquals("misses", 0, cache.getMisses());
+  }
+
+  @Test
+  public void testNoEntryWithoutPut() throws Exception {
+    // failed validations are not put into the cache, and must not be answered from it
+    ValidatedSignerCache cache = new ValidatedSignerCache(10, 60);
+    cache.put(validCert.getEncoded(), verifierProvider, new X509Certificate[]{validCert},
+        CertpathValidationModel.PKIX);
+
+    Assert.assertNull("uncached signer", cache.get(expiredCert.getEncoded()));
+    Assert.assertEquals("hits", 0, cache.getHits());
+    Assert.assertEquals("misses", 1, cache.getMisses());
+    Assert.assertEquals("size", 1, cache.size());
+  }
+
+  @Test
+  public void testTtlExpiry() throws Exception {
+    ValidatedSignerCache cache = new ValidatedSignerCache(10, 1);
+    byte[] encodedCert = validCert.getEncoded();
+    cache.put(encodedCert, verifierProvider, new X509Certificate[]{validCert},
+        CertpathValidationModel.PKIX);
+    Assert.assertNotNull("before TTL", cache.get(encodedCert));
+
+    Thread.sleep(1100);
+    Assert.assertNull("after TTL", cache.get(encodedCert));
+    Assert.assertEquals("size", 0, cache.size());
+  }
+
+  @Test
+  public void testEarliestNotAfterPkix() throws Exception {
+    ValidatedSignerCache cache = new ValidatedSignerCache(10, 60);
+    // the entry expires at the earliest notAfter of the certpath, which is before the TTL
+    byte[] encodedCert = validCert.getEncoded();
+    cache.put(encodedCert, verifierProvider, new X509Certificate[]{validCert, expiredCert},
+        CertpathValidationModel.PKIX);
+    Assert.assertNull("expired certpath", cache.get(encodedCert));
+
+    // validation model null is handled as PKIX
+    cache.put(encodedCert, verifierProvider, new X509Certificate[]{validCert, expiredCert},
+        null);
+    Assert.assertNull("expired certpath", cache.get(encodedCert));
+  }
+
+  @Test
+  public void testNotAfterIgnoredChain() throws Exception {
+    ValidatedSignerCache cache = new ValidatedSignerCache(10, 60);
+    // the validity of the certificates is not checked in the CHAIN model
+    byte[] encodedCert = validCert.getEncoded();
+    cache.put(encodedCert, verifierProvider, new X509Certificate[]{validCert, expiredCert},
+        CertpathValidationModel.CHAIN);
+    Assert.assertSame("cached verifier", verifierProvider, cache.get(encodedCert));
+  }
+
+}
@@ -0,0 +1,256 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ocsp.api.CertStatusInfo;
+import org.xipki.ocsp.api.CertStatusInfo.CertStatus;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Tests of the bulk status retrieval of the {@link DbCertStatusStore}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class DbCertStatusStoreTest {
+
+  private static final AtomicInteger DB_INDEX = new AtomicInteger();
+
+  private static final long NOW = System.currentTimeMillis() / 1000;
+
+  private static final long DAY = 24 * 3600;
+
+  private static String issuerCert;
+
+  /**
+   * OCSP database with one issuer.
+   */
+  private static class OcspDb extends TestJdbcDriver.Database {
+
+    private final Map<String, Map<String, Object>> certs = new ConcurrentHashMap<>();
+
+    // number of the values in the IN clause of each bulk query
+    private final List<Integer> inClauseSizes = Collections.synchronizedList(new ArrayList<>());
+
+    private final AtomicInteger singleQueries = new AtomicInteger();
+
+    void addCert(BigInteger serial, boolean revoked) {
+      Map<String, Object> row = new HashMap<>();
+      row.put("SN", serial.toString(16));
+      row.put("NBEFORE", NOW - 10 * DAY);
+      row.put("NAFTER", NOW + 10 * DAY);
+      row.put("REV", revoked ? 1 : 0);
+      row.put("RR", revoked ? 1 : 0);
+      row.put("RT", revoked ? NOW - DAY : 0L);
+      row.put("RIT", revoked ? NOW - 2 * DAY : 0L);
+      row.put("HASH", Base64.getEncoder().encodeToString(HashAlgo.SHA256.hash(
+          serial.toByteArray())));
+      row.put("CRL_ID", 0);
+      certs.put(serial.toString(16), row);
+    }
+
+    @Override
+    protected List<Map<String, Object>> query(String sql, Object[] params) throws SQLException {
+      List<Map<String, Object>> ret = new ArrayList<>();
+      if (sql.startsWith("SELECT VALUE2 FROM DBSCHEMA")) {
+        ret.add(Collections.singletonMap("VALUE2", "SHA256"));
+      } else if (sql.startsWith("SELECT ID,NBEFORE,REV_INFO,S1C,CERT,CRL_ID FROM ISSUER")) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("ID", 1);
+        row.put("NBEFORE", 0L);
+        row.put("S1C", "fp");
+        row.put("CERT", issuerCert);
+        row.put("CRL_ID", 0);
+        ret.add(row);
+      } else if (sql.startsWith("SELECT ID,INFO FROM CRL_INFO")) {
+        // no CRLs
+      } else if (sql.contains(" FROM CERT WHERE IID=? AND SN IN (")) {
+        inClauseSizes.add(params.length - 1);
+        for (int i = 1; i < params.length; i++) {
+          Map<String, Object> row = certs.get((String) params[i]);
+          // the padded values are repeated
+          if (row != null && (Integer) params[0] == 1 && !ret.contains(row)) {
+            ret.add(row);
+          }
+        }
+      } else if (sql.contains(" FROM CERT WHERE IID=? AND SN=?")) {
+        singleQueries.incrementAndGet();
+        Map<String, Object> row = certs.get((String) params[1]);
+        if (row != null && (Integer) params[0] == 1) {
+          ret.add(row);
+        }
+      } else {
+        throw new SQLException("unsupported query " + sql);
+      }
+      return ret;
+    } // method query
+
+    @Override
+    protected int update(String sql, Object[] params) throws SQLException {
+      throw new SQLException("unsupported statement " + sql);
+    }
+
+  } // class OcspDb
+
+  private final List<DbCertStatusStore> stores = new ArrayList<>();
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    KeyPair kp = kpGen.generateKeyPair();
+
+    X500Name subject = new X500Name("CN=CA");
+    Date notBefore = new Date((NOW - 100 * DAY) * 1000);
+    Date notAfter = new Date((NOW + 100 * DAY) * 1000);
+    byte[] encoded = new JcaX509v3CertificateBuilder(subject, BigInteger.ONE, notBefore,
+        notAfter, subject, kp.getPublic())
+        .build(new JcaContentSignerBuilder("SHA256withECDSA").build(kp.getPrivate()))
+        .getEncoded();
+    issuerCert = Base64.getEncoder().encodeToString(encoded);
+  } // method init
+
+  @After
+  public void shutdown() throws Exception {
+    for (DbCertStatusStore store : stores) {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testBulkStatus() throws Exception {
+    OcspDb db = new OcspDb();
+    // odd: good, even: revoked
+    for (int i = 1; i <= 120; i++) {
+      db.addCert(BigInteger.valueOf(i), i % 2 == 0);
+    }
+
+    DbCertStatusStore store = newStore(db);
+    RequestIssuer issuer = store.getIssuers().get(0);
+
+    // 121 - 140: not contained in the database
+    List<BigInteger> serials = new ArrayList<>();
+    for (int i = 1; i <= 140; i++) {
+      serials.add(BigInteger.valueOf(i));
+    }
+    serials.add(BigInteger.valueOf(5));
+    serials.add(BigInteger.ZERO);
+
+    Date time = new Date();
+    for (boolean includeCertHash : new boolean[]{false, true}) {
+      db.inClauseSizes.clear();
+      Map<BigInteger, CertStatusInfo> infos =
+          store.getCertStatuses(time, issuer, serials, includeCertHash, true, false);
+
+      // 140 distinct positive serial numbers: 100 + 40 padded to 50
+      Assert.assertEquals(Arrays.asList(100, 50), db.inClauseSizes);
+      Assert.assertEquals(0, db.singleQueries.get());
+      Assert.assertEquals(141, infos.size());
+      Assert.assertEquals(CertStatus.UNKNOWN, infos.get(BigInteger.ZERO).getCertStatus());
+
+      Assert.assertEquals(CertStatus.GOOD, infos.get(BigInteger.valueOf(1)).getCertStatus());
+      Assert.assertEquals(CertStatus.REVOKED, infos.get(BigInteger.valueOf(2)).getCertStatus());
+      Assert.assertEquals(CertStatus.UNKNOWN,
+          infos.get(BigInteger.valueOf(121)).getCertStatus());
+
+      // same status as retrieved one by one
+      for (BigInteger serial : serials) {
+        CertStatusInfo expected =
+            store.getCertStatus(time, issuer, serial, includeCertHash, true, false);
+        assertSameStatus(serial, expected, infos.get(serial));
+      }
+      db.singleQueries.set(0);
+    }
+  } // method testBulkStatus
+
+  @Test
+  public void testUnknownIssuer() throws Exception {
+    OcspDb db = new OcspDb();
+    db.addCert(BigInteger.ONE, false);
+    DbCertStatusStore store = newStore(db);
+
+    byte[] hash = new byte[(2 + HashAlgo.SHA1.getLength()) * 2];
+    hash[0] = 0x04;
+    hash[1] = (byte) HashAlgo.SHA1.getLength();
+    hash[2 + HashAlgo.SHA1.getLength()] = 0x04;
+    hash[3 + HashAlgo.SHA1.getLength()] = (byte) HashAlgo.SHA1.getLength();
+
+    Assert.assertNull(store.getCertStatuses(new Date(), new RequestIssuer(HashAlgo.SHA1, hash),
+        Collections.singletonList(BigInteger.ONE), false, true, false));
+    Assert.assertTrue(db.inClauseSizes.isEmpty());
+  } // method testUnknownIssuer
+
+  private DbCertStatusStore newStore(OcspDb db) throws Exception {
+    DbCertStatusStore store = new DbCertStatusStore();
+    store.setName("store-" + DB_INDEX.incrementAndGet());
+    store.init(null, TestJdbcDriver.createDataSource("ocsp-status-" + DB_INDEX.get(), db));
+    stores.add(store);
+    Assert.assertEquals(1, store.getIssuers().size());
+    return store;
+  } // method newStore
+
+  private static void assertSameStatus(BigInteger serial, CertStatusInfo expected,
+      CertStatusInfo actual) {
+    String desc = "serial " + serial;
+    Assert.assertNotNull(desc, actual);
+    Assert.assertEquals(desc, expected.getCertStatus(), actual.getCertStatus());
+    Assert.assertArrayEquals(desc, expected.getCertHash(), actual.getCertHash());
+
+    CertRevocationInfo expectedRev = expected.getRevocationInfo();
+    CertRevocationInfo actualRev = actual.getRevocationInfo();
+    if (expectedRev == null) {
+      Assert.assertNull(desc, actualRev);
+    } else {
+      Assert.assertEquals(desc, expectedRev.getReason(), actualRev.getReason());
+      Assert.assertEquals(desc, expectedRev.getRevocationTime(), actualRev.getRevocationTime());
+      Assert.assertEquals(desc, expectedRev.getInvalidityTime(), actualRev.getInvalidityTime());
+    }
+  } // method assertSameStatus
+
+}
@@ -0,0 +1,173 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Tests of the {@link IssuerStore}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class IssuerStoreTest {
+
+  @Test
+  public void testLookupByHash() throws Exception {
+    List<IssuerEntry> issuers = new ArrayList<>();
+    for (int i = 1; i <= 20; i++) {
+      issuers.add(newIssuer(i, "CN=CA " + i, newKeyPair()));
+    }
+
+    IssuerStore store = new IssuerStore();
+    store.setIssuers(issuers);
+    Assert.assertEquals(20, store.size());
+
+    for (IssuerEntry issuer : issuers) {
+      for (HashAlgo ha : HashAlgo.values()) {
+        RequestIssuer reqIssuer = new RequestIssuer(ha, issuer.getEncodedHash(ha));
+        Assert.assertSame(issuer, store.getIssuerForFp(reqIssuer));
+        Assert.assertEquals(Integer.valueOf(issuer.getId()), store.getIssuerIdForFp(reqIssuer));
+        // the index agrees with the hash comparison
+        Assert.assertTrue(issuer.matchHash(reqIssuer));
+
+        // CertID within a larger request
+        byte[] data = new byte[7 + reqIssuer.getLength() + 5];
+        reqIssuer.write(data, 7);
+        RequestIssuer embedded = new RequestIssuer(data, 7, reqIssuer.getLength());
+        Assert.assertSame(issuer, store.getIssuerForFp(embedded));
+      }
+    }
+  } // method testLookupByHash
+
+  @Test
+  public void testUnknownIssuer() throws Exception {
+    IssuerEntry issuer = newIssuer(1, "CN=CA", newKeyPair());
+    IssuerStore store = new IssuerStore();
+    store.setIssuers(Arrays.asList(issuer));
+
+    // modified issuerKeyHash
+    byte[] hash = issuer.getEncodedHash(HashAlgo.SHA256);
+    hash[hash.length - 1] ^= 0x01;
+    Assert.assertNull(store.getIssuerForFp(new RequestIssuer(HashAlgo.SHA256, hash)));
+    Assert.assertNull(store.getIssuerIdForFp(new RequestIssuer(HashAlgo.SHA256, hash)));
+
+    // issuer of another store
+    IssuerEntry other = newIssuer(2, "CN=Other CA", newKeyPair());
+    Assert.assertNull(store.getIssuerForFp(
+        new RequestIssuer(HashAlgo.SHA1, other.getEncodedHash(HashAlgo.SHA1))));
+    Assert.assertNull(store.getIssuerForId(2));
+  } // method testUnknownIssuer
+
+  @Test
+  public void testAddIssuer() throws Exception {
+    IssuerEntry issuer1 = newIssuer(1, "CN=CA 1", newKeyPair());
+    IssuerEntry issuer2 = newIssuer(2, "CN=CA 2", newKeyPair());
+
+    IssuerStore store = new IssuerStore();
+    store.setIssuers(Arrays.asList(issuer1));
+    RequestIssuer reqIssuer2 =
+        new RequestIssuer(HashAlgo.SHA1, issuer2.getEncodedHash(HashAlgo.SHA1));
+    Assert.assertNull(store.getIssuerForFp(reqIssuer2));
+
+    store.addIssuer(issuer2);
+    Assert.assertEquals(2, store.size());
+    Assert.assertTrue(store.getIds().contains(1));
+    Assert.assertTrue(store.getIds().contains(2));
+    Assert.assertSame(issuer1, store.getIssuerForId(1));
+    Assert.assertSame(issuer2, store.getIssuerForId(2));
+    Assert.assertSame(issuer2, store.getIssuerForFp(reqIssuer2));
+    Assert.assertEquals(2, store.getRequestIssuers().size());
+
+    // the issuers are replaced as a whole
+    store.setIssuers(Arrays.asList(issuer2));
+    Assert.assertNull(store.getIssuerForId(1));
+    Assert.assertSame(issuer2, store.getIssuerForId(2));
+  } // method testAddIssuer
+
+  @Test
+  public void testDuplicatedId() throws Exception {
+    IssuerEntry issuer1 = newIssuer(1, "CN=CA 1", newKeyPair());
+    IssuerEntry issuer1b = newIssuer(1, "CN=CA 1b", newKeyPair());
+
+    IssuerStore store = new IssuerStore();
+    store.setIssuers(Arrays.asList(issuer1));
+    try {
+      store.addIssuer(issuer1b);
+      Assert.fail("IllegalArgumentException expected");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+
+    // the previous index is still in use
+    Assert.assertEquals(1, store.size());
+    Assert.assertSame(issuer1, store.getIssuerForId(1));
+  } // method testDuplicatedId
+
+  @Test
+  public void testSameNameAndKey() throws Exception {
+    // renewed CA certificate with the same subject and key
+    KeyPair kp = newKeyPair();
+    IssuerEntry issuer1 = newIssuer(1, "CN=CA", kp);
+    IssuerEntry issuer2 = newIssuer(2, "CN=CA", kp);
+
+    IssuerStore store = new IssuerStore();
+    store.setIssuers(Arrays.asList(issuer1, issuer2));
+
+    // as before with the linear search, the first issuer wins
+    RequestIssuer reqIssuer =
+        new RequestIssuer(HashAlgo.SHA1, issuer2.getEncodedHash(HashAlgo.SHA1));
+    Assert.assertEquals(Integer.valueOf(1), store.getIssuerIdForFp(reqIssuer));
+    Assert.assertSame(issuer2, store.getIssuerForId(2));
+  } // method testSameNameAndKey
+
+  private static KeyPair newKeyPair() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    return kpGen.generateKeyPair();
+  }
+
+  private static IssuerEntry newIssuer(int id, String subject, KeyPair kp) throws Exception {
+    X500Name name = new X500Name(subject);
+    Date notBefore = new Date();
+    Date notAfter = new Date(notBefore.getTime() + 24 * 3600 * 1000L);
+    X509Certificate cert = new JcaX509CertificateConverter().getCertificate(
+        new JcaX509v3CertificateBuilder(name, BigInteger.valueOf(id), notBefore, notAfter,
+            name, kp.getPublic())
+        .build(new JcaContentSignerBuilder("SHA256withECDSA").build(kp.getPrivate())));
+    return new IssuerEntry(id, cert);
+  } // method newIssuer
+
+}
@@ -0,0 +1,418 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.security.AlgorithmCode;
+import org.xipki.util.Validity;
+
+/**
+ * Tests of the {@link ResponseCacher}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class ResponseCacherTest {
+
+  private static final AtomicInteger DB_INDEX = new AtomicInteger();
+
+  private static final AlgorithmCode SIG_ALG = AlgorithmCode.SHA256WITHRSA;
+
+  private static final int ISSUER_ID = 1;
+
+  /**
+   * Table OCSP of the cache database.
+   */
+  private static class CacheDb extends TestJdbcDriver.Database {
+
+    private final Map<Long, Object[]> rows = new ConcurrentHashMap<>();
+
+    private final AtomicInteger batches = new AtomicInteger();
+
+    private final AtomicInteger responseQueries = new AtomicInteger();
+
+    // reports Statement.SUCCESS_NO_INFO for the batched updates, like the Oracle driver
+    private boolean successNoInfo;
+
+    private boolean failBatchUpdate;
+
+    private Long failingId;
+
+    private CountDownLatch batchStarted;
+
+    private CountDownLatch releaseBatch;
+
+    @Override
+    protected List<Map<String, Object>> query(String sql, Object[] params) throws SQLException {
+      if (sql.startsWith("SELECT ID FROM ISSUER")) {
+        return Collections.emptyList();
+      } else if (sql.startsWith("SELECT ID FROM OCSP WHERE ID=?")) {
+        List<Map<String, Object>> ret = new ArrayList<>(1);
+        if (rows.containsKey((Long) params[0])) {
+          ret.add(Collections.singletonMap("ID", params[0]));
+        }
+        return ret;
+      } else if (sql.startsWith("SELECT IID,IDENT,THIS_UPDATE,NEXT_UPDATE,RESP FROM OCSP")) {
+        responseQueries.incrementAndGet();
+        Object[] row = rows.get((Long) params[0]);
+        if (row == null) {
+          return Collections.emptyList();
+        }
+
+        Map<String, Object> ret = new HashMap<>();
+        ret.put("IID", row[1]);
+        ret.put("IDENT", row[2]);
+        ret.put("THIS_UPDATE", row[3]);
+        ret.put("NEXT_UPDATE", row[4]);
+        ret.put("RESP", row[5]);
+        return Collections.singletonList(ret);
+      }
+      throw new SQLException("unsupported query " + sql);
+    } // method query
+
+    @Override
+    protected int update(String sql, Object[] params) throws SQLException {
+      if (sql.startsWith("INSERT INTO OCSP")) {
+        Long id = (Long) params[0];
+        if (id.equals(failingId)) {
+          throw new SQLException("general error", "HY000", 50000);
+        } else if (rows.putIfAbsent(id, params.clone()) != null) {
+          throw new SQLException("duplicate key", "23505", 23505);
+        }
+        return 1;
+      } else if (sql.startsWith("UPDATE OCSP")) {
+        Object[] row = rows.get((Long) params[3]);
+        if (row == null) {
+          return 0;
+        }
+        row[3] = params[0];
+        row[4] = params[1];
+        row[5] = params[2];
+        return 1;
+      }
+      throw new SQLException("unsupported statement " + sql);
+    } // method update
+
+    @Override
+    protected int[] executeBatch(String sql, List<Object[]> batch) throws SQLException {
+      batches.incrementAndGet();
+      if (batchStarted != null) {
+        batchStarted.countDown();
+        try {
+          releaseBatch.await();
+        } catch (InterruptedException ex) {
+          throw new SQLException("interrupted");
+        }
+      }
+
+      boolean isUpdate = sql.startsWith("UPDATE");
+      if (isUpdate && failBatchUpdate) {
+        throw new SQLException("batch failed", "HY000", 50000);
+      }
+
+      if (!isUpdate && failingId != null) {
+        for (Object[] params : batch) {
+          if (failingId.equals(params[0])) {
+            throw new SQLException("general error", "HY000", 50000);
+          }
+        }
+      }
+
+      int[] counts = super.executeBatch(sql, batch);
+      if (isUpdate && successNoInfo) {
+        for (int i = 0; i < counts.length; i++) {
+          counts[i] = Statement.SUCCESS_NO_INFO;
+        }
+      }
+      return counts;
+    } // method executeBatch
+
+    String getResponse(long id) {
+      Object[] row = rows.get(id);
+      return (row == null) ? null : new String(Base64.getDecoder().decode((String) row[5]));
+    }
+
+  } // class CacheDb
+
+  private final List<ResponseCacher> cachers = new ArrayList<>();
+
+  @After
+  public void shutdown() {
+    for (ResponseCacher cacher : cachers) {
+      cacher.close();
+    }
+  }
+
+  @Test
+  public void testWriteBehindInsertAndUpdate() throws Exception {
+    CacheDb db = new CacheDb();
+    ResponseCacher cacher = newCacher(db, 100, 10, true);
+
+    store(cacher, 1, "resp1");
+    store(cacher, 2, "resp2");
+    awaitWritten(cacher, 2);
+    Assert.assertEquals(2, db.rows.size());
+
+    store(cacher, 1, "resp1-new");
+    store(cacher, 3, "resp3");
+    awaitWritten(cacher, 4);
+    assertResponse(cacher, 1, "resp1-new");
+    assertResponse(cacher, 2, "resp2");
+    assertResponse(cacher, 3, "resp3");
+  } // method testWriteBehindInsertAndUpdate
+
+  @Test
+  public void testWriteBehindSuccessNoInfo() throws Exception {
+    CacheDb db = new CacheDb();
+    db.successNoInfo = true;
+    ResponseCacher cacher = newCacher(db, 100, 10, true);
+
+    store(cacher, 1, "resp1");
+    awaitWritten(cacher, 1);
+    store(cacher, 1, "resp1-new");
+    store(cacher, 2, "resp2");
+    awaitWritten(cacher, 3);
+
+    Assert.assertEquals(2, db.rows.size());
+    assertResponse(cacher, 1, "resp1-new");
+    assertResponse(cacher, 2, "resp2");
+  } // method testWriteBehindSuccessNoInfo
+
+  @Test
+  public void testFailedBatchRetriedOneByOne() throws Exception {
+    CacheDb db = new CacheDb();
+    db.failBatchUpdate = true;
+    ResponseCacher cacher = newCacher(db, 100, 10, true);
+
+    store(cacher, 1, "resp1");
+    store(cacher, 2, "resp2");
+    awaitWritten(cacher, 2);
+    assertResponse(cacher, 1, "resp1");
+    assertResponse(cacher, 2, "resp2");
+
+    store(cacher, 1, "resp1-new");
+    awaitWritten(cacher, 3);
+    assertResponse(cacher, 1, "resp1-new");
+    Assert.assertEquals(0L, status(cacher, "writeQueueDropped"));
+  } // method testFailedBatchRetriedOneByOne
+
+  @Test
+  public void testFailedInsertDropsOnlyTheBrokenEntry() throws Exception {
+    CacheDb db = new CacheDb();
+    ResponseCacher cacher = newCacher(db, 100, 10, true);
+    db.failingId = deriveId(cacher, 2);
+
+    store(cacher, 1, "resp1");
+    store(cacher, 2, "resp2");
+    store(cacher, 3, "resp3");
+    awaitWritten(cacher, 3);
+
+    Assert.assertEquals(1L, status(cacher, "writeQueueDropped"));
+    assertResponse(cacher, 1, "resp1");
+    assertResponse(cacher, 3, "resp3");
+    Assert.assertNull(db.getResponse(db.failingId));
+  } // method testFailedInsertDropsOnlyTheBrokenEntry
+
+  @Test
+  public void testInterruptedEnqueueWritesSynchronously() throws Exception {
+    CacheDb db = new CacheDb();
+    db.batchStarted = new CountDownLatch(1);
+    db.releaseBatch = new CountDownLatch(1);
+    ResponseCacher cacher = newCacher(db, 1, 10, true);
+
+    try {
+      // the writer is blocked in the batch of the first response
+      store(cacher, 1, "resp1");
+      Assert.assertTrue(db.batchStarted.await(5, TimeUnit.SECONDS));
+      // fills the queue
+      store(cacher, 2, "resp2");
+
+      Thread caller = new Thread(() -> store(cacher, 3, "resp3"));
+      caller.start();
+      waitForState(caller, Thread.State.WAITING);
+      caller.interrupt();
+      caller.join(5000);
+      Assert.assertFalse(caller.isAlive());
+
+      // written by the interrupted caller, and not dropped
+      Assert.assertEquals("resp3", db.getResponse(deriveId(cacher, 3)));
+      Assert.assertNull(db.getResponse(deriveId(cacher, 2)));
+      Assert.assertEquals(0L, status(cacher, "writeQueueDropped"));
+    } finally {
+      db.releaseBatch.countDown();
+    }
+
+    awaitWritten(cacher, 2);
+    assertResponse(cacher, 1, "resp1");
+    assertResponse(cacher, 2, "resp2");
+  } // method testInterruptedEnqueueWritesSynchronously
+
+  @Test
+  public void testMemoryCacheHit() throws Exception {
+    CacheDb db = new CacheDb();
+    ResponseCacher cacher = newMemoryCacher(db);
+
+    store(cacher, 1, "resp1");
+    // the row is removed from the database, the response is served from memory
+    db.rows.clear();
+    assertResponse(cacher, 1, "resp1");
+    assertResponse(cacher, 1, "resp1");
+
+    Assert.assertEquals(0, db.responseQueries.get());
+    Assert.assertEquals(2L, status(cacher, "memoryCacheHits"));
+    Assert.assertEquals(1, status(cacher, "memoryCacheEntries"));
+
+    // not in memory, read from the database and cached in memory
+    Assert.assertNull(cacher.getOcspResponse(ISSUER_ID, BigInteger.valueOf(2), SIG_ALG));
+    Assert.assertEquals(1, db.responseQueries.get());
+    Assert.assertEquals(1L, status(cacher, "memoryCacheMisses"));
+  } // method testMemoryCacheHit
+
+  @Test
+  public void testMemoryCacheExpiry() throws Exception {
+    CacheDb db = new CacheDb();
+    ResponseCacher cacher = newMemoryCacher(db);
+
+    // thisUpdate is older than the validity of 1 day
+    long nowInSec = System.currentTimeMillis() / 1000;
+    cacher.storeOcspResponse(ISSUER_ID, BigInteger.ONE, nowInSec - 2 * 24 * 3600,
+        nowInSec + 7 * 24 * 3600, SIG_ALG, "resp1".getBytes());
+    db.rows.clear();
+
+    Assert.assertNull(cacher.getOcspResponse(ISSUER_ID, BigInteger.ONE, SIG_ALG));
+    Assert.assertEquals(1L, status(cacher, "memoryCacheExpirations"));
+    Assert.assertEquals(0L, status(cacher, "memoryCacheHits"));
+    Assert.assertEquals(0, status(cacher, "memoryCacheEntries"));
+    Assert.assertEquals(1, db.responseQueries.get());
+  } // method testMemoryCacheExpiry
+
+  @Test
+  public void testMemoryCacheUpdatedOnStore() throws Exception {
+    CacheDb db = new CacheDb();
+    ResponseCacher cacher = newMemoryCacher(db);
+
+    store(cacher, 1, "resp1");
+    assertResponse(cacher, 1, "resp1");
+
+    store(cacher, 1, "resp1-new");
+    assertResponse(cacher, 1, "resp1-new");
+    Assert.assertEquals("resp1-new", db.getResponse(deriveId(cacher, 1)));
+
+    Assert.assertEquals(0, db.responseQueries.get());
+    Assert.assertEquals(2L, status(cacher, "memoryCacheHits"));
+    Assert.assertEquals(1, status(cacher, "memoryCacheEntries"));
+    Assert.assertEquals((long) "resp1-new".length(), status(cacher, "memoryCacheSize"));
+  } // method testMemoryCacheUpdatedOnStore
+
+  private ResponseCacher newMemoryCacher(CacheDb db) throws Exception {
+    DataSourceWrapper datasource = TestJdbcDriver.createDataSource(
+        "ocspcache-" + DB_INDEX.incrementAndGet(), db);
+    ResponseCacher cacher = new ResponseCacher(datasource, true, Validity.getInstance("1d"));
+    cacher.setMemoryCacheSize(1024 * 1024);
+    cacher.init();
+    cachers.add(cacher);
+    return cacher;
+  }
+
+  private ResponseCacher newCacher(CacheDb db, int queueSize, int batchSize,
+      boolean blockIfFull) throws Exception {
+    DataSourceWrapper datasource = TestJdbcDriver.createDataSource(
+        "ocspcache-" + DB_INDEX.incrementAndGet(), db);
+    ResponseCacher cacher = new ResponseCacher(datasource, true, Validity.getInstance("1d"));
+    cacher.setWriteBehind(queueSize, batchSize, blockIfFull);
+    cacher.init();
+    cachers.add(cacher);
+    return cacher;
+  }
+
+  private static void store(ResponseCacher cacher, int serial, String response) {
+    long thisUpdate = System.currentTimeMillis() / 1000;
+    cacher.storeOcspResponse(ISSUER_ID, BigInteger.valueOf(serial), thisUpdate,
+        thisUpdate + 7 * 24 * 3600, SIG_ALG, response.getBytes());
+  }
+
+  private static long deriveId(ResponseCacher cacher, int serial) {
+    CacheDb db = new CacheDb();
+    // the ID is the key of the row written by a synchronous store
+    try {
+      ResponseCacher tmp = new ResponseCacher(TestJdbcDriver.createDataSource(
+          "ocspcache-id-" + DB_INDEX.incrementAndGet(), db), true, Validity.getInstance("1d"));
+      try {
+        store(tmp, serial, "x");
+      } finally {
+        tmp.close();
+      }
+    } catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    }
+    return db.rows.keySet().iterator().next();
+  }
+
+  private static void assertResponse(ResponseCacher cacher, int serial, String expected)
+      throws Exception {
+    OcspRespWithCacheInfo resp = cacher.getOcspResponse(ISSUER_ID, BigInteger.valueOf(serial),
+        SIG_ALG);
+    Assert.assertNotNull("response " + serial, resp);
+    Assert.assertEquals(expected, new String(resp.getResponse()));
+  }
+
+  private static Object status(ResponseCacher cacher, String name) {
+    return cacher.healthCheck().getStatuses().get(name);
+  }
+
+  private static void awaitWritten(ResponseCacher cacher, long num) throws Exception {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline) {
+      long done = (Long) status(cacher, "writeQueueWritten")
+          + (Long) status(cacher, "writeQueueDropped");
+      if (done >= num) {
+        return;
+      }
+      Thread.sleep(20);
+    }
+    Assert.fail("responses not written within 5 seconds");
+  }
+
+  private static void waitForState(Thread thread, Thread.State state) throws Exception {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (thread.getState() != state) {
+      Assert.assertTrue("thread not in state " + state, System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+}
@@ -0,0 +1,257 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.server.store.RevocationIndex.CertRow;
+
+/**
+ * Tests of the {@link RevocationIndex}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class RevocationIndexTest {
+
+  private static final AtomicInteger DB_INDEX = new AtomicInteger();
+
+  private static final long NOW = System.currentTimeMillis() / 1000;
+
+  private static final long DAY = 24 * 3600;
+
+  /**
+   * Table CERT of the OCSP database.
+   */
+  private static class CertDb extends TestJdbcDriver.Database {
+
+    private final List<Object[]> rows = Collections.synchronizedList(new ArrayList<>());
+
+    private long lastUpdate = NOW - DAY;
+
+    /**
+     * Adds or replaces a certificate.
+     */
+    void put(int iid, BigInteger serial, boolean revoked, long notAfter) {
+      remove(serial);
+      // IID, SN, LUPDATE, REV, RR, RT, RIT, NBEFORE, NAFTER, CRL_ID
+      rows.add(new Object[]{iid, serial.toString(16), ++lastUpdate, revoked ? 1 : 0,
+          revoked ? 1 : 0, revoked ? NOW - DAY : 0L, 0L, NOW - 10 * DAY, notAfter, 0});
+    }
+
+    void remove(BigInteger serial) {
+      rows.removeIf(row -> row[1].equals(serial.toString(16)));
+    }
+
+    @Override
+    protected List<Map<String, Object>> query(String sql, Object[] params) throws SQLException {
+      int iid = (Integer) params[0];
+      if (sql.startsWith("SELECT COUNT(*),SUM(LUPDATE),MAX(LUPDATE) FROM CERT")) {
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (Object[] row : select(iid, row -> (Integer) row[3] == 1)) {
+          count++;
+          sum += (Long) row[2];
+          max = Math.max(max, (Long) row[2]);
+        }
+
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("COUNT", count);
+        ret.put("SUM", sum);
+        ret.put("MAX", max);
+        return Collections.singletonList(ret);
+      }
+
+      List<Object[]> selected;
+      if (sql.endsWith("(REV=1 OR NAFTER<? OR NBEFORE>?)")) {
+        long maxNotAfter = (Long) params[1];
+        long minNotBefore = (Long) params[2];
+        selected = select(iid, row -> (Integer) row[3] == 1 || (Long) row[8] < maxNotAfter
+            || (Long) row[7] > minNotBefore);
+      } else if (sql.endsWith("LUPDATE>=?")) {
+        long minLastUpdate = (Long) params[1];
+        selected = select(iid, row -> (Long) row[2] >= minLastUpdate);
+      } else if (sql.endsWith("REV=0 AND NAFTER>=? AND NAFTER<?")) {
+        long from = (Long) params[1];
+        long to = (Long) params[2];
+        selected = select(iid,
+            row -> (Integer) row[3] == 0 && (Long) row[8] >= from && (Long) row[8] < to);
+      } else {
+        throw new SQLException("unsupported query " + sql);
+      }
+
+      List<Map<String, Object>> ret = new ArrayList<>(selected.size());
+      for (Object[] row : selected) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("SN", row[1]);
+        map.put("LUPDATE", row[2]);
+        map.put("REV", row[3]);
+        map.put("RR", row[4]);
+        map.put("RT", row[5]);
+        map.put("RIT", row[6]);
+        map.put("NBEFORE", row[7]);
+        map.put("NAFTER", row[8]);
+        map.put("CRL_ID", row[9]);
+        ret.add(map);
+      }
+      return ret;
+    } // method query
+
+    @Override
+    protected int update(String sql, Object[] params) throws SQLException {
+      throw new SQLException("unsupported statement " + sql);
+    }
+
+    private List<Object[]> select(int iid, Predicate<Object[]> filter) {
+      List<Object[]> ret = new ArrayList<>();
+      synchronized (rows) {
+        for (Object[] row : rows) {
+          if ((Integer) row[0] == iid && filter.test(row)) {
+            ret.add(row);
+          }
+        }
+      }
+      return ret;
+    } // method select
+
+  } // class CertDb
+
+  private final List<DataSourceWrapper> datasources = new ArrayList<>();
+
+  @After
+  public void shutdown() {
+    for (DataSourceWrapper datasource : datasources) {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testLookup() throws Exception {
+    CertDb db = new CertDb();
+    // serial numbers of 1, 64, 65 and 159 bits
+    BigInteger small = BigInteger.valueOf(5);
+    BigInteger bits64 = BigInteger.ONE.shiftLeft(63).add(BigInteger.TEN);
+    BigInteger bits65 = BigInteger.ONE.shiftLeft(64).add(BigInteger.ONE);
+    BigInteger bits159 = BigInteger.ONE.shiftLeft(158).add(BigInteger.valueOf(0xFF));
+    for (BigInteger serial : Arrays.asList(small, bits64, bits65, bits159)) {
+      db.put(1, serial, true, NOW + DAY);
+    }
+    db.put(1, BigInteger.valueOf(6), false, NOW + DAY);
+    db.put(2, BigInteger.valueOf(7), true, NOW + DAY);
+
+    RevocationIndex index = newIndex(db, 100);
+    index.refresh(Arrays.asList(1, 2), true);
+
+    Assert.assertEquals(5, index.size());
+    for (BigInteger serial : Arrays.asList(small, bits64, bits65, bits159)) {
+      CertRow row = index.get(1, serial);
+      Assert.assertNotNull("serial " + serial.toString(16), row);
+      Assert.assertTrue(row.revoked);
+      Assert.assertEquals(NOW - DAY, row.revTime);
+      // no row is created by the lookup
+      Assert.assertSame(row, index.get(1, serial));
+    }
+
+    // good certificates and other issuers are not contained
+    Assert.assertNull(index.get(1, BigInteger.valueOf(6)));
+    Assert.assertNull(index.get(1, BigInteger.valueOf(7)));
+    Assert.assertNull(index.get(1, bits65.add(BigInteger.ONE)));
+    Assert.assertNull(index.get(1, BigInteger.ONE.shiftLeft(200)));
+    Assert.assertNotNull(index.get(2, BigInteger.valueOf(7)));
+    Assert.assertNull(index.get(3, BigInteger.valueOf(7)));
+  } // method testLookup
+
+  @Test
+  public void testRefresh() throws Exception {
+    CertDb db = new CertDb();
+    db.put(1, BigInteger.valueOf(1), true, NOW + DAY);
+    db.put(1, BigInteger.valueOf(2), false, NOW + DAY);
+
+    RevocationIndex index = newIndex(db, 100);
+    index.refresh(Collections.singletonList(1), true);
+    Assert.assertNotNull(index.get(1, BigInteger.valueOf(1)));
+    Assert.assertNull(index.get(1, BigInteger.valueOf(2)));
+
+    // revocation, and an unrevocation
+    db.put(1, BigInteger.valueOf(2), true, NOW + DAY);
+    db.put(1, BigInteger.valueOf(1), false, NOW + DAY);
+    index.refresh(Collections.singletonList(1), false);
+    Assert.assertNull(index.get(1, BigInteger.valueOf(1)));
+    Assert.assertNotNull(index.get(1, BigInteger.valueOf(2)));
+
+    // deleted rows are detected by the summary
+    db.put(1, BigInteger.valueOf(3), true, NOW + DAY);
+    index.refresh(Collections.singletonList(1), false);
+    Assert.assertNotNull(index.get(1, BigInteger.valueOf(3)));
+
+    db.remove(BigInteger.valueOf(3));
+    index.refresh(Collections.singletonList(1), false);
+    Assert.assertNull(index.get(1, BigInteger.valueOf(3)));
+    Assert.assertNotNull(index.get(1, BigInteger.valueOf(2)));
+    Assert.assertEquals(1, index.size());
+  } // method testRefresh
+
+  @Test
+  public void testMaxSizeExceeded() throws Exception {
+    CertDb db = new CertDb();
+    for (int i = 1; i <= 3; i++) {
+      db.put(1, BigInteger.valueOf(i), true, NOW + DAY);
+    }
+    for (int i = 11; i <= 12; i++) {
+      db.put(2, BigInteger.valueOf(i), true, NOW + DAY);
+    }
+
+    RevocationIndex index = newIndex(db, 4);
+    index.refresh(Arrays.asList(1, 2), true);
+    // issuer 2 would exceed the maximal size, its status is read from the database
+    Assert.assertTrue(index.isLoaded(1));
+    Assert.assertFalse(index.isLoaded(2));
+    Assert.assertEquals(3, index.size());
+
+    // the incremental refresh of issuer 1 exceeds the limit as well
+    db.put(1, BigInteger.valueOf(4), true, NOW + DAY);
+    db.put(1, BigInteger.valueOf(5), true, NOW + DAY);
+    index.refresh(Arrays.asList(1, 2), false);
+    Assert.assertFalse(index.isLoaded(1));
+    Assert.assertTrue(index.isLoaded(2));
+    Assert.assertEquals(2, index.size());
+  } // method testMaxSizeExceeded
+
+  private RevocationIndex newIndex(CertDb db, int maxSize) throws Exception {
+    DataSourceWrapper datasource = TestJdbcDriver.createDataSource(
+        "ocsp-" + DB_INDEX.incrementAndGet(), db);
+    datasources.add(datasource);
+    return new RevocationIndex(datasource, maxSize, false, false);
+  }
+
+}
@@ -0,0 +1,397 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+
+/**
+ * Minimal JDBC driver for the tests of the database based stores. The SQL statements are
+ * not parsed, but passed together with their parameters to a {@link Database}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class TestJdbcDriver implements Driver {
+
+  /**
+   * Database backing the connections of the driver.
+   */
+  public abstract static class Database {
+
+    /**
+     * Executes a query.
+     *
+     * @param sql
+     *          The SQL statement.
+     * @param params
+     *          The parameters.
+     * @return the rows, each row maps the column name (in upper case) to its value.
+     * @throws SQLException
+     *           if the statement is not supported.
+     */
+    protected abstract List<Map<String, Object>> query(String sql, Object[] params)
+        throws SQLException;
+
+    /**
+     * Executes an INSERT, UPDATE or DELETE statement.
+     *
+     * @param sql
+     *          The SQL statement.
+     * @param params
+     *          The parameters.
+     * @return the number of affected rows.
+     * @throws SQLException
+     *           if the statement is not supported.
+     */
+    protected abstract int update(String sql, Object[] params) throws SQLException;
+
+    protected int[] executeBatch(String sql, List<Object[]> batch) throws SQLException {
+      int[] counts = new int[batch.size()];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = update(sql, batch.get(i));
+      }
+      return counts;
+    }
+
+  } // class Database
+
+  private static final String URL_PREFIX = "jdbc:h2:xipki-test:";
+
+  private static final Map<String, Database> DATABASES = new ConcurrentHashMap<>();
+
+  static {
+    try {
+      DriverManager.registerDriver(new TestJdbcDriver());
+    } catch (SQLException ex) {
+      throw new ExceptionInInitializerError(ex);
+    }
+  }
+
+  /**
+   * Creates a pooled datasource of type H2 whose connections are backed by the database.
+   *
+   * @param name
+   *          Name of the datasource. Must be unique.
+   * @param database
+   *          The database.
+   * @return the datasource.
+   * @throws Exception
+   *           if the datasource could not be created.
+   */
+  public static DataSourceWrapper createDataSource(String name, Database database)
+      throws Exception {
+    DATABASES.put(name, database);
+    Properties props = new Properties();
+    props.setProperty("jdbcUrl", URL_PREFIX + name);
+    props.setProperty("maximumPoolSize", "5");
+    props.setProperty("minimumIdle", "1");
+    return new DataSourceFactory().createDataSource(name, props, null);
+  }
+
+  @Override
+  public Connection connect(String url, Properties info) throws SQLException {
+    if (!acceptsURL(url)) {
+      return null;
+    }
+
+    Database database = DATABASES.get(url.substring(URL_PREFIX.length()));
+    if (database == null) {
+      throw new SQLException("unknown database " + url, "08001");
+    }
+
+    return proxy(Connection.class, new ConnectionHandler(database));
+  }
+
+  @Override
+  public boolean acceptsURL(String url) throws SQLException {
+    return url != null && url.startsWith(URL_PREFIX);
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+    return new DriverPropertyInfo[0];
+  }
+
+  @Override
+  public int getMajorVersion() {
+    return 1;
+  }
+
+  @Override
+  public int getMinorVersion() {
+    return 0;
+  }
+
+  @Override
+  public boolean jdbcCompliant() {
+    return false;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  private static <T> T proxy(Class<T> clazz, InvocationHandler handler) {
+    return clazz.cast(Proxy.newProxyInstance(TestJdbcDriver.class.getClassLoader(),
+        new Class<?>[]{clazz}, handler));
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    } else if (type == short.class) {
+      return (short) 0;
+    } else if (type == byte.class) {
+      return (byte) 0;
+    } else if (type == float.class) {
+      return 0f;
+    } else if (type == double.class) {
+      return 0d;
+    } else {
+      return null;
+    }
+  }
+
+  private abstract static class BaseHandler implements InvocationHandler {
+
+    boolean closed;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      switch (name) {
+        case "close":
+          closed = true;
+          return null;
+        case "isClosed":
+          return closed;
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "equals":
+          return proxy == args[0];
+        case "toString":
+          return getClass().getSimpleName();
+        default:
+          try {
+            return invoke0(proxy, method, args);
+          } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+          }
+      }
+    }
+
+    abstract Object invoke0(Object proxy, Method method, Object[] args) throws Throwable;
+
+  } // class BaseHandler
+
+  private static class ConnectionHandler extends BaseHandler {
+
+    private final Database database;
+
+    private boolean autoCommit = true;
+
+    private boolean readOnly;
+
+    private int isolation = Connection.TRANSACTION_READ_COMMITTED;
+
+    ConnectionHandler(Database database) {
+      this.database = database;
+    }
+
+    @Override
+    Object invoke0(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "prepareStatement":
+          return proxy(PreparedStatement.class,
+              new StatementHandler(database, (Connection) proxy, (String) args[0]));
+        case "createStatement":
+          return proxy(Statement.class, new StatementHandler(database, (Connection) proxy, null));
+        case "isValid":
+          return !closed;
+        case "getAutoCommit":
+          return autoCommit;
+        case "setAutoCommit":
+          autoCommit = (Boolean) args[0];
+          return null;
+        case "isReadOnly":
+          return readOnly;
+        case "setReadOnly":
+          readOnly = (Boolean) args[0];
+          return null;
+        case "getTransactionIsolation":
+          return isolation;
+        case "setTransactionIsolation":
+          isolation = (Integer) args[0];
+          return null;
+        default:
+          return defaultValue(method.getReturnType());
+      }
+    }
+
+  } // class ConnectionHandler
+
+  private static class StatementHandler extends BaseHandler {
+
+    private final Database database;
+
+    private final Connection connection;
+
+    private final String sql;
+
+    private final List<Object[]> batch = new ArrayList<>();
+
+    private Object[] params = new Object[0];
+
+    StatementHandler(Database database, Connection connection, String sql) {
+      this.database = database;
+      this.connection = connection;
+      this.sql = sql;
+    }
+
+    @Override
+    Object invoke0(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if (name.startsWith("set") && args != null && args.length > 1
+          && method.getParameterTypes()[0] == int.class) {
+        int idx = (Integer) args[0];
+        if (params.length < idx) {
+          Object[] newParams = new Object[idx];
+          System.arraycopy(params, 0, newParams, 0, params.length);
+          params = newParams;
+        }
+        params[idx - 1] = "setNull".equals(name) ? null : args[1];
+        return null;
+      }
+
+      // the SQL is passed to the methods of Statement
+      String sql = (args != null && args.length == 1 && args[0] instanceof String)
+          ? (String) args[0] : this.sql;
+      switch (name) {
+        case "executeQuery":
+          return proxy(ResultSet.class, new ResultSetHandler(database.query(sql, params)));
+        case "executeUpdate":
+          return database.update(sql, params);
+        case "execute":
+          database.update(sql, params);
+          return false;
+        case "addBatch":
+          batch.add(params.clone());
+          return null;
+        case "clearBatch":
+          batch.clear();
+          return null;
+        case "executeBatch":
+          try {
+            return database.executeBatch(sql, new ArrayList<>(batch));
+          } finally {
+            batch.clear();
+          }
+        case "clearParameters":
+          params = new Object[0];
+          return null;
+        case "getConnection":
+          return connection;
+        default:
+          return defaultValue(method.getReturnType());
+      }
+    }
+
+  } // class StatementHandler
+
+  private static class ResultSetHandler extends BaseHandler {
+
+    private final Iterator<Map<String, Object>> rows;
+
+    private Map<String, Object> row;
+
+    private boolean wasNull;
+
+    ResultSetHandler(List<Map<String, Object>> rows) {
+      this.rows = (rows == null) ? Collections.emptyIterator() : rows.iterator();
+    }
+
+    @Override
+    Object invoke0(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if ("next".equals(name)) {
+        row = rows.hasNext() ? rows.next() : null;
+        return row != null;
+      } else if ("wasNull".equals(name)) {
+        return wasNull;
+      } else if (!name.startsWith("get") || args == null
+          || (args.length != 1 && !"getObject".equals(name))) {
+        return defaultValue(method.getReturnType());
+      }
+
+      Object value;
+      if (args[0] instanceof String) {
+        value = row.get(((String) args[0]).toUpperCase());
+      } else {
+        value = new ArrayList<>(row.values()).get((Integer) args[0] - 1);
+      }
+
+      wasNull = (value == null);
+      Class<?> type = (args.length == 2 && args[1] instanceof Class)
+          ? (Class<?>) args[1] : method.getReturnType();
+      if (value == null) {
+        return defaultValue(type);
+      } else if (type == int.class) {
+        return ((Number) value).intValue();
+      } else if (type == long.class) {
+        return ((Number) value).longValue();
+      } else if (type == boolean.class) {
+        return value instanceof Boolean ? value : ((Number) value).intValue() != 0;
+      } else if (type == String.class) {
+        return value.toString();
+      } else {
+        return value;
+      }
+    }
+
+  } // class ResultSetHandler
+
+}
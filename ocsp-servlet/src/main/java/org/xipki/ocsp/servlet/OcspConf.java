@@ -29,6 +29,7 @@ import org.xipki.util.FileOrBinary;
 import org.xipki.util.InvalidConfException;
 import org.xipki.util.IoUtil;
 import org.xipki.util.ValidatableConf;
+import org.xipki.util.metrics.MetricsConf;
 
 import com.alibaba.fastjson.JSON;
 
@@ -73,6 +74,8 @@ public class OcspConf extends ValidatableConf {
 
   private RemoteMgmt remoteMgmt;
 
+  private MetricsConf metrics;
+
   private SecurityConf security;
 
   public static OcspConf readConfFromFile(String fileName)
@@ -103,6 +106,14 @@ public class OcspConf extends ValidatableConf {
     this.remoteMgmt = remoteMgmt;
   }
 
+  public MetricsConf getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(MetricsConf metrics) {
+    this.metrics = metrics;
+  }
+
   public SecurityConf getSecurity() {
     return security == null ? SecurityConf.DEFAULT : security;
   }
@@ -114,6 +125,7 @@ public class OcspConf extends ValidatableConf {
   @Override
   public void validate() throws InvalidConfException {
     validate(remoteMgmt);
+    validate(metrics);
     validate(security);
   }
 
@@ -18,6 +18,7 @@
 package org.xipki.ocsp.servlet;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.HashSet;
@@ -34,7 +35,9 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.audit.Audits;
 import org.xipki.datasource.DataAccessException;
+import org.xipki.ocsp.api.ResponderAndPath;
 import org.xipki.ocsp.server.OcspServerImpl;
 import org.xipki.ocsp.servlet.OcspConf.RemoteMgmt;
 import org.xipki.password.PasswordResolverException;
@@ -46,6 +49,7 @@ import org.xipki.util.HttpConstants;
 import org.xipki.util.InvalidConfException;
 import org.xipki.util.LogUtil;
 import org.xipki.util.XipkiBaseDir;
+import org.xipki.util.metrics.MetricsConf;
 
 /**
  * The Servlet Filter of OCSP servlets.
@@ -65,10 +69,14 @@ public class OcspServletFilter implements Filter {
 
   private HealthCheckServlet healthServlet;
 
+  private MetricsServlet metricsServlet;
+
   private OcspServlet ocspServlet;
 
   private boolean remoteMgmtEnabled;
 
+  private boolean metricsEnabled;
+
   private boolean logReqResp;
 
   private HttpMgmtServlet mgmtServlet;
@@ -112,6 +120,26 @@ public class OcspServletFilter implements Filter {
     this.healthServlet = new HealthCheckServlet();
     this.healthServlet.setServer(this.server);
 
+    MetricsConf metricsConf = conf.getMetrics();
+    this.metricsEnabled = metricsConf != null && metricsConf.isEnabled();
+    if (metricsEnabled) {
+      ResponderAndPath rp = null;
+      try {
+        rp = server.getResponderForPath("/metrics");
+      } catch (UnsupportedEncodingException ex) {
+        // cannot happen
+      }
+
+      if (rp != null && "/metrics".equals(rp.getServletPath())) {
+        LOG.error("servlet path /metrics is used by a responder, disable the metrics endpoint");
+        this.metricsEnabled = false;
+      } else {
+        this.metricsServlet = new MetricsServlet();
+        this.metricsServlet.setConf(metricsConf);
+      }
+    }
+    LOG.info("metrics endpoint is {}", metricsEnabled ? "enabled" : "disabled");
+
     this.ocspServlet = new OcspServlet();
     this.ocspServlet.setServer(this.server);
     this.ocspServlet.setLogReqResp(logReqResp);
@@ -157,7 +185,9 @@ public class OcspServletFilter implements Filter {
     if (server != null) {
       server.close();
     }
-  }
+
+    Audits.close();
+  } // method destroy
 
   @Override
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
@@ -188,6 +218,8 @@ public class OcspServletFilter implements Filter {
       String servletPath = path.substring(7); // 7 = "/health".length()
       req.setAttribute(HttpConstants.ATTR_XIPKI_PATH, servletPath);
       healthServlet.service(req, resp);
+    } else if (metricsEnabled && path.equals("/metrics")) {
+      metricsServlet.service(req, resp);
     } else if (path.startsWith("/mgmt/")) {
       if (remoteMgmtEnabled) {
         req.setAttribute(HttpConstants.ATTR_XIPKI_PATH, path.substring(5)); // 5 = "/mgmt".length()
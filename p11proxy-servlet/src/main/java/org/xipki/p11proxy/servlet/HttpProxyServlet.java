@@ -72,7 +72,7 @@ public class HttpProxyServlet extends HttpServlet {
       }
 
       byte[] requestBytes = IoUtil.read(req.getInputStream());
-      byte[] responseBytes = responder.processRequest(localP11CryptServicePool, requestBytes);
+      byte[] responseBytes = responder.processRequests(localP11CryptServicePool, requestBytes);
 
       if (logReqResp && LOG.isDebugEnabled()) {
         LOG.debug("HTTP POST OCSP path: {}\nRequest:\n{}\nResponse:\n{}", req.getRequestURI(),
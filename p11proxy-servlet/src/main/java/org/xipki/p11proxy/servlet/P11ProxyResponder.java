@@ -17,6 +17,7 @@
 
 package org.xipki.p11proxy.servlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.PublicKey;
@@ -100,6 +101,7 @@ public class P11ProxyResponder {
     actions.add(P11ProxyConstants.ACTION_REMOVE_IDENTITY);
     actions.add(P11ProxyConstants.ACTION_REMOVE_OBJECTS);
     actions.add(P11ProxyConstants.ACTION_SIGN);
+    actions.add(P11ProxyConstants.ACTION_SIGN_BATCH);
     actions.add(P11ProxyConstants.ACTION_UPDATE_CERT);
     actions.add(P11ProxyConstants.ACTION_DIGEST_SECRETKEY);
     actions.add(P11ProxyConstants.ACTION_IMPORT_SECRET_KEY);
@@ -110,6 +112,7 @@ public class P11ProxyResponder {
   public P11ProxyResponder() {
     Set<Short> tmpVersions = new HashSet<>();
     tmpVersions.add(P11ProxyConstants.VERSION_V1_0);
+    tmpVersions.add(P11ProxyConstants.VERSION_V1_1);
     this.versions = Collections.unmodifiableSet(tmpVersions);
   }
 
@@ -117,6 +120,45 @@ public class P11ProxyResponder {
     return versions;
   }
 
+  /**
+   * Processes the requests in one HTTP message. Since version 1.1, one HTTP message may
+   * contain several concatenated requests, the responses are concatenated in the same order.
+   *
+   * @param pool
+   *          The pool that holds the P11CryptService.
+   * @param requests
+   *          The concatenated requests.
+   * @return the concatenated responses.
+   */
+  public byte[] processRequests(LocalP11CryptServicePool pool, byte[] requests) {
+    int len = requests.length;
+    int frameLen = (len < 10) ? len : 10 + IoUtil.parseInt(requests, 6);
+    if (frameLen >= len || frameLen < 10) {
+      // single request, or invalid request processed by processRequest()
+      return processRequest(pool, requests);
+    }
+
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+    int offset = 0;
+    while (offset < len) {
+      if (len - offset < 10) {
+        frameLen = len - offset;
+      } else {
+        frameLen = 10 + IoUtil.parseInt(requests, offset + 6);
+        if (frameLen < 10 || frameLen > len - offset) {
+          frameLen = len - offset;
+        }
+      }
+
+      byte[] request = new byte[frameLen];
+      System.arraycopy(requests, offset, request, 0, frameLen);
+      byte[] response = processRequest(pool, request);
+      responses.write(response, 0, response.length);
+      offset += frameLen;
+    }
+    return responses.toByteArray();
+  } // method processRequests
+
   /**
    * The request is constructed as follows.
    * <pre>
@@ -395,38 +437,26 @@ public class P11ProxyResponder {
         }
         case P11ProxyConstants.ACTION_SIGN: {
           ProxyMessage.SignTemplate signTemplate = ProxyMessage.SignTemplate.getInstance(content);
-          long mechanism = signTemplate.getMechanism().getMechanism();
-          ProxyMessage.P11Params asn1Params = signTemplate.getMechanism().getParams();
-
-          P11Params params = null;
-
-          if (asn1Params != null) {
-            switch (asn1Params.getTagNo()) {
-              case ProxyMessage.P11Params.TAG_RSA_PKCS_PSS:
-                params = ProxyMessage.RSAPkcsPssParams.getInstance(asn1Params).getPkcsPssParams();
-                break;
-              case ProxyMessage.P11Params.TAG_OPAQUE:
-                params = new P11ByteArrayParams(
-                    ASN1OctetString.getInstance(asn1Params).getOctets());
-                break;
-              case ProxyMessage.P11Params.TAG_IV:
-                params = new P11IVParams(ASN1OctetString.getInstance(asn1Params).getOctets());
-                break;
-              default:
-                throw new BadAsn1ObjectException(
-                    "unknown SignTemplate.params: unknown tag " + asn1Params.getTagNo());
+          byte[] signature = sign(p11CryptService, signTemplate);
+          ASN1Object obj = new DEROctetString(signature);
+          return getSuccessResp(version, transactionId, action, obj);
+        }
+        case P11ProxyConstants.ACTION_SIGN_BATCH: {
+          List<ProxyMessage.SignTemplate> templates =
+              ProxyMessage.SignBatchTemplate.getInstance(content).getTemplates();
+          final int n = templates.size();
+          byte[][] signatures = new byte[n][];
+          short[] rcs = new short[n];
+          for (int i = 0; i < n; i++) {
+            try {
+              signatures[i] = sign(p11CryptService, templates.get(i));
+            } catch (Exception ex) {
+              LogUtil.error(LOG, ex, buildErrorMsg(action, transactionId) + ", template " + i);
+              rcs[i] = getReturnCode(ex);
             }
           }
 
-          byte[] message = signTemplate.getMessage();
-          P11Identity identity = p11CryptService.getIdentity(signTemplate.getSlotId().getValue(),
-              signTemplate.getObjectId().getValue());
-          if (identity == null) {
-            return getResp(version, transactionId, P11ProxyConstants.RC_UNKNOWN_ENTITY, action);
-          }
-
-          byte[] signature = identity.sign(mechanism, params, message);
-          ASN1Object obj = new DEROctetString(signature);
+          ASN1Object obj = new ProxyMessage.SignBatchResult(signatures, rcs);
           return getSuccessResp(version, transactionId, action, obj);
         }
         case P11ProxyConstants.ACTION_UPDATE_CERT: {
@@ -447,18 +477,7 @@ public class P11ProxyResponder {
       return getResp(version, transactionId, P11ProxyConstants.RC_BAD_REQUEST, action);
     } catch (P11TokenException ex) {
       LogUtil.error(LOG, ex, buildErrorMsg(action, transactionId));
-      short rc;
-      if (ex instanceof P11UnknownEntityException) {
-        rc = P11ProxyConstants.RC_UNKNOWN_ENTITY;
-      } else if (ex instanceof P11DuplicateEntityException) {
-        rc = P11ProxyConstants.RC_DUPLICATE_ENTITY;
-      } else if (ex instanceof P11UnsupportedMechanismException) {
-        rc = P11ProxyConstants.RC_UNSUPPORTED_MECHANISM;
-      } else {
-        rc = P11ProxyConstants.RC_P11_TOKENERROR;
-      }
-
-      return getResp(version, transactionId, rc, action);
+      return getResp(version, transactionId, getReturnCode(ex), action);
     } catch (XiSecurityException | CertificateException | InvalidKeyException ex) {
       LogUtil.error(LOG, ex, buildErrorMsg(action, transactionId));
       return getResp(version, transactionId, P11ProxyConstants.RC_INTERNAL_ERROR, action);
@@ -468,6 +487,59 @@ public class P11ProxyResponder {
     }
   } // method processRequest
 
+  private static byte[] sign(P11CryptService p11CryptService,
+      ProxyMessage.SignTemplate signTemplate)
+          throws BadAsn1ObjectException, P11TokenException, XiSecurityException {
+    long mechanism = signTemplate.getMechanism().getMechanism();
+    ProxyMessage.P11Params asn1Params = signTemplate.getMechanism().getParams();
+
+    P11Params params = null;
+
+    if (asn1Params != null) {
+      switch (asn1Params.getTagNo()) {
+        case ProxyMessage.P11Params.TAG_RSA_PKCS_PSS:
+          params = ProxyMessage.RSAPkcsPssParams.getInstance(asn1Params).getPkcsPssParams();
+          break;
+        case ProxyMessage.P11Params.TAG_OPAQUE:
+          params = new P11ByteArrayParams(
+              ASN1OctetString.getInstance(asn1Params).getOctets());
+          break;
+        case ProxyMessage.P11Params.TAG_IV:
+          params = new P11IVParams(ASN1OctetString.getInstance(asn1Params).getOctets());
+          break;
+        default:
+          throw new BadAsn1ObjectException(
+              "unknown SignTemplate.params: unknown tag " + asn1Params.getTagNo());
+      }
+    }
+
+    byte[] message = signTemplate.getMessage();
+    P11SlotIdentifier slotId = signTemplate.getSlotId().getValue();
+    P11ObjectIdentifier objectId = signTemplate.getObjectId().getValue();
+    P11Identity identity = p11CryptService.getIdentity(slotId, objectId);
+    if (identity == null) {
+      throw new P11UnknownEntityException(slotId, objectId);
+    }
+
+    return identity.sign(mechanism, params, message);
+  } // method sign
+
+  private static short getReturnCode(Exception ex) {
+    if (ex instanceof BadAsn1ObjectException) {
+      return P11ProxyConstants.RC_BAD_REQUEST;
+    } else if (ex instanceof P11UnknownEntityException) {
+      return P11ProxyConstants.RC_UNKNOWN_ENTITY;
+    } else if (ex instanceof P11DuplicateEntityException) {
+      return P11ProxyConstants.RC_DUPLICATE_ENTITY;
+    } else if (ex instanceof P11UnsupportedMechanismException) {
+      return P11ProxyConstants.RC_UNSUPPORTED_MECHANISM;
+    } else if (ex instanceof P11TokenException) {
+      return P11ProxyConstants.RC_P11_TOKENERROR;
+    } else {
+      return P11ProxyConstants.RC_INTERNAL_ERROR;
+    }
+  } // method getReturnCode
+
   private static String buildErrorMsg(short action, byte[] transactionId) {
     return "could not process action " + P11ProxyConstants.getActionName(action)
         + " (tid=" + Hex.encode(transactionId) + ")";
@@ -29,12 +29,15 @@ import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.Enumeration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.util.Args;
 import org.xipki.util.InvalidConfException;
+import org.xipki.util.LatencyHistogram;
 import org.xipki.util.LogUtil;
 import org.xipki.util.ValidatableConf;
 import org.xipki.util.concurrent.CountLatch;
@@ -260,6 +263,11 @@ public class BenchmarkHttpClient {
     @Override
     public void channelRead0(ChannelHandlerContext ctx, FullHttpResponse resp) {
       try {
+        // responses are received in the same order as the requests are sent.
+        Long sendTime = sendTimes.poll();
+        if (sendTime != null && latencyHistogram != null) {
+          latencyHistogram.recordNanos(System.nanoTime() - sendTime);
+        }
         decrementPendingRequests();
         responseHandler.onComplete(resp);
       } catch (Throwable th) {
@@ -269,6 +277,7 @@ public class BenchmarkHttpClient {
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      sendTimes.poll();
       decrementPendingRequests();
       ctx.close();
       LOG.warn("error", cause);
@@ -286,6 +295,10 @@ public class BenchmarkHttpClient {
 
   private ResponseHandler responseHandler;
 
+  private final LatencyHistogram latencyHistogram;
+
+  private final Queue<Long> sendTimes = new ConcurrentLinkedQueue<>();
+
   private EventLoopGroup workerGroup;
 
   private Channel channel;
@@ -335,6 +348,12 @@ public class BenchmarkHttpClient {
 
   public BenchmarkHttpClient(String host, int port, SslContext sslContext,
       ResponseHandler responseHandler, int queueSize) {
+    this(host, port, sslContext, responseHandler, queueSize, null);
+  }
+
+  public BenchmarkHttpClient(String host, int port, SslContext sslContext,
+      ResponseHandler responseHandler, int queueSize, LatencyHistogram latencyHistogram) {
+    this.latencyHistogram = latencyHistogram;
     this.sslContext = sslContext;
     if (queueSize > 0) {
       this.queueSize = queueSize;
@@ -416,6 +435,7 @@ public class BenchmarkHttpClient {
       throw new HttpClientException("sending poll is full");
     }
     incrementPendingRequests();
+    sendTimes.add(System.nanoTime());
     ChannelFuture future = this.channel.writeAndFlush(request);
     future.awaitUninterruptibly();
   }
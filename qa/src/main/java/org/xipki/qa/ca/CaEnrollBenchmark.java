@@ -170,7 +170,7 @@ public class CaEnrollBenchmark extends BenchmarkExecutor implements ResponseHand
 
     public Testor() {
       this.httpClient = new BenchmarkHttpClient(caHost, caPort, sslContext,
-                      CaEnrollBenchmark.this, queueSize);
+                      CaEnrollBenchmark.this, queueSize, getLatencyHistogram());
       this.httpClient.start();
     }
 
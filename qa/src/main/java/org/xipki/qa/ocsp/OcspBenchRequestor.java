@@ -52,6 +52,7 @@ import org.xipki.security.HashAlgo;
 import org.xipki.security.ObjectIdentifiers;
 import org.xipki.util.Args;
 import org.xipki.util.Base64;
+import org.xipki.util.LatencyHistogram;
 import org.xipki.util.StringUtil;
 
 import io.netty.buffer.ByteBuf;
@@ -97,6 +98,12 @@ class OcspBenchRequestor {
   public void init(ResponseHandler responseHandler, String responderUrl, Certificate issuerCert,
       RequestOptions requestOptions, int queueSize)
           throws OcspRequestorException, IOException, URISyntaxException {
+    init(responseHandler, responderUrl, issuerCert, requestOptions, queueSize, null);
+  }
+
+  public void init(ResponseHandler responseHandler, String responderUrl, Certificate issuerCert,
+      RequestOptions requestOptions, int queueSize, LatencyHistogram latencyHistogram)
+          throws OcspRequestorException, IOException, URISyntaxException {
     Args.notNull(issuerCert, "issuerCert");
     Args.notNull(responseHandler, "responseHandler");
     this.requestOptions = Args.notNull(requestOptions, "requestOptions");
@@ -155,7 +162,7 @@ class OcspBenchRequestor {
     }
 
     this.httpClient = new BenchmarkHttpClient(uri.getHost(), uri.getPort(), null,
-        responseHandler, queueSize);
+        responseHandler, queueSize, latencyHistogram);
     this.httpClient.start();
   } // method init
 
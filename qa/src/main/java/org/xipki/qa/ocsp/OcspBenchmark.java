@@ -53,7 +53,8 @@ public class OcspBenchmark extends BenchmarkExecutor implements ResponseHandler
 
     Testor() throws Exception {
       this.requestor = new OcspBenchRequestor();
-      this.requestor.init(OcspBenchmark.this, responderUrl, issuerCert, requestOptions, queueSize);
+      this.requestor.init(OcspBenchmark.this, responderUrl, issuerCert, requestOptions, queueSize,
+          getLatencyHistogram());
     }
 
     @Override
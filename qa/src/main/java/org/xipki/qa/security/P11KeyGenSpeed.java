@@ -120,8 +120,9 @@ public abstract class P11KeyGenSpeed extends BenchmarkExecutor {
     public void run() {
       while (!stop() && getErrorAccout() < 1) {
         try {
+          long start = System.nanoTime();
           genKeypair();
-          account(1, 0);
+          account(1, 0, System.nanoTime() - start);
         } catch (Exception ex) {
           LOG.error("P11KeyGenSpeed.Testor.run()", ex);
           account(1, 1);
@@ -232,8 +232,9 @@ public abstract class P11SignSpeed extends BenchmarkExecutor {
     public void run() {
       while (!stop() && getErrorAccout() < 1) {
         try {
+          long start = System.nanoTime();
           signer.sign(data);
-          account(batch, 0);
+          account(batch, 0, System.nanoTime() - start);
         } catch (Exception ex) {
           LOG.error("P11SignSpeed.Testor.run()", ex);
           account(batch, batch);
@@ -107,8 +107,9 @@ public abstract class P12KeyGenSpeed extends BenchmarkExecutor {
     public void run() {
       while (!stop() && getErrorAccout() < 1) {
         try {
+          long start = System.nanoTime();
           generateKeypair(securityFactory.getRandom4Key());
-          account(1, 0);
+          account(1, 0, System.nanoTime() - start);
         } catch (Exception ex) {
           LOG.error("P12KeyGenSpeed.Testor.run()", ex);
           account(1, 1);
@@ -238,8 +238,9 @@ public abstract class P12SignSpeed extends BenchmarkExecutor {
     public void run() {
       while (!stop() && getErrorAccout() < 1) {
         try {
+          long start = System.nanoTime();
           signer.sign(data);
-          account(batch, 0);
+          account(batch, 0, System.nanoTime() - start);
         } catch (Exception ex) {
           LOG.error("P12SignSpeed.Testor.run()", ex);
           account(batch, batch);
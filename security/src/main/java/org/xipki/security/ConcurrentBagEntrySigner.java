@@ -28,8 +28,30 @@ import org.xipki.util.concurrent.ConcurrentBagEntry;
 
 public class ConcurrentBagEntrySigner extends ConcurrentBagEntry<XiContentSigner> {
 
+  private volatile long lastAccessTime;
+
+  // System.nanoTime() when the signer was borrowed
+  private long borrowTime;
+
   public ConcurrentBagEntrySigner(XiContentSigner value) {
     super(value);
+    this.lastAccessTime = System.currentTimeMillis();
+  }
+
+  long getLastAccessTime() {
+    return lastAccessTime;
+  }
+
+  void updateLastAccessTime() {
+    this.lastAccessTime = System.currentTimeMillis();
+  }
+
+  long getBorrowTime() {
+    return borrowTime;
+  }
+
+  void setBorrowTime(long borrowTime) {
+    this.borrowTime = borrowTime;
   }
 
 }
@@ -135,6 +135,28 @@ public interface ConcurrentContentSigner extends Closeable {
 
   void requiteSigner(ConcurrentBagEntrySigner signer);
 
+  /**
+   * Returns the number of signers in the pool, namely the number of signing operations that
+   * can be processed in parallel. The default implementation returns 1.
+   *
+   * @return the number of signers.
+   * @since 5.3.8
+   */
+  default int getParallelism() {
+    return 1;
+  }
+
+  /**
+   * Returns the maximal number of signers the pool may grow to. The default implementation
+   * returns {@link #getParallelism()}.
+   *
+   * @return the maximal number of signers.
+   * @since 5.3.8
+   */
+  default int getMaxParallelism() {
+    return getParallelism();
+  }
+
   boolean isHealthy();
 
 }
@@ -27,6 +27,9 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -38,25 +41,64 @@ import org.xipki.password.PasswordResolver;
 import org.xipki.security.util.AlgorithmUtil;
 import org.xipki.util.Args;
 import org.xipki.util.CollectionUtil;
+import org.xipki.util.LatencyHistogram;
 import org.xipki.util.LogUtil;
 import org.xipki.util.concurrent.ConcurrentBag;
+import org.xipki.util.concurrent.ConcurrentBag.IConcurrentBagEntry;
+import org.xipki.util.metrics.MetricsRegistry;
 
 /**
  * An implementation of {@link ConcurrentContentSigner}.
  *
+ * <p>In the elastic mode (see {@link #setElastic(XiContentSignerFactory, int)}) new signers
+ * are created on demand if all signers are in use, up to a maximal number. The signers
+ * created on demand are retired after they have been idle for a while.
+ *
  * @author Lijun Liao
  * @since 2.0.0
  */
 
 public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
 
+  /**
+   * Factory to create further {@link XiContentSigner} in the elastic mode.
+   *
+   * @since 5.3.8
+   */
+  public interface XiContentSignerFactory {
+
+    XiContentSigner newSigner() throws XiSecurityException;
+
+  } // interface XiContentSignerFactory
+
   private static final Logger LOG = LoggerFactory.getLogger(DfltConcurrentContentSigner.class);
 
   private static final AtomicInteger NAME_INDEX = new AtomicInteger(1);
 
   private static int defaultSignServiceTimeout = 10000; // 10 seconds
 
-  private final ConcurrentBag<ConcurrentBagEntrySigner> signers = new ConcurrentBag<>();
+  private static long defaultIdleTimeout = 300000; // 5 minutes
+
+  private final ConcurrentBag<ConcurrentBagEntrySigner> signers;
+
+  private final int minSigners;
+
+  private final LatencyHistogram borrowLatency = new LatencyHistogram();
+
+  private final LatencyHistogram signLatency = new LatencyHistogram();
+
+  private final AtomicInteger pendingSigners = new AtomicInteger();
+
+  // number of signers in the bag and being created
+  private final AtomicInteger numSigners = new AtomicInteger();
+
+  private volatile XiContentSignerFactory signerFactory;
+
+  private int maxSigners;
+
+  private long idleTimeout;
+
+  private ScheduledExecutorService executor;
 
   private final String name;
 
@@ -90,6 +132,20 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
         defaultSignServiceTimeout = vi;
       }
     }
+
+    final String idlePropKey = "org.xipki.security.signservice.idleTimeout";
+    str = System.getProperty(idlePropKey);
+
+    if (str != null) {
+      long vl = Long.parseLong(str);
+      // valid value is at least 1 second
+      if (vl < 1000) {
+        LOG.error("invalid {}: {}", idlePropKey, vl);
+      } else {
+        LOG.info("use {}: {}", idlePropKey, vl);
+        defaultIdleTimeout = vl;
+      }
+    }
   } // method static
 
   public DfltConcurrentContentSigner(boolean mac, List<XiContentSigner> signers)
@@ -106,14 +162,143 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
     this.algorithmName = AlgorithmUtil.getSigOrMacAlgoName(algorithmIdentifier);
     this.algorithmCode = AlgorithmUtil.getSigOrMacAlgoCode(algorithmIdentifier);
 
+    this.signers = new ConcurrentBag<>(this::addBagItem);
     for (XiContentSigner signer : signers) {
       this.signers.add(new ConcurrentBagEntrySigner(signer));
     }
+    this.minSigners = signers.size();
+    this.maxSigners = minSigners;
+    this.numSigners.set(minSigners);
 
     this.signingKey = signingKey;
     this.name = "defaultSigner-" + NAME_INDEX.getAndIncrement();
+  } // constructor
+
+  /**
+   * Activates the elastic mode with the default idle timeout.
+   *
+   * @param signerFactory
+   *          Factory to create further signers. Must not be {@code null}.
+   * @param maxSigners
+   *          Maximal number of signers.
+   * @since 5.3.8
+   */
+  public void setElastic(XiContentSignerFactory signerFactory, int maxSigners) {
+    setElastic(signerFactory, maxSigners, defaultIdleTimeout);
   }
 
+  /**
+   * Activates the elastic mode.
+   *
+   * @param signerFactory
+   *          Factory to create further signers. Must not be {@code null}.
+   * @param maxSigners
+   *          Maximal number of signers, not less than the initial number of signers.
+   * @param idleTimeout
+   *          Time in milliseconds after which an idle signer created on demand is retired.
+   * @since 5.3.8
+   */
+  public synchronized void setElastic(XiContentSignerFactory signerFactory, int maxSigners,
+      long idleTimeout) {
+    Args.notNull(signerFactory, "signerFactory");
+    Args.min(maxSigners, "maxSigners", minSigners);
+    Args.positive(idleTimeout, "idleTimeout");
+
+    if (executor != null) {
+      throw new IllegalStateException("elastic mode is already activated");
+    }
+
+    if (maxSigners == minSigners) {
+      return;
+    }
+
+    this.maxSigners = maxSigners;
+    this.idleTimeout = idleTimeout;
+    // one thread to create and retire signers, the signers are not created concurrently.
+    this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, name + "-pool");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    long period = Math.max(10, idleTimeout / 2);
+    executor.scheduleAtFixedRate(this::retireIdleSigners, period, period, TimeUnit.MILLISECONDS);
+    this.signerFactory = signerFactory;
+    LOG.info("signer {}: elastic mode with {} to {} signers, idle timeout {} ms",
+        name, minSigners, maxSigners, idleTimeout);
+  } // method setElastic
+
+  // called by the borrowing thread, must not block.
+  private void addBagItem(int waiting) {
+    if (signerFactory == null) {
+      return;
+    }
+
+    while (true) {
+      int pending = pendingSigners.get();
+      if (pending >= waiting) {
+        return;
+      }
+
+      if (pendingSigners.compareAndSet(pending, pending + 1)) {
+        break;
+      }
+    }
+
+    while (true) {
+      int num = numSigners.get();
+      if (num >= maxSigners) {
+        pendingSigners.decrementAndGet();
+        return;
+      }
+
+      if (numSigners.compareAndSet(num, num + 1)) {
+        break;
+      }
+    }
+
+    try {
+      executor.execute(this::createSigner);
+    } catch (RejectedExecutionException ex) {
+      // signer is closed
+      numSigners.decrementAndGet();
+      pendingSigners.decrementAndGet();
+    }
+  } // method addBagItem
+
+  private void createSigner() {
+    ConcurrentBagEntrySigner entry;
+    try {
+      entry = new ConcurrentBagEntrySigner(signerFactory.newSigner());
+    } catch (XiSecurityException | RuntimeException ex) {
+      LogUtil.error(LOG, ex, "signer " + name + ": could not create new signer");
+      numSigners.decrementAndGet();
+      pendingSigners.decrementAndGet();
+      return;
+    }
+
+    // not pending any more before the handoff to a waiting thread, otherwise the next
+    // borrower may see this signer as pending and does not trigger the creation of a signer.
+    pendingSigners.decrementAndGet();
+    signers.add(entry);
+    LOG.debug("signer {}: added signer, {} signers", name, signers.size());
+  } // method createSigner
+
+  private void retireIdleSigners() {
+    long now = System.currentTimeMillis();
+    for (ConcurrentBagEntrySigner entry : signers.values(IConcurrentBagEntry.STATE_NOT_IN_USE)) {
+      if (signers.size() <= minSigners) {
+        break;
+      }
+
+      if (now - entry.getLastAccessTime() >= idleTimeout && signers.reserve(entry)) {
+        signers.remove(entry);
+        numSigners.decrementAndGet();
+        LOG.debug("signer {}: retired idle signer, {} signers", name, signers.size());
+      }
+    }
+  } // method retireIdleSigners
+
   @Override
   public String getName() {
     return name;
@@ -157,23 +342,98 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
   @Override
   public ConcurrentBagEntrySigner borrowSigner(int soTimeout) throws NoIdleSignerException {
     ConcurrentBagEntrySigner signer = null;
+    long start = System.nanoTime();
     try {
       signer = signers.borrow(soTimeout, TimeUnit.MILLISECONDS);
     } catch (InterruptedException ex) { // CHECKSTYLE:SKIP
     }
+    long now = System.nanoTime();
+    borrowLatency.recordNanos(now - start);
 
     if (signer == null) {
       throw new NoIdleSignerException("no idle signer available");
     }
 
+    signer.setBorrowTime(now);
     return signer;
   }
 
   @Override
   public void requiteSigner(ConcurrentBagEntrySigner signer) {
+    signLatency.recordNanos(System.nanoTime() - signer.getBorrowTime());
+    signer.updateLastAccessTime();
     signers.requite(signer);
   }
 
+  @Override
+  public int getParallelism() {
+    return signers.size();
+  }
+
+  @Override
+  public int getMaxParallelism() {
+    return maxSigners;
+  }
+
+  /**
+   * Returns the number of signers in use.
+   * @return the number of signers in use.
+   * @since 5.3.8
+   */
+  public int getBusySigners() {
+    return signers.getCount(IConcurrentBagEntry.STATE_IN_USE);
+  }
+
+  /**
+   * Returns the number of threads waiting for a signer.
+   * @return the number of threads waiting for a signer.
+   * @since 5.3.8
+   */
+  public int getWaitingThreads() {
+    return signers.getWaitingThreadCount();
+  }
+
+  /**
+   * Returns the histogram of the time to borrow a signer.
+   * @return the histogram of the time to borrow a signer.
+   * @since 5.3.8
+   */
+  public LatencyHistogram getBorrowLatency() {
+    return borrowLatency;
+  }
+
+  /**
+   * Returns the histogram of the time a signer is borrowed, namely the time to sign.
+   * @return the histogram of the time a signer is borrowed.
+   * @since 5.3.8
+   */
+  public LatencyHistogram getSignLatency() {
+    return signLatency;
+  }
+
+  /**
+   * Registers the metrics of this signer: the time to borrow a signer and to sign, the number
+   * of signers, the signers in use and the threads waiting for a signer.
+   *
+   * @param registry
+   *          Registry of the metrics.
+   * @param labels
+   *          Pairs of label name and value to identify this signer.
+   * @since 5.3.8
+   */
+  public void registerMetrics(MetricsRegistry registry, String... labels) {
+    registry.latency("xipki_signer_borrow_seconds", "Time to borrow a signer",
+        borrowLatency, labels);
+    registry.latency("xipki_signer_sign_seconds", "Time a signer is borrowed to sign",
+        signLatency, labels);
+    registry.gauge("xipki_signer_parallelism", "Number of signers",
+        this::getParallelism, labels);
+    registry.gauge("xipki_signer_busy", "Number of signers in use",
+        this::getBusySigners, labels);
+    registry.gauge("xipki_signer_waiting_threads", "Number of threads waiting for a signer",
+        this::getWaitingThreads, labels);
+  } // method registerMetrics
+
   @Override
   public void initialize(String conf, PasswordResolver passwordResolver)
       throws XiSecurityException {
@@ -264,7 +524,11 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
   }
 
   @Override
-  public void close() {
+  public synchronized void close() {
+    signerFactory = null;
+    if (executor != null) {
+      executor.shutdownNow();
+    }
   }
 
   @Override
@@ -0,0 +1,232 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.SecureRandomSpi;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Args;
+import org.xipki.util.StringUtil;
+
+/**
+ * {@link SecureRandom} without contention between threads. Each thread uses its own DRBG,
+ * which is seeded from the system entropy source and reseeded periodically. The system
+ * entropy source is only accessed to seed and reseed the DRBGs.
+ *
+ * <p>The DRBG is specified by the system property {@code org.xipki.security.drbg.algorithm}.
+ * The default is the SP 800-90A DRBG of the JDK (algorithm {@code DRBG}, available since
+ * Java 9), or {@code SHA1PRNG} if not available.
+ *
+ * <p>The reseed interval, in milliseconds, is specified by the system property
+ * {@code org.xipki.security.drbg.reseedInterval}, the default is 600000 (10 minutes).
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+@SuppressWarnings("serial")
+public class StripedSecureRandom extends SecureRandom {
+
+  private static class Drbg {
+
+    private final SecureRandom random;
+
+    private long reseedTime;
+
+    Drbg(SecureRandom random, long reseedTime) {
+      this.random = random;
+      this.reseedTime = reseedTime;
+    }
+
+  } // class Drbg
+
+  /**
+   * SPI delegating to the DRBG of the current thread. The methods of {@link SecureRandom}
+   * which are not overridden by {@link StripedSecureRandom}, e.g. toString(), use this SPI.
+   * The DRBGs are reseeded periodically, the reseeding on demand (reseed() since Java 9) is
+   * not supported.
+   */
+  @SuppressWarnings("serial")
+  private static class StripedSpi extends SecureRandomSpi {
+
+    private final SecureRandom entropySource;
+
+    private final String drbgAlgorithm;
+
+    private final long reseedIntervalNanos;
+
+    private final transient ThreadLocal<Drbg> drbgs;
+
+    StripedSpi(long reseedInterval) {
+      this.reseedIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+          Args.positive(reseedInterval, "reseedInterval"));
+      this.entropySource = new SecureRandom();
+
+      String algo = System.getProperty(PROP_ALGORITHM);
+      if (StringUtil.isBlank(algo)) {
+        algo = "DRBG";
+        try {
+          SecureRandom.getInstance(algo);
+        } catch (NoSuchAlgorithmException ex) {
+          algo = "SHA1PRNG";
+        }
+      }
+      this.drbgAlgorithm = algo.trim();
+      this.drbgs = ThreadLocal.withInitial(this::newDrbg);
+    } // constructor
+
+    private Drbg newDrbg() {
+      SecureRandom random;
+      try {
+        random = SecureRandom.getInstance(drbgAlgorithm);
+      } catch (NoSuchAlgorithmException ex) {
+        throw new IllegalStateException("unknown SecureRandom algorithm " + drbgAlgorithm, ex);
+      }
+
+      // seed it before the first use, SHA1PRNG would seed itself otherwise
+      random.setSeed(systemSeed());
+      return new Drbg(random, System.nanoTime() + reseedIntervalNanos);
+    } // method newDrbg
+
+    private byte[] systemSeed() {
+      byte[] seed = new byte[SEED_LEN];
+      entropySource.nextBytes(seed);
+      return seed;
+    }
+
+    private SecureRandom drbg() {
+      Drbg drbg = drbgs.get();
+      long now = System.nanoTime();
+      if (now - drbg.reseedTime >= 0) {
+        drbg.random.setSeed(systemSeed());
+        drbg.reseedTime = now + reseedIntervalNanos;
+      }
+      return drbg.random;
+    } // method drbg
+
+    @Override
+    protected void engineNextBytes(byte[] bytes) {
+      drbg().nextBytes(bytes);
+    }
+
+    @Override
+    protected void engineSetSeed(byte[] seed) {
+      // supplements the seed of the current thread's DRBG
+      drbg().setSeed(seed);
+    }
+
+    private void setSeed(long seed) {
+      drbg().setSeed(seed);
+    }
+
+    @Override
+    protected byte[] engineGenerateSeed(int numBytes) {
+      return entropySource.generateSeed(numBytes);
+    }
+
+    @Override
+    public String toString() {
+      return "StripedSecureRandom(" + drbgAlgorithm + ")";
+    }
+
+  } // class StripedSpi
+
+  private static final Logger LOG = LoggerFactory.getLogger(StripedSecureRandom.class);
+
+  private static final String PROP_ALGORITHM = "org.xipki.security.drbg.algorithm";
+
+  private static final String PROP_RESEED_INTERVAL = "org.xipki.security.drbg.reseedInterval";
+
+  private static final long DFLT_RESEED_INTERVAL = 600000;
+
+  private static final int SEED_LEN = 32;
+
+  private static StripedSecureRandom instance;
+
+  private final StripedSpi spi;
+
+  /**
+   * Constructor with the reseed interval specified by the system property
+   * {@code org.xipki.security.drbg.reseedInterval}.
+   */
+  public StripedSecureRandom() {
+    this(Long.getLong(PROP_RESEED_INTERVAL, DFLT_RESEED_INTERVAL));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param reseedInterval
+   *          Interval in milliseconds to reseed the DRBG of a thread.
+   */
+  public StripedSecureRandom(long reseedInterval) {
+    this(new StripedSpi(reseedInterval));
+  }
+
+  private StripedSecureRandom(StripedSpi spi) {
+    super(spi, null);
+    this.spi = spi;
+    LOG.info("use thread-local SecureRandom {}", spi.drbgAlgorithm);
+  } // constructor
+
+  /**
+   * Returns the instance shared in this JVM.
+   * @return the shared instance.
+   */
+  public static synchronized StripedSecureRandom getInstance() {
+    if (instance == null) {
+      instance = new StripedSecureRandom();
+    }
+    return instance;
+  }
+
+  @Override
+  public String getAlgorithm() {
+    return spi.drbgAlgorithm;
+  }
+
+  // The following methods call the SPI directly, SecureRandom would synchronize them.
+
+  @Override
+  public void nextBytes(byte[] bytes) {
+    spi.engineNextBytes(bytes);
+  }
+
+  @Override
+  public void setSeed(byte[] seed) {
+    spi.engineSetSeed(seed);
+  }
+
+  @Override
+  public void setSeed(long seed) {
+    // called by the constructor of java.util.Random before the fields are initialized
+    if (spi != null) {
+      spi.setSeed(seed);
+    }
+  }
+
+  @Override
+  public byte[] generateSeed(int numBytes) {
+    return spi.engineGenerateSeed(numBytes);
+  }
+
+}
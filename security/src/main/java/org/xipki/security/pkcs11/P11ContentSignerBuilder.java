@@ -119,20 +119,39 @@ public class P11ContentSignerBuilder {
 
   public ConcurrentContentSigner createSigner(AlgorithmIdentifier signatureAlgId,
       int parallelism) throws XiSecurityException, P11TokenException {
+    return createSigner(signatureAlgId, parallelism, parallelism);
+  }
+
+  /**
+   * Creates the signer.
+   *
+   * @param signatureAlgId
+   *          Signature algorithm.
+   * @param parallelism
+   *          Initial number of signers.
+   * @param maxParallelism
+   *          Maximal number of signers. If greater than {@code parallelism}, further signers
+   *          are created on demand.
+   * @return the signer.
+   * @throws XiSecurityException if security error occurs.
+   * @throws P11TokenException if PKCS#11 token error occurs.
+   * @since 5.3.8
+   */
+  public ConcurrentContentSigner createSigner(AlgorithmIdentifier signatureAlgId,
+      int parallelism, int maxParallelism) throws XiSecurityException, P11TokenException {
     Args.positive(parallelism, "parallelism");
+    Args.min(maxParallelism, "maxParallelism", parallelism);
 
     List<XiContentSigner> signers = new ArrayList<>(parallelism);
 
     Boolean isSm2p256v1 = null;
     for (int i = 0; i < parallelism; i++) {
-      XiContentSigner signer;
       if (publicKey instanceof RSAPublicKey) {
         if (i == 0 && !AlgorithmUtil.isRSASigAlgId(signatureAlgId)) {
           throw new XiSecurityException(
               "the given algorithm is not a valid RSA signature algorithm '"
               + signatureAlgId.getAlgorithm().getId() + "'");
         }
-        signer = createRSAContentSigner(signatureAlgId);
       } else if (publicKey instanceof ECPublicKey) {
         ECPublicKey ecKey = (ECPublicKey) publicKey;
 
@@ -152,27 +171,15 @@ public class P11ContentSignerBuilder {
             }
           }
         }
-
-        if (isSm2p256v1) {
-          java.security.spec.ECPoint w = ecKey.getW();
-          signer = createSM2ContentSigner(signatureAlgId, GMObjectIdentifiers.sm2p256v1,
-              w.getAffineX(), w.getAffineY());
-        } else {
-          signer = createECContentSigner(signatureAlgId);
-        }
       } else if (publicKey instanceof DSAPublicKey) {
         if (i == 0 && !AlgorithmUtil.isDSASigAlg(signatureAlgId)) {
           throw new XiSecurityException(
               "the given algorithm is not a valid DSA signature algorithm '"
               + signatureAlgId.getAlgorithm().getId() + "'");
         }
-        signer = createDSAContentSigner(signatureAlgId);
-      } else if (publicKey instanceof EdDSAKey) {
-        signer = createEdDSAContentSigner(signatureAlgId);
-      } else {
-        throw new XiSecurityException("unsupported key " + publicKey.getClass().getName());
       }
-      signers.add(signer);
+
+      signers.add(createContentSigner(signatureAlgId, isSm2p256v1 != null && isSm2p256v1));
     } // end for
 
     final boolean mac = false;
@@ -190,9 +197,41 @@ public class P11ContentSignerBuilder {
       concurrentSigner.setPublicKey(publicKey);
     }
 
+    if (maxParallelism > parallelism) {
+      final boolean sm2 = isSm2p256v1 != null && isSm2p256v1;
+      concurrentSigner.setElastic(() -> {
+        try {
+          return createContentSigner(signatureAlgId, sm2);
+        } catch (P11TokenException ex) {
+          throw new XiSecurityException(ex.getMessage(), ex);
+        }
+      }, maxParallelism);
+    }
+
     return concurrentSigner;
   } // method createSigner
 
+  private XiContentSigner createContentSigner(AlgorithmIdentifier signatureAlgId,
+      boolean sm2p256v1) throws XiSecurityException, P11TokenException {
+    if (publicKey instanceof RSAPublicKey) {
+      return createRSAContentSigner(signatureAlgId);
+    } else if (publicKey instanceof ECPublicKey) {
+      if (sm2p256v1) {
+        java.security.spec.ECPoint w = ((ECPublicKey) publicKey).getW();
+        return createSM2ContentSigner(signatureAlgId, GMObjectIdentifiers.sm2p256v1,
+            w.getAffineX(), w.getAffineY());
+      } else {
+        return createECContentSigner(signatureAlgId);
+      }
+    } else if (publicKey instanceof DSAPublicKey) {
+      return createDSAContentSigner(signatureAlgId);
+    } else if (publicKey instanceof EdDSAKey) {
+      return createEdDSAContentSigner(signatureAlgId);
+    } else {
+      throw new XiSecurityException("unsupported key " + publicKey.getClass().getName());
+    }
+  } // method createContentSigner
+
   // CHECKSTYLE:SKIP
   private XiContentSigner createRSAContentSigner(AlgorithmIdentifier signatureAlgId)
       throws XiSecurityException, P11TokenException {
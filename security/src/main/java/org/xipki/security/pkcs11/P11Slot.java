@@ -50,6 +50,7 @@ import org.xipki.util.Args;
 import org.xipki.util.Hex;
 import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
+import org.xipki.util.concurrent.ConcurrentBagPool;
 
 import iaik.pkcs.pkcs11.wrapper.Functions;
 import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
@@ -439,6 +440,16 @@ public abstract class P11Slot implements Closeable {
   @Override
   public abstract void close();
 
+  /**
+   * Returns the statistics of the session pool.
+   *
+   * @return the statistics of the session pool, or {@code null} if the slot does not pool
+   *         sessions.
+   */
+  public ConcurrentBagPool.Statistics getSessionPoolStatistics() {
+    return null;
+  }
+
   /**
    * Remove objects.
    *
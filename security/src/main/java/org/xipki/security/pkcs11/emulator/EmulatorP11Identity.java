@@ -60,8 +60,8 @@ import org.xipki.security.pkcs11.P11TokenException;
 import org.xipki.security.util.GMUtil;
 import org.xipki.security.util.SignerUtil;
 import org.xipki.util.Args;
-import org.xipki.util.concurrent.ConcurrentBag;
 import org.xipki.util.concurrent.ConcurrentBagEntry;
+import org.xipki.util.concurrent.ConcurrentBagPool;
 
 import iaik.pkcs.pkcs11.wrapper.Functions;
 import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
@@ -79,15 +79,17 @@ public class EmulatorP11Identity extends P11Identity {
 
   private final Key signingKey;
 
-  private final ConcurrentBag<ConcurrentBagEntry<Cipher>> rsaCiphers = new ConcurrentBag<>();
+  private final ConcurrentBagPool<Cipher> rsaCiphers;
 
-  private final ConcurrentBag<ConcurrentBagEntry<Signature>> dsaSignatures =
-      new ConcurrentBag<>();
+  private final ConcurrentBagPool<Signature> dsaSignatures;
 
-  private final ConcurrentBag<ConcurrentBagEntry<Signature>> eddsaSignatures =
-      new ConcurrentBag<>();
+  private final ConcurrentBagPool<Signature> eddsaSignatures;
 
-  private final ConcurrentBag<ConcurrentBagEntry<SM2Signer>> sm2Signers = new ConcurrentBag<>();
+  private final ConcurrentBagPool<SM2Signer> sm2Signers;
+
+  private String rsaCipherAlgo;
+
+  private String signatureAlgo;
 
   private final SecureRandom random;
 
@@ -96,6 +98,10 @@ public class EmulatorP11Identity extends P11Identity {
     super(slot, identityId, 0);
     this.signingKey = Args.notNull(signingKey, "signingKey");
     this.random = Args.notNull(random, "random");
+    this.rsaCiphers = new ConcurrentBagPool<>(maxSessions);
+    this.dsaSignatures = new ConcurrentBagPool<>(maxSessions);
+    this.eddsaSignatures = new ConcurrentBagPool<>(maxSessions);
+    this.sm2Signers = new ConcurrentBagPool<>(maxSessions);
   } // constructor
 
   public EmulatorP11Identity(P11Slot slot, P11IdentityId identityId, PrivateKey privateKey,
@@ -105,73 +111,107 @@ public class EmulatorP11Identity extends P11Identity {
     super(slot, identityId, publicKey, certificateChain);
     this.signingKey = Args.notNull(privateKey, "privateKey");
     this.random = Args.notNull(random, "random");
+    this.rsaCiphers = new ConcurrentBagPool<>(maxSessions);
+    this.dsaSignatures = new ConcurrentBagPool<>(maxSessions);
+    this.eddsaSignatures = new ConcurrentBagPool<>(maxSessions);
+    this.sm2Signers = new ConcurrentBagPool<>(maxSessions);
 
+    // Only the first resource is created here, further ones (up to maxSessions) will be created
+    // on demand.
     if (this.publicKey instanceof RSAPublicKey) {
       String providerName = "BC";
       LOG.info("use provider {}", providerName);
 
-      for (int i = 0; i < maxSessions; i++) {
-        Cipher rsaCipher;
+      Cipher rsaCipher;
+      try {
+        rsaCipherAlgo = "RSA/ECB/NoPadding";
+        rsaCipher = Cipher.getInstance(rsaCipherAlgo, providerName);
+      } catch (NoSuchPaddingException ex) {
+        throw new NoSuchAlgorithmException("NoSuchPadding", ex);
+      } catch (NoSuchAlgorithmException ex) {
+        rsaCipherAlgo = "RSA/NONE/NoPadding";
         try {
-          final String algo = "RSA/ECB/NoPadding";
-          rsaCipher = Cipher.getInstance(algo, providerName);
-          LOG.info("use cipher algorithm {}", algo);
-        } catch (NoSuchPaddingException ex) {
+          rsaCipher = Cipher.getInstance(rsaCipherAlgo, providerName);
+        } catch (NoSuchPaddingException e1) {
           throw new NoSuchAlgorithmException("NoSuchPadding", ex);
-        } catch (NoSuchAlgorithmException ex) {
-          final String algo = "RSA/NONE/NoPadding";
-          try {
-            rsaCipher = Cipher.getInstance(algo, providerName);
-            LOG.info("use cipher algorithm {}", algo);
-          } catch (NoSuchPaddingException e1) {
-            throw new NoSuchAlgorithmException("NoSuchPadding", ex);
-          }
         }
-        rsaCipher.init(Cipher.ENCRYPT_MODE, privateKey);
-        rsaCiphers.add(new ConcurrentBagEntry<>(rsaCipher));
       }
+      LOG.info("use cipher algorithm {}", rsaCipherAlgo);
+      rsaCipher.init(Cipher.ENCRYPT_MODE, privateKey);
+      rsaCiphers.add(rsaCipher);
     } else {
-      String algorithm;
       if (this.publicKey instanceof ECPublicKey) {
         boolean sm2curve = GMUtil.isSm2primev2Curve(
             ((ECPublicKey) this.publicKey).getParams().getCurve());
-        algorithm = sm2curve ? null : "NONEwithECDSA";
+        signatureAlgo = sm2curve ? null : "NONEwithECDSA";
       } else if (this.publicKey instanceof DSAPublicKey) {
-        algorithm = "NONEwithDSA";
+        signatureAlgo = "NONEwithDSA";
       } else if (this.publicKey instanceof EdDSAKey) {
-        algorithm = null;
+        signatureAlgo = null;
       } else if (this.publicKey instanceof XDHKey) {
-        algorithm = null;
+        signatureAlgo = null;
       } else {
         throw new IllegalArgumentException("Currently only RSA, DSA, EC, EC Edwards and EC "
             + "Montgomery public key are supported, but not " + this.publicKey.getAlgorithm()
             + " (class: " + this.publicKey.getClass().getName() + ")");
       }
 
-      if (algorithm != null) {
-        for (int i = 0; i < maxSessions; i++) {
-          Signature dsaSignature = Signature.getInstance(algorithm, "BC");
-          dsaSignature.initSign(privateKey, random);
-          dsaSignatures.add(new ConcurrentBagEntry<>(dsaSignature));
-        }
+      if (signatureAlgo != null) {
+        Signature dsaSignature = Signature.getInstance(signatureAlgo, "BC");
+        dsaSignature.initSign(privateKey, random);
+        dsaSignatures.add(dsaSignature);
       } else if (this.publicKey instanceof EdDSAKey) {
-        algorithm = this.publicKey.getAlgorithm();
-        for (int i = 0; i < maxSessions; i++) {
-          Signature signature = Signature.getInstance(algorithm, "BC");
-          signature.initSign(privateKey);
-          eddsaSignatures.add(new ConcurrentBagEntry<>(signature));
-        }
+        signatureAlgo = this.publicKey.getAlgorithm();
+        Signature signature = Signature.getInstance(signatureAlgo, "BC");
+        signature.initSign(privateKey);
+        eddsaSignatures.add(signature);
       } else if (this.publicKey instanceof XDHKey) {
         // do nothing. not suitable for sign.
       } else {
-        for (int i = 0; i < maxSessions; i++) {
-          SM2Signer sm2signer = new SM2Signer(ECUtil.generatePrivateKeyParameter(privateKey));
-          sm2Signers.add(new ConcurrentBagEntry<>(sm2signer));
-        }
+        sm2Signers.add(new SM2Signer(ECUtil.generatePrivateKeyParameter(privateKey)));
       }
     }
   } // constructor
 
+  private Cipher newRsaCipher() throws P11TokenException {
+    try {
+      Cipher rsaCipher = Cipher.getInstance(rsaCipherAlgo, "BC");
+      rsaCipher.init(Cipher.ENCRYPT_MODE, signingKey);
+      return rsaCipher;
+    } catch (NoSuchAlgorithmException | NoSuchProviderException | NoSuchPaddingException
+        | InvalidKeyException ex) {
+      throw new P11TokenException("could not create RSA cipher: " + ex.getMessage(), ex);
+    }
+  } // method newRsaCipher
+
+  private Signature newDsaSignature() throws P11TokenException {
+    try {
+      Signature signature = Signature.getInstance(signatureAlgo, "BC");
+      signature.initSign((PrivateKey) signingKey, random);
+      return signature;
+    } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidKeyException ex) {
+      throw new P11TokenException("could not create Signature: " + ex.getMessage(), ex);
+    }
+  } // method newDsaSignature
+
+  private Signature newEddsaSignature() throws P11TokenException {
+    try {
+      Signature signature = Signature.getInstance(signatureAlgo, "BC");
+      signature.initSign((PrivateKey) signingKey);
+      return signature;
+    } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidKeyException ex) {
+      throw new P11TokenException("could not create Signature: " + ex.getMessage(), ex);
+    }
+  } // method newEddsaSignature
+
+  private SM2Signer newSm2Signer() throws P11TokenException {
+    try {
+      return new SM2Signer(ECUtil.generatePrivateKeyParameter((PrivateKey) signingKey));
+    } catch (InvalidKeyException ex) {
+      throw new P11TokenException("could not create SM2 signer: " + ex.getMessage(), ex);
+    }
+  } // method newSm2Signer
+
   @Override
   protected byte[] digestSecretKey0(long mechanism) throws P11TokenException {
     if (!(signingKey instanceof SecretKey)) {
@@ -388,7 +428,7 @@ public class EmulatorP11Identity extends P11Identity {
   private byte[] rsaX509Sign(byte[] dataToSign) throws P11TokenException {
     ConcurrentBagEntry<Cipher> cipher;
     try {
-      cipher = rsaCiphers.borrow(5000, TimeUnit.MILLISECONDS);
+      cipher = rsaCiphers.borrow(5000, TimeUnit.MILLISECONDS, this::newRsaCipher);
     } catch (InterruptedException ex) {
       throw new P11TokenException("could not take any idle signer");
     }
@@ -414,7 +454,7 @@ public class EmulatorP11Identity extends P11Identity {
 
     ConcurrentBagEntry<Signature> sig0;
     try {
-      sig0 = dsaSignatures.borrow(5000, TimeUnit.MILLISECONDS);
+      sig0 = dsaSignatures.borrow(5000, TimeUnit.MILLISECONDS, this::newDsaSignature);
     } catch (InterruptedException ex) {
       throw new P11TokenException("InterruptedException occurs while retrieving idle signature");
     }
@@ -444,7 +484,7 @@ public class EmulatorP11Identity extends P11Identity {
 
     ConcurrentBagEntry<Signature> sig0;
     try {
-      sig0 = eddsaSignatures.borrow(5000, TimeUnit.MILLISECONDS);
+      sig0 = eddsaSignatures.borrow(5000, TimeUnit.MILLISECONDS, this::newEddsaSignature);
     } catch (InterruptedException ex) {
       throw new P11TokenException("InterruptedException occurs while retrieving idle signature");
     }
@@ -467,7 +507,7 @@ public class EmulatorP11Identity extends P11Identity {
   private byte[] sm2SignHash(byte[] hash) throws P11TokenException {
     ConcurrentBagEntry<SM2Signer> sig0;
     try {
-      sig0 = sm2Signers.borrow(5000, TimeUnit.MILLISECONDS);
+      sig0 = sm2Signers.borrow(5000, TimeUnit.MILLISECONDS, this::newSm2Signer);
     } catch (InterruptedException ex) {
       throw new P11TokenException("InterruptedException occurs while retrieving idle signature");
     }
@@ -504,7 +544,7 @@ public class EmulatorP11Identity extends P11Identity {
 
     ConcurrentBagEntry<SM2Signer> sig0;
     try {
-      sig0 = sm2Signers.borrow(5000, TimeUnit.MILLISECONDS);
+      sig0 = sm2Signers.borrow(5000, TimeUnit.MILLISECONDS, this::newSm2Signer);
     } catch (InterruptedException ex) {
       throw new P11TokenException("InterruptedException occurs while retrieving idle signature");
     }
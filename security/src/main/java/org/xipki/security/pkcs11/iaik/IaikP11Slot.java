@@ -33,7 +33,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.DEROctetString;
@@ -62,8 +61,8 @@ import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
 import org.xipki.util.CollectionUtil;
 import org.xipki.util.LogUtil;
-import org.xipki.util.concurrent.ConcurrentBag;
 import org.xipki.util.concurrent.ConcurrentBagEntry;
+import org.xipki.util.concurrent.ConcurrentBagPool;
 
 import iaik.pkcs.pkcs11.Mechanism;
 import iaik.pkcs.pkcs11.Session;
@@ -125,13 +124,12 @@ class IaikP11Slot extends P11Slot {
 
   private long timeOutWaitNewSession = 10000; // maximal wait for 10 second
 
-  private final AtomicLong countSessions = new AtomicLong(0);
-
   private final SecureRandom random = new SecureRandom();
 
   private final P11NewObjectConf newObjectConf;
 
-  private final ConcurrentBag<ConcurrentBagEntry<Session>> sessions = new ConcurrentBag<>();
+  private final ConcurrentBagPool<Session> sessions =
+      new ConcurrentBagPool<>((int) DEFAULT_MAX_COUNT_SESSION);
 
   private final Vendor vendor;
 
@@ -200,7 +198,8 @@ class IaikP11Slot extends P11Slot {
       this.maxSessionCount = (int) maxSessionCount2;
       LOG.info("maxSessionCount: {}", this.maxSessionCount);
 
-      sessions.add(new ConcurrentBagEntry<Session>(session));
+      sessions.setMaxSize(maxSessionCount);
+      sessions.add(session);
       refresh();
       successful = true;
     } finally {
@@ -300,11 +299,16 @@ class IaikP11Slot extends P11Slot {
       slot = null;
     }
 
+    LOG.info("statistics of the session pool: {}", sessions.getStatistics());
     // clear the session pool
     sessions.close();
-    countSessions.lazySet(0);
   } // method close
 
+  @Override
+  public ConcurrentBagPool.Statistics getSessionPoolStatistics() {
+    return sessions.getStatistics();
+  }
+
   private void analyseSingleKey(SecretKey secretKey, P11SlotRefreshResult refreshResult) {
     byte[] id = secretKey.getId().getByteArrayValue();
     char[] label = secretKey.getLabel().getCharArrayValue();
@@ -539,31 +543,15 @@ class IaikP11Slot extends P11Slot {
     } catch (TokenException ex) {
       throw new P11TokenException(ex.getMessage(), ex);
     }
-    countSessions.incrementAndGet();
     return session;
   } // method openSession
 
   private ConcurrentBagEntry<Session> borrowSession() throws P11TokenException {
     ConcurrentBagEntry<Session> session = null;
-    synchronized (sessions) {
-      if (countSessions.get() < maxSessionCount) {
-        try {
-          session = sessions.borrow(1, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException ex) { // CHECKSTYLE:SKIP
-        }
-
-        if (session == null) {
-          // create new session
-          sessions.add(new ConcurrentBagEntry<>(openSession()));
-        }
-      }
-    }
-
-    if (session == null) {
-      try {
-        session = sessions.borrow(timeOutWaitNewSession, TimeUnit.MILLISECONDS);
-      } catch (InterruptedException ex) { // CHECKSTYLE:SKIP
-      }
+    try {
+      // opens new session if no idle one is available and maxSessionCount is not reached.
+      session = sessions.borrow(timeOutWaitNewSession, TimeUnit.MILLISECONDS, this::openSession);
+    } catch (InterruptedException ex) { // CHECKSTYLE:SKIP
     }
 
     if (session == null) {
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -1809,6 +1810,162 @@ public abstract class ProxyMessage extends ASN1Object {
     }
   } // class ServerCaps
 
+  /**
+   * Definition of SignBatchResult, the response of the action ACTION_SIGN_BATCH.
+   *
+   * <pre>
+   * SignBatchResult ::= SEQUENCE OF SignResult
+   *
+   * SignResult ::= CHOICE {
+   *     signature      OCTET STRING,
+   *     rc             INTEGER }
+   * </pre>
+   */
+  public static class SignBatchResult extends ProxyMessage {
+
+    private final byte[][] signatures;
+
+    private final short[] rcs;
+
+    /**
+     * Constructor.
+     *
+     * @param signatures
+     *          Signatures. {@code signatures[i]} is {@code null} if the i-th template could
+     *          not be signed.
+     * @param rcs
+     *          Return codes. {@code rcs[i]} is the return code if the i-th template could
+     *          not be signed.
+     */
+    public SignBatchResult(byte[][] signatures, short[] rcs) {
+      this.signatures = Args.notNull(signatures, "signatures");
+      this.rcs = Args.notNull(rcs, "rcs");
+      if (signatures.length != rcs.length) {
+        throw new IllegalArgumentException("signatures and rcs have different lengths");
+      }
+    }
+
+    private SignBatchResult(ASN1Sequence seq) throws BadAsn1ObjectException {
+      final int size = seq.size();
+      this.signatures = new byte[size][];
+      this.rcs = new short[size];
+      for (int i = 0; i < size; i++) {
+        ASN1Encodable obj = seq.getObjectAt(i);
+        if (obj instanceof ASN1OctetString) {
+          signatures[i] = ((ASN1OctetString) obj).getOctets();
+        } else {
+          rcs[i] = getInteger(obj).shortValue();
+        }
+      }
+    }
+
+    public static SignBatchResult getInstance(Object obj) throws BadAsn1ObjectException {
+      if (obj == null || obj instanceof SignBatchResult) {
+        return (SignBatchResult) obj;
+      }
+
+      try {
+        if (obj instanceof ASN1Sequence) {
+          return new SignBatchResult((ASN1Sequence) obj);
+        } else if (obj instanceof byte[]) {
+          return getInstance(ASN1Primitive.fromByteArray((byte[]) obj));
+        } else {
+          throw new BadAsn1ObjectException("unknown object: " + obj.getClass().getName());
+        }
+      } catch (IOException | IllegalArgumentException ex) {
+        throw new BadAsn1ObjectException("unable to parse encoded object: " + ex.getMessage(), ex);
+      }
+    }
+
+    @Override
+    public ASN1Primitive toASN1Primitive() {
+      ASN1EncodableVector vec = new ASN1EncodableVector();
+      for (int i = 0; i < signatures.length; i++) {
+        vec.add(signatures[i] != null ? new DEROctetString(signatures[i])
+            : new ASN1Integer(rcs[i]));
+      }
+      return new DERSequence(vec);
+    }
+
+    public int size() {
+      return signatures.length;
+    }
+
+    /**
+     * Returns the signature of the i-th template.
+     * @param index index of the template.
+     * @return the signature, or {@code null} if the template could not be signed.
+     */
+    public byte[] getSignature(int index) {
+      return signatures[index];
+    }
+
+    public short getRc(int index) {
+      return rcs[index];
+    }
+
+  } // class SignBatchResult
+
+  /**
+   * Definition of SignBatchTemplate, the request of the action ACTION_SIGN_BATCH.
+   *
+   * <pre>
+   * SignBatchTemplate ::= SEQUENCE OF SignTemplate
+   * </pre>
+   */
+  public static class SignBatchTemplate extends ProxyMessage {
+
+    private final List<SignTemplate> templates;
+
+    public SignBatchTemplate(List<SignTemplate> templates) {
+      this.templates = Args.notEmpty(templates, "templates");
+    }
+
+    private SignBatchTemplate(ASN1Sequence seq) throws BadAsn1ObjectException {
+      final int size = seq.size();
+      if (size == 0) {
+        throw new BadAsn1ObjectException("SignBatchTemplate must not be empty");
+      }
+
+      this.templates = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        templates.add(SignTemplate.getInstance(seq.getObjectAt(i)));
+      }
+    }
+
+    public static SignBatchTemplate getInstance(Object obj) throws BadAsn1ObjectException {
+      if (obj == null || obj instanceof SignBatchTemplate) {
+        return (SignBatchTemplate) obj;
+      }
+
+      try {
+        if (obj instanceof ASN1Sequence) {
+          return new SignBatchTemplate((ASN1Sequence) obj);
+        } else if (obj instanceof byte[]) {
+          return getInstance(ASN1Primitive.fromByteArray((byte[]) obj));
+        } else {
+          throw new BadAsn1ObjectException("unknown object: " + obj.getClass().getName());
+        }
+      } catch (IOException | IllegalArgumentException ex) {
+        throw new BadAsn1ObjectException("unable to parse encoded object: " + ex.getMessage(), ex);
+      }
+    }
+
+    @Override
+    public ASN1Primitive toASN1Primitive() {
+      ASN1EncodableVector vec = new ASN1EncodableVector();
+      for (SignTemplate template : templates) {
+        vec.add(template);
+      }
+      return new DERSequence(vec);
+    }
+
+    public List<SignTemplate> getTemplates() {
+      return templates;
+    }
+
+  } // class SignBatchTemplate
+
   /**
    * Definition of SignTemplate.
    *
@@ -17,7 +17,6 @@
 
 package org.xipki.security.pkcs11.proxy;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -28,11 +27,12 @@ import java.net.URL;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.util.HashSet;
-import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -85,13 +85,22 @@ public class ProxyP11Module extends P11Module {
 
   private static final String PROP_SSL_HOStNAMEVERIFIER = "ssl.hostnameVerifier";
 
+  private static final String PROP_PIPELINE = "pipeline";
+
+  private static final String PROP_PIPELINE_MAX_REQUESTS = "pipeline.maxRequests";
+
+  private static final String PROP_PIPELINE_WAIT_MS = "pipeline.waitMs";
+
+  private static final String PROP_PIPELINE_CONNECTIONS = "pipeline.connections";
+
   private static final Logger LOG = LoggerFactory.getLogger(ProxyP11Module.class);
 
   private static final String REQUEST_MIMETYPE = "application/x-xipki-pkcs11";
 
   private static final String RESPONSE_MIMETYPE = "application/x-xipki-pkcs11";
 
-  private final Random random = new Random();
+  // transaction IDs must be unique within the requests of one pipelined HTTP message.
+  private final AtomicInteger transactionId = new AtomicInteger(new SecureRandom().nextInt());
 
   private final short version = P11ProxyConstants.VERSION_V1_0;
 
@@ -107,6 +116,16 @@ public class ProxyP11Module extends P11Module {
 
   private HostnameVerifier hostnameVerifier;
 
+  private final boolean pipelineEnabled;
+
+  private final int pipelineMaxRequests;
+
+  private final int pipelineWaitMs;
+
+  private final int pipelineConnections;
+
+  private volatile ProxyP11Pipeline pipeline;
+
   private ProxyP11Module(P11ModuleConf moduleConf) throws P11TokenException {
     super(moduleConf);
 
@@ -185,9 +204,34 @@ public class ProxyP11Module extends P11Module {
       throw new P11TokenException("could not create HostnameVerifier", ex);
     }
 
+    this.pipelineEnabled = Boolean.parseBoolean(confPairs.value(PROP_PIPELINE));
+    this.pipelineMaxRequests = getIntProperty(confPairs, PROP_PIPELINE_MAX_REQUESTS, 32, 1);
+    this.pipelineWaitMs = getIntProperty(confPairs, PROP_PIPELINE_WAIT_MS, 1, 0);
+    this.pipelineConnections = getIntProperty(confPairs, PROP_PIPELINE_CONNECTIONS, 4, 1);
+
     refresh();
   } // constructor
 
+  private static int getIntProperty(ConfPairs confPairs, String name, int defaultValue,
+      int minValue) throws P11TokenException {
+    String str = confPairs.value(name);
+    if (str == null) {
+      return defaultValue;
+    }
+
+    int value;
+    try {
+      value = Integer.parseInt(str.trim());
+    } catch (NumberFormatException ex) {
+      throw new P11TokenException("invalid " + name + ": " + str);
+    }
+
+    if (value < minValue) {
+      throw new P11TokenException("invalid " + name + ": " + str);
+    }
+    return value;
+  } // method getIntProperty
+
   public static P11Module getInstance(P11ModuleConf moduleConf) throws P11TokenException {
     Args.notNull(moduleConf, "moduleConf");
     return new ProxyP11Module(moduleConf);
@@ -213,6 +257,17 @@ public class ProxyP11Module extends P11Module {
     }
     this.readOnly = caps.isReadOnly();
 
+    if (pipelineEnabled && pipeline == null) {
+      if (caps.getVersions().contains(P11ProxyConstants.VERSION_V1_1)) {
+        pipeline = new ProxyP11Pipeline(this::send, pipelineMaxRequests, pipelineWaitMs,
+            pipelineConnections);
+        LOG.info("enabled pipeline: maxRequests={}, waitMs={}, connections={}",
+            pipelineMaxRequests, pipelineWaitMs, pipelineConnections);
+      } else {
+        LOG.warn("server does not support version 1.1, pipeline is disabled");
+      }
+    }
+
     resp = send(P11ProxyConstants.ACTION_GET_SLOT_IDS, null);
 
     ASN1Sequence seq;
@@ -265,7 +320,12 @@ public class ProxyP11Module extends P11Module {
         LogUtil.error(LOG, th, "could not close PKCS#11 slot " + slotId);
       }
     }
-  }
+
+    if (pipeline != null) {
+      pipeline.close();
+      pipeline = null;
+    }
+  } // method close
 
   protected byte[] send(byte[] request) throws IOException {
     Args.notNull(request, "request");
@@ -338,17 +398,8 @@ public class ProxyP11Module extends P11Module {
             + " is not supported!");
       }
 
-      byte[] buf = new byte[4096];
-      ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream();
-      do {
-        int readedByte = inputstream.read(buf);
-        if (readedByte == -1) {
-          break;
-        }
-        bytearrayoutputstream.write(buf, 0, readedByte);
-      } while (true);
-
-      return bytearrayoutputstream.toByteArray();
+      // read the complete response, so that the connection can be reused (keep-alive).
+      return IoUtil.read(inputstream);
     } finally {
       inputstream.close();
     }
@@ -391,7 +442,7 @@ public class ProxyP11Module extends P11Module {
     IoUtil.writeShort(version, request, 0);
 
     // transaction id
-    byte[] transactionId = randomTransactionId();
+    byte[] transactionId = nextTransactionId();
     System.arraycopy(transactionId, 0, request, 2, 4);
 
     // length
@@ -410,7 +461,8 @@ public class ProxyP11Module extends P11Module {
 
     byte[] response;
     try {
-      response = send(request);
+      ProxyP11Pipeline pipeline0 = pipeline;
+      response = (pipeline0 == null) ? send(request) : pipeline0.send(request);
     } catch (IOException ex) {
       final String msg = "could not send the request";
       LOG.error(msg + " {}", request);
@@ -464,9 +516,9 @@ public class ProxyP11Module extends P11Module {
     return respContent;
   } // method send
 
-  private byte[] randomTransactionId() {
+  private byte[] nextTransactionId() {
     byte[] tid = new byte[4];
-    random.nextBytes(tid);
+    IoUtil.writeInt(transactionId.getAndIncrement(), tid, 0);
     return tid;
   }
 
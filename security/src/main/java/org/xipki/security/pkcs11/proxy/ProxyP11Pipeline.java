@@ -0,0 +1,307 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.pkcs11.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bouncycastle.asn1.DEROctetString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.security.BadAsn1ObjectException;
+import org.xipki.util.Args;
+import org.xipki.util.IoUtil;
+import org.xipki.util.concurrent.BatchCollector;
+
+/**
+ * Pipeline of the PKCS#11 proxy requests (version 1.1). The requests sent concurrently by
+ * several threads are collected and sent in one HTTP message over a persistent connection,
+ * the responses are assigned to the requests by the transaction ID. Several sign requests
+ * in one HTTP message are merged into one request with the action ACTION_SIGN_BATCH.
+ *
+ * <p>Despite the name, this is request batching over a fixed number of connections and not
+ * HTTP pipelining: each connection carries one HTTP message at a time and waits for its
+ * response before the next batch is sent over it.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class ProxyP11Pipeline implements Closeable {
+
+  interface Transport {
+
+    /**
+     * Sends the concatenated requests and returns the concatenated responses.
+     *
+     * @param requests the concatenated requests.
+     * @return the concatenated responses.
+     * @throws IOException if the requests could not be sent.
+     */
+    byte[] send(byte[] requests) throws IOException;
+
+  } // interface Transport
+
+  private static class Pending {
+
+    private final byte[] request;
+
+    private byte[] response;
+
+    private IOException exception;
+
+    Pending(byte[] request) {
+      this.request = request;
+    }
+
+    int transactionId() {
+      return IoUtil.parseInt(request, 2);
+    }
+
+    short action() {
+      return IoUtil.parseShort(request, 10);
+    }
+
+  } // class Pending
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProxyP11Pipeline.class);
+
+  private final Transport transport;
+
+  private final BatchCollector<Pending> collector;
+
+  /**
+   * Constructor.
+   *
+   * @param transport
+   *          Transport to send the HTTP message.
+   * @param maxRequests
+   *          Maximal number of requests in one HTTP message.
+   * @param maxWaitMs
+   *          Maximal time in milliseconds to wait for further requests of a HTTP message.
+   * @param connections
+   *          Number of concurrent HTTP connections.
+   */
+  ProxyP11Pipeline(Transport transport, int maxRequests, int maxWaitMs, int connections) {
+    this.transport = Args.notNull(transport, "transport");
+    this.collector = new BatchCollector<>("PKCS#11 proxy requests", this::sendBatch,
+        maxRequests, maxWaitMs, connections);
+  } // constructor
+
+  /**
+   * Sends the request and waits for its response.
+   *
+   * @param request the request, as defined in {@link ProxyP11Module#send(short,
+   *     org.bouncycastle.asn1.ASN1Object)}.
+   * @return the response.
+   * @throws IOException if the request could not be sent.
+   */
+  byte[] send(byte[] request) throws IOException {
+    Pending pending = new Pending(request);
+    if (!collector.submit(pending)) {
+      return transport.send(request);
+    }
+
+    if (pending.exception != null) {
+      throw pending.exception;
+    } else if (pending.response == null) {
+      // should not happen, the batch is either answered or failed with an exception.
+      throw new IOException("found no response for the request");
+    }
+    return pending.response;
+  } // method send
+
+  private void sendBatch(List<Pending> batch) {
+    try {
+      dispatch(batch);
+    } catch (IOException ex) {
+      for (Pending pending : batch) {
+        pending.exception = ex;
+      }
+    } catch (RuntimeException ex) {
+      IOException ioEx = new IOException("could not process the responses: "
+          + ex.getMessage(), ex);
+      for (Pending pending : batch) {
+        pending.exception = ioEx;
+      }
+    }
+  } // method sendBatch
+
+  private void dispatch(List<Pending> batch) throws IOException {
+    List<Pending> signs = new ArrayList<>(batch.size());
+    for (Pending pending : batch) {
+      if (pending.action() == P11ProxyConstants.ACTION_SIGN) {
+        signs.add(pending);
+      }
+    }
+
+    byte[] signBatchRequest = null;
+    if (signs.size() > 1) {
+      try {
+        signBatchRequest = buildSignBatchRequest(signs);
+      } catch (BadAsn1ObjectException ex) {
+        LOG.warn("could not build the SignBatchTemplate: {}", ex.getMessage());
+      }
+    }
+
+    ByteArrayOutputStream requests = new ByteArrayOutputStream();
+    for (Pending pending : batch) {
+      if (signBatchRequest == null || pending.action() != P11ProxyConstants.ACTION_SIGN) {
+        requests.write(pending.request);
+      }
+    }
+
+    if (signBatchRequest != null) {
+      requests.write(signBatchRequest);
+    }
+
+    byte[] responses = transport.send(requests.toByteArray());
+
+    // assign the responses to the requests by the transaction ID
+    Map<Integer, byte[]> responseMap = new HashMap<>();
+    int offset = 0;
+    while (offset < responses.length) {
+      if (responses.length - offset < 10) {
+        throw new IOException("response too short");
+      }
+
+      int len = 10 + IoUtil.parseInt(responses, offset + 6);
+      if (len < 10 || offset + len > responses.length) {
+        throw new IOException("message length unmatch");
+      }
+
+      byte[] response = new byte[len];
+      System.arraycopy(responses, offset, response, 0, len);
+      responseMap.put(IoUtil.parseInt(responses, offset + 2), response);
+      offset += len;
+    }
+
+    for (Pending pending : batch) {
+      if (signBatchRequest != null && pending.action() == P11ProxyConstants.ACTION_SIGN) {
+        continue;
+      }
+
+      pending.response = responseMap.get(pending.transactionId());
+      if (pending.response == null) {
+        pending.exception = new IOException("found no response for the transaction");
+      }
+    }
+
+    if (signBatchRequest != null) {
+      // the SignBatchTemplate has the transaction ID of the first sign request
+      byte[] response = responseMap.get(signs.get(0).transactionId());
+      if (response == null) {
+        throw new IOException("found no response for the batch of sign requests");
+      }
+      assignSignBatchResponse(signs, response);
+    }
+  } // method dispatch
+
+  private static byte[] buildSignBatchRequest(List<Pending> signs)
+      throws BadAsn1ObjectException {
+    List<ProxyMessage.SignTemplate> templates = new ArrayList<>(signs.size());
+    for (Pending pending : signs) {
+      byte[] request = pending.request;
+      byte[] content = new byte[request.length - 14];
+      System.arraycopy(request, 14, content, 0, content.length);
+      templates.add(ProxyMessage.SignTemplate.getInstance(content));
+    }
+
+    byte[] encodedContent;
+    try {
+      encodedContent = new ProxyMessage.SignBatchTemplate(templates).getEncoded();
+    } catch (IOException ex) {
+      throw new BadAsn1ObjectException("could not encode SignBatchTemplate", ex);
+    }
+
+    // same transaction ID and module as the first sign request
+    byte[] first = signs.get(0).request;
+    byte[] request = new byte[14 + encodedContent.length];
+    IoUtil.writeShort(P11ProxyConstants.VERSION_V1_1, request, 0);
+    System.arraycopy(first, 2, request, 2, 4);
+    IoUtil.writeInt(4 + encodedContent.length, request, 6);
+    IoUtil.writeShort(P11ProxyConstants.ACTION_SIGN_BATCH, request, 10);
+    System.arraycopy(first, 12, request, 12, 2);
+    System.arraycopy(encodedContent, 0, request, 14, encodedContent.length);
+    return request;
+  } // method buildSignBatchRequest
+
+  private static void assignSignBatchResponse(List<Pending> signs, byte[] response)
+      throws IOException {
+    short rc = (response.length < 12) ? P11ProxyConstants.RC_INTERNAL_ERROR
+        : IoUtil.parseShort(response, 10);
+    if (rc != P11ProxyConstants.RC_SUCCESS) {
+      for (Pending pending : signs) {
+        pending.response = buildResponse(pending.request, rc, null);
+      }
+      return;
+    }
+
+    byte[] content = new byte[response.length - 14];
+    System.arraycopy(response, 14, content, 0, content.length);
+
+    ProxyMessage.SignBatchResult result;
+    try {
+      result = ProxyMessage.SignBatchResult.getInstance(content);
+    } catch (BadAsn1ObjectException ex) {
+      throw new IOException("invalid SignBatchResult: " + ex.getMessage(), ex);
+    }
+
+    if (result.size() != signs.size()) {
+      throw new IOException("SignBatchResult has " + result.size() + " entries, but "
+          + signs.size() + " are expected");
+    }
+
+    for (int i = 0; i < signs.size(); i++) {
+      Pending pending = signs.get(i);
+      byte[] signature = result.getSignature(i);
+      // same response as for the action ACTION_SIGN
+      pending.response = (signature == null)
+          ? buildResponse(pending.request, result.getRc(i), null)
+          : buildResponse(pending.request, P11ProxyConstants.RC_SUCCESS,
+              new DEROctetString(signature).getEncoded());
+    }
+  } // method assignSignBatchResponse
+
+  private static byte[] buildResponse(byte[] request, short rc, byte[] content) {
+    int bodyLen = 4 + (content == null ? 0 : content.length);
+    byte[] response = new byte[10 + bodyLen];
+    // version and transaction ID
+    System.arraycopy(request, 0, response, 0, 6);
+    IoUtil.writeInt(bodyLen, response, 6);
+    IoUtil.writeShort(rc, response, 10);
+    // action
+    System.arraycopy(request, 10, response, 12, 2);
+    if (content != null) {
+      System.arraycopy(content, 0, response, 14, content.length);
+    }
+    return response;
+  } // method buildResponse
+
+  @Override
+  public void close() {
+    // the threads send the queued requests before they terminate.
+    collector.close();
+  } // method close
+
+}
@@ -17,6 +17,7 @@
 
 package org.xipki.security.pkcs12;
 
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
@@ -54,6 +55,7 @@ import org.bouncycastle.operator.bc.BcContentSignerBuilder;
 import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.security.DSAPlainDigestSigner;
 import org.xipki.security.DfltConcurrentContentSigner;
+import org.xipki.security.DfltConcurrentContentSigner.XiContentSignerFactory;
 import org.xipki.security.EdECConstants;
 import org.xipki.security.SignatureSigner;
 import org.xipki.security.XiContentSigner;
@@ -201,8 +203,34 @@ public class P12ContentSignerBuilder {
 
   public ConcurrentContentSigner createSigner(AlgorithmIdentifier signatureAlgId, int parallelism,
       SecureRandom random) throws XiSecurityException, NoSuchPaddingException {
+    return createSigner(signatureAlgId, parallelism, parallelism, random);
+  }
+
+  /**
+   * Creates the signer.
+   *
+   * @param signatureAlgId
+   *          Signature algorithm.
+   * @param parallelism
+   *          Initial number of signers.
+   * @param maxParallelism
+   *          Maximal number of signers. If greater than {@code parallelism}, further signers
+   *          are created on demand.
+   * @param random
+   *          Random. Could be {@code null}.
+   * @return the signer.
+   * @throws XiSecurityException if security error occurs.
+   * @throws NoSuchPaddingException if the padding is not supported.
+   * @since 5.3.8
+   */
+  public ConcurrentContentSigner createSigner(AlgorithmIdentifier signatureAlgId, int parallelism,
+      int maxParallelism, SecureRandom random)
+          throws XiSecurityException, NoSuchPaddingException {
     Args.notNull(signatureAlgId, "signatureAlgId");
     Args.positive(parallelism, "parallelism");
+    Args.min(maxParallelism, "maxParallelism", parallelism);
+
+    XiContentSignerFactory signerFactory = null;
 
     List<XiContentSigner> signers = new ArrayList<>(parallelism);
 
@@ -241,6 +269,17 @@ public class P12ContentSignerBuilder {
           XiContentSigner signer = new SignatureSigner(signatureAlgId, signature, key);
           signers.add(signer);
         }
+
+        final String signatureProvName = provName;
+        signerFactory = () -> {
+          try {
+            Signature signature = Signature.getInstance(algoName, signatureProvName);
+            signature.initSign(key);
+            return new SignatureSigner(signatureAlgId, signature, key);
+          } catch (GeneralSecurityException ex) {
+            throw new XiSecurityException(ex.getMessage(), ex);
+          }
+        };
       } catch (Exception ex) {
         signers.clear();
       }
@@ -288,10 +327,20 @@ public class P12ContentSignerBuilder {
         }
         signers.add(new XiWrappedContentSigner(signer, true));
       }
+
+      final BcContentSignerBuilder bcSignerBuilder = signerBuilder;
+      final AsymmetricKeyParameter bcKeyparam = keyparam;
+      signerFactory = () -> {
+        try {
+          return new XiWrappedContentSigner(bcSignerBuilder.build(bcKeyparam), true);
+        } catch (OperatorCreationException ex) {
+          throw new XiSecurityException("operator creation error", ex);
+        }
+      };
     }
 
     final boolean mac = false;
-    ConcurrentContentSigner concurrentSigner;
+    DfltConcurrentContentSigner concurrentSigner;
     try {
       concurrentSigner = new DfltConcurrentContentSigner(mac, signers, key);
     } catch (NoSuchAlgorithmException ex) {
@@ -303,6 +352,10 @@ public class P12ContentSignerBuilder {
     } else {
       concurrentSigner.setPublicKey(publicKey);
     }
+
+    if (maxParallelism > parallelism) {
+      concurrentSigner.setElastic(signerFactory, maxParallelism);
+    }
     return concurrentSigner;
   } // method createSigner
 
@@ -0,0 +1,196 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.pkcs11.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.DEROctetString;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.security.pkcs11.P11ObjectIdentifier;
+import org.xipki.security.pkcs11.P11SlotIdentifier;
+import org.xipki.util.IoUtil;
+
+/**
+ * ProxyP11Pipeline test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class ProxyP11PipelineTest {
+
+  private static final short MODULE_ID = 0x1234;
+
+  /**
+   * Transport that returns the message as signature and rejects the empty message.
+   */
+  private static class EchoTransport implements ProxyP11Pipeline.Transport {
+
+    private final AtomicInteger messages = new AtomicInteger();
+
+    private final AtomicInteger signBatches = new AtomicInteger();
+
+    @Override
+    public byte[] send(byte[] requests) throws IOException {
+      messages.incrementAndGet();
+      ByteArrayOutputStream responses = new ByteArrayOutputStream();
+      int offset = 0;
+      while (offset < requests.length) {
+        int len = 10 + IoUtil.parseInt(requests, offset + 6);
+        byte[] request = new byte[len];
+        System.arraycopy(requests, offset, request, 0, len);
+        offset += len;
+
+        byte[] content = new byte[len - 14];
+        System.arraycopy(request, 14, content, 0, content.length);
+
+        short action = IoUtil.parseShort(request, 10);
+        Assert.assertEquals("module", MODULE_ID, IoUtil.parseShort(request, 12));
+        byte[] respContent;
+        if (action == P11ProxyConstants.ACTION_SIGN_BATCH) {
+          signBatches.incrementAndGet();
+          Assert.assertEquals("version", P11ProxyConstants.VERSION_V1_1,
+              IoUtil.parseShort(request, 0));
+          List<ProxyMessage.SignTemplate> templates;
+          try {
+            templates = ProxyMessage.SignBatchTemplate.getInstance(content).getTemplates();
+          } catch (Exception ex) {
+            throw new IOException(ex);
+          }
+
+          byte[][] signatures = new byte[templates.size()][];
+          short[] rcs = new short[templates.size()];
+          for (int i = 0; i < templates.size(); i++) {
+            byte[] message = templates.get(i).getMessage();
+            if (message.length == 0) {
+              rcs[i] = P11ProxyConstants.RC_UNKNOWN_ENTITY;
+            } else {
+              signatures[i] = message;
+            }
+          }
+          respContent = new ProxyMessage.SignBatchResult(signatures, rcs).getEncoded();
+        } else {
+          try {
+            byte[] message = ProxyMessage.SignTemplate.getInstance(content).getMessage();
+            respContent = (message.length == 0) ? null : new DEROctetString(message).getEncoded();
+          } catch (Exception ex) {
+            throw new IOException(ex);
+          }
+        }
+
+        int bodyLen = 4 + (respContent == null ? 0 : respContent.length);
+        byte[] response = new byte[10 + bodyLen];
+        System.arraycopy(request, 0, response, 0, 6);
+        IoUtil.writeInt(bodyLen, response, 6);
+        IoUtil.writeShort(respContent == null ? P11ProxyConstants.RC_UNKNOWN_ENTITY
+            : P11ProxyConstants.RC_SUCCESS, response, 10);
+        IoUtil.writeShort(action, response, 12);
+        if (respContent != null) {
+          System.arraycopy(respContent, 0, response, 14, respContent.length);
+        }
+        responses.write(response);
+      }
+      return responses.toByteArray();
+    }
+
+  } // class EchoTransport
+
+  @Test
+  public void testSignBatch() throws Exception {
+    EchoTransport transport = new EchoTransport();
+    ProxyP11Pipeline pipeline = new ProxyP11Pipeline(transport, 16, 20, 2);
+
+    final int n = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(32);
+    try {
+      List<Future<byte[]>> futures = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        final int tid = i;
+        // the request 17 has empty message and will be rejected
+        final byte[] message = (i == 17) ? new byte[0] : ("message-" + i).getBytes();
+        futures.add(executor.submit(() -> pipeline.send(buildSignRequest(tid, message))));
+      }
+
+      for (int i = 0; i < n; i++) {
+        byte[] response = futures.get(i).get();
+        Assert.assertEquals("transaction ID", i, IoUtil.parseInt(response, 2));
+        Assert.assertEquals("version", P11ProxyConstants.VERSION_V1_0,
+            IoUtil.parseShort(response, 0));
+        Assert.assertEquals("action", P11ProxyConstants.ACTION_SIGN,
+            IoUtil.parseShort(response, 12));
+        Assert.assertEquals("length", response.length - 10, IoUtil.parseInt(response, 6));
+
+        short rc = IoUtil.parseShort(response, 10);
+        if (i == 17) {
+          Assert.assertEquals("rc", P11ProxyConstants.RC_UNKNOWN_ENTITY, rc);
+        } else {
+          Assert.assertEquals("rc", P11ProxyConstants.RC_SUCCESS, rc);
+          byte[] content = new byte[response.length - 14];
+          System.arraycopy(response, 14, content, 0, content.length);
+          Assert.assertEquals("signature", "message-" + i,
+              new String(ASN1OctetString.getInstance(content).getOctets()));
+        }
+      }
+    } finally {
+      pipeline.close();
+      executor.shutdown();
+    }
+
+    Assert.assertTrue("requests are not pipelined: " + transport.messages.get(),
+        transport.messages.get() < n);
+    Assert.assertTrue("sign requests are not batched", transport.signBatches.get() > 0);
+  }
+
+  @Test
+  public void testSendAfterClose() throws Exception {
+    EchoTransport transport = new EchoTransport();
+    ProxyP11Pipeline pipeline = new ProxyP11Pipeline(transport, 16, 1, 1);
+    pipeline.close();
+
+    byte[] response = pipeline.send(buildSignRequest(1, "message".getBytes()));
+    Assert.assertEquals("rc", P11ProxyConstants.RC_SUCCESS, IoUtil.parseShort(response, 10));
+    Assert.assertEquals("HTTP messages", 1, transport.messages.get());
+  }
+
+  private static byte[] buildSignRequest(int transactionId, byte[] message) throws IOException {
+    ProxyMessage.SignTemplate template = new ProxyMessage.SignTemplate(
+        new ProxyMessage.SlotIdentifier(new P11SlotIdentifier(0, 1)),
+        new ProxyMessage.ObjectIdentifier(new P11ObjectIdentifier(new byte[]{1}, "key")),
+        0x1041L, null, message);
+    byte[] content = template.getEncoded();
+
+    byte[] request = new byte[14 + content.length];
+    IoUtil.writeShort(P11ProxyConstants.VERSION_V1_0, request, 0);
+    IoUtil.writeInt(transactionId, request, 2);
+    IoUtil.writeInt(4 + content.length, request, 6);
+    IoUtil.writeShort(P11ProxyConstants.ACTION_SIGN, request, 10);
+    IoUtil.writeShort(MODULE_ID, request, 12);
+    System.arraycopy(content, 0, request, 14, content.length);
+    return request;
+  }
+
+}
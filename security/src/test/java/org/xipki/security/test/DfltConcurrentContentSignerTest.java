@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.security.ConcurrentBagEntrySigner;
+import org.xipki.security.DfltConcurrentContentSigner;
+import org.xipki.security.NoIdleSignerException;
+import org.xipki.security.SignatureSigner;
+import org.xipki.security.XiContentSigner;
+import org.xipki.security.XiSecurityException;
+import org.xipki.security.util.AlgorithmUtil;
+
+/**
+ * DfltConcurrentContentSigner test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class DfltConcurrentContentSignerTest {
+
+  private static KeyPair keyPair;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    keyPair = kpGen.generateKeyPair();
+  }
+
+  @Test
+  public void testFixedPool() throws Exception {
+    DfltConcurrentContentSigner signer = new DfltConcurrentContentSigner(false,
+        Collections.singletonList(newSigner()));
+    try {
+      ConcurrentBagEntrySigner entry = signer.borrowSigner();
+      try {
+        signer.borrowSigner(100);
+        Assert.fail("NoIdleSignerException expected");
+      } catch (NoIdleSignerException ex) {
+        // expected
+      } finally {
+        signer.requiteSigner(entry);
+      }
+
+      Assert.assertEquals("parallelism", 1, signer.getParallelism());
+      Assert.assertEquals("borrow count", 2, signer.getBorrowLatency().getCount());
+    } finally {
+      signer.close();
+    }
+  }
+
+  @Test
+  public void testElasticPool() throws Exception {
+    DfltConcurrentContentSigner signer = new DfltConcurrentContentSigner(false,
+        Collections.singletonList(newSigner()));
+    signer.setElastic(DfltConcurrentContentSignerTest::newSigner, 3, 200);
+    try {
+      List<ConcurrentBagEntrySigner> entries = new ArrayList<>(3);
+      for (int i = 0; i < 3; i++) {
+        entries.add(signer.borrowSigner(5000));
+      }
+
+      Assert.assertEquals("parallelism", 3, signer.getParallelism());
+      Assert.assertEquals("busy signers", 3, signer.getBusySigners());
+
+      try {
+        signer.borrowSigner(100);
+        Assert.fail("NoIdleSignerException expected");
+      } catch (NoIdleSignerException ex) {
+        // expected, maximal number of signers reached
+      }
+
+      for (ConcurrentBagEntrySigner entry : entries) {
+        signer.requiteSigner(entry);
+      }
+
+      // the idle signers created on demand are retired
+      for (int i = 0; i < 50 && signer.getParallelism() > 1; i++) {
+        Thread.sleep(100);
+      }
+      Assert.assertEquals("parallelism after idle timeout", 1, signer.getParallelism());
+      Assert.assertTrue("signature", signer.sign(new byte[]{1, 2, 3}).length > 0);
+    } finally {
+      signer.close();
+    }
+  }
+
+  private static XiContentSigner newSigner() throws XiSecurityException {
+    try {
+      Signature signature = Signature.getInstance("SHA256withECDSA");
+      signature.initSign(keyPair.getPrivate());
+      return new SignatureSigner(AlgorithmUtil.getSigAlgId("SHA256withECDSA"), signature,
+          keyPair.getPrivate());
+    } catch (Exception ex) {
+      throw new XiSecurityException(ex.getMessage(), ex);
+    }
+  }
+
+}
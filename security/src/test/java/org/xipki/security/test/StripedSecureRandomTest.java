@@ -0,0 +1,115 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.security.StripedSecureRandom;
+
+/**
+ * StripedSecureRandom test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class StripedSecureRandomTest {
+
+  @Test
+  public void testConcurrent() throws Exception {
+    // reseed every millisecond
+    final StripedSecureRandom random = new StripedSecureRandom(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<List<String>>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> {
+          List<String> values = new ArrayList<>(500);
+          byte[] bytes = new byte[16];
+          for (int j = 0; j < 500; j++) {
+            random.nextBytes(bytes);
+            values.add(Hex.toHexString(bytes));
+            if (j % 100 == 0) {
+              Thread.sleep(2);
+            }
+          }
+          return values;
+        }));
+      }
+
+      Set<String> values = new HashSet<>();
+      for (Future<List<String>> future : futures) {
+        values.addAll(future.get());
+      }
+      Assert.assertEquals("distinct values", 8 * 500, values.size());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testSeed() {
+    StripedSecureRandom random = new StripedSecureRandom();
+    random.setSeed(new byte[]{1, 2, 3});
+    random.setSeed(123L);
+    Assert.assertEquals("seed length", 32, random.generateSeed(32).length);
+    Assert.assertTrue("nextInt", random.nextInt(10) < 10);
+  }
+
+  @Test
+  public void testSecureRandomMethods() throws Exception {
+    SecureRandom random = new StripedSecureRandom();
+    Assert.assertTrue("toString", random.toString().contains(random.getAlgorithm()));
+    Assert.assertEquals("seed length", 16, random.generateSeed(16).length);
+
+    byte[] bytes = new byte[16];
+    random.nextBytes(bytes);
+
+    // reseed() is available since Java 9, and must not fail with NullPointerException
+    Method reseed;
+    try {
+      reseed = SecureRandom.class.getMethod("reseed");
+    } catch (NoSuchMethodException ex) {
+      return;
+    }
+
+    try {
+      reseed.invoke(random);
+      Assert.fail("UnsupportedOperationException expected");
+    } catch (InvocationTargetException ex) {
+      Assert.assertEquals("reseed() exception", UnsupportedOperationException.class,
+          ex.getCause().getClass());
+    }
+
+    Assert.assertNull("parameters", SecureRandom.class.getMethod("getParameters").invoke(random));
+  }
+
+}
@@ -41,12 +41,16 @@ public abstract class BenchmarkExecutor {
 
   private static final int DEFAULT_THREADS = 25;
 
+  private static final double[] SUMMARY_PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
   private boolean interrupted;
 
   private String description;
 
   private final ProcessLog processLog;
 
+  private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
   private int duration = DEFAULT_DURATION; // in seconds
 
   private int threads = DEFAULT_THREADS;
@@ -61,7 +65,7 @@ public abstract class BenchmarkExecutor {
 
   public BenchmarkExecutor(String description, int total) {
     this.description = Args.notNull(description, "description");
-    this.processLog = new ProcessLog(total);
+    this.processLog = new ProcessLog(total, latencyHistogram);
   }
 
   protected abstract Runnable getTestor() throws Exception;
@@ -189,6 +193,25 @@ public abstract class BenchmarkExecutor {
     }
   }
 
+  /**
+   * Accounts the processed operations and records the latency.
+   *
+   * @param all
+   *          Number of all processed operations.
+   * @param failed
+   *          Number of failed operations.
+   * @param latencyNanos
+   *          Latency of the operations, in nanoseconds.
+   */
+  public void account(long all, long failed, long latencyNanos) {
+    latencyHistogram.recordNanos(latencyNanos);
+    account(all, failed);
+  }
+
+  public LatencyHistogram getLatencyHistogram() {
+    return latencyHistogram;
+  }
+
   public int getThreads() {
     return threads;
   }
@@ -227,7 +250,23 @@ public abstract class BenchmarkExecutor {
         "\n     failed: ", StringUtil.formatAccount(errorAccount.get(), 1), " ", unit,
         "\n    average: ", averageText, " ", unit, "/s\n");
 
-    System.out.println(msg);
+    System.out.print(msg);
+
+    if (latencyHistogram.getCount() > 0) {
+      StringBuilder sb = new StringBuilder(200);
+      sb.append(" latency ms: min=")
+        .append(ProcessLog.formatLatency(latencyHistogram.getMinMicros()))
+        .append(", mean=").append(ProcessLog.formatLatency(latencyHistogram.getMeanMicros()));
+      for (double percentile : SUMMARY_PERCENTILES) {
+        sb.append(", p").append(ProcessLog.formatPercentile(percentile)).append("=")
+          .append(ProcessLog.formatLatency(latencyHistogram.getPercentileMicros(percentile)));
+      }
+      sb.append(", max=").append(ProcessLog.formatLatency(latencyHistogram.getMaxMicros()))
+        .append("\n");
+      System.out.print(sb);
+    }
+
+    System.out.println();
   }
 
   protected static long getSecureIndex() {
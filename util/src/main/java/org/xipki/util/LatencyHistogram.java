@@ -0,0 +1,187 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets (similar to HdrHistogram). Values
+ * are recorded in microseconds, values below 128 are recorded exactly, larger values with
+ * a relative error below 1.6%. It can be shared by many threads.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  private static final int SUB_BUCKET_HALF_BITS = SUB_BUCKET_BITS - 1;
+
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+  // values up to 2^40 microseconds (more than 12 days)
+  private static final int MAX_EXPONENT = 40;
+
+  private static final int NUM_BUCKETS =
+      (MAX_EXPONENT - SUB_BUCKET_HALF_BITS + 1) * SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+  private final AtomicLong totalCount = new AtomicLong();
+
+  private final AtomicLong totalMicros = new AtomicLong();
+
+  private final AtomicLong minMicros = new AtomicLong(Long.MAX_VALUE);
+
+  private final AtomicLong maxMicros = new AtomicLong(0);
+
+  public void recordNanos(long latencyNanos) {
+    record(latencyNanos / 1000);
+  }
+
+  public void record(long latencyMicros) {
+    long value = Math.max(0, latencyMicros);
+    counts.incrementAndGet(indexOf(value));
+    totalCount.incrementAndGet();
+    totalMicros.addAndGet(value);
+
+    long current;
+    while (value < (current = minMicros.get())) {
+      if (minMicros.compareAndSet(current, value)) {
+        break;
+      }
+    }
+
+    while (value > (current = maxMicros.get())) {
+      if (maxMicros.compareAndSet(current, value)) {
+        break;
+      }
+    }
+  } // method record
+
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  public long getMinMicros() {
+    return totalCount.get() == 0 ? 0 : minMicros.get();
+  }
+
+  public long getMaxMicros() {
+    return maxMicros.get();
+  }
+
+  public long getSumMicros() {
+    return totalMicros.get();
+  }
+
+  public long getMeanMicros() {
+    long count = totalCount.get();
+    return count == 0 ? 0 : totalMicros.get() / count;
+  }
+
+  /**
+   * Returns the value at the given percentile.
+   *
+   * @param percentile
+   *          Percentile, between 0 and 100.
+   * @return the (highest equivalent) value at the given percentile, in microseconds.
+   */
+  public long getPercentileMicros(double percentile) {
+    long count = totalCount.get();
+    if (count == 0) {
+      return 0;
+    }
+
+    double pct = Math.min(Math.max(percentile, 0.0), 100.0);
+    long target = Math.max(1, (long) (pct / 100.0 * count + 0.5));
+
+    long max = maxMicros.get();
+    long cumulative = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      cumulative += counts.get(i);
+      if (cumulative >= target) {
+        return Math.min(highestEquivalentValue(i), max);
+      }
+    }
+    return max;
+  } // method getPercentileMicros
+
+  /**
+   * Returns the number of values less than or equal to the given value. The values recorded
+   * in the same bucket as the given value, i.e. equivalent within the resolution, are counted.
+   *
+   * @param micros
+   *          Upper bound in microseconds.
+   * @return the number of values up to the given value.
+   */
+  public long getCountAtOrBelow(long micros) {
+    if (micros < 0) {
+      return 0;
+    }
+
+    int index = indexOf(micros);
+    long cumulative = 0;
+    for (int i = 0; i <= index; i++) {
+      cumulative += counts.get(i);
+    }
+    return cumulative;
+  } // method getCountAtOrBelow
+
+  public void reset() {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    totalCount.set(0);
+    totalMicros.set(0);
+    minMicros.set(Long.MAX_VALUE);
+    maxMicros.set(0);
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent > MAX_EXPONENT) {
+      return NUM_BUCKETS - 1;
+    }
+
+    int shift = exponent - SUB_BUCKET_HALF_BITS;
+    // subBucket is in [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+    int subBucket = (int) (value >>> shift);
+    return (shift << SUB_BUCKET_HALF_BITS) + subBucket;
+  } // method indexOf
+
+  static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+
+    int shift = (index >> SUB_BUCKET_HALF_BITS) - 1;
+    long subBucket = index - ((long) shift << SUB_BUCKET_HALF_BITS);
+    return ((subBucket + 1) << shift) - 1;
+  } // method highestEquivalentValue
+
+}
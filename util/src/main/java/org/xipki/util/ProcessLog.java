@@ -58,6 +58,10 @@ public class ProcessLog {
 
   private static final int TOTAL_LEN = 15;
 
+  private static final int LATENCY_LEN = 9;
+
+  private static final double[] LATENCY_PERCENTILES = {50, 99, 99.9};
+
   private long total;
 
   private boolean hasTotal;
@@ -78,8 +82,24 @@ public class ProcessLog {
 
   private final ConcurrentLinkedDeque<MeasurePoint> measureDeque = new ConcurrentLinkedDeque<>();
 
+  private final LatencyHistogram latencyHistogram;
+
   public ProcessLog(long total) {
+    this(total, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param total
+   *          Total number of items to be processed, 0 if unknown.
+   * @param latencyHistogram
+   *          Histogram of the latencies. If not {@code null}, the percentiles
+   *          p50, p99 and p99.9 (in ms) will be printed in the status line.
+   */
+  public ProcessLog(long total, LatencyHistogram latencyHistogram) {
     this.total = total;
+    this.latencyHistogram = latencyHistogram;
     reset();
   }
 
@@ -106,6 +126,11 @@ public class ProcessLog {
       sb.append(formatText("time", DURATION_LEN))
         .append(formatText("finish", TIME_LEN));
     }
+    if (latencyHistogram != null) {
+      for (double percentile : LATENCY_PERCENTILES) {
+        sb.append(formatText("p" + formatPercentile(percentile), LATENCY_LEN));
+      }
+    }
     sb.append('\n');
 
     // third header line
@@ -120,6 +145,11 @@ public class ProcessLog {
       sb.append(formatText("left", DURATION_LEN))
         .append(formatText("at", TIME_LEN));
     }
+    if (latencyHistogram != null) {
+      for (int i = 0; i < LATENCY_PERCENTILES.length; i++) {
+        sb.append(formatText("ms", LATENCY_LEN));
+      }
+    }
     sb.append('\n');
 
     System.out.println(sb.toString());
@@ -166,6 +196,9 @@ public class ProcessLog {
 
   public final void reset() {
     startTimeMs = System.currentTimeMillis();
+    if (latencyHistogram != null) {
+      latencyHistogram.reset();
+    }
     numProcessed = new AtomicLong(0);
     lastPrintTimeMs = new AtomicLong(0);
     measureDeque.clear();
@@ -262,10 +295,48 @@ public class ProcessLog {
       }
     }
 
+    // latency percentiles
+    if (latencyHistogram != null) {
+      boolean noLatency = latencyHistogram.getCount() == 0;
+      for (double percentile : LATENCY_PERCENTILES) {
+        sb.append(formatText(noLatency ? "--"
+            : formatLatency(latencyHistogram.getPercentileMicros(percentile)), LATENCY_LEN));
+      }
+    }
+
     System.out.print(sb.toString());
     System.out.flush();
   } // method printStatus
 
+  public LatencyHistogram latencyHistogram() {
+    return latencyHistogram;
+  }
+
+  /**
+   * Formats the latency in ms.
+   *
+   * @param latencyMicros
+   *          Latency in microseconds
+   * @return the latency in ms with two fraction digits, e.g. 12.34.
+   */
+  public static String formatLatency(long latencyMicros) {
+    long hundredthMs = (latencyMicros + 5) / 10;
+    long fraction = hundredthMs % 100;
+    return (hundredthMs / 100) + (fraction < 10 ? ".0" : ".") + fraction;
+  }
+
+  /**
+   * Formats the percentile, e.g. 50 to "50" and 99.9 to "99.9".
+   *
+   * @param percentile
+   *          Percentile
+   * @return the formatted percentile.
+   */
+  public static String formatPercentile(double percentile) {
+    return (percentile == Math.rint(percentile))
+        ? Long.toString((long) percentile) : Double.toString(percentile);
+  }
+
   public long totalElapsedTime() {
     if (finished.get()) {
       return totalElapsedTimeMs;
@@ -349,6 +420,10 @@ public class ProcessLog {
       len += TIME_LEN;
     }
 
+    if (latencyHistogram != null) {
+      len += LATENCY_LEN * LATENCY_PERCENTILES.length;
+    }
+
     return len;
   }
 }
@@ -0,0 +1,233 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util.concurrent;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Collects the items submitted concurrently by many threads into batches. The items arriving
+ * within the configured wait time, up to the maximal batch size, are passed in one batch to
+ * the handler by one of the collector threads. Each submitter is blocked until the batch
+ * containing its item has been handled.
+ *
+ * @param <T> type of the item.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class BatchCollector<T> implements Closeable {
+
+  /**
+   * Handler of the collected batches.
+   *
+   * @param <T> type of the item.
+   */
+  public interface BatchHandler<T> {
+
+    /**
+     * Handles the batch. The result of each item is to be stored in the item.
+     *
+     * @param batch the items in the order of their submission.
+     */
+    void handle(List<T> batch);
+
+  } // interface BatchHandler
+
+  private static class Entry<T> {
+
+    private final T item;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    Entry(T item) {
+      this.item = item;
+    }
+
+  } // class Entry
+
+  private static final Logger LOG = LoggerFactory.getLogger(BatchCollector.class);
+
+  private final String name;
+
+  private final BatchHandler<T> handler;
+
+  private final int maxBatchSize;
+
+  private final long maxWaitNanos;
+
+  private final BlockingQueue<Entry<T>> queue = new LinkedBlockingQueue<>();
+
+  private final ExecutorService executor;
+
+  private boolean closed;
+
+  /**
+   * Constructor.
+   *
+   * @param name
+   *          Name of the items, used in the log messages.
+   * @param handler
+   *          Handler of the batches.
+   * @param maxBatchSize
+   *          Maximal number of items in one batch.
+   * @param maxWaitMs
+   *          Maximal time in milliseconds to wait for further items of a batch.
+   * @param threads
+   *          Number of threads handling the batches concurrently.
+   */
+  public BatchCollector(String name, BatchHandler<T> handler, int maxBatchSize, int maxWaitMs,
+      int threads) {
+    this.name = Args.notBlank(name, "name");
+    this.handler = Args.notNull(handler, "handler");
+    this.maxBatchSize = Args.positive(maxBatchSize, "maxBatchSize");
+    this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Args.notNegative(maxWaitMs, "maxWaitMs"));
+    this.executor = Executors.newFixedThreadPool(Args.positive(threads, "threads"));
+    for (int i = 0; i < threads; i++) {
+      executor.execute(this::run);
+    }
+  } // constructor
+
+  /**
+   * Submits the item and waits until its batch has been handled.
+   *
+   * @param item the item.
+   * @return {@code true} if the item has been handled, {@code false} if the collector is
+   *     closed, the caller has to process the item itself.
+   */
+  public boolean submit(T item) {
+    Entry<T> entry = new Entry<>(Args.notNull(item, "item"));
+    synchronized (this) {
+      if (closed) {
+        return false;
+      }
+      queue.add(entry);
+    }
+
+    boolean interrupted = false;
+    while (true) {
+      try {
+        entry.done.await();
+        break;
+      } catch (InterruptedException ex) {
+        // the item is already queued and may be handled, wait for the result.
+        interrupted = true;
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return true;
+  } // method submit
+
+  private void run() {
+    List<Entry<T>> batch = new ArrayList<>(maxBatchSize);
+    while (true) {
+      Entry<T> first;
+      try {
+        first = queue.poll(100, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ex) {
+        first = queue.poll();
+      }
+
+      if (first == null) {
+        synchronized (this) {
+          if (closed && queue.isEmpty()) {
+            return;
+          }
+        }
+        continue;
+      }
+
+      batch.add(first);
+      long deadline = System.nanoTime() + maxWaitNanos;
+      while (batch.size() < maxBatchSize) {
+        long remaining = deadline - System.nanoTime();
+        Entry<T> entry = null;
+        if (remaining > 0) {
+          try {
+            entry = queue.poll(remaining, TimeUnit.NANOSECONDS);
+          } catch (InterruptedException ex) {
+            remaining = 0;
+          }
+        }
+
+        if (remaining <= 0) {
+          queue.drainTo(batch, maxBatchSize - batch.size());
+          break;
+        } else if (entry == null) {
+          break;
+        }
+        batch.add(entry);
+      }
+
+      List<T> items = new ArrayList<>(batch.size());
+      for (Entry<T> entry : batch) {
+        items.add(entry.item);
+      }
+
+      try {
+        handler.handle(items);
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not handle batch of " + batch.size() + " " + name);
+      } finally {
+        for (Entry<T> entry : batch) {
+          entry.done.countDown();
+        }
+        batch.clear();
+      }
+    }
+  } // method run
+
+  /**
+   * Closes the collector. The queued items are handled before this method returns, the
+   * items submitted afterwards are rejected.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+
+    // the threads handle the queued items before they terminate.
+    executor.shutdown();
+    try {
+      executor.awaitTermination(60, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  } // method close
+
+}
@@ -0,0 +1,278 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+import org.xipki.util.Args;
+
+/**
+ * Cache which can be read and written by many threads without a global lock. It approximates
+ * the LRU order with the CLOCK (second chance) algorithm: a read only marks the entry as
+ * referenced, and the eviction skips once each referenced entry.
+ *
+ * <p>The size of the cache is the sum of the weights of its entries. Values heavier than the
+ * maximal weight are not cached.
+ *
+ * @param <K> type of the key.
+ * @param <V> type of the value.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class ClockCache<K, V> {
+
+  private static class Node<K, V> {
+
+    private final K key;
+
+    private volatile V value;
+
+    // guarded by the node
+    private int weight;
+
+    private volatile boolean referenced;
+
+    // written while holding the node
+    private volatile boolean removed;
+
+    Node(K key, V value, int weight) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+    }
+
+  } // class Node
+
+  // minimal number of removed nodes in the clock before they are purged
+  private static final int MIN_STALE_TO_PURGE = 64;
+
+  private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+
+  // clock of the nodes, each node in the map is contained exactly once
+  private final Queue<Node<K, V>> clock = new ConcurrentLinkedQueue<>();
+
+  private final ToIntFunction<V> weigher;
+
+  private final long maxWeight;
+
+  private final AtomicLong weight = new AtomicLong();
+
+  // number of removed nodes still contained in the clock
+  private final AtomicInteger staleNodes = new AtomicInteger();
+
+  private final AtomicBoolean purging = new AtomicBoolean();
+
+  private final LongAdder evictionCount = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param maxWeight
+   *          Maximal sum of the weights of the entries.
+   * @param weigher
+   *          Function to compute the weight of a value, {@code null} to weigh each value as 1.
+   */
+  public ClockCache(long maxWeight, ToIntFunction<V> weigher) {
+    this.maxWeight = Args.positive(maxWeight, "maxWeight");
+    this.weigher = (weigher == null) ? v -> 1 : weigher;
+  }
+
+  /**
+   * Returns the value of the key and marks it as referenced.
+   *
+   * @param key
+   *          The key.
+   * @return the value, or {@code null} if not cached.
+   */
+  public V get(K key) {
+    Node<K, V> node = map.get(key);
+    if (node == null) {
+      return null;
+    }
+
+    if (!node.referenced) {
+      node.referenced = true;
+    }
+    return node.value;
+  } // method get
+
+  /**
+   * Caches the value, replaces the previous value of the key.
+   *
+   * @param key
+   *          The key.
+   * @param value
+   *          The value.
+   */
+  public void put(K key, V value) {
+    Args.notNull(value, "value");
+    int valueWeight = weigher.applyAsInt(value);
+    if (valueWeight > maxWeight) {
+      remove(key);
+      return;
+    }
+
+    while (true) {
+      Node<K, V> node = map.get(key);
+      if (node == null) {
+        node = new Node<>(key, value, valueWeight);
+        if (map.putIfAbsent(key, node) == null) {
+          weight.addAndGet(valueWeight);
+          clock.offer(node);
+          break;
+        }
+        continue;
+      }
+
+      synchronized (node) {
+        if (!node.removed) {
+          weight.addAndGet(valueWeight - node.weight);
+          node.weight = valueWeight;
+          node.value = value;
+          node.referenced = true;
+          break;
+        }
+      }
+
+      // evicted concurrently, but not yet removed from the map
+      map.remove(key, node);
+    }
+
+    evictIfRequired();
+  } // method put
+
+  /**
+   * Removes the value of the key.
+   *
+   * @param key
+   *          The key.
+   */
+  public void remove(K key) {
+    Node<K, V> node = map.remove(key);
+    if (node != null) {
+      markRemoved(node);
+      purgeIfRequired();
+    }
+  } // method remove
+
+  /**
+   * Removes all values.
+   */
+  public void clear() {
+    for (K key : new ArrayList<>(map.keySet())) {
+      remove(key);
+    }
+  }
+
+  /**
+   * Returns the number of cached values.
+   * @return the number of cached values.
+   */
+  public int size() {
+    return map.size();
+  }
+
+  /**
+   * Returns the sum of the weights of the cached values.
+   * @return the sum of the weights.
+   */
+  public long weight() {
+    return weight.get();
+  }
+
+  public long maxWeight() {
+    return maxWeight;
+  }
+
+  public long evictionCount() {
+    return evictionCount.sum();
+  }
+
+  private boolean markRemoved(Node<K, V> node) {
+    synchronized (node) {
+      if (node.removed) {
+        return false;
+      }
+
+      node.removed = true;
+      weight.addAndGet(-node.weight);
+    }
+    staleNodes.incrementAndGet();
+    return true;
+  } // method markRemoved
+
+  private void evictIfRequired() {
+    while (weight.get() > maxWeight) {
+      Node<K, V> node = clock.poll();
+      if (node == null) {
+        return;
+      }
+
+      if (node.removed) {
+        staleNodes.decrementAndGet();
+        continue;
+      }
+
+      if (node.referenced) {
+        // second chance
+        node.referenced = false;
+        clock.offer(node);
+        continue;
+      }
+
+      if (markRemoved(node)) {
+        map.remove(node.key, node);
+        evictionCount.increment();
+      }
+      // the polled node is not in the clock anymore
+      staleNodes.decrementAndGet();
+    }
+  } // method evictIfRequired
+
+  private void purgeIfRequired() {
+    int stale = staleNodes.get();
+    if (stale < MIN_STALE_TO_PURGE || stale < map.size()) {
+      return;
+    }
+
+    if (purging.compareAndSet(false, true)) {
+      try {
+        clock.removeIf(node -> {
+          if (node.removed) {
+            staleNodes.decrementAndGet();
+            return true;
+          }
+          return false;
+        });
+      } finally {
+        purging.set(false);
+      }
+    }
+  } // method purgeIfRequired
+
+}
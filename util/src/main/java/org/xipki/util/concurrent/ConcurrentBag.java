@@ -217,8 +217,9 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
 
     sharedList.add(bagEntry);
 
-    // spin until a thread takes it or none are waiting
-    while (waiters.get() > 0 && !handoffQueue.offer(bagEntry)) {
+    // spin until a thread takes it or none are waiting, an entry in use cannot be taken
+    while (waiters.get() > 0 && bagEntry.getState() == STATE_NOT_IN_USE
+        && !handoffQueue.offer(bagEntry)) {
       yield();
     }
   }
@@ -0,0 +1,310 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util.concurrent;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xipki.util.Args;
+import org.xipki.util.concurrent.ConcurrentBag.IConcurrentBagEntry;
+
+/**
+ * Pool of resources backed by a {@link ConcurrentBag}, which grows on demand up to a maximal
+ * size without any global lock. A borrowed entry is returned to the thread-local list of
+ * the borrowing thread, so that a thread will reuse the same resource if possible.
+ *
+ * <p>The pool collects the borrow-wait latency and how often the pool is saturated, namely
+ * all resources are in use and the maximal size has been reached.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class ConcurrentBagPool<T> implements AutoCloseable {
+
+  /**
+   * Factory to create new resource.
+   *
+   * @param <T> type of the resource
+   * @param <E> type of exception thrown by the factory
+   */
+  public interface ResourceFactory<T, E extends Exception> {
+
+    T newResource() throws E;
+
+  } // interface ResourceFactory
+
+  /**
+   * Snapshot of the statistics of the pool.
+   */
+  public static class Statistics {
+
+    private final int size;
+
+    private final int maxSize;
+
+    private final int inUse;
+
+    private final int waitingThreads;
+
+    private final long borrows;
+
+    private final long waits;
+
+    private final long saturations;
+
+    private final long timeouts;
+
+    private final long totalWaitNanos;
+
+    private final long maxWaitNanos;
+
+    private Statistics(int size, int maxSize, int inUse, int waitingThreads, long borrows,
+        long waits, long saturations, long timeouts, long totalWaitNanos, long maxWaitNanos) {
+      this.size = size;
+      this.maxSize = maxSize;
+      this.inUse = inUse;
+      this.waitingThreads = waitingThreads;
+      this.borrows = borrows;
+      this.waits = waits;
+      this.saturations = saturations;
+      this.timeouts = timeouts;
+      this.totalWaitNanos = totalWaitNanos;
+      this.maxWaitNanos = maxWaitNanos;
+    }
+
+    public int getSize() {
+      return size;
+    }
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    public int getInUse() {
+      return inUse;
+    }
+
+    public int getWaitingThreads() {
+      return waitingThreads;
+    }
+
+    public long getBorrows() {
+      return borrows;
+    }
+
+    /**
+     * Returns the number of borrows which could not be served immediately.
+     * @return the number of borrows which had to wait.
+     */
+    public long getWaits() {
+      return waits;
+    }
+
+    /**
+     * Returns the number of borrows which found the pool saturated.
+     * @return the number of borrows which found the pool saturated.
+     */
+    public long getSaturations() {
+      return saturations;
+    }
+
+    public long getTimeouts() {
+      return timeouts;
+    }
+
+    public long getTotalWaitNanos() {
+      return totalWaitNanos;
+    }
+
+    public long getMaxWaitNanos() {
+      return maxWaitNanos;
+    }
+
+    public long getAverageWaitNanos() {
+      return waits == 0 ? 0 : totalWaitNanos / waits;
+    }
+
+    @Override
+    public String toString() {
+      return "size=" + size + ", maxSize=" + maxSize + ", inUse=" + inUse
+          + ", waitingThreads=" + waitingThreads + ", borrows=" + borrows + ", waits=" + waits
+          + ", saturations=" + saturations + ", timeouts=" + timeouts
+          + ", avgWaitUs=" + getAverageWaitNanos() / 1000 + ", maxWaitUs=" + maxWaitNanos / 1000;
+    }
+
+  } // class Statistics
+
+  private final ConcurrentBag<ConcurrentBagEntry<T>> bag = new ConcurrentBag<>();
+
+  private final AtomicInteger size = new AtomicInteger(0);
+
+  private volatile int maxSize;
+
+  private final AtomicLong borrows = new AtomicLong(0);
+
+  private final AtomicLong waits = new AtomicLong(0);
+
+  private final AtomicLong saturations = new AtomicLong(0);
+
+  private final AtomicLong timeouts = new AtomicLong(0);
+
+  private final AtomicLong totalWaitNanos = new AtomicLong(0);
+
+  private final AtomicLong maxWaitNanos = new AtomicLong(0);
+
+  public ConcurrentBagPool(int maxSize) {
+    this.maxSize = Args.positive(maxSize, "maxSize");
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public void setMaxSize(int maxSize) {
+    this.maxSize = Args.positive(maxSize, "maxSize");
+  }
+
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * Adds an existing resource to the pool. The resource is counted against the maximal size.
+   *
+   * @param resource the resource to be added. Must not be {@code null}.
+   */
+  public void add(T resource) {
+    size.incrementAndGet();
+    bag.add(new ConcurrentBagEntry<>(Args.notNull(resource, "resource")));
+  }
+
+  /**
+   * Borrows a resource from the pool. If no idle resource is available and the pool has not
+   * reached its maximal size, a new resource will be created via the given factory.
+   * Otherwise this method waits until a resource is requited or the timeout occurs.
+   *
+   * @param <E> type of exception thrown by the factory
+   * @param timeout how long to wait before giving up, in units of unit
+   * @param timeUnit a <code>TimeUnit</code> determining how to interpret the timeout parameter
+   * @param factory factory to create new resource. May be {@code null}, then the pool will
+   *        not grow.
+   * @return a borrowed entry or {@code null} if a timeout occurs.
+   * @throws E if the factory could not create new resource.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public <E extends Exception> ConcurrentBagEntry<T> borrow(long timeout, TimeUnit timeUnit,
+      ResourceFactory<T, E> factory) throws E, InterruptedException {
+    borrows.incrementAndGet();
+
+    ConcurrentBagEntry<T> entry = bag.borrow(0, TimeUnit.NANOSECONDS);
+    if (entry != null) {
+      return entry;
+    }
+
+    if (factory != null) {
+      // reserve a slot via CAS, no lock is required.
+      int current;
+      while ((current = size.get()) < maxSize) {
+        if (size.compareAndSet(current, current + 1)) {
+          T resource = null;
+          try {
+            resource = factory.newResource();
+          } finally {
+            if (resource == null) {
+              size.decrementAndGet();
+            }
+          }
+
+          if (resource == null) {
+            throw new IllegalStateException("factory returned null resource");
+          }
+
+          entry = new ConcurrentBagEntry<>(resource);
+          // mark it in-use before adding, so that it is neither taken by nor handed off to
+          // the waiting threads.
+          entry.setState(IConcurrentBagEntry.STATE_IN_USE);
+          bag.add(entry);
+          return entry;
+        }
+      }
+    }
+
+    if (size.get() >= maxSize) {
+      saturations.incrementAndGet();
+    }
+    waits.incrementAndGet();
+    long start = System.nanoTime();
+    try {
+      entry = bag.borrow(timeout, timeUnit);
+    } finally {
+      long waitNanos = System.nanoTime() - start;
+      totalWaitNanos.addAndGet(waitNanos);
+      long max;
+      while ((max = maxWaitNanos.get()) < waitNanos) {
+        if (maxWaitNanos.compareAndSet(max, waitNanos)) {
+          break;
+        }
+      }
+    }
+
+    if (entry == null) {
+      timeouts.incrementAndGet();
+    }
+    return entry;
+  } // method borrow
+
+  /**
+   * Returns the borrowed entry to the pool.
+   *
+   * @param entry the borrowed entry.
+   */
+  public void requite(ConcurrentBagEntry<T> entry) {
+    bag.requite(entry);
+  }
+
+  /**
+   * Removes the borrowed entry from the pool, e.g. if the resource is broken.
+   *
+   * @param entry the borrowed entry.
+   */
+  public void remove(ConcurrentBagEntry<T> entry) {
+    if (bag.remove(entry)) {
+      size.decrementAndGet();
+    }
+  }
+
+  public List<ConcurrentBagEntry<T>> values() {
+    return bag.values();
+  }
+
+  public Statistics getStatistics() {
+    return new Statistics(size.get(), maxSize, bag.getCount(IConcurrentBagEntry.STATE_IN_USE),
+        bag.getWaitingThreadCount(), borrows.get(), waits.get(), saturations.get(),
+        timeouts.get(), totalWaitNanos.get(), maxWaitNanos.get());
+  }
+
+  @Override
+  public void close() {
+    bag.close();
+    size.set(0);
+  }
+
+} // class ConcurrentBagPool
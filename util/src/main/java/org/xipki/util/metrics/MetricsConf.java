@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util.metrics;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.xipki.util.InvalidConfException;
+import org.xipki.util.ValidatableConf;
+
+/**
+ * Configuration of the HTTP endpoint /metrics.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class MetricsConf extends ValidatableConf {
+
+  /**
+   * Whether the endpoint is enabled, the default is false.
+   */
+  private boolean enabled;
+
+  /**
+   * IP addresses of the clients permitted to read the metrics. If not set, only the clients
+   * on the loopback interface are permitted.
+   */
+  private List<String> clientAddresses;
+
+  private Set<InetAddress> inetAddresses;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public List<String> getClientAddresses() {
+    return clientAddresses;
+  }
+
+  public void setClientAddresses(List<String> clientAddresses) {
+    this.clientAddresses = clientAddresses;
+    this.inetAddresses = null;
+  }
+
+  /**
+   * Whether the client is permitted to read the metrics.
+   *
+   * @param remoteAddr
+   *          IP address of the client, as returned by ServletRequest.getRemoteAddr().
+   * @return whether the client is permitted.
+   */
+  public boolean isClientPermitted(String remoteAddr) {
+    InetAddress addr;
+    try {
+      addr = parseIpAddress(remoteAddr);
+    } catch (InvalidConfException ex) {
+      return false;
+    }
+
+    Set<InetAddress> permitted = inetAddresses;
+    if (permitted == null) {
+      try {
+        permitted = parseClientAddresses();
+      } catch (InvalidConfException ex) {
+        return false;
+      }
+      inetAddresses = permitted;
+    }
+
+    return permitted.isEmpty() ? addr.isLoopbackAddress() : permitted.contains(addr);
+  } // method isClientPermitted
+
+  @Override
+  public void validate() throws InvalidConfException {
+    inetAddresses = parseClientAddresses();
+  }
+
+  private Set<InetAddress> parseClientAddresses() throws InvalidConfException {
+    Set<InetAddress> ret = new HashSet<>();
+    if (clientAddresses != null) {
+      for (String m : clientAddresses) {
+        ret.add(parseIpAddress(m));
+      }
+    }
+    return ret;
+  }
+
+  private static InetAddress parseIpAddress(String addr) throws InvalidConfException {
+    // accept only IP literals, so that no name resolution is triggered
+    if (addr == null || addr.isEmpty()
+        || !(addr.indexOf(':') != -1 || addr.matches("[0-9]{1,3}(\\.[0-9]{1,3}){3}"))) {
+      throw new InvalidConfException("invalid IP address '" + addr + "'");
+    }
+
+    try {
+      return InetAddress.getByName(addr);
+    } catch (UnknownHostException ex) {
+      throw new InvalidConfException("invalid IP address '" + addr + "'");
+    }
+  } // method parseIpAddress
+
+}
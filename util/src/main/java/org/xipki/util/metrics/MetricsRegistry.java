@@ -0,0 +1,397 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util.metrics;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.xipki.util.Args;
+import org.xipki.util.LatencyHistogram;
+
+/**
+ * Registry of the metrics: counters, gauges and latency histograms. A metric is identified by
+ * its name and labels, the labels are specified as pairs of name and value. Recording a value
+ * is lock-free, the caller should keep the returned counter or histogram instead of looking it
+ * up for each value.
+ *
+ * <p>The metrics can be written in the Prometheus text format, the latency histograms are
+ * written as histograms in seconds. The buckets are cumulative since the start, quantiles over
+ * a time window are computed by Prometheus, e.g.
+ * {@code histogram_quantile(0.99, rate(name_bucket[5m]))}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class MetricsRegistry {
+
+  private enum Type {
+    counter,
+    gauge,
+    histogram
+  }
+
+  private static class Family {
+
+    private final String name;
+
+    private final String help;
+
+    private final Type type;
+
+    private final ConcurrentMap<String, Sample> samples = new ConcurrentHashMap<>();
+
+    Family(String name, String help, Type type) {
+      this.name = name;
+      this.help = help;
+      this.type = type;
+    }
+
+  } // class Family
+
+  private static class Sample {
+
+    private final String[] labels;
+
+    private final Object metric;
+
+    Sample(String[] labels, Object metric) {
+      this.labels = labels;
+      this.metric = metric;
+    }
+
+  } // class Sample
+
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+  private static final Pattern LABEL_NAME_PATTERN = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+
+  // upper bounds of the histogram buckets, in seconds
+  private static final String[] BUCKETS = {"0.0005", "0.001", "0.0025", "0.005", "0.01",
+      "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"};
+
+  private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+  private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the registry shared in this application.
+   * @return the shared registry.
+   */
+  public static MetricsRegistry getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Returns the counter, creates it if not present.
+   *
+   * @param name
+   *          Name of the metric.
+   * @param help
+   *          Description of the metric.
+   * @param labels
+   *          Pairs of label name and value.
+   * @return the counter.
+   */
+  public LongAdder counter(String name, String help, String... labels) {
+    return get(name, help, Type.counter, labels, LongAdder.class, LongAdder::new);
+  }
+
+  /**
+   * Registers a counter maintained by the caller, replaces the existing one.
+   *
+   * @param name
+   *          Name of the metric.
+   * @param help
+   *          Description of the metric.
+   * @param value
+   *          Supplier of the current value.
+   * @param labels
+   *          Pairs of label name and value.
+   */
+  public void counter(String name, String help, LongSupplier value, String... labels) {
+    register(name, help, Type.counter, labels, Args.notNull(value, "value"));
+  }
+
+  /**
+   * Registers a gauge, replaces the existing one.
+   *
+   * @param name
+   *          Name of the metric.
+   * @param help
+   *          Description of the metric.
+   * @param value
+   *          Supplier of the current value.
+   * @param labels
+   *          Pairs of label name and value.
+   */
+  public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+    register(name, help, Type.gauge, labels, Args.notNull(value, "value"));
+  }
+
+  /**
+   * Returns the latency histogram, creates it if not present.
+   *
+   * @param name
+   *          Name of the metric.
+   * @param help
+   *          Description of the metric.
+   * @param labels
+   *          Pairs of label name and value.
+   * @return the latency histogram.
+   */
+  public LatencyHistogram latency(String name, String help, String... labels) {
+    return get(name, help, Type.histogram, labels, LatencyHistogram.class, LatencyHistogram::new);
+  }
+
+  /**
+   * Registers a latency histogram maintained by the caller, replaces the existing one.
+   *
+   * @param name
+   *          Name of the metric.
+   * @param help
+   *          Description of the metric.
+   * @param histogram
+   *          The latency histogram.
+   * @param labels
+   *          Pairs of label name and value.
+   */
+  public void latency(String name, String help, LatencyHistogram histogram, String... labels) {
+    register(name, help, Type.histogram, labels, Args.notNull(histogram, "histogram"));
+  }
+
+  /**
+   * Removes the metric.
+   *
+   * @param name
+   *          Name of the metric.
+   * @param labels
+   *          Pairs of label name and value.
+   */
+  public void remove(String name, String... labels) {
+    Family family = families.get(name);
+    if (family != null) {
+      family.samples.remove(labelsText(labels));
+    }
+  }
+
+  /**
+   * Removes all metrics with the given label.
+   *
+   * @param labelName
+   *          Name of the label.
+   * @param labelValue
+   *          Value of the label.
+   */
+  public void removeAll(String labelName, String labelValue) {
+    for (Family family : families.values()) {
+      Iterator<Sample> it = family.samples.values().iterator();
+      while (it.hasNext()) {
+        String[] labels = it.next().labels;
+        for (int i = 0; i < labels.length; i += 2) {
+          if (labels[i].equals(labelName) && labels[i + 1].equals(labelValue)) {
+            it.remove();
+            break;
+          }
+        }
+      }
+    }
+  } // method removeAll
+
+  /**
+   * Writes all metrics in the Prometheus text format (version 0.0.4).
+   *
+   * @param out
+   *          Where the metrics are written to.
+   * @throws IOException if the metrics could not be written.
+   */
+  public void writeTextFormat(Appendable out) throws IOException {
+    Map<String, Family> sortedFamilies = new TreeMap<>(families);
+    for (Family family : sortedFamilies.values()) {
+      Map<String, Sample> samples = new TreeMap<>(family.samples);
+      if (samples.isEmpty()) {
+        continue;
+      }
+
+      out.append("# HELP ").append(family.name).append(' ')
+        .append(escapeHelp(family.help)).append('\n');
+      out.append("# TYPE ").append(family.name).append(' ')
+        .append(family.type.name()).append('\n');
+
+      for (Map.Entry<String, Sample> entry : samples.entrySet()) {
+        String labelsText = entry.getKey();
+        Object metric = entry.getValue().metric;
+
+        if (metric instanceof LatencyHistogram) {
+          LatencyHistogram histogram = (LatencyHistogram) metric;
+          // read the count first, the buckets may contain later values
+          long count = histogram.getCount();
+          double sum = toSeconds(histogram.getSumMicros());
+          for (String bucket : BUCKETS) {
+            long bucketCount = Math.min(count,
+                histogram.getCountAtOrBelow(Math.round(Double.parseDouble(bucket) * 1e6)));
+            writeSample(out, family.name + "_bucket", bucketLabels(labelsText, bucket),
+                Long.toString(bucketCount));
+          }
+          writeSample(out, family.name + "_bucket",
+              bucketLabels(labelsText, "+Inf"), Long.toString(count));
+          writeSample(out, family.name + "_sum", labelsText, formatDouble(sum));
+          writeSample(out, family.name + "_count", labelsText, Long.toString(count));
+        } else {
+          String value;
+          if (metric instanceof LongAdder) {
+            value = Long.toString(((LongAdder) metric).sum());
+          } else if (metric instanceof LongSupplier) {
+            value = Long.toString(((LongSupplier) metric).getAsLong());
+          } else {
+            value = formatDouble(((DoubleSupplier) metric).getAsDouble());
+          }
+          writeSample(out, family.name, labelsText, value);
+        }
+      }
+    }
+  } // method writeTextFormat
+
+  private <T> T get(String name, String help, Type type, String[] labels, Class<T> clazz,
+      Supplier<T> creator) {
+    Family family = getFamily(name, help, type);
+    String labelsText = labelsText(labels);
+
+    Sample sample = family.samples.get(labelsText);
+    if (sample == null) {
+      sample = family.samples.computeIfAbsent(labelsText,
+          k -> new Sample(copyLabels(labels), creator.get()));
+    }
+
+    if (!clazz.isInstance(sample.metric)) {
+      throw new IllegalArgumentException("metric " + name + labelsText
+          + " is not a " + clazz.getSimpleName());
+    }
+    return clazz.cast(sample.metric);
+  } // method get
+
+  private void register(String name, String help, Type type, String[] labels, Object metric) {
+    String labelsText = labelsText(labels);
+    getFamily(name, help, type).samples.put(labelsText, new Sample(copyLabels(labels), metric));
+  }
+
+  private Family getFamily(String name, String help, Type type) {
+    Family family = families.get(name);
+    if (family == null) {
+      if (!NAME_PATTERN.matcher(Args.notBlank(name, "name")).matches()) {
+        throw new IllegalArgumentException("invalid metric name " + name);
+      }
+      family = families.computeIfAbsent(name,
+          k -> new Family(name, Args.notNull(help, "help"), type));
+    }
+
+    if (family.type != type) {
+      throw new IllegalArgumentException("metric " + name + " is not a " + type);
+    }
+    return family;
+  } // method getFamily
+
+  private static String[] copyLabels(String[] labels) {
+    if (labels == null) {
+      return new String[0];
+    }
+
+    for (int i = 0; i < labels.length; i += 2) {
+      if (!LABEL_NAME_PATTERN.matcher(labels[i]).matches() || "le".equals(labels[i])) {
+        throw new IllegalArgumentException("invalid label name " + labels[i]);
+      }
+    }
+    return Arrays.copyOf(labels, labels.length);
+  }
+
+  private static String labelsText(String[] labels) {
+    if (labels == null || labels.length == 0) {
+      return "";
+    }
+
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException("labels must be pairs of name and value");
+    }
+
+    StringBuilder sb = new StringBuilder();
+    sb.append('{');
+    for (int i = 0; i < labels.length; i += 2) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(labels[i]).append("=\"");
+
+      String value = Args.notNull(labels[i + 1], "label value");
+      for (int j = 0; j < value.length(); j++) {
+        char ch = value.charAt(j);
+        if (ch == '\\' || ch == '"') {
+          sb.append('\\').append(ch);
+        } else if (ch == '\n') {
+          sb.append("\\n");
+        } else {
+          sb.append(ch);
+        }
+      }
+      sb.append('"');
+    }
+    sb.append('}');
+    return sb.toString();
+  } // method labelsText
+
+  private static String bucketLabels(String labelsText, String bucket) {
+    String leLabel = "le=\"" + bucket + "\"";
+    return labelsText.isEmpty() ? "{" + leLabel + "}"
+        : labelsText.substring(0, labelsText.length() - 1) + "," + leLabel + "}";
+  }
+
+  private static String escapeHelp(String help) {
+    return help.replace("\\", "\\\\").replace("\n", "\\n");
+  }
+
+  private static void writeSample(Appendable out, String name, String labelsText, String value)
+      throws IOException {
+    out.append(name).append(labelsText).append(' ').append(value).append('\n');
+  }
+
+  private static double toSeconds(long micros) {
+    return micros / 1e6;
+  }
+
+  private static String formatDouble(double value) {
+    if (Double.isNaN(value)) {
+      return "NaN";
+    } else if (Double.isInfinite(value)) {
+      return value > 0 ? "+Inf" : "-Inf";
+    } else {
+      return Double.toString(value);
+    }
+  }
+
+}
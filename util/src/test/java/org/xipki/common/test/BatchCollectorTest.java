@@ -0,0 +1,105 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.util.concurrent.BatchCollector;
+
+/**
+ * Test for {@link BatchCollector}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class BatchCollectorTest {
+
+  @Test
+  public void testCollectConcurrentItems() throws Exception {
+    final int threadsNum = 8;
+    final AtomicInteger batches = new AtomicInteger();
+    final AtomicInteger items = new AtomicInteger();
+    final AtomicInteger largest = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+
+    BatchCollector<int[]> collector = new BatchCollector<>("items", batch -> {
+      batches.incrementAndGet();
+      items.addAndGet(batch.size());
+      largest.accumulateAndGet(batch.size(), Math::max);
+      for (int[] item : batch) {
+        item[0] = 1;
+      }
+    }, 4, 50, 1);
+
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < threadsNum; i++) {
+      threads.add(new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException ex) {
+          failures.incrementAndGet();
+          return;
+        }
+
+        for (int j = 0; j < 10; j++) {
+          int[] item = new int[1];
+          if (!collector.submit(item) || item[0] != 1) {
+            failures.incrementAndGet();
+          }
+        }
+      }));
+    }
+
+    for (Thread t : threads) {
+      t.start();
+    }
+    start.countDown();
+    for (Thread t : threads) {
+      t.join();
+    }
+    collector.close();
+
+    Assert.assertEquals("failures", 0, failures.get());
+    Assert.assertEquals("items", threadsNum * 10, items.get());
+    Assert.assertTrue("largest batch " + largest.get(), largest.get() <= 4);
+    Assert.assertTrue("batches " + batches.get(), batches.get() < items.get());
+  } // method testCollectConcurrentItems
+
+  @Test
+  public void testHandlerFailureAndClose() throws Exception {
+    BatchCollector<int[]> collector = new BatchCollector<>("items", batch -> {
+      throw new IllegalStateException("failure");
+    }, 4, 0, 2);
+
+    // the submitter is released even if the handler fails.
+    int[] item = new int[1];
+    Assert.assertTrue(collector.submit(item));
+    Assert.assertEquals(0, item[0]);
+
+    collector.close();
+    Assert.assertFalse("submit after close", collector.submit(new int[1]));
+  } // method testHandlerFailureAndClose
+
+}
@@ -0,0 +1,134 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.util.BenchmarkExecutor;
+import org.xipki.util.LatencyHistogram;
+
+/**
+ * Test for the latency percentiles of {@link BenchmarkExecutor}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class BenchmarkExecutorTest {
+
+  private static final int THREADS = 4;
+
+  private static final int OPS_PER_THREAD = 1000;
+
+  /**
+   * Each testor accounts the operations with the latencies 1, 2, ..., 1000 ms.
+   */
+  private static class LatencyBenchmark extends BenchmarkExecutor {
+
+    LatencyBenchmark() {
+      super("latency test", THREADS * OPS_PER_THREAD);
+    }
+
+    @Override
+    protected Runnable getTestor() {
+      return () -> {
+        for (int i = 1; i <= OPS_PER_THREAD; i++) {
+          account(1, 0, i * 1_000_000L);
+        }
+      };
+    }
+
+  } // class LatencyBenchmark
+
+  @Test
+  public void testPercentiles() throws Exception {
+    LatencyBenchmark benchmark = new LatencyBenchmark();
+    benchmark.setThreads(THREADS);
+    benchmark.setUnit("op");
+
+    String output = execute(benchmark);
+
+    // all testor threads record into the same histogram
+    LatencyHistogram histogram = benchmark.getLatencyHistogram();
+    Assert.assertEquals(THREADS * OPS_PER_THREAD, histogram.getCount());
+    assertAbout("p50", 500_000, histogram.getPercentileMicros(50));
+    assertAbout("p99", 990_000, histogram.getPercentileMicros(99));
+    assertAbout("p99.9", 999_000, histogram.getPercentileMicros(99.9));
+    Assert.assertEquals(1000, histogram.getMinMicros());
+    Assert.assertEquals(1_000_000, histogram.getMaxMicros());
+
+    // columns of the status line
+    Assert.assertTrue(output, output.contains("p50"));
+    Assert.assertTrue(output, output.contains("p99.9"));
+
+    // summary
+    Assert.assertEquals(1.0, summaryValue(output, "min"), 0.001);
+    Assert.assertEquals(500.5, summaryValue(output, "mean"), 0.5);
+    Assert.assertEquals(500, summaryValue(output, "p50"), 500 / 64.0);
+    Assert.assertEquals(900, summaryValue(output, "p90"), 900 / 64.0);
+    Assert.assertEquals(990, summaryValue(output, "p99"), 990 / 64.0);
+    Assert.assertEquals(999, summaryValue(output, "p99.9"), 999 / 64.0);
+    Assert.assertEquals(1000, summaryValue(output, "p99.99"), 1000 / 64.0);
+    Assert.assertEquals(1000, summaryValue(output, "max"), 0.001);
+  } // method testPercentiles
+
+  @Test
+  public void testNoLatency() throws Exception {
+    BenchmarkExecutor benchmark = new BenchmarkExecutor("no latency test", 10) {
+      @Override
+      protected Runnable getTestor() {
+        return () -> account(5, 0);
+      }
+    };
+    benchmark.setThreads(2);
+
+    String output = execute(benchmark);
+    Assert.assertEquals(0, benchmark.getLatencyHistogram().getCount());
+    Assert.assertFalse(output, output.contains("latency ms:"));
+  } // method testNoLatency
+
+  private static String execute(BenchmarkExecutor benchmark) throws Exception {
+    PrintStream origOut = System.out;
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(bout, true, "UTF-8"));
+    try {
+      benchmark.execute();
+    } finally {
+      System.setOut(origOut);
+    }
+    return new String(bout.toByteArray(), "UTF-8");
+  } // method execute
+
+  private static double summaryValue(String output, String name) {
+    Matcher matcher = Pattern.compile("[ ,]" + Pattern.quote(name) + "=([0-9.]+)")
+        .matcher(output);
+    Assert.assertTrue("no " + name + " in the summary: " + output, matcher.find());
+    return Double.parseDouble(matcher.group(1));
+  } // method summaryValue
+
+  private static void assertAbout(String desc, long expected, long actual) {
+    Assert.assertTrue(desc + ": expected about " + expected + ", but is " + actual,
+        Math.abs(actual - expected) <= expected / 64);
+  }
+
+}
@@ -0,0 +1,144 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.util.concurrent.ClockCache;
+
+/**
+ * Test for {@link ClockCache}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class ClockCacheTest {
+
+  @Test
+  public void testPutGetRemove() {
+    ClockCache<Integer, String> cache = new ClockCache<>(100, String::length);
+    cache.put(1, "abc");
+    cache.put(2, "de");
+    Assert.assertEquals("abc", cache.get(1));
+    Assert.assertEquals("de", cache.get(2));
+    Assert.assertEquals(5, cache.weight());
+
+    // replacement updates the weight
+    cache.put(1, "abcdef");
+    Assert.assertEquals("abcdef", cache.get(1));
+    Assert.assertEquals(8, cache.weight());
+    Assert.assertEquals(2, cache.size());
+
+    cache.remove(1);
+    Assert.assertNull(cache.get(1));
+    Assert.assertEquals(2, cache.weight());
+
+    cache.clear();
+    Assert.assertEquals(0, cache.size());
+    Assert.assertEquals(0, cache.weight());
+  } // method testPutGetRemove
+
+  @Test
+  public void testEvictionGivesSecondChance() {
+    ClockCache<Integer, String> cache = new ClockCache<>(3, null);
+    cache.put(1, "a");
+    cache.put(2, "b");
+    cache.put(3, "c");
+
+    // 1 is referenced, hence 2 is evicted instead
+    cache.get(1);
+    cache.put(4, "d");
+
+    Assert.assertEquals(3, cache.size());
+    Assert.assertEquals(1, cache.evictionCount());
+    Assert.assertEquals("a", cache.get(1));
+    Assert.assertNull(cache.get(2));
+    Assert.assertEquals("c", cache.get(3));
+    Assert.assertEquals("d", cache.get(4));
+  } // method testEvictionGivesSecondChance
+
+  @Test
+  public void testTooHeavyValueNotCached() {
+    ClockCache<Integer, String> cache = new ClockCache<>(4, String::length);
+    cache.put(1, "abc");
+    cache.put(1, "abcdefgh");
+    Assert.assertNull(cache.get(1));
+    Assert.assertEquals(0, cache.weight());
+  }
+
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    final int maxWeight = 200;
+    final ClockCache<Integer, String> cache = new ClockCache<>(maxWeight, String::length);
+    final AtomicInteger wrongValues = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      threads.add(new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException ex) {
+          return;
+        }
+
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        for (int j = 0; j < 20000; j++) {
+          int key = rnd.nextInt(500);
+          int op = rnd.nextInt(10);
+          if (op < 6) {
+            String value = cache.get(key);
+            if (value != null && !value.startsWith(key + ":")) {
+              wrongValues.incrementAndGet();
+            }
+          } else if (op < 9) {
+            cache.put(key, key + ":" + (j % 7));
+          } else {
+            cache.remove(key);
+          }
+        }
+      }));
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals("wrong values", 0, wrongValues.get());
+    // concurrent evictions may overshoot the maximal weight temporarily
+    cache.put(-1, "-1:");
+    Assert.assertTrue("weight " + cache.weight(), cache.weight() <= maxWeight);
+
+    // the tracked weight matches the cached values
+    cache.clear();
+    Assert.assertEquals(0, cache.size());
+    Assert.assertEquals(0, cache.weight());
+  } // method testConcurrentAccess
+
+}
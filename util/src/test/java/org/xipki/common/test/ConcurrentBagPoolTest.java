@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.util.concurrent.ConcurrentBagEntry;
+import org.xipki.util.concurrent.ConcurrentBagPool;
+
+/**
+ * Test for {@link ConcurrentBagPool}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class ConcurrentBagPoolTest {
+
+  @Test
+  public void testGrowUpToMaxSize() throws Exception {
+    final int maxSize = 4;
+    final ConcurrentBagPool<Integer> pool = new ConcurrentBagPool<>(maxSize);
+    final AtomicInteger created = new AtomicInteger();
+    final AtomicInteger inUse = new AtomicInteger();
+    final AtomicInteger maxInUse = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      threads.add(new Thread(() -> {
+        for (int j = 0; j < 200; j++) {
+          try {
+            ConcurrentBagEntry<Integer> entry = pool.borrow(10, TimeUnit.SECONDS,
+                () -> created.incrementAndGet());
+            if (entry == null) {
+              failures.incrementAndGet();
+              continue;
+            }
+
+            int n = inUse.incrementAndGet();
+            maxInUse.accumulateAndGet(n, Math::max);
+            Thread.yield();
+            inUse.decrementAndGet();
+            pool.requite(entry);
+          } catch (InterruptedException ex) {
+            failures.incrementAndGet();
+          }
+        }
+      }));
+    }
+
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    ConcurrentBagPool.Statistics stats = pool.getStatistics();
+    Assert.assertEquals("failures", 0, failures.get());
+    Assert.assertTrue("created resources", created.get() <= maxSize);
+    Assert.assertTrue("concurrently used resources", maxInUse.get() <= maxSize);
+    Assert.assertEquals("pool size", created.get(), stats.getSize());
+    Assert.assertEquals("borrows", 16 * 200, stats.getBorrows());
+    Assert.assertEquals("in use", 0, stats.getInUse());
+    pool.close();
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    ConcurrentBagPool<String> pool = new ConcurrentBagPool<>(1);
+    pool.add("resource");
+
+    ConcurrentBagEntry<String> entry = pool.borrow(1, TimeUnit.SECONDS, null);
+    Assert.assertNotNull("first borrow", entry);
+    Assert.assertNull("second borrow", pool.borrow(10, TimeUnit.MILLISECONDS, () -> "new"));
+
+    ConcurrentBagPool.Statistics stats = pool.getStatistics();
+    Assert.assertEquals("size", 1, stats.getSize());
+    Assert.assertEquals("saturations", 1, stats.getSaturations());
+    Assert.assertEquals("timeouts", 1, stats.getTimeouts());
+
+    pool.requite(entry);
+    Assert.assertNotNull("borrow after requite", pool.borrow(1, TimeUnit.SECONDS, null));
+    pool.close();
+  }
+
+  @Test
+  public void testCreateWhileWaiting() throws Exception {
+    ConcurrentBagPool<String> pool = new ConcurrentBagPool<>(2);
+    pool.add("resource");
+    ConcurrentBagEntry<String> entry = pool.borrow(1, TimeUnit.SECONDS, null);
+
+    final AtomicInteger waiterBorrows = new AtomicInteger();
+    Thread waiter = new Thread(() -> {
+      try {
+        if (pool.borrow(30, TimeUnit.SECONDS, null) != null) {
+          waiterBorrows.incrementAndGet();
+        }
+      } catch (InterruptedException ex) {
+        // do nothing
+      }
+    });
+    waiter.start();
+
+    while (pool.getStatistics().getWaitingThreads() == 0) {
+      Thread.sleep(1);
+    }
+
+    // the new entry is returned without waiting until the waiter has given up
+    ConcurrentBagEntry<String> newEntry = pool.borrow(0, TimeUnit.SECONDS, () -> "new");
+    Assert.assertEquals("new resource", "new", newEntry.value());
+    Assert.assertTrue("waiter still waiting", waiter.isAlive());
+
+    pool.requite(entry);
+    waiter.join();
+    Assert.assertEquals("borrows of waiter", 1, waiterBorrows.get());
+    pool.close();
+  }
+
+}
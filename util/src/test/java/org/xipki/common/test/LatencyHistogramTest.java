@@ -0,0 +1,100 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.util.LatencyHistogram;
+
+/**
+ * Test for {@link LatencyHistogram}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testExactSmallValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+
+    Assert.assertEquals("count", 100, histogram.getCount());
+    Assert.assertEquals("min", 1, histogram.getMinMicros());
+    Assert.assertEquals("max", 100, histogram.getMaxMicros());
+    Assert.assertEquals("p50", 50, histogram.getPercentileMicros(50));
+    Assert.assertEquals("p99", 99, histogram.getPercentileMicros(99));
+    Assert.assertEquals("p100", 100, histogram.getPercentileMicros(100));
+  }
+
+  @Test
+  public void testRelativeError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value < 100_000_000L; value = value * 3 / 2 + 1) {
+      histogram.reset();
+      histogram.record(value);
+      histogram.record(value * 100);
+
+      long p50 = histogram.getPercentileMicros(50);
+      Assert.assertTrue("p50 of " + value + " is too small: " + p50, p50 >= value);
+      Assert.assertTrue("p50 of " + value + " is too large: " + p50,
+          p50 - value <= value / 64);
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    // 990 fast operations with 1 ms, 9 slow ones with 100 ms, one very slow with 2 s
+    for (int i = 0; i < 990; i++) {
+      histogram.recordNanos(1_000_000L);
+    }
+    for (int i = 0; i < 9; i++) {
+      histogram.recordNanos(100_000_000L);
+    }
+    histogram.recordNanos(2_000_000_000L);
+
+    assertAbout("p50", 1000, histogram.getPercentileMicros(50));
+    assertAbout("p99", 1000, histogram.getPercentileMicros(99));
+    assertAbout("p99.9", 100_000, histogram.getPercentileMicros(99.9));
+    assertAbout("p99.99", 2_000_000, histogram.getPercentileMicros(99.99));
+    Assert.assertEquals("max", 2_000_000, histogram.getMaxMicros());
+  }
+
+  private static void assertAbout(String desc, long expected, long actual) {
+    Assert.assertTrue(desc + ": expected about " + expected + ", but is " + actual,
+        Math.abs(actual - expected) <= expected / 64);
+  }
+
+  @Test
+  public void testCountAtOrBelow() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1000);
+    }
+
+    Assert.assertEquals("below first", 0, histogram.getCountAtOrBelow(900));
+    Assert.assertEquals("at 50ms", 50, histogram.getCountAtOrBelow(50_000));
+    Assert.assertEquals("at 100ms", 100, histogram.getCountAtOrBelow(100_000));
+    Assert.assertEquals("negative", 0, histogram.getCountAtOrBelow(-1));
+  }
+
+}
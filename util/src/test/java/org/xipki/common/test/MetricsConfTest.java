@@ -0,0 +1,69 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.util.InvalidConfException;
+import org.xipki.util.metrics.MetricsConf;
+
+/**
+ * Test for {@link MetricsConf}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class MetricsConfTest {
+
+  @Test
+  public void testDisabledByDefault() {
+    Assert.assertFalse(new MetricsConf().isEnabled());
+  }
+
+  @Test
+  public void testLoopbackOnlyByDefault() throws InvalidConfException {
+    MetricsConf conf = new MetricsConf();
+    conf.validate();
+    Assert.assertTrue(conf.isClientPermitted("127.0.0.1"));
+    Assert.assertTrue(conf.isClientPermitted("0:0:0:0:0:0:0:1"));
+    Assert.assertFalse(conf.isClientPermitted("10.1.2.3"));
+    Assert.assertFalse(conf.isClientPermitted("localhost"));
+  }
+
+  @Test
+  public void testClientAddresses() throws InvalidConfException {
+    MetricsConf conf = new MetricsConf();
+    conf.setClientAddresses(Arrays.asList("10.1.2.3", "fe80::1"));
+    conf.validate();
+    Assert.assertTrue(conf.isClientPermitted("10.1.2.3"));
+    Assert.assertTrue(conf.isClientPermitted("fe80:0:0:0:0:0:0:1"));
+    Assert.assertFalse(conf.isClientPermitted("10.1.2.4"));
+    Assert.assertFalse(conf.isClientPermitted("127.0.0.1"));
+  }
+
+  @Test(expected = InvalidConfException.class)
+  public void testInvalidClientAddress() throws InvalidConfException {
+    MetricsConf conf = new MetricsConf();
+    conf.setClientAddresses(Arrays.asList("prometheus.example.com"));
+    conf.validate();
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.util.LatencyHistogram;
+import org.xipki.util.metrics.MetricsRegistry;
+
+/**
+ * Test for {@link MetricsRegistry}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class MetricsRegistryTest {
+
+  @Test
+  public void testTextFormat() throws IOException {
+    MetricsRegistry registry = new MetricsRegistry();
+
+    LongAdder counter = registry.counter("test_requests_total", "Requests", "name", "a\"b");
+    counter.add(3);
+    Assert.assertSame("same counter", counter,
+        registry.counter("test_requests_total", "Requests", "name", "a\"b"));
+
+    registry.gauge("test_busy", "Busy workers", () -> 2);
+
+    LatencyHistogram histogram = registry.latency("test_duration_seconds", "Duration",
+        "name", "x");
+    histogram.record(100);
+    histogram.record(120);
+
+    String text = toText(registry);
+    assertContains(text, "# TYPE test_requests_total counter\n");
+    assertContains(text, "test_requests_total{name=\"a\\\"b\"} 3\n");
+    assertContains(text, "# TYPE test_busy gauge\n");
+    assertContains(text, "test_busy 2.0\n");
+    assertContains(text, "# TYPE test_duration_seconds histogram\n");
+    assertContains(text, "test_duration_seconds_bucket{name=\"x\",le=\"0.0005\"} 2\n");
+    assertContains(text, "test_duration_seconds_bucket{name=\"x\",le=\"+Inf\"} 2\n");
+    assertContains(text, "test_duration_seconds_sum{name=\"x\"} 2.2E-4\n");
+    assertContains(text, "test_duration_seconds_count{name=\"x\"} 2\n");
+  }
+
+  @Test
+  public void testHistogramBuckets() throws IOException {
+    MetricsRegistry registry = new MetricsRegistry();
+    LatencyHistogram histogram = registry.latency("test_duration_seconds", "Duration");
+    histogram.record(400);
+    histogram.record(2000);
+    histogram.record(20_000_000);
+
+    String text = toText(registry);
+    assertContains(text, "test_duration_seconds_bucket{le=\"0.0005\"} 1\n");
+    assertContains(text, "test_duration_seconds_bucket{le=\"0.001\"} 1\n");
+    assertContains(text, "test_duration_seconds_bucket{le=\"0.0025\"} 2\n");
+    assertContains(text, "test_duration_seconds_bucket{le=\"10\"} 2\n");
+    assertContains(text, "test_duration_seconds_bucket{le=\"+Inf\"} 3\n");
+    assertContains(text, "test_duration_seconds_count 3\n");
+  }
+
+  @Test
+  public void testRemove() throws IOException {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.counter("test_total", "Test", "ds", "a").increment();
+    registry.counter("test_total", "Test", "ds", "b").increment();
+    registry.gauge("test_gauge", "Test", () -> 1, "ds", "a");
+
+    registry.removeAll("ds", "a");
+    String text = toText(registry);
+    Assert.assertFalse("metric of ds a not removed", text.contains("\"a\""));
+    assertContains(text, "test_total{ds=\"b\"} 1\n");
+    Assert.assertFalse("empty family written", text.contains("test_gauge"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTypeConflict() {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.counter("test_metric", "Test");
+    registry.latency("test_metric", "Test");
+  }
+
+  private static String toText(MetricsRegistry registry) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    registry.writeTextFormat(sb);
+    return sb.toString();
+  }
+
+  private static void assertContains(String text, String expected) {
+    Assert.assertTrue("'" + expected + "' not in\n" + text, text.contains(expected));
+  }
+
+}